@@ -0,0 +1,75 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.process.PTBTokenizer;
+import edu.stanford.nlp.process.WordToSentenceProcessor;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+/**
+ * The fixed input text of the benchmarks, so that results from different
+ * builds measure the same work.  The corpus is bundled with the
+ * benchmarks rather than read from the models jar, which changes between
+ * releases.
+ */
+public class BenchmarkCorpus {
+
+  /** About 40 sentences of newswire-style English, none longer than 40 tokens */
+  public static final String NEWSWIRE = "edu/stanford/nlp/benchmarks/newswire.txt";
+
+  private BenchmarkCorpus() {} // static methods
+
+  /** The raw text of a bundled corpus */
+  public static String text(String path) {
+    try {
+      return IOUtils.slurpReader(IOUtils.readerFromString(path));
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** A bundled corpus, tokenized and split into sentences */
+  public static List<List<CoreLabel>> sentences(String path) {
+    PTBTokenizer<CoreLabel> tokenizer = PTBTokenizer.newPTBTokenizer(new StringReader(text(path)), false, true);
+    return new WordToSentenceProcessor<CoreLabel>().process(tokenizer.tokenize());
+  }
+
+  /** Sets the part of speech tag of every token */
+  public static void tag(List<List<CoreLabel>> sentences, MaxentTagger tagger) {
+    for (List<CoreLabel> sentence : sentences) {
+      List<TaggedWord> tagged = tagger.tagSentence(sentence);
+      for (int i = 0; i < sentence.size(); ++i) {
+        sentence.get(i).setTag(tagged.get(i).tag());
+      }
+    }
+  }
+
+  public static int countTokens(List<? extends List<?>> sentences) {
+    int tokens = 0;
+    for (List<?> sentence : sentences) {
+      tokens += sentence.size();
+    }
+    return tokens;
+  }
+
+  /** Copies of the sentences, so that benchmarks which modify their input start from the same state */
+  public static List<List<CoreLabel>> copy(List<List<CoreLabel>> sentences) {
+    List<List<CoreLabel>> copies = new ArrayList<>(sentences.size());
+    for (List<CoreLabel> sentence : sentences) {
+      List<CoreLabel> copy = new ArrayList<>(sentence.size());
+      for (CoreLabel token : sentence) {
+        copy.add(new CoreLabel(token));
+      }
+      copies.add(copy);
+    }
+    return copies;
+  }
+
+}
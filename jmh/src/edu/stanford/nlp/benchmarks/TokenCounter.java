@@ -0,0 +1,27 @@
+package edu.stanford.nlp.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the tokens a benchmark processes, which JMH reports as a
+ * secondary "tokens" rate next to the operation rate.  Operations are
+ * sentences or documents of different lengths, so the token rate is the
+ * number to compare across benchmarks and corpora; its inverse is the
+ * cost per token.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TokenCounter {
+
+  public long tokens;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    tokens = 0;
+  }
+
+}
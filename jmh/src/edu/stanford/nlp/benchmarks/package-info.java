@@ -0,0 +1,17 @@
+/**
+ * Shared pieces of the JMH benchmarks, which live next to the code they
+ * measure under {@code jmh/src}.
+ * <br>
+ * Run them with {@code gradle jmh}, or a subset with
+ * {@code gradle jmh -Pbenchmarks=TaggerBenchmark}.  Every benchmark reports
+ * operations per second, a "tokens" rate from {@link edu.stanford.nlp.benchmarks.TokenCounter},
+ * and, with the GC profiler which the jmh task turns on, the allocation
+ * rate ({@code gc.alloc.rate}) and bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}).
+ * <br>
+ * The input is the fixed corpus in {@link edu.stanford.nlp.benchmarks.BenchmarkCorpus}.
+ * Benchmarks of statistical models load them from the default paths in the
+ * models jar, which must be on the classpath; another model can be given
+ * with JMH's {@code -p model=...}.
+ */
+package edu.stanford.nlp.benchmarks;
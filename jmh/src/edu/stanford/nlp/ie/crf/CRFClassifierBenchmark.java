@@ -0,0 +1,59 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+
+/**
+ * Labels the sentences of the benchmark corpus one at a time with
+ * {@link CRFClassifier#classify}, which includes feature extraction and
+ * Viterbi decoding.  One operation is one sentence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CRFClassifierBenchmark {
+
+  @Param({DefaultPaths.DEFAULT_NER_THREECLASS_MODEL})
+  public String model;
+
+  private CRFClassifier<CoreLabel> classifier;
+  private List<List<CoreLabel>> sentences;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, ClassNotFoundException {
+    classifier = CRFClassifier.getClassifier(model);
+    sentences = BenchmarkCorpus.sentences(BenchmarkCorpus.NEWSWIRE);
+  }
+
+  @Benchmark
+  public List<CoreLabel> classify(TokenCounter counter) {
+    List<CoreLabel> sentence = sentences.get(next);
+    next = (next + 1) % sentences.size();
+    counter.tokens += sentence.size();
+    return classifier.classify(sentence);
+  }
+
+}
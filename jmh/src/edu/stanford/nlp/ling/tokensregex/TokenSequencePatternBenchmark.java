@@ -0,0 +1,100 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Finds every match of a few typical {@link TokenSequencePattern}s in
+ * the sentences of the benchmark corpus: word sequences, regular
+ * expressions over words, optional and repeated tokens, and a
+ * disjunction.  The patterns only look at words, so no models are
+ * needed.  One operation is one sentence, searched with every pattern.
+ * <br>
+ * With {@code -p automaton=true} the patterns skip the positions where
+ * they can't match with a {@link SequencePatternAutomaton}, which can be
+ * compared with trying the pattern at every position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSequencePatternBenchmark {
+
+  private static final String[] PATTERNS = {
+    // an amount of money or a percentage
+    "/\\$/? [{word:/[0-9][0-9,.]*/}] (/million|billion/)? (/percent|%/)?",
+    // a capitalized name followed by a speech verb
+    "([{word:/[A-Z][a-z]+/}]+) /said|says|told/",
+    // a date such as "October 28" or "March 2014"
+    "/January|February|March|April|May|June|July|August|September|October|November|December/ [{word:/[0-9]{1,4}/}]",
+    // "the ... of ..." with up to three words in between
+    "/the/ []{1,3} /of/ [{word:/[A-Z].*/}]",
+    "/more|less/ /than/ [{word:/[0-9].*/}] | /at/ /least/ [{word:/[0-9].*/}]",
+  };
+
+  @Param({"false", "true"})
+  public boolean automaton;
+
+  private List<TokenSequencePattern> patterns;
+  private MultiPatternMatcher<CoreMap> multiMatcher;
+  private List<List<CoreLabel>> sentences;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    patterns = new ArrayList<>();
+    for (String pattern : PATTERNS) {
+      TokenSequencePattern p = TokenSequencePattern.compile(pattern);
+      p.setUseAutomaton(automaton);
+      patterns.add(p);
+    }
+    multiMatcher = TokenSequencePattern.getMultiPatternMatcher(patterns);
+    sentences = BenchmarkCorpus.sentences(BenchmarkCorpus.NEWSWIRE);
+  }
+
+  @Benchmark
+  public int find(TokenCounter counter) {
+    List<CoreLabel> sentence = sentences.get(next);
+    next = (next + 1) % sentences.size();
+    counter.tokens += sentence.size();
+    int matches = 0;
+    for (TokenSequencePattern pattern : patterns) {
+      TokenSequenceMatcher matcher = pattern.getMatcher(sentence);
+      while (matcher.find()) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  /** Finds the best non-overlapping matches of all the patterns together. */
+  @Benchmark
+  public int findNonOverlapping(TokenCounter counter) {
+    List<CoreLabel> sentence = sentences.get(next);
+    next = (next + 1) % sentences.size();
+    counter.tokens += sentence.size();
+    return multiMatcher.findNonOverlapping(sentence).size();
+  }
+
+}
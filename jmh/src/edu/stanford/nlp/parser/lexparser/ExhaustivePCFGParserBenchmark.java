@@ -0,0 +1,77 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.util.DeltaIndex;
+
+/**
+ * Parses the sentences of the benchmark corpus one at a time with the
+ * {@link ExhaustivePCFGParser} of a PCFG model, the CKY chart parse and
+ * Viterbi tree extraction which dominate the cost of the parse annotator.
+ * Tokenization, tagging and the LexicalizedParserQuery wrapper are left
+ * out.  One operation is one sentence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ExhaustivePCFGParserBenchmark {
+
+  @Param({DefaultPaths.DEFAULT_PARSER_MODEL})
+  public String model;
+
+  private ExhaustivePCFGParser parser;
+  /** the sentences, with the boundary symbol added as LexicalizedParserQuery does */
+  private List<List<HasWord>> sentences;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    LexicalizedParser lp = LexicalizedParser.loadModel(model);
+    parser = new ExhaustivePCFGParser(lp.bg, lp.ug, lp.lex, lp.getOp(), lp.stateIndex,
+                                      new DeltaIndex<>(lp.wordIndex), lp.tagIndex);
+    sentences = new ArrayList<>();
+    for (List<CoreLabel> sentence : BenchmarkCorpus.sentences(BenchmarkCorpus.NEWSWIRE)) {
+      List<HasWord> words = new ArrayList<>();
+      for (CoreLabel token : sentence) {
+        words.add(new Word(token.word()));
+      }
+      words.add(new TaggedWord(Lexicon.BOUNDARY, Lexicon.BOUNDARY_TAG));
+      sentences.add(words);
+    }
+  }
+
+  @Benchmark
+  public double parse(TokenCounter counter) {
+    List<HasWord> sentence = sentences.get(next);
+    next = (next + 1) % sentences.size();
+    counter.tokens += sentence.size() - 1;
+    parser.parse(sentence);
+    return parser.getBestScore();
+  }
+
+}
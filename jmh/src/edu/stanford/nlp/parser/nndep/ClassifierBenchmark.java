@@ -0,0 +1,147 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the cost of scoring one parser transition with the double
+ * precision {@link Classifier} and the single precision
+ * {@link FloatClassifier}, one at a time and in batches.
+ * <br>
+ * The network has the shape of the English models (48 input tokens,
+ * 50 dimensional embeddings, 200 hidden units, 100,000 precomputed
+ * features) with random weights.  Token IDs are drawn from a Zipf-like
+ * distribution so that, as with real text, most inputs hit the
+ * precomputed activations and the rest go through the full W1 * E
+ * product.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifierBenchmark {
+
+  private static final int NUM_EMBEDDINGS = 30000;
+  private static final int NUM_FEATURE_VECTORS = 1024;
+  private static final int BATCH_SIZE = 32;
+
+  @Param({"200"})
+  public int hiddenSize;
+
+  @Param({"79"})
+  public int numLabels;
+
+  private Classifier classifier;
+  private FloatClassifier floatClassifier;
+  private int[][] features;
+  private float[] hidden;
+  private float[] scores;
+  private int[][] batch;
+  private float[] batchHidden;
+  private float[] batchScores;
+  private int next;
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < cols; ++j) {
+        matrix[i][j] = random.nextGaussian() * 0.01;
+      }
+    }
+    return matrix;
+  }
+
+  /** Frequent tokens have small IDs, as in the models, where the vocabulary is sorted by count */
+  private static int zipfToken(Random random) {
+    return (int) Math.min(NUM_EMBEDDINGS - 1, Math.exp(random.nextDouble() * Math.log(NUM_EMBEDDINGS)) - 1);
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", Integer.toString(hiddenSize));
+    Config config = new Config(props);
+
+    Random random = new Random(1234);
+    double[][] E = randomMatrix(random, NUM_EMBEDDINGS, config.embeddingSize);
+    double[][] W1 = randomMatrix(random, config.hiddenSize, config.embeddingSize * Config.numTokens);
+    double[] b1 = randomMatrix(random, 1, config.hiddenSize)[0];
+    double[][] W2 = randomMatrix(random, numLabels, config.hiddenSize);
+
+    List<Integer> preComputed = new ArrayList<>();
+    for (int tok = 0; preComputed.size() < config.numPreComputed; ++tok) {
+      for (int pos = 0; pos < Config.numTokens; ++pos) {
+        preComputed.add(tok * Config.numTokens + pos);
+      }
+    }
+
+    classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+    floatClassifier = new FloatClassifier(config, classifier, preComputed);
+
+    features = new int[NUM_FEATURE_VECTORS][Config.numTokens];
+    for (int[] feature : features) {
+      for (int j = 0; j < feature.length; ++j) {
+        feature[j] = zipfToken(random);
+      }
+    }
+    hidden = new float[hiddenSize];
+    scores = new float[numLabels];
+    batch = new int[BATCH_SIZE][];
+    batchHidden = new float[BATCH_SIZE * hiddenSize];
+    batchScores = new float[BATCH_SIZE * numLabels];
+  }
+
+  private int[] nextFeature() {
+    next = (next + 1) & (NUM_FEATURE_VECTORS - 1);
+    return features[next];
+  }
+
+  @Benchmark
+  public double[] doubleScores() {
+    return classifier.computeScores(nextFeature());
+  }
+
+  @Benchmark
+  public void floatScores(Blackhole blackhole) {
+    floatClassifier.computeScores(nextFeature(), hidden, scores);
+    blackhole.consume(scores);
+  }
+
+  /**
+   * Scores {@link #BATCH_SIZE} transitions with one matrix-matrix
+   * product, as the parser does when decoding sentences in lockstep.
+   * Each operation is one transition, so the score is comparable to
+   * the other benchmarks.
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void floatBatchScores(Blackhole blackhole) {
+    int start = (next + BATCH_SIZE) & (NUM_FEATURE_VECTORS - 1);
+    next = start;
+    System.arraycopy(features, start, batch, 0, BATCH_SIZE);
+    floatClassifier.computeScores(batch, BATCH_SIZE, batchHidden, batchScores);
+    blackhole.consume(batchScores);
+  }
+
+}
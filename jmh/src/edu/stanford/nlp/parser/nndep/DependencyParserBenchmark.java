@@ -0,0 +1,98 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Parses the sentences of the benchmark corpus with the neural network
+ * {@link DependencyParser}, one at a time with
+ * {@link DependencyParser#predict(CoreMap)} and all together with
+ * {@link DependencyParser#predictBatch}.  The sentences are tagged once
+ * during setup, so only the parser is measured.  One operation of
+ * {@link #predict} is one sentence, and one of {@link #predictBatch} is
+ * the whole corpus, so compare the two by their token rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DependencyParserBenchmark {
+
+  @Param({DefaultPaths.DEFAULT_DEPENDENCY_PARSER_MODEL})
+  public String model;
+
+  @Param({DefaultPaths.DEFAULT_POS_MODEL})
+  public String taggerModel;
+
+  @Param({"false", "true"})
+  public boolean floatInference;
+
+  /** Sentences decoded together by predictBatch */
+  @Param({"32"})
+  public int testBatchSize;
+
+  private DependencyParser parser;
+  private List<CoreMap> sentences;
+  private int numTokens;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Properties props = new Properties();
+    props.setProperty("floatInference", Boolean.toString(floatInference));
+    props.setProperty("testBatchSize", Integer.toString(testBatchSize));
+    parser = DependencyParser.loadFromModelFile(model, props);
+
+    List<List<CoreLabel>> tokens = BenchmarkCorpus.sentences(BenchmarkCorpus.NEWSWIRE);
+    BenchmarkCorpus.tag(tokens, new MaxentTagger(taggerModel));
+    numTokens = BenchmarkCorpus.countTokens(tokens);
+    sentences = new ArrayList<>();
+    for (List<CoreLabel> sentence : tokens) {
+      CoreMap map = new ArrayCoreMap();
+      map.set(CoreAnnotations.TokensAnnotation.class, sentence);
+      sentences.add(map);
+    }
+  }
+
+  @Benchmark
+  public GrammaticalStructure predict(TokenCounter counter) {
+    CoreMap sentence = sentences.get(next);
+    next = (next + 1) % sentences.size();
+    counter.tokens += sentence.get(CoreAnnotations.TokensAnnotation.class).size();
+    return parser.predict(sentence);
+  }
+
+  @Benchmark
+  public List<GrammaticalStructure> predictBatch(TokenCounter counter) {
+    counter.tokens += numTokens;
+    return parser.predictBatch(sentences);
+  }
+
+}
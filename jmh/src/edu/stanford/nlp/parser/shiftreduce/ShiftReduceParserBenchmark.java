@@ -0,0 +1,81 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.parser.common.ParserQuery;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Parses the sentences of the benchmark corpus one at a time with the
+ * {@link ShiftReduceParser}.  The sentences are tagged once during setup,
+ * so only the parser is measured.  One operation is one sentence.
+ * <br>
+ * The beam size and the beam implementation are parameters, so that the
+ * reusable array beam can be compared with the old PriorityQueue beam at
+ * several widths; run with {@code -prof gc} (as the gradle jmh task does)
+ * to compare their allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ShiftReduceParserBenchmark {
+
+  @Param({"edu/stanford/nlp/models/srparser/englishSR.ser.gz"})
+  public String model;
+
+  @Param({DefaultPaths.DEFAULT_POS_MODEL})
+  public String taggerModel;
+
+  /** The beam size to parse with; 1 is greedy */
+  @Param({"1", "4", "16"})
+  public int beamSize;
+
+  /** Whether to use a new PriorityQueue for every step rather than the array beam */
+  @Param({"false", "true"})
+  public boolean priorityQueueBeam;
+
+  private ShiftReduceParser parser;
+  private List<List<CoreLabel>> sentences;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    parser = ShiftReduceParser.loadModel(model, "-beamSize", Integer.toString(beamSize),
+        priorityQueueBeam ? "-priorityQueueBeam" : "-noPriorityQueueBeam");
+    sentences = BenchmarkCorpus.sentences(BenchmarkCorpus.NEWSWIRE);
+    BenchmarkCorpus.tag(sentences, new MaxentTagger(taggerModel));
+  }
+
+  @Benchmark
+  public Tree parse(TokenCounter counter) {
+    List<CoreLabel> sentence = sentences.get(next);
+    next = (next + 1) % sentences.size();
+    counter.tokens += sentence.size();
+    ParserQuery query = parser.parserQuery();
+    query.parse(sentence);
+    return query.getBestParse();
+  }
+
+}
@@ -0,0 +1,78 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+/**
+ * Converts the annotated benchmark corpus to a protocol buffer, to bytes,
+ * and back with the {@link ProtobufAnnotationSerializer}.  The document
+ * is annotated once during setup, by default with annotators which need
+ * no models; more can be given with {@code -p annotators=...} when the
+ * models jar is on the classpath.  One operation is one round trip of
+ * the whole document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ProtobufSerializerBenchmark {
+
+  @Param({"tokenize,ssplit"})
+  public String annotators;
+
+  private ProtobufAnnotationSerializer serializer;
+  private Annotation document;
+  private byte[] bytes;
+  private int numTokens;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Properties props = new Properties();
+    props.setProperty("annotators", annotators);
+    document = new Annotation(BenchmarkCorpus.text(BenchmarkCorpus.NEWSWIRE));
+    new StanfordCoreNLP(props).annotate(document);
+    numTokens = document.get(CoreAnnotations.TokensAnnotation.class).size();
+    serializer = new ProtobufAnnotationSerializer();
+    bytes = serializer.toProto(document).toByteArray();
+  }
+
+  @Benchmark
+  public byte[] write(TokenCounter counter) {
+    counter.tokens += numTokens;
+    return serializer.toProto(document).toByteArray();
+  }
+
+  @Benchmark
+  public Annotation read(TokenCounter counter) throws IOException {
+    counter.tokens += numTokens;
+    return serializer.fromProto(CoreNLPProtos.Document.parseFrom(bytes));
+  }
+
+  @Benchmark
+  public Annotation roundTrip(TokenCounter counter) throws IOException {
+    counter.tokens += numTokens;
+    byte[] serialized = serializer.toProto(document).toByteArray();
+    return serializer.fromProto(CoreNLPProtos.Document.parseFrom(serialized));
+  }
+
+}
@@ -0,0 +1,60 @@
+package edu.stanford.nlp.process;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.benchmarks.BenchmarkCorpus;
+import edu.stanford.nlp.benchmarks.TokenCounter;
+import edu.stanford.nlp.ling.CoreLabel;
+
+/**
+ * Tokenizes the whole benchmark corpus with the {@link PTBLexer}, making
+ * {@link CoreLabel}s as the tokenize annotator does.  One operation is
+ * one pass over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PTBLexerBenchmark {
+
+  @Param({"invertible,ptb3Escaping=true"})
+  public String options;
+
+  private String text;
+  private CoreLabelTokenFactory tokenFactory;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    text = BenchmarkCorpus.text(BenchmarkCorpus.NEWSWIRE);
+    tokenFactory = new CoreLabelTokenFactory();
+  }
+
+  @Benchmark
+  public void tokenize(TokenCounter counter, Blackhole blackhole) throws IOException {
+    PTBLexer lexer = new PTBLexer(new StringReader(text), tokenFactory, options);
+    Object token;
+    while ((token = lexer.next()) != null) {
+      blackhole.consume(token);
+      counter.tokens++;
+    }
+  }
+
+}
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -18,6 +19,7 @@ import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ie.ner.CMMClassifier;
+import edu.stanford.nlp.ie.regexp.NumberSequenceClassifier;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasWord;
@@ -27,6 +29,7 @@ import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.ErasureUtils;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.ModelRegistry;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.PropertiesUtils;
 
@@ -256,10 +259,48 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
     }
   }
 
+  /**
+   * The part of the properties which changes a base classifier loaded with them, used to
+   * key the classifier in the {@link ModelRegistry}.  The properties override the flags
+   * in the models, so they are part of the key, except for those which only the combiner
+   * and its numeric classifiers read: the paths of the models, the ner.* options, and
+   * the SUTime options.  Pipelines differing only in those then share their classifiers.
+   */
+  static String loadingConfiguration(Properties props) {
+    if (props == null) {
+      return "";
+    }
+    List<Map.Entry<String, String>> entries = new ArrayList<>();
+    for (Map.Entry<String, String> entry : PropertiesUtils.getSortedEntries(props)) {
+      String key = entry.getKey();
+      if ( ! key.startsWith("loadClassifier") && ! key.equals("loadAuxClassifier") &&
+          ! key.startsWith("ner.") && ! key.startsWith(NumberSequenceClassifier.SUTIME_PROPERTY + '.')) {
+        entries.add(entry);
+      }
+    }
+    return entries.toString();
+  }
+
   private void loadClassifiers(Properties props, List<String> paths) throws IOException {
     baseClassifiers = new ArrayList<AbstractSequenceClassifier<IN>>();
+    String configuration = loadingConfiguration(props);
     for(String path: paths){
-      AbstractSequenceClassifier<IN> cls = loadClassifierFromPath(props, path);
+      AbstractSequenceClassifier<IN> cls;
+      try {
+        // share the classifiers with any other combiner loading them with the same properties
+        cls = ModelRegistry.acquire(this, path, configuration, () -> {
+          try {
+            return loadClassifierFromPath(props, path);
+          } catch (IOException e) {
+            throw new RuntimeIOException(e);
+          }
+        });
+      } catch (RuntimeIOException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw e;
+      }
       baseClassifiers.add(cls);
       if(DEBUG){
         System.err.printf("Successfully loaded classifier #%d from %s.%n", baseClassifiers.size(), path);
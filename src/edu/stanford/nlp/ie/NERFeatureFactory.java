@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -393,6 +394,21 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   @Override
   public Collection<String> getCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique) {
     Collection<String> features = Generics.newHashSet();
+    getCliqueFeatures(cInfo, loc, clique, (c, suffix) -> addAllInterningAndSuffixing(features, c, suffix));
+    // System.err.println(StringUtils.join(features,"\n")+"\n");
+    return features;
+  }
+
+  /**
+   * Extracts all the features from the input data at a certain index,
+   * without adding the clique suffix to them.
+   *
+   * @param cInfo The complete data set as a List of WordInfo
+   * @param loc  The index at which to extract features.
+   */
+  @Override
+  public void getCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique,
+                                BiConsumer<Collection<String>, String> sink) {
     String domain = cInfo.get(0).get(CoreAnnotations.DomainAnnotation.class);
     final boolean doFE = domain != null;
 
@@ -408,9 +424,9 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     } else if (clique == cliqueCpC) {
       c = featuresCpC(cInfo, loc);
       suffix = "CpC";
-      addAllInterningAndSuffixing(features, c, suffix);
+      sink.accept(c, suffix);
       if (doFE) {
-        addAllInterningAndSuffixing(features, c, domain + '-' + suffix);
+        sink.accept(c, domain + '-' + suffix);
       }
       c = featuresCnC(cInfo, loc-1);
       suffix = "CnC";
@@ -429,9 +445,9 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     } else if (clique == cliqueCpCp2C) {
       c = featuresCpCp2C(cInfo, loc);
       suffix = "CpCp2C";
-      addAllInterningAndSuffixing(features, c, suffix);
+      sink.accept(c, suffix);
       if (doFE) {
-        addAllInterningAndSuffixing(features, c, domain+ '-' + suffix);
+        sink.accept(c, domain+ '-' + suffix);
       }
       c = featuresCpCnC(cInfo, loc-1);
       suffix = "CpCnC";
@@ -445,13 +461,10 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
       throw new IllegalArgumentException("Unknown clique: " + clique);
     }
 
-    addAllInterningAndSuffixing(features, c, suffix);
+    sink.accept(c, suffix);
     if (doFE) {
-      addAllInterningAndSuffixing(features, c, domain + '-' + suffix);
+      sink.accept(c, domain + '-' + suffix);
     }
-
-    // System.err.println(StringUtils.join(features,"\n")+"\n");
-    return features;
   }
 
 
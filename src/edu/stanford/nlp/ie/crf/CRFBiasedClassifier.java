@@ -53,6 +53,12 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN> {
 
   public CRFBiasedClassifier(SeqClassifierFlags flags) {super(flags); }
 
+  /** The bias features are only added by {@link #makeDatum} */
+  @Override
+  protected boolean canLookUpFeatureParts() {
+    return false;
+  }
+
   @Override
   public CRFDatum<List<String>, CRFLabel> makeDatum(List<IN> info, int loc, List<FeatureFactory<IN>> featureFactories) {
 
@@ -44,9 +44,15 @@ import edu.stanford.nlp.util.*;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.regex.*;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
@@ -123,6 +129,19 @@ import java.util.zip.GZIPOutputStream;
  * ones in {@link AbstractSequenceClassifier}.
  * Probabilities assigned by the CRF can be interrogated using either the
  * <code>printProbsDocument()</code> or <code>getCliqueTrees()</code> methods.
+ * </p><p>
+ * A classifier can also be stored in an uncompressed, memory mapped format
+ * (see {@link #serializeMappedClassifier(String)}), which loads much faster
+ * and keeps the feature index and weights off the heap.  To convert an existing model:
+ * </p>
+ * <p><code>
+ * java edu.stanford.nlp.ie.crf.CRFClassifier -loadClassifier
+ * ner-model.ser.gz -serializeToMapped ner-model.mapped
+ * </code></p>
+ * <p>
+ * The usual {@code loadClassifier} methods recognize such a file, on disk
+ * or in a stream from the classpath, and load it as a mapped classifier.
+ * </p>
  *
  * @author Jenny Finkel
  * @author Sonal Gupta (made the class generic)
@@ -139,13 +158,23 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   CliquePotentialFunction cliquePotentialFunction;
   HasCliquePotentialFunction cliquePotentialFunctionHelper;
 
-  /** Parameter weights of the classifier. */
+  /** Parameter weights of the classifier.  Null while the weights are mapped. */
   double[][] weights;
+  /**
+   * The weights of a classifier loaded by {@link #loadMappedClassifier}, read in
+   * place from the mapped file.  Row f of the weights starts at element
+   * {@code mappedWeightOffsets.get(f)} of {@code mappedWeights}.  These are null
+   * unless the classifier is mapped; see {@link #weight(int, int)}.
+   */
+  private IntBuffer mappedWeightOffsets;
+  private DoubleBuffer mappedWeights;
 
   /** index the features of CRF */
   Index<String> featureIndex;
   /** caches the featureIndex */
   int[] map;
+  /** finds test time features in the featureIndex without building their names; made when first needed */
+  private volatile SuffixedFeatureIndex suffixedFeatureIndex;
   Random random = new Random(2147483647L);
   Index<Integer> nodeFeatureIndicesMap;
   Index<Integer> edgeFeatureIndicesMap;
@@ -215,6 +244,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
+    if (mappedWeights != null) return mappedWeights.limit();
     if (weights == null) return 0;
     int numWeights = 0;
     for (double[] wts : weights) {
@@ -223,6 +253,39 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return numWeights;
   }
 
+  /**
+   * The weight of feature f for the label (or label sequence) with index c,
+   * whether the weights are on the heap or mapped.
+   */
+  double weight(int f, int c) {
+    if (weights != null) {
+      return weights[f][c];
+    }
+    return mappedWeights.get(mappedWeightOffsets.get(f) + c);
+  }
+
+  /**
+   * Copies the weights of a mapped classifier onto the heap, for the
+   * methods which change the weights or write them out.  Classifying
+   * reads the mapped weights in place and does not need this.
+   */
+  private void unmapWeights() {
+    if (mappedWeights == null) {
+      return;
+    }
+    int numRows = mappedWeightOffsets.limit() - 1;
+    double[][] heapWeights = new double[numRows][];
+    DoubleBuffer values = mappedWeights.duplicate();
+    for (int i = 0; i < numRows; ++i) {
+      heapWeights[i] = new double[mappedWeightOffsets.get(i + 1) - mappedWeightOffsets.get(i)];
+      values.get(heapWeights[i]);
+    }
+    weights = heapWeights;
+    mappedWeights = null;
+    mappedWeightOffsets = null;
+    cliquePotentialFunction = null;
+  }
+
   /**
    * Get index of featureType for feature indexed by i. (featureType index is
    * used to index labelIndices to get labels.)
@@ -267,6 +330,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param scale The scale to multiply by
    */
   public void scaleWeights(double scale) {
+    unmapWeights();
     for (int i = 0; i < weights.length; i++) {
       for (int j = 0; j < weights[i].length; j++) {
         weights[i][j] *= scale;
@@ -365,6 +429,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       throw new RuntimeException("Incompatible CRFClassifier: labelIndices length does not match");
     }
     this.classIndex.addAll(crf.classIndex.objectsList());
+    unmapWeights();
+    crf.unmapWeights();
 
     // Combine weights of the other classifier with this classifier,
     // weighing the other classifier's weights by weight
@@ -395,6 +461,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
+    unmapWeights();
     Index<String> newFeatureIndex = new HashIndex<String>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
@@ -451,8 +518,25 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       Collections.reverse(document);
     }
 
+    SuffixedFeatureIndex lookup = suffixedFeatureIndex();
+    PaddedList<IN> pInfo = null;
+    List<List<Clique>> windowCliques = null;
+    FeatureIndexCollector collector = null;
+    if (lookup != null) {
+      pInfo = new PaddedList<IN>(document, pad);
+      windowCliques = windowCliques();
+      collector = new FeatureIndexCollector(lookup);
+    }
+
     // System.err.println("docSize:"+docSize);
     for (int j = 0; j < docSize; j++) {
+      if (lookup != null) {
+        cliqueFeatureIndices(pInfo, j, windowCliques, collector, data[j]);
+        IN wi = document.get(j);
+        labels[j] = classIndex.indexOf(wi.get(CoreAnnotations.AnswerAnnotation.class));
+        continue;
+      }
+
       CRFDatum<List<String>, CRFLabel> d = makeDatum(document, j, featureFactories);
 
       List<List<String>> features = d.asFeatures();
@@ -497,6 +581,117 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return new Triple<int[][][], int[], double[][][]>(data, labels, featureVals);
   }
 
+  /**
+   * Whether {@link #documentToDataAndLabels} may look features up
+   * directly from their parts, skipping {@link #makeDatum}.  This gives
+   * the same features, so it is on unless the features need something
+   * only makeDatum does, or a subclass changes makeDatum.
+   */
+  protected boolean canLookUpFeatureParts() {
+    return ! flags.stringFeatureLookup && ! flags.useEmbedding && flags.printFeatures == null &&
+        (featureIndex instanceof HashIndex || featureIndex instanceof MappedStringIndex);
+  }
+
+  /**
+   * The lookup of features by their parts for the current featureIndex,
+   * or null if {@link #canLookUpFeatureParts()} is false.
+   */
+  private SuffixedFeatureIndex suffixedFeatureIndex() {
+    if ( ! canLookUpFeatureParts()) {
+      return null;
+    }
+    SuffixedFeatureIndex lookup = suffixedFeatureIndex;
+    if (lookup == null || ! lookup.isViewOf(featureIndex)) {
+      synchronized (this) {
+        lookup = suffixedFeatureIndex;
+        if (lookup == null || ! lookup.isViewOf(featureIndex)) {
+          lookup = new SuffixedFeatureIndex(featureIndex);
+          suffixedFeatureIndex = lookup;
+        }
+      }
+    }
+    return lookup;
+  }
+
+  /**
+   * The cliques whose features go in each position of the data of a
+   * clique, as in {@link #makeDatum}.
+   */
+  private List<List<Clique>> windowCliques() {
+    List<List<Clique>> cliques = new ArrayList<>(windowSize);
+    Collection<Clique> done = Generics.newHashSet();
+    for (int i = 0; i < windowSize; i++) {
+      List<Clique> windowCliques = FeatureFactory.getCliques(i, 0);
+      windowCliques.removeAll(done);
+      done.addAll(windowCliques);
+      cliques.add(windowCliques);
+    }
+    return cliques;
+  }
+
+  /**
+   * Collects the indices of the features a feature factory gives it,
+   * leaving out unknown features.
+   */
+  private static class FeatureIndexCollector implements BiConsumer<Collection<String>, String> {
+    private final SuffixedFeatureIndex lookup;
+    private int[] indices = new int[64];
+    private int size;
+
+    FeatureIndexCollector(SuffixedFeatureIndex lookup) {
+      this.lookup = lookup;
+    }
+
+    @Override
+    public void accept(Collection<String> features, String suffixName) {
+      SuffixedFeatureIndex.Suffix suffix = lookup.suffix(suffixName);
+      for (String feature : features) {
+        int index = lookup.indexOf(feature, suffix);
+        if (index >= 0) {
+          if (size == indices.length) {
+            indices = Arrays.copyOf(indices, size * 2);
+          }
+          indices[size++] = index;
+        }
+      }
+    }
+
+    /** Sorts the indices collected since start, and removes duplicates among them */
+    void sortUnique(int start) {
+      Arrays.sort(indices, start, size);
+      int end = start;
+      for (int m = start; m < size; m++) {
+        if (m == start || indices[m] != indices[m - 1]) {
+          indices[end++] = indices[m];
+        }
+      }
+      size = end;
+    }
+  }
+
+  /**
+   * Fills in the feature indices of each clique at position loc, as
+   * {@link #makeDatum} and {@link #documentToDataAndLabels} would, but
+   * without building the feature names.  As there, each feature factory
+   * gives a feature of a clique at most once.  The indices of each
+   * clique are in increasing order.
+   */
+  private void cliqueFeatureIndices(PaddedList<IN> pInfo, int loc, List<List<Clique>> windowCliques,
+                                    FeatureIndexCollector collector, int[][] cliqueData) {
+    for (int i = 0; i < windowSize; i++) {
+      collector.size = 0;
+      for (Clique c : windowCliques.get(i)) {
+        for (FeatureFactory<IN> featureFactory : featureFactories) {
+          int start = collector.size;
+          featureFactory.getCliqueFeatures(pInfo, loc, c, collector);
+          // each factory gives a set of features, so only its own duplicates are removed
+          collector.sortUnique(start);
+        }
+      }
+      cliqueData[i] = Arrays.copyOf(collector.indices, collector.size);
+    }
+  }
+
   private int[][][] transformDocData(int[][][] docData) {
     int[][][] transData = new int[docData.length][][];
     for (int i = 0; i < docData.length; i++) {
@@ -569,7 +764,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
               double[] values = new double[labelIndices.get(0).size()];
               for (CRFLabel label : labelIndices.get(k)) {
                 int[] l = label.getLabel();
-                double v = weights[index][labelIndices.get(k).indexOf(label)];
+                double v = weight(index, labelIndices.get(k).indexOf(label));
                 values[l[l.length - 1 - p]] += v;
               }
               for (double value : values) {
@@ -1199,7 +1394,21 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   protected CliquePotentialFunction getCliquePotentialFunctionForTest() {
     if (cliquePotentialFunction == null) {
-      cliquePotentialFunction = new LinearCliquePotentialFunction(weights);
+      if (mappedWeights != null) {
+        cliquePotentialFunction = (cliqueSize, labelIndex, cliqueFeatures, featureVal, posInSent) -> {
+          double output = 0.0;
+          for (int m = 0; m < cliqueFeatures.length; m++) {
+            double dotProd = weight(cliqueFeatures[m], labelIndex);
+            if (featureVal != null) {
+              dotProd *= featureVal[m];
+            }
+            output += dotProd;
+          }
+          return output;
+        };
+      } else {
+        cliquePotentialFunction = new LinearCliquePotentialFunction(weights);
+      }
     }
     return cliquePotentialFunction;
   }
@@ -2353,6 +2562,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   protected void serializeTextClassifier(PrintWriter pw) throws Exception {
+    unmapWeights();
     pw.printf("labelIndices.length=\t%d%n", labelIndices.size());
     for (int i = 0; i < labelIndices.size(); i++) {
       pw.printf("labelIndices[%d].size()=\t%d%n", i, labelIndices.get(i).size());
@@ -2474,6 +2684,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     ObjectOutputStream oos = null;
     try {
+      unmapWeights();
       oos = IOUtils.writeStreamFromString(serializePath);
       oos.writeObject(weights);
       System.err.println("done.");
@@ -2567,6 +2778,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * whole classifier but just the data that represents a classifier model.)
    */
   public void serializeClassifier(ObjectOutputStream oos) {
+    unmapWeights();
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
@@ -2672,6 +2884,230 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /** The first bytes of a classifier written by {@link #serializeMappedClassifier} */
+  private static final int MAPPED_MAGIC = 0x4352464d;  // "CRFM"
+  private static final int MAPPED_VERSION = 1;
+  /** magic, version, and the lengths of the metadata, feature index and weights sections */
+  private static final int MAPPED_HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+
+  /**
+   * Serialize the classifier in a format meant to be memory mapped.
+   * The file has four sections: a header, the small parts of the model
+   * (flags, label indices, feature factories, etc.) as Java serialized
+   * objects, the feature index as a {@link MappedStringIndex}, and the
+   * weights as flat arrays of row offsets and doubles.
+   * <br>
+   * Loading such a file with {@link #loadMappedClassifier(File, Properties)}
+   * only deserializes the first two sections.  The feature index and the
+   * weights, which are nearly all of a large model, are read in place from
+   * the mapped file, and so shared with any other process mapping it.  The
+   * heap only holds the metadata and the buffers over the file.
+   * <br>
+   * The file cannot be compressed.  Classifiers using subclass specific
+   * state (such as CRFClassifierNonlinear) are not supported.
+   *
+   * @param serializePath The file to write
+   */
+  public void serializeMappedClassifier(String serializePath) {
+    if (getClass() != CRFClassifier.class) {
+      throw new UnsupportedOperationException("Cannot write a mapped classifier for " + getClass().getName());
+    }
+    unmapWeights();
+    System.err.print("Serializing mapped classifier to " + serializePath + "...");
+    try (RandomAccessFile file = new RandomAccessFile(serializePath, "rw")) {
+      file.setLength(0);
+      FileChannel channel = file.getChannel();
+      channel.position(MAPPED_HEADER_SIZE);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+      ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(metaBytes);
+      oos.writeObject(labelIndices);
+      oos.writeObject(classIndex);
+      oos.writeObject(flags);
+      if (flags.useEmbedding) {
+        oos.writeObject(embeddings);
+      }
+      oos.writeInt(featureFactories.size());
+      for (FeatureFactory ff : featureFactories) {
+        oos.writeObject(ff);
+      }
+      oos.writeInt(windowSize);
+      oos.writeObject(knownLCWords);
+      if (labelDictionary != null) {
+        oos.writeObject(labelDictionary);
+      }
+      oos.close();
+      metaBytes.writeTo(out);
+
+      long indexLength = MappedStringIndex.write(featureIndex, out);
+
+      long numValues = 0;
+      out.writeInt(weights.length);
+      out.writeInt(0);
+      for (double[] row : weights) {
+        numValues += row.length;
+        if (numValues > Integer.MAX_VALUE) {
+          throw new IllegalStateException("Too many weights for a mapped classifier");
+        }
+        out.writeInt((int) numValues);
+      }
+      for (double[] row : weights) {
+        for (double weight : row) {
+          out.writeDouble(weight);
+        }
+      }
+      long weightsLength = 4L * (weights.length + 2) + 8L * numValues;
+      out.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(MAPPED_HEADER_SIZE);
+      header.putInt(MAPPED_MAGIC).putInt(MAPPED_VERSION);
+      header.putLong(metaBytes.size()).putLong(indexLength).putLong(weightsLength);
+      header.flip();
+      channel.write(header, 0);
+      System.err.println("done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException("Failed to save mapped classifier", e);
+    }
+  }
+
+  /**
+   * Returns true if the given file is a classifier written by
+   * {@link #serializeMappedClassifier(String)}.
+   */
+  public static boolean isMappedClassifier(File file) {
+    if ( ! file.isFile() || file.length() < MAPPED_HEADER_SIZE) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readInt() == MAPPED_MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Loads a classifier written by {@link #serializeMappedClassifier(String)}.
+   * If props is non-null then any properties it specifies override those in
+   * the serialized file, as in {@link #loadClassifier(ObjectInputStream, Properties)}.
+   */
+  @SuppressWarnings("unchecked")
+  public void loadMappedClassifier(File file, Properties props) throws IOException, ClassCastException, ClassNotFoundException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, MAPPED_HEADER_SIZE);
+      if (header.getInt() != MAPPED_MAGIC) {
+        throw new IOException(file + " is not a mapped CRF classifier");
+      }
+      int version = header.getInt();
+      if (version != MAPPED_VERSION) {
+        throw new IOException("Unknown mapped classifier version " + version + " in " + file);
+      }
+      long metaLength = header.getLong();
+      long indexLength = header.getLong();
+      long weightsLength = header.getLong();
+
+      byte[] metaBytes = new byte[(int) metaLength];
+      channel.map(FileChannel.MapMode.READ_ONLY, MAPPED_HEADER_SIZE, metaLength).get(metaBytes);
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(metaBytes));
+      labelIndices = (List<Index<CRFLabel>>) ois.readObject();
+      classIndex = (Index<String>) ois.readObject();
+      flags = (SeqClassifierFlags) ois.readObject();
+      if (flags.useEmbedding) {
+        embeddings = (Map<String, double[]>) ois.readObject();
+      }
+      int numFactories = ois.readInt();
+      featureFactories = Generics.newArrayList(numFactories);
+      for (int i = 0; i < numFactories; ++i) {
+        featureFactories.add((FeatureFactory) ois.readObject());
+      }
+      if (props != null) {
+        flags.setProperties(props, false);
+      }
+      windowSize = ois.readInt();
+      knownLCWords = (MaxSizeConcurrentHashSet<String>) ois.readObject();
+
+      long position = MAPPED_HEADER_SIZE + metaLength;
+      featureIndex = MappedStringIndex.map(channel, position, indexLength);
+      position += indexLength;
+
+      ByteBuffer weightBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, weightsLength);
+      int numRows = weightBytes.getInt();
+      weightBytes.limit(4 * (numRows + 2));
+      mappedWeightOffsets = weightBytes.slice().asIntBuffer();
+      weightBytes.limit(weightBytes.capacity()).position(4 * (numRows + 2));
+      mappedWeights = weightBytes.slice().asDoubleBuffer();
+      weights = null;
+      cliquePotentialFunction = null;
+
+      reinit();
+
+      if (flags.labelDictionaryCutoff > 0) {
+        labelDictionary = (LabelDictionary) ois.readObject();
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>
+   * A file written by {@link #serializeMappedClassifier(String)} is loaded
+   * with {@link #loadMappedClassifier(File, Properties)}.
+   */
+  @Override
+  public void loadClassifier(File file, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    if (getClass() == CRFClassifier.class && isMappedClassifier(file)) {
+      Timing.startDoing("Loading mapped classifier from " + file.getAbsolutePath());
+      loadMappedClassifier(file, props);
+      Timing.endDoing();
+    } else {
+      super.loadClassifier(file, props);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>
+   * A stream holding a classifier written by
+   * {@link #serializeMappedClassifier(String)}, such as one read from the
+   * classpath or a jar, is recognized by its header.  Only a file can be
+   * mapped, so the stream is copied to a temporary file, which is mapped
+   * and deleted on exit.  Load a mapped classifier from a path on disk to
+   * avoid the copy and to share its pages with other processes.
+   */
+  @Override
+  public void loadClassifier(InputStream in, Properties props) throws IOException, ClassCastException, ClassNotFoundException {
+    if (getClass() != CRFClassifier.class) {
+      super.loadClassifier(in, props);
+      return;
+    }
+    if ( ! in.markSupported()) {
+      in = new BufferedInputStream(in);
+    }
+    in.mark(4);
+    DataInputStream header = new DataInputStream(in);
+    int magic;
+    try {
+      magic = header.readInt();
+    } catch (EOFException e) {
+      magic = 0;
+    }
+    in.reset();
+    if (magic != MAPPED_MAGIC) {
+      super.loadClassifier(in, props);
+      return;
+    }
+    File file = File.createTempFile("crf", ".mapped");
+    file.deleteOnExit();
+    try (OutputStream out = new FileOutputStream(file)) {
+      byte[] buffer = new byte[1 << 16];
+      for (int n; (n = in.read(buffer)) > 0; ) {
+        out.write(buffer, 0, n);
+      }
+    }
+    loadMappedClassifier(file, props);
+  }
+
   /**
    * This is used to load the default supplied classifier stored within the jar
    * file. THIS FUNCTION WILL ONLY WORK IF THE CODE WAS LOADED FROM A JAR FILE
@@ -2778,11 +3214,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
       Index<CRFLabel> l = this.labelIndices.get(0);
       p.println(feature + "\t\t");
       for (CRFLabel label : l) {
-        p.print(label.toString(classIndex) + ":" + v[l.indexOf(label)] + "\t");
+        p.print(label.toString(classIndex) + ":" + weight(index, l.indexOf(label)) + "\t");
       }
       p.println();
 
@@ -2795,12 +3230,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
       Index<CRFLabel> l = this.labelIndices.get(0);
       for (CRFLabel label : l) {
         if(!w.containsKey(label.toString(classIndex)))
           w.put(label.toString(classIndex), new ClassicCounter<String>());
-        w.get(label.toString(classIndex)).setCount(feature, v[l.indexOf(label)]);
+        w.get(label.toString(classIndex)).setCount(feature, weight(index, l.indexOf(label)));
       }
     }
     return w;
@@ -3054,6 +3488,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.serializeTextClassifier(serializeToText);
     }
 
+    if (crf.flags.serializeToMapped != null) {
+      crf.serializeMappedClassifier(crf.flags.serializeToMapped);
+    }
+
     if (testFile != null) {
       // todo: Change testFile to call testFiles with a singleton list
       DocumentReaderAndWriter<CoreLabel> readerAndWriter = crf.defaultReaderAndWriter();
@@ -1,6 +1,8 @@
 package edu.stanford.nlp.ie.crf;
 
 import edu.stanford.nlp.math.ArrayMath;
+import edu.stanford.nlp.math.SloppyMath;
+import edu.stanford.nlp.sequences.DecodingWorkspace;
 import edu.stanford.nlp.sequences.ListeningSequenceModel;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
@@ -20,6 +22,11 @@ import java.util.List;
  */
 public class CRFCliqueTree<E> implements ListeningSequenceModel {
 
+  // slots of the DecodingWorkspace used while building a clique tree
+  private static final int MESSAGES = 0;
+  private static final int SUMMED_OUT = 1;
+  private static final int POTENTIALS = 2;
+
   private final FactorTable[] factorTables;
   private final double z; // norm constant
   private final Index<E> classIndex;
@@ -448,6 +455,23 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
     }
   }
 
+  /**
+   * Gives the log probabilities of each of the given labels at a single
+   * position conditioned on the previous labels, which are the window - 1
+   * labels of sequence starting at from.  The same as calling
+   * {@link #condLogProbGivenPrevious(int, int, int[])} for each label, but
+   * without copying the previous labels or normalizing more than once.
+   *
+   * @param position Index in sequence
+   * @param sequence Holds the indices of the labels in the previous positions
+   * @param from Where the previous labels start in sequence
+   * @param labels Labels of item at index
+   * @param result Where to put the conditional log probability of each label
+   */
+  public void condLogProbsGivenPrevious(int position, int[] sequence, int from, int[] labels, double[] result) {
+    factorTables[position].conditionalLogProbsGivenPrevious(sequence, from, labels, result);
+  }
+
   public double condLogProbGivenPrevious(int position, E label, E[] prevLabels) {
     return condLogProbGivenPrevious(position, classIndex.indexOf(label), objectArrayToIntArray(prevLabels));
   }
@@ -551,30 +575,18 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
       int numClasses, Index<E> classIndex, E backgroundSymbol, CliquePotentialFunction cliquePotentialFunc, double[][][] featureVals) {
 
     FactorTable[] factorTables = new FactorTable[data.length];
-    FactorTable[] messages = new FactorTable[data.length - 1];
-
-    for (int i = 0; i < data.length; i++) {
-      double[][] featureValByCliqueSize = null;
-      if (featureVals != null)
-        featureValByCliqueSize = featureVals[i];
-      factorTables[i] = getFactorTable(data[i], labelIndices, numClasses, cliquePotentialFunc, featureValByCliqueSize, i);
-
-      // System.err.println("before calibration,FT["+i+"] = " + factorTables[i].toProbString());
 
-      if (i > 0) {
-        messages[i - 1] = factorTables[i - 1].sumOutFront();
-        // System.err.println("forward message, message["+(i-1)+"] = " + messages[i-1].toProbString());
-        factorTables[i].multiplyInFront(messages[i - 1]);
-        // System.err.println("after forward calibration, FT["+i+"] = " + factorTables[i].toProbString());
+    DecodingWorkspace workspace = DecodingWorkspace.acquire();
+    try {
+      for (int i = 0; i < data.length; i++) {
+        double[][] featureValByCliqueSize = null;
+        if (featureVals != null)
+          featureValByCliqueSize = featureVals[i];
+        factorTables[i] = getFactorTable(data[i], labelIndices, numClasses, cliquePotentialFunc, featureValByCliqueSize, i, workspace);
       }
-    }
-
-    for (int i = factorTables.length - 2; i >= 0; i--) {
-      FactorTable summedOut = factorTables[i + 1].sumOutEnd();
-      summedOut.divideBy(messages[i]);
-      // System.err.println("backward summedOut, summedOut= " + summedOut.toProbString());
-      factorTables[i].multiplyInEnd(summedOut);
-      // System.err.println("after backward calibration, FT["+i+"] = " + factorTables[i].toProbString());
+      calibrate(factorTables, workspace);
+    } finally {
+      workspace.release();
     }
 
     return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
@@ -588,36 +600,81 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
       int[][][] data, List<Index<CRFLabel>> labelIndices, int numClasses, Index<E> classIndex, E backgroundSymbol) {
 
     FactorTable[] factorTables = new FactorTable[data.length];
-    FactorTable[] messages = new FactorTable[data.length - 1];
 
-    for (int i = 0; i < data.length; i++) {
+    DecodingWorkspace workspace = DecodingWorkspace.acquire();
+    try {
+      for (int i = 0; i < data.length; i++) {
+        factorTables[i] = getFactorTable(weights, wscale, weightIndices, data[i], labelIndices, numClasses, workspace);
+      }
+      calibrate(factorTables, workspace);
+    } finally {
+      workspace.release();
+    }
 
-      factorTables[i] = getFactorTable(weights, wscale, weightIndices, data[i], labelIndices, numClasses);
+    return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
+  }
 
-      if (i > 0) {
-        messages[i - 1] = factorTables[i - 1].sumOutFront();
-        factorTables[i].multiplyInFront(messages[i - 1]);
-      }
+  /**
+   * Passes messages forward and then backward along the clique tree.  The
+   * forward messages are kept one after another in a flat array from the
+   * workspace, as the backward pass divides them out again.
+   */
+  private static void calibrate(FactorTable[] factorTables, DecodingWorkspace workspace) {
+    int messageSize = factorTables[0].size() / factorTables[0].numClasses();
+    double[] messages = workspace.doubles(MESSAGES, Math.max(factorTables.length - 1, 0) * messageSize);
+
+    for (int i = 1; i < factorTables.length; i++) {
+      int message = (i - 1) * messageSize;
+      factorTables[i - 1].sumOutFront(messages, message);
+      factorTables[i].multiplyInFront(messages, message);
+      // System.err.println("after forward calibration, FT["+i+"] = " + factorTables[i].toProbString());
     }
 
+    double[] summedOut = workspace.doubles(SUMMED_OUT, messageSize);
     for (int i = factorTables.length - 2; i >= 0; i--) {
-
-      FactorTable summedOut = factorTables[i + 1].sumOutEnd();
-      summedOut.divideBy(messages[i]);
-      factorTables[i].multiplyInEnd(summedOut);
+      factorTables[i + 1].sumOutEnd(summedOut, 0);
+      int message = i * messageSize;
+      for (int j = 0; j < messageSize; j++) {
+        // as FactorTable.divideBy
+        if (summedOut[j] != Double.NEGATIVE_INFINITY || messages[message + j] != Double.NEGATIVE_INFINITY) {
+          summedOut[j] -= messages[message + j];
+        }
+      }
+      factorTables[i].multiplyInEnd(summedOut, 0);
+      // System.err.println("after backward calibration, FT["+i+"] = " + factorTables[i].toProbString());
     }
+  }
 
-    return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
+  /**
+   * An array for the potentials of the cliques of one size, each labeling
+   * indexed as in a FactorTable of that size, with all of them at negative
+   * infinity until set.
+   */
+  private static double[] cliquePotentials(DecodingWorkspace workspace, int numClasses, int cliqueSize) {
+    int size = SloppyMath.intPow(numClasses, cliqueSize);
+    double[] potentials = workspace.doubles(POTENTIALS, size);
+    Arrays.fill(potentials, 0, size, Double.NEGATIVE_INFINITY);
+    return potentials;
+  }
+
+  private static int indexOf(int[] label, int numClasses) {
+    int index = 0;
+    for (int item : label) {
+      index *= numClasses;
+      index += item;
+    }
+    return index;
   }
 
   private static FactorTable getFactorTable(double[] weights, double wScale, int[][] weightIndices, int[][] data,
-      List<Index<CRFLabel>> labelIndices, int numClasses) {
+      List<Index<CRFLabel>> labelIndices, int numClasses, DecodingWorkspace workspace) {
 
-    FactorTable factorTable = null;
+    // the table for the largest clique, which the smaller ones are built up in
+    FactorTable factorTable = new FactorTable(numClasses, labelIndices.size());
 
     for (int j = 0, sz = labelIndices.size(); j < sz; j++) {
       Index<CRFLabel> labelIndex = labelIndices.get(j);
-      FactorTable ft = new FactorTable(numClasses, j + 1);
+      double[] potentials = cliquePotentials(workspace, numClasses, j + 1);
 
       // ... and each possible labeling for that clique
       for (int k = 0, liSize = labelIndex.size(); k < liSize; k++) {
@@ -627,22 +684,9 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
           int wi = weightIndices[data[j][m]][k];
           weight += wScale * weights[wi];
         }
-        // try{
-        ft.setValue(label, weight);
-        // } catch (Exception e) {
-        // System.out.println("CRFCliqueTree::getFactorTable");
-        // System.out.println("NumClasses: " + numClasses + " j+1: " + (j+1));
-        // System.out.println("k: " + k+" label: " +label+" labelIndexSize: " +
-        // labelIndex.size());
-        // throw new RunTimeException(e.toString());
-        // }
-
-      }
-      if (j > 0) {
-        ft.multiplyInEnd(factorTable);
+        potentials[indexOf(label, numClasses)] = weight;
       }
-      factorTable = ft;
-
+      factorTable.multiplyInEndOfClique(potentials, j + 1);
     }
 
     return factorTable;
@@ -654,12 +698,13 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
   // }
 
   static FactorTable getFactorTable(int[][] data, List<Index<CRFLabel>> labelIndices, int numClasses,
-      CliquePotentialFunction cliquePotentialFunc, double[][] featureValByCliqueSize, int posInSent) {
-    FactorTable factorTable = null;
+      CliquePotentialFunction cliquePotentialFunc, double[][] featureValByCliqueSize, int posInSent, DecodingWorkspace workspace) {
+    // the table for the largest clique, which the smaller ones are built up in
+    FactorTable factorTable = new FactorTable(numClasses, labelIndices.size());
 
     for (int j = 0, sz = labelIndices.size(); j < sz; j++) {
       Index<CRFLabel> labelIndex = labelIndices.get(j);
-      FactorTable ft = new FactorTable(numClasses, j + 1);
+      double[] potentials = cliquePotentials(workspace, numClasses, j + 1);
       double[] featureVal = null;
       if (featureValByCliqueSize != null)
         featureVal = featureValByCliqueSize[j];
@@ -668,25 +713,9 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
       for (int k = 0, liSize = labelIndex.size(); k < liSize; k++) {
         int[] label = labelIndex.get(k).getLabel();
         double cliquePotential = cliquePotentialFunc.computeCliquePotential(j+1, k, data[j], featureVal, posInSent);
-        // for (int m = 0; m < data[j].length; m++) {
-        //   weight += weights[data[j][m]][k];
-        // }
-        // try{
-        ft.setValue(label, cliquePotential);
-        // } catch (Exception e) {
-        // System.out.println("CRFCliqueTree::getFactorTable");
-        // System.out.println("NumClasses: " + numClasses + " j+1: " + (j+1));
-        // System.out.println("k: " + k+" label: " +label+" labelIndexSize: " +
-        // labelIndex.size());
-        // throw new RunTimeException(e.toString());
-        // }
-
+        potentials[indexOf(label, numClasses)] = cliquePotential;
       }
-      if (j > 0) {
-        ft.multiplyInEnd(factorTable);
-      }
-      factorTable = ft;
-
+      factorTable.multiplyInEndOfClique(potentials, j + 1);
     }
 
     return factorTable;
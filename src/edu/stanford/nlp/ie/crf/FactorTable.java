@@ -284,6 +284,27 @@ public class FactorTable {
     return result;
   }
 
+  /**
+   * Computes the probability of each of the tags OF being at the end of the
+   * table given that the previous tag sequence in table is
+   * given[from, from + windowSize - 1), into result.  This is the same as
+   * calling {@link #conditionalLogProbGivenPrevious(int[], int)} for each
+   * tag, but only sums the normalizer once, and needs no copy of the
+   * previous tags.
+   */
+  public void conditionalLogProbsGivenPrevious(int[] given, int from, int[] of, double[] result) {
+    int startIndex = 0;
+    for (int i = from, end = from + windowSize - 1; i < end; i++) {
+      startIndex *= numClasses;
+      startIndex += given[i];
+    }
+    startIndex *= numClasses;
+    double z = ArrayMath.logSum(table, startIndex, startIndex + numClasses);
+    for (int i = 0; i < of.length; i++) {
+      result[i] = table[startIndex + of[i]] - z;
+    }
+  }
+
   /**
    * Computes the probability of the sequence OF being at the end of the table
    * given that the first tag in table is GIVEN. given is at the beginning, of is
@@ -398,8 +419,8 @@ public class FactorTable {
   }
 
   public double unnormalizedLogProbEnd(int label) {
-    int[] labels = { label };
-    return unnormalizedLogProbEnd(labels);
+    // the entries ending in label are every numClasses'th one, starting at label
+    return ArrayMath.logSum(table, label, table.length, numClasses);
   }
 
   public double logProbEnd(int label) {
@@ -482,6 +503,61 @@ public class FactorTable {
     return ft;
   }
 
+  // The following versions of the above work on messages kept in a flat
+  // array, from offset on, rather than in FactorTables of their own.  They
+  // let the clique tree calibrate itself without allocating the messages.
+
+  /** As {@link #sumOutFront()}, into into[offset, offset + size() / numClasses). */
+  void sumOutFront(double[] into, int offset) {
+    int stride = table.length / numClasses;
+    for (int i = 0; i < stride; i++) {
+      into[offset + i] = ArrayMath.logSum(table, i, table.length, stride);
+    }
+  }
+
+  /** As {@link #sumOutEnd()}, into into[offset, offset + size() / numClasses). */
+  void sumOutEnd(double[] into, int offset) {
+    for (int i = 0, sz = table.length / numClasses; i < sz; i++) {
+      into[offset + i] = ArrayMath.logSum(table, i * numClasses, (i+1) * numClasses);
+    }
+  }
+
+  /** As {@link #multiplyInFront(FactorTable)} with a table one smaller than this one. */
+  void multiplyInFront(double[] other, int offset) {
+    for (int i = 0; i < table.length; i++) {
+      table[i] += other[offset + i / numClasses];
+    }
+  }
+
+  /** As {@link #multiplyInEnd(FactorTable)} with a table one smaller than this one. */
+  void multiplyInEnd(double[] other, int offset) {
+    int divisor = table.length / numClasses;
+    for (int i = 0; i < table.length; i++) {
+      table[i] += other[offset + i % divisor];
+    }
+  }
+
+  /**
+   * Builds this table up one clique size at a time, in place.  Given the
+   * potentials of the cliques of the last cliqueSize positions, it sets the
+   * entries for those cliques to the potential plus the entry for the
+   * clique one smaller, which is what multiplying the table of the smaller
+   * clique into a new table for the larger one with
+   * {@link #multiplyInEnd(FactorTable)} gives.  The entries are done from
+   * the last, so that each still reads the smaller clique's entries.
+   */
+  void multiplyInEndOfClique(double[] potentials, int cliqueSize) {
+    int size = SloppyMath.intPow(numClasses, cliqueSize);
+    if (cliqueSize == 1) {
+      System.arraycopy(potentials, 0, table, 0, size);
+    } else {
+      int divisor = size / numClasses;
+      for (int i = size - 1; i >= 0; i--) {
+        table[i] = potentials[i] + table[i % divisor];
+      }
+    }
+  }
+
   public void divideBy(FactorTable other) {
     for (int i = 0; i < table.length; i++) {
       if (table[i] != Double.NEGATIVE_INFINITY || other.table[i] != Double.NEGATIVE_INFINITY) {
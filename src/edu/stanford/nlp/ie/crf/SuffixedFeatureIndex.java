@@ -0,0 +1,132 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.MappedStringIndex;
+
+/**
+ * A read-only view of a feature index which finds the feature
+ * <i>base</i><code>|</code><i>suffix</i> from its two parts, without
+ * concatenating them.  Feature factories build thousands of such names
+ * per token, each only to be looked up once, so building and hashing the
+ * full names is a large part of the cost of classifying with a
+ * {@link CRFClassifier}.
+ * <br>
+ * This works because {@link String#hashCode()} is a polynomial in the
+ * characters of the string, so the hash code of the full name is
+ * {@code base.hashCode() * 31^(suffix length + 1) + hash("|" + suffix)},
+ * where the second part is computed once per suffix.
+ * <br>
+ * A {@link MappedStringIndex} already stores such a table of hash codes,
+ * and is probed directly.  For any other index (a HashIndex, whose HashMap
+ * can only be searched with a whole key) the view builds its own table
+ * of the feature numbers and their hash codes: two int arrays of a power
+ * of two between 2 and 4 times the number of features, so 16 to 32 bytes
+ * per feature, or 16 to 32 MB for a million features, next to the index.
+ * A candidate is compared to the two parts in place.
+ * <br>
+ * The view is built from the index as it is at construction, and does
+ * not see features added later.  It is thread safe.
+ */
+class SuffixedFeatureIndex {
+
+  private final Index<String> featureIndex;
+  private final int size;
+
+  /** the index itself, if it is a mapped one; then the table below is not built */
+  private final MappedStringIndex mappedIndex;
+  /** open addressing table of feature index + 1, 0 for an empty slot */
+  private final int[] slots;
+  /** the hash code of the feature in each slot */
+  private final int[] hashes;
+  private final int mask;
+
+  private final ConcurrentHashMap<String, Suffix> suffixes = new ConcurrentHashMap<>();
+
+  /** A feature name suffix, with the values needed to extend the hash code of a base name */
+  static class Suffix {
+    /** "|" + the suffix, or "" */
+    final String text;
+    /** 31 to the power of the length of text */
+    final int multiplier;
+    final int hash;
+
+    Suffix(String suffix) {
+      text = suffix.isEmpty() ? "" : '|' + suffix;
+      int m = 1;
+      for (int i = 0; i < text.length(); ++i) {
+        m *= 31;
+      }
+      multiplier = m;
+      hash = text.hashCode();
+    }
+  }
+
+  SuffixedFeatureIndex(Index<String> featureIndex) {
+    this.featureIndex = featureIndex;
+    this.size = featureIndex.size();
+    if (featureIndex instanceof MappedStringIndex) {
+      mappedIndex = (MappedStringIndex) featureIndex;
+      slots = null;
+      hashes = null;
+      mask = 0;
+      return;
+    }
+    mappedIndex = null;
+    int tableSize = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+    slots = new int[tableSize];
+    hashes = new int[tableSize];
+    mask = tableSize - 1;
+    for (int i = 0; i < size; ++i) {
+      int hash = featureIndex.get(i).hashCode();
+      int slot = spread(hash) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i + 1;
+      hashes[slot] = hash;
+    }
+  }
+
+  /** Whether this view still describes the given index */
+  boolean isViewOf(Index<String> index) {
+    return index == featureIndex && index.size() == size;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * The suffix with the given name, as passed to
+   * {@link edu.stanford.nlp.sequences.FeatureFactory#getCliqueFeatures(edu.stanford.nlp.util.PaddedList, int, edu.stanford.nlp.sequences.Clique, java.util.function.BiConsumer)};
+   * the empty string for full feature names.
+   */
+  Suffix suffix(String suffix) {
+    return suffixes.computeIfAbsent(suffix, Suffix::new);
+  }
+
+  /** The index of the feature base + suffix, or -1 if it is not a known feature */
+  int indexOf(String base, Suffix suffix) {
+    int hash = base.hashCode() * suffix.multiplier + suffix.hash;
+    if (mappedIndex != null) {
+      return mappedIndex.indexOf(base, suffix.text, hash);
+    }
+    int length = base.length() + suffix.text.length();
+    int slot = spread(hash) & mask;
+    int entry;
+    while ((entry = slots[slot]) != 0) {
+      if (hashes[slot] == hash) {
+        String name = featureIndex.get(entry - 1);
+        if (name.length() == length && name.startsWith(base) && name.endsWith(suffix.text)) {
+          return entry - 1;
+        }
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+}
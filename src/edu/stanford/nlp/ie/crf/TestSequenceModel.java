@@ -97,14 +97,9 @@ public class TestSequenceModel implements SequenceModel {
   public double[] scoresOf(int[] tags, int pos) {
     int[] allowedTags = getPossibleValues(pos);
     int realPos = pos - window + 1;
-    int[] previous = new int[window - 1];
-    for (int i = 0; i < window - 1; i++) {
-      previous[i] = tags[realPos + i];
-    }
+    // the previous window - 1 tags are tags[realPos, pos)
     double[] scores = new double[allowedTags.length];
-    for (int i = 0; i < allowedTags.length; i++) {
-      scores[i] = cliqueTree.condLogProbGivenPrevious(realPos, allowedTags[i], previous);
-    }
+    cliqueTree.condLogProbsGivenPrevious(realPos, tags, realPos, allowedTags, scores);
     return scores;
   }
 
@@ -9,7 +9,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Properties;
 
@@ -22,6 +24,8 @@ import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.tokensregex.matcher.AhoCorasickAutomaton;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.sequences.DocumentReaderAndWriter;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
@@ -54,8 +58,10 @@ import edu.stanford.nlp.util.Generics;
  * already been tokenized.  So, for example, with our usual English tokenization, things like genitives
  * and commas at the end of words will be separated in the input and matched as a separate token.
  *
- * This class isn't implemented very efficiently, since every regex is evaluated at every token position.
- * So it can and does get quite slow if you have a lot of patterns in your NER rules.
+ * Entries whose regexes are all plain words (letters and digits) are found together, in one pass over the
+ * document, by an {@link AhoCorasickAutomaton}, and only tried where they occur.  But every other regex is
+ * evaluated at every token position, so it can and does get quite slow if you have a lot of those in your
+ * NER rules.
  * {@code TokensRegex} is a more general framework to provide the functionality of this class.
  * But at present we still use this class.
  *
@@ -66,6 +72,11 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   private final List<Entry> entries;
 
+  /** The indices of the entries which are plain words, by their (case folded) words; null if there are none */
+  private final AhoCorasickAutomaton<String,int[]> literalMatcher;
+  /** The indices of the other entries */
+  private final int[] regexEntries;
+
   private final Set<String> myLabels;
 
   private final boolean ignoreCase;
@@ -116,6 +127,9 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
 
     this.ignoreCase = ignoreCase;
+    Map<List<String>,int[]> literals = new LinkedHashMap<List<String>,int[]>();
+    regexEntries = splitLiteralEntries(entries, ignoreCase, literals);
+    literalMatcher = literals.isEmpty() ? null : new AhoCorasickAutomaton<String,int[]>(literals);
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -158,6 +172,9 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
 
     this.ignoreCase = ignoreCase;
+    Map<List<String>,int[]> literals = new LinkedHashMap<List<String>,int[]>();
+    regexEntries = splitLiteralEntries(entries, ignoreCase, literals);
+    literalMatcher = literals.isEmpty() ? null : new AhoCorasickAutomaton<String,int[]>(literals);
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -207,6 +224,88 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
   }
 
+  /**
+   * Finds the entries whose regexes are all exact words, and puts them in literals
+   * under their words.
+   *
+   * @return the indices of the other entries
+   */
+  private static int[] splitLiteralEntries(List<Entry> entries, boolean ignoreCase, Map<List<String>,int[]> literals) {
+    List<Integer> regexEntries = new ArrayList<Integer>();
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.exact.contains(null)) {
+        regexEntries.add(i);
+        continue;
+      }
+      List<String> key = new ArrayList<String>(entry.exact.size());
+      for (String word : entry.exact) {
+        key.add(ignoreCase ? foldCase(word) : word);
+      }
+      int[] indices = literals.get(key);
+      if (indices == null) {
+        indices = new int[] { i };
+      } else {
+        indices = Arrays.copyOf(indices, indices.length + 1);
+        indices[indices.length - 1] = i;
+      }
+      literals.put(key, indices);
+    }
+    int[] result = new int[regexEntries.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = regexEntries.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Lowercases the ASCII letters of a word. A word matches an exact
+   * (ASCII alphanumeric) entry ignoring case if they are equal after this,
+   * as a case insensitive Pattern only folds the case of ASCII letters.
+   */
+  private static String foldCase(String word) {
+    if (word == null) {
+      return null;
+    }
+    char[] chars = word.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      if (chars[i] >= 'A' && chars[i] <= 'Z') {
+        chars[i] += 'a' - 'A';
+      }
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Finds where the entries which are exact words occur in the document.
+   *
+   * @return for each occurrence, the index of the entry in the high 32 bits and its
+   *   start in the low 32 bits, sorted
+   */
+  private long[] findLiterals(List<CoreLabel> document) {
+    if (literalMatcher == null) {
+      return new long[0];
+    }
+    List<String> words = new ArrayList<String>(document.size());
+    for (CoreLabel token : document) {
+      words.add(ignoreCase ? foldCase(token.word()) : token.word());
+    }
+    List<Match<String,int[]>> matches = literalMatcher.findAllMatches(words);
+    int numFound = 0;
+    for (Match<String,int[]> m : matches) {
+      numFound += m.getValue().length;
+    }
+    long[] found = new long[numFound];
+    numFound = 0;
+    for (Match<String,int[]> m : matches) {
+      for (int index : m.getValue()) {
+        found[numFound++] = ((long) index << 32) | m.getBegin();
+      }
+    }
+    Arrays.sort(found);
+    return found;
+  }
+
   private boolean containsValidPos(List<CoreLabel> tokens, int start, int end) {
     if (validPosPattern == null) {
       return true;
@@ -225,30 +324,49 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   @Override
   public List<CoreLabel> classify(List<CoreLabel> document) {
-    // This is pretty deathly slow. It loops over each entry, and then loops over each document token for it.
-    // We could gain by compiling into disjunctions patterns for the same class with the same priorities and restrictions?
-    for (Entry entry : entries) {
-      int start = 0; // the index of the token from which we begin our search each iteration
-      while (true) {
-        // only search the part of the document that we haven't yet considered
-        // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
-        start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
-        if (start < 0) break; // no match found
-
-        // make sure we annotate only valid POS tags
-        if (containsValidPos(document, start, start + entry.regex.size())) {
-          // annotate each matching token
-          for (int i = start; i < start + entry.regex.size(); i++) {
-            CoreLabel token = document.get(i);
-            token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
+    // Entries are applied in order, since each only labels tokens which earlier ones have not.
+    // Entries which are exact words are only tried where the literal matcher found them;
+    // the others loop over each document token, which is pretty deathly slow.
+    long[] found = findLiterals(document);
+    int f = 0;
+    int r = 0;
+    while (f < found.length || r < regexEntries.length) {
+      int foundEntry = (f < found.length) ? (int) (found[f] >>> 32) : Integer.MAX_VALUE;
+      if (r < regexEntries.length && regexEntries[r] < foundEntry) {
+        Entry entry = entries.get(regexEntries[r++]);
+        int start = 0; // the index of the token from which we begin our search each iteration
+        while (true) {
+          // only search the part of the document that we haven't yet considered
+          // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
+          start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
+          if (start < 0) break; // no match found
+          annotate(entry, document, start);
+          start++;
+        }
+      } else {
+        Entry entry = entries.get(foundEntry);
+        for (; f < found.length && (int) (found[f] >>> 32) == foundEntry; f++) {
+          int start = (int) found[f];
+          if (matchesAt(entry, document, start, myLabels, this.ignoreCase)) {
+            annotate(entry, document, start);
           }
         }
-        start++;
       }
     }
     return document;
   }
 
+  private void annotate(Entry entry, List<CoreLabel> document, int start) {
+    // make sure we annotate only valid POS tags
+    if (containsValidPos(document, start, start + entry.regex.size())) {
+      // annotate each matching token
+      for (int i = start; i < start + entry.regex.size(); i++) {
+        CoreLabel token = document.get(i);
+        token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
+      }
+    }
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping file, and sorts them by
    *  first by priority, then the number of tokens in the regex.
@@ -313,29 +431,10 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
    */
   private static int findStartIndex(Entry entry, List<CoreLabel> document, int searchStart, Set<String> myLabels, boolean ignoreCase) {
     List<Pattern> regex = entry.regex;
-    int rSize = regex.size();
-    // System.err.println("REGEX FIND MATCH FOR " + regex.toString() + " length: " + rSize);
+    // System.err.println("REGEX FIND MATCH FOR " + regex.toString() + " length: " + regex.size());
 
     for (int start = searchStart, end = document.size() - regex.size(); start <= end; start++) {
-      boolean failed = false;
-      for (int i = 0; i < rSize; i++) {
-        Pattern pattern = regex.get(i);
-        String exact = entry.exact.get(i);
-        CoreLabel token = document.get(start + i);
-        String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
-
-        if (
-            currentType != null ||
-            (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
-            ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
-            ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
-            ) {
-          failed = true;
-          break;
-        }
-      }
-      if (! failed) {
+      if (matchesAt(entry, document, start, myLabels, ignoreCase)) {
         // System.err.print("MATCHED REGEX:");
         // for(int i = start; i < start + regex.size(); i ++) System.err.print(" " + document.get(i).word());
         // System.err.println();
@@ -345,6 +444,32 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     return -1;
   }
 
+  /**
+   * Checks if the entry's regex sequence matches the tokens from start, and
+   * that each of them can be labeled, as in {@link #findStartIndex}.
+   */
+  private static boolean matchesAt(Entry entry, List<CoreLabel> document, int start, Set<String> myLabels, boolean ignoreCase) {
+    List<Pattern> regex = entry.regex;
+    int rSize = regex.size();
+    for (int i = 0; i < rSize; i++) {
+      Pattern pattern = regex.get(i);
+      String exact = entry.exact.get(i);
+      CoreLabel token = document.get(start + i);
+      String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
+
+      if (
+          currentType != null ||
+          (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
+          ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
+          ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
+          ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 
   @Override
   public List<CoreLabel> classifyWithGlobalInformation(List<CoreLabel> tokenSeq, final CoreMap doc, final CoreMap sent) {
@@ -20,6 +20,9 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
   //       (so we can have more flexible matches)
   private final List<Pair<K, NodePattern>> annotationPatterns;
   private final BiFunction<M,K, Object> getter;
+  // Where the results of the annotation patterns may be shared with other node patterns (null if they are not)
+  private SharedNodePatterns sharedPatterns;
+  private int[] sharedIndices;
 
 
   public ComplexNodePattern(BiFunction<M,K, Object> getter, List<Pair<K, NodePattern>> annotationPatterns) {
@@ -40,6 +43,20 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
     return Collections.unmodifiableList(annotationPatterns);
   }
 
+  BiFunction<M,K, Object> getter() {
+    return getter;
+  }
+
+  /**
+   * Shares the results of the annotation patterns with other node patterns.
+   * @param sharedPatterns Where the results are kept
+   * @param sharedIndices The index of each annotation pattern in sharedPatterns
+   */
+  void share(SharedNodePatterns sharedPatterns, int[] sharedIndices) {
+    this.sharedPatterns = sharedPatterns;
+    this.sharedIndices = sharedIndices;
+  }
+
   // TODO: make this a pattern of non special characters: [,],?,.,\,^,$,(,),*,+ ... what else?
   private static final Pattern LITERAL_PATTERN = Pattern.compile("[A-Za-z0-9_\\-']*");
   public static NodePattern<String> newStringRegexPattern(String regex, int flags) {
@@ -140,6 +157,11 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
   @Override
   public boolean match(M token)
   {
+    long[] shared = (sharedPatterns != null && sharedIndices.length == annotationPatterns.size()) ?
+        sharedPatterns.resultsFor(token) : null;
+    if (shared != null) {
+      return matchShared(token, shared);
+    }
     boolean matched = true;
     for (Pair<K,NodePattern> entry:annotationPatterns) {
       NodePattern annoPattern = entry.second;
@@ -152,6 +174,23 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
     return matched;
   }
 
+  // Does matching, reading and recording the results of the annotation patterns in shared
+  private boolean matchShared(M token, long[] shared)
+  {
+    for (int i = 0; i < sharedIndices.length; i++) {
+      Boolean matched = SharedNodePatterns.get(shared, sharedIndices[i]);
+      if (matched == null) {
+        Pair<K,NodePattern> entry = annotationPatterns.get(i);
+        matched = entry.second.match(getter.apply(token, entry.first));
+        SharedNodePatterns.set(shared, sharedIndices[i], matched);
+      }
+      if (!matched) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public Object matchWithResult(M token) {
     Map<K,Object> matchResults = new HashMap<K, Object>();//Generics.newHashMap();
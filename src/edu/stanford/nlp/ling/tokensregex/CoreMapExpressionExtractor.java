@@ -37,6 +37,17 @@ import java.util.logging.Logger;
  * The different stages are numbered and are applied in numeric order.
  * </p>
  *
+ * <p>If the environment variable <code>shareNodePatterns</code> is true, identical annotation
+ * patterns in the token patterns of the rules (such as <code>word:/[0-9]+/</code>) are numbered
+ * together when the rules are added (see {@link SharedNodePatterns}).  Then while the rules of a
+ * stage are matched, each is tested once per token, rather than once per rule using it.
+ * </p>
+ *
+ * <p>If the environment variable <code>prefilter</code> is true, a quick test made from the rules
+ * (see {@link ExtractRulePrefilter}) first checks whether any of them may match a <code>CoreMap</code>,
+ * and if none can, nothing is extracted from it without going through the stages.
+ * </p>
+ *
  * @author Angel Chang
  * @see SequenceMatchRules
  */
@@ -50,6 +61,10 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
   private boolean keepTags = false;
   /* Collapses extraction rules - use with care */
   private boolean collapseExtractionRules = false;
+  /* Shares the results of identical annotation patterns between rules (null if not) */
+  private SharedNodePatterns sharedNodePatterns;
+  /* Skips the CoreMaps none of the rules can match (null if not) */
+  private ExtractRulePrefilter prefilter;
   private final Class tokensAnnotationKey;
   private final Map<Integer, Stage<T>> stages;
 
@@ -137,6 +152,12 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     this.collapseExtractionRules = false;
     if (env != null) {
       this.collapseExtractionRules = Objects.equals((Boolean) env.get("collapseExtractionRules"), true);
+      if (Objects.equals((Boolean) env.get("shareNodePatterns"), true)) {
+        this.sharedNodePatterns = new SharedNodePatterns();
+      }
+      if (Objects.equals((Boolean) env.get("prefilter"), true)) {
+        this.prefilter = new ExtractRulePrefilter(tokensAnnotationKey);
+      }
     }
   }
 
@@ -183,6 +204,12 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
           }
         }
         if (aer.active) {
+          if (sharedNodePatterns != null) {
+            shareNodePatterns(aer);
+          }
+          if (prefilter != null) {
+            prefilter.add(aer);
+          }
           if (SequenceMatchRules.FILTER_RULE_TYPE.equals(aer.ruleType)) {
             stage.addFilterRule(aer);
           } else {
@@ -200,6 +227,31 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     }
   }
 
+  private void shareNodePatterns(SequenceMatchRules.AnnotationExtractRule rule) {
+    if (rule.pattern instanceof SequencePattern) {
+      sharedNodePatterns.add((SequencePattern<?>) rule.pattern);
+    } else if (rule.pattern instanceof MultiPatternMatcher) {
+      for (SequencePattern<?> pattern : ((MultiPatternMatcher<?>) rule.pattern).patterns) {
+        sharedNodePatterns.add(pattern);
+      }
+    }
+  }
+
+  /**
+   * Applies an extraction rule, sharing the results of annotation patterns
+   * between its token patterns if they are shared.
+   */
+  private <I> boolean extract(SequenceMatchRules.ExtractRule<I, T> rule, I in, List<T> out) {
+    boolean begun = (sharedNodePatterns != null) && sharedNodePatterns.begin();
+    try {
+      return rule.extract(in, out);
+    } finally {
+      if (begun) {
+        sharedNodePatterns.end();
+      }
+    }
+  }
+
   private SequenceMatchRules.AnnotationExtractRule createMergedRule(SequenceMatchRules.AnnotationExtractRule aerTemplate, List<TokenSequencePattern> patterns) {
     return SequenceMatchRules.createMultiTokenPatternRule(env, aerTemplate, patterns);
   }
@@ -262,6 +314,16 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     stage.filterRule = filterRule;
     this.stages.clear();
     this.stages.put(1, stage);
+    // Rules given directly can't be analyzed
+    this.prefilter = null;
+  }
+
+  /**
+   * Returns the test which skips the CoreMaps none of the rules can match,
+   * or null if there is none.
+   */
+  public ExtractRulePrefilter getPrefilter() {
+    return prefilter;
   }
 
   /**
@@ -437,7 +499,7 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     int iters = 0;
     while (!done) {
       List<T> newExprs = new ArrayList<T>();
-      boolean extracted = compositeExtractRule.extract(merged, newExprs);
+      boolean extracted = extract(compositeExtractRule, merged, newExprs);
       if (extracted) {
         annotateExpressions(merged, newExprs);
         newExprs = MatchedExpression.removeNullValues(newExprs);
@@ -479,6 +541,12 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
   {
     // Extract potential expressions
     List<T> matchedExpressions = new ArrayList<T>();
+    if (prefilter != null && !prefilter.test(annotation)) {
+      if (!keepTags) {
+        cleanupTags(annotation);
+      }
+      return matchedExpressions;
+    }
     List<Integer> stageIds = new ArrayList<Integer>(stages.keySet());
     Collections.sort(stageIds);
     for (int stageId:stageIds) {
@@ -488,7 +556,7 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
         matchedExpressions.clear();
       }
       if (basicExtractRule != null) {
-        basicExtractRule.extract(annotation, matchedExpressions);
+        extract(basicExtractRule, annotation, matchedExpressions);
         annotateExpressions(annotation, matchedExpressions);
         matchedExpressions = MatchedExpression.removeNullValues(matchedExpressions);
         matchedExpressions = MatchedExpression.removeNested(matchedExpressions);
@@ -0,0 +1,428 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * A quick test of whether any of the extraction rules of a
+ * {@link CoreMapExpressionExtractor} may extract something from a CoreMap,
+ * so that the CoreMaps from which nothing can be extracted are skipped.
+ * <br>
+ * The token patterns of the rules over each tokens annotation (including
+ * the composite rules, over the tokens the extractor starts from) are joined
+ * into one {@link SequencePatternAutomaton}, which looks for a position from
+ * which any of them may match in a single pass over the tokens.  Node patterns
+ * comparing a string annotation to a fixed set of strings (such as
+ * {@code /years?|yrs?/}) are not tested one by one, but looked up in an index
+ * of those strings.  The regular expressions of the rules over text are
+ * searched for in the text.
+ * <br>
+ * If the test fails none of the rules can match, so no stage extracts
+ * anything; if it passes the rules may still not match.  If there are rules
+ * which can't be analyzed (such as patterns with back references, or custom
+ * extraction rules), every CoreMap passes.
+ */
+public class ExtractRulePrefilter {
+
+  /** The most strings a node pattern is expanded to for the index */
+  private static final int MAX_STRINGS = 1024;
+
+  /** The tokens annotation the composite rules match over */
+  private final Class compositeTokensKey;
+  private final List<Pair<Class,Pattern>> textPatterns = new ArrayList<Pair<Class,Pattern>>();
+  private final Map<Class,List<SequencePattern<CoreMap>>> tokenPatterns = new LinkedHashMap<Class,List<SequencePattern<CoreMap>>>();
+  private boolean passAll = false;
+  /** Automata made from tokenPatterns, by tokens annotation (null until needed) */
+  private volatile Map<Class,TokensFilter> tokensFilters;
+
+  private final AtomicLong numTested = new AtomicLong();
+  private final AtomicLong numSkipped = new AtomicLong();
+
+  /**
+   * @param compositeTokensKey The tokens annotation the composite rules are
+   *   matched over (the tokens annotation key of the extractor)
+   */
+  public ExtractRulePrefilter(Class compositeTokensKey) {
+    this.compositeTokensKey = compositeTokensKey;
+  }
+
+  /** Adds an active extraction rule. */
+  public synchronized void add(SequenceMatchRules.AnnotationExtractRule rule) {
+    if (SequenceMatchRules.FILTER_RULE_TYPE.equals(rule.ruleType)) {
+      // only removes expressions
+      return;
+    }
+    if (rule.isComposite) {
+      addTokensRule(compositeTokensKey, rule.extractRule);
+    } else if (rule.extractRule instanceof SequenceMatchRules.CoreMapExtractRule) {
+      SequenceMatchRules.CoreMapExtractRule<?,?> r = (SequenceMatchRules.CoreMapExtractRule<?,?>) rule.extractRule;
+      if (r.extractRule instanceof SequenceMatchRules.StringPatternExtractRule) {
+        textPatterns.add(Pair.makePair(r.annotationField, ((SequenceMatchRules.StringPatternExtractRule<?>) r.extractRule).pattern));
+      } else {
+        addTokensRule(r.annotationField, r.extractRule);
+      }
+    } else {
+      passAll = true;
+    }
+    tokensFilters = null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void addTokensRule(Class tokensKey, SequenceMatchRules.ExtractRule<?,?> rule) {
+    List<SequencePattern<CoreMap>> patterns = tokenPatterns.get(tokensKey);
+    if (patterns == null) {
+      tokenPatterns.put(tokensKey, patterns = new ArrayList<SequencePattern<CoreMap>>());
+    }
+    if (rule instanceof SequenceMatchRules.SequencePatternExtractRule) {
+      patterns.add(((SequenceMatchRules.SequencePatternExtractRule<CoreMap,?>) rule).pattern);
+    } else if (rule instanceof SequenceMatchRules.MultiSequencePatternExtractRule) {
+      patterns.addAll(((SequenceMatchRules.MultiSequencePatternExtractRule<CoreMap,?>) rule).matcher.patterns);
+    } else {
+      passAll = true;
+    }
+  }
+
+  /** Returns true if every CoreMap passes, because some rule can't be analyzed */
+  public boolean passesAll() {
+    if (!passAll) {
+      getTokensFilters();
+    }
+    return passAll;
+  }
+
+  private Map<Class,TokensFilter> getTokensFilters() {
+    Map<Class,TokensFilter> filters = tokensFilters;
+    if (filters == null) {
+      synchronized (this) {
+        filters = tokensFilters;
+        if (filters == null) {
+          filters = new LinkedHashMap<Class,TokensFilter>();
+          for (Map.Entry<Class,List<SequencePattern<CoreMap>>> entry : tokenPatterns.entrySet()) {
+            List<SequencePatternAutomaton<CoreMap>> automata = new ArrayList<SequencePatternAutomaton<CoreMap>>();
+            for (SequencePattern<CoreMap> pattern : entry.getValue()) {
+              SequencePatternAutomaton<CoreMap> automaton = pattern.buildAutomaton();
+              if (automaton == null || automaton.matchesEmpty()) {
+                passAll = true;
+              } else {
+                automata.add(automaton);
+              }
+            }
+            filters.put(entry.getKey(), new TokensFilter(SequencePatternAutomaton.union(automata)));
+          }
+          tokensFilters = filters;
+        }
+      }
+    }
+    return filters;
+  }
+
+  /**
+   * Tests a CoreMap.
+   *
+   * @return false if none of the rules can extract anything from it
+   */
+  public boolean test(CoreMap cm) {
+    numTested.incrementAndGet();
+    if (mayMatch(cm)) {
+      return true;
+    }
+    numSkipped.incrementAndGet();
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean mayMatch(CoreMap cm) {
+    Map<Class,TokensFilter> filters = getTokensFilters();
+    if (passAll) {
+      return true;
+    }
+    for (Pair<Class,Pattern> p : textPatterns) {
+      Object text = cm.get(p.first());
+      if (text != null && (!(text instanceof String) || p.second().matcher((String) text).find())) {
+        return true;
+      }
+    }
+    for (Map.Entry<Class,TokensFilter> entry : filters.entrySet()) {
+      Object tokens = cm.get(entry.getKey());
+      if (tokens != null && (!(tokens instanceof List) || entry.getValue().mayMatch((List<? extends CoreMap>) tokens))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The number of CoreMaps tested */
+  public long getNumTested() {
+    return numTested.get();
+  }
+
+  /** The number of CoreMaps tested which failed, and so were skipped */
+  public long getNumSkipped() {
+    return numSkipped.get();
+  }
+
+  /** The node patterns of an automaton over the same annotation which compare it to fixed strings */
+  private static class StringIndex {
+    final BiFunction<CoreMap,Object,Object> getter;
+    final Object key;
+    /** The node patterns indexed, by their index in the automaton */
+    final List<Integer> predicates = new ArrayList<Integer>();
+    /** The node patterns matching each string, and each string with its case folded (see {@link #foldCase}) */
+    final Map<String,List<Integer>> exact = new HashMap<String,List<Integer>>();
+    final Map<String,List<Integer>> folded = new HashMap<String,List<Integer>>();
+
+    StringIndex(BiFunction<CoreMap,Object,Object> getter, Object key) {
+      this.getter = getter;
+      this.key = key;
+    }
+
+    void add(int predicate, Collection<String> strings, boolean ignoreCase) {
+      predicates.add(predicate);
+      for (String str : strings) {
+        Map<String,List<Integer>> index = ignoreCase ? folded : exact;
+        String k = ignoreCase ? foldCase(str) : str;
+        List<Integer> matching = index.get(k);
+        if (matching == null) {
+          index.put(k, matching = new ArrayList<Integer>(1));
+        }
+        matching.add(predicate);
+      }
+    }
+  }
+
+  private static class TokensFilter {
+    final SequencePatternAutomaton<CoreMap> automaton;
+    final List<StringIndex> indices = new ArrayList<StringIndex>();
+
+    @SuppressWarnings("unchecked")
+    TokensFilter(SequencePatternAutomaton<CoreMap> automaton) {
+      this.automaton = automaton;
+      Map<List<Object>,StringIndex> byAnnotation = new LinkedHashMap<List<Object>,StringIndex>();
+      for (int p = 0; p < automaton.numPredicates(); p++) {
+        if (!(automaton.getPredicate(p) instanceof ComplexNodePattern)) {
+          continue;
+        }
+        ComplexNodePattern<CoreMap,Object> pattern = (ComplexNodePattern<CoreMap,Object>) automaton.getPredicate(p);
+        List<Pair<Object,NodePattern>> annotationPatterns = pattern.getAnnotationPatterns();
+        if (annotationPatterns.size() != 1) {
+          continue;
+        }
+        Pair<Object,NodePattern> entry = annotationPatterns.get(0);
+        NodePattern annotationPattern = entry.second();
+        Collection<String> strings = null;
+        boolean ignoreCase = false;
+        if (annotationPattern instanceof ComplexNodePattern.StringAnnotationPattern) {
+          ComplexNodePattern.StringAnnotationPattern sp = (ComplexNodePattern.StringAnnotationPattern) annotationPattern;
+          if (!sp.normalize()) {
+            strings = Collections.singleton(sp.target);
+            ignoreCase = sp.ignoreCase();
+          }
+        } else if (annotationPattern instanceof ComplexNodePattern.StringInSetAnnotationPattern) {
+          ComplexNodePattern.StringInSetAnnotationPattern sp = (ComplexNodePattern.StringInSetAnnotationPattern) annotationPattern;
+          if (!sp.normalize() && !sp.ignoreCase()) {
+            strings = sp.targets;
+          }
+        } else if (annotationPattern instanceof ComplexNodePattern.StringAnnotationRegexPattern) {
+          Pattern regex = ((ComplexNodePattern.StringAnnotationRegexPattern) annotationPattern).pattern;
+          int flags = regex.flags() & ~(Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+          if (flags == 0) {
+            strings = literalStrings(regex.pattern());
+          } else if (flags == Pattern.LITERAL) {
+            strings = Collections.singleton(regex.pattern());
+          }
+          ignoreCase = (regex.flags() & Pattern.CASE_INSENSITIVE) != 0;
+        }
+        if (strings != null) {
+          // node patterns from the same place share a getter class
+          List<Object> k = Arrays.asList(pattern.getter().getClass(), entry.first());
+          StringIndex index = byAnnotation.get(k);
+          if (index == null) {
+            byAnnotation.put(k, index = new StringIndex(pattern.getter(), entry.first()));
+          }
+          index.add(p, strings, ignoreCase);
+        }
+      }
+      indices.addAll(byAnnotation.values());
+    }
+
+    boolean mayMatch(List<? extends CoreMap> tokens) {
+      byte[] memo = automaton.newMemo(tokens.size());
+      for (int i = 0; i < tokens.size(); i++) {
+        CoreMap token = tokens.get(i);
+        if (token == null) {
+          continue;
+        }
+        for (StringIndex index : indices) {
+          Object value = index.getter.apply(token, index.key);
+          if (value != null && !(value instanceof String)) {
+            // left to the node patterns
+            continue;
+          }
+          for (int p : index.predicates) {
+            automaton.setResult(memo, i, p, false);
+          }
+          if (value != null) {
+            setMatched(memo, i, index.exact.get(value));
+            if (!index.folded.isEmpty()) {
+              setMatched(memo, i, index.folded.get(foldCase((String) value)));
+            }
+          }
+        }
+      }
+      return automaton.canMatchFrom(tokens, 0, tokens.size(), memo);
+    }
+
+    private void setMatched(byte[] memo, int i, List<Integer> predicates) {
+      if (predicates != null) {
+        for (int p : predicates) {
+          automaton.setResult(memo, i, p, true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Folds the case of each character, so that strings which are equal
+   * ignoring case (as for {@link String#equalsIgnoreCase} or a case
+   * insensitive regex) are folded to the same string.
+   */
+  static String foldCase(String str) {
+    char[] chars = str.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Returns the strings matched by a regular expression made only of
+   * literal characters, groups, alternatives, sets of literal characters
+   * and optional parts (such as {@code (this|the) years?}), or null if it
+   * isn't one or matches too many strings.
+   */
+  static Set<String> literalStrings(String regex) {
+    for (int i = 0; i < regex.length(); i++) {
+      if (Character.isSurrogate(regex.charAt(i))) {
+        // which foldCase doesn't fold
+        return null;
+      }
+    }
+    int[] pos = { 0 };
+    Set<String> strings = literalAlternatives(regex, pos);
+    return (strings != null && pos[0] == regex.length()) ? strings : null;
+  }
+
+  private static Set<String> literalAlternatives(String regex, int[] pos) {
+    Set<String> strings = new LinkedHashSet<String>();
+    while (true) {
+      Set<String> seq = literalSequence(regex, pos);
+      if (seq == null) {
+        return null;
+      }
+      strings.addAll(seq);
+      if (strings.size() > MAX_STRINGS) {
+        return null;
+      }
+      if (pos[0] < regex.length() && regex.charAt(pos[0]) == '|') {
+        pos[0]++;
+      } else {
+        return strings;
+      }
+    }
+  }
+
+  private static Set<String> literalSequence(String regex, int[] pos) {
+    Set<String> strings = Collections.singleton("");
+    while (pos[0] < regex.length()) {
+      char c = regex.charAt(pos[0]);
+      Set<String> atom;
+      if (c == '|' || c == ')') {
+        break;
+      } else if (c == '(') {
+        pos[0]++;
+        if (regex.startsWith("?:", pos[0])) {
+          pos[0] += 2;
+        } else if (pos[0] < regex.length() && regex.charAt(pos[0]) == '?') {
+          return null;
+        }
+        atom = literalAlternatives(regex, pos);
+        if (atom == null || pos[0] >= regex.length() || regex.charAt(pos[0]) != ')') {
+          return null;
+        }
+        pos[0]++;
+      } else if (c == '[') {
+        atom = literalSet(regex, pos);
+        if (atom == null) {
+          return null;
+        }
+      } else if (c == '\\') {
+        if (pos[0] + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(pos[0] + 1))) {
+          return null;
+        }
+        atom = Collections.singleton(String.valueOf(regex.charAt(pos[0] + 1)));
+        pos[0] += 2;
+      } else if (".^$*+?{}]".indexOf(c) >= 0) {
+        return null;
+      } else {
+        atom = Collections.singleton(String.valueOf(c));
+        pos[0]++;
+      }
+      if (pos[0] < regex.length() && regex.charAt(pos[0]) == '?') {
+        pos[0]++;
+        // a reluctant or possessive ? matches the same strings
+        if (pos[0] < regex.length() && (regex.charAt(pos[0]) == '?' || regex.charAt(pos[0]) == '+')) {
+          pos[0]++;
+        }
+        atom = new LinkedHashSet<String>(atom);
+        atom.add("");
+      }
+      if (pos[0] < regex.length() && "*+{".indexOf(regex.charAt(pos[0])) >= 0) {
+        return null;
+      }
+      if ((long) strings.size() * atom.size() > MAX_STRINGS) {
+        return null;
+      }
+      Set<String> next = new LinkedHashSet<String>();
+      for (String prefix : strings) {
+        for (String suffix : atom) {
+          next.add(prefix + suffix);
+        }
+      }
+      strings = next;
+    }
+    return strings;
+  }
+
+  // A set of literal characters, such as [-/.]
+  private static Set<String> literalSet(String regex, int[] pos) {
+    Set<String> chars = new LinkedHashSet<String>();
+    int i = pos[0] + 1;
+    if (i < regex.length() && regex.charAt(i) == '^') {
+      return null;
+    }
+    for (; i < regex.length() && regex.charAt(i) != ']'; i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+          return null;
+        }
+        c = regex.charAt(++i);
+      } else if (c == '[' || c == '&' || (c == '-' && i > pos[0] + 1 && i + 1 < regex.length() && regex.charAt(i + 1) != ']')) {
+        // nested sets, intersections and ranges
+        return null;
+      }
+      chars.add(String.valueOf(c));
+    }
+    if (i >= regex.length() || chars.isEmpty()) {
+      return null;
+    }
+    pos[0] = i + 1;
+    return chars;
+  }
+
+}
@@ -69,6 +69,23 @@ public class MultiPatternMatcher<T> {
    */
   public List<SequenceMatchResult<T>> findNonOverlapping(List<? extends T> elements,
                                                          Comparator<? super SequenceMatchResult> cmp)
+  {
+    List<SequenceMatchResult<T>> all = findAllMatches(elements);
+    List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlapping( all, SequenceMatchResult.TO_INTERVAL, cmp);
+    Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
+
+    return res;
+  }
+
+  /**
+   * Given a sequence, applies each of our patterns over the sequence and returns
+   *   all their matches, before any overlapping matches of different patterns are
+   *   removed.  The order of each match is the index of its pattern among
+   *   the triggered patterns.
+   * @param elements input sequence to match against
+   * @return list of match results, grouped by pattern
+   */
+  public List<SequenceMatchResult<T>> findAllMatches(List<? extends T> elements)
   {
     Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
     List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
@@ -82,10 +99,7 @@ public class MultiPatternMatcher<T> {
       }
       i++;
     }
-    List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlapping( all, SequenceMatchResult.TO_INTERVAL, cmp);
-    Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
-
-    return res;
+    return all;
   }
 
   /**
@@ -142,18 +156,7 @@ public class MultiPatternMatcher<T> {
   public List<SequenceMatchResult<T>> findNonOverlappingMaxScore(List<? extends T> elements,
                                                                  Function<? super SequenceMatchResult, Double> scorer)
   {
-    Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
-    List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
-    int i = 0;
-    for (SequencePattern<T> p:triggered) {
-      SequenceMatcher<T> m = p.getMatcher(elements);
-      m.setMatchWithResult(matchWithResult);
-      m.setOrder(i);
-      while (m.find()) {
-        all.add(m.toBasicSequenceMatchResult());
-      }
-      i++;
-    }
+    List<SequenceMatchResult<T>> all = findAllMatches(elements);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlappingMaxScore( all, SequenceMatchResult.TO_INTERVAL, scorer);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -94,6 +94,9 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   // Branching limit for searching with back tracking. Higher value makes the search faster but uses more memory.
   int branchLimit = 2;
 
+  // Results of the node patterns of the pattern's automaton on the elements (if it has one)
+  byte[] automatonMemo;
+
   protected SequenceMatcher(SequencePattern<T> pattern, List<? extends T> elements)
   {
     this.pattern = pattern;
@@ -353,9 +356,12 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     matched = false;
     matchingCompleted = false;
     if (matchStart)  {
-      match = findMatchStart(start, false);
+      match = canMatchFrom(start) && findMatchStart(start, false);
     } else {
       for (int i = start; i < regionEnd; i++) {
+        if (!canMatchFrom(i)) {
+          continue;
+        }
         match = findMatchStart(i, false);
         if (match) {
           break;
@@ -372,6 +378,24 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     return match;
   }
 
+  /**
+   * Checks with the pattern's automaton, if it has one, whether a match
+   * could start at the given index.  Node patterns with results are not
+   * checked by the automaton, so it is not used for them.
+   *
+   * @return false if there can be no match from start
+   */
+  private boolean canMatchFrom(int start) {
+    SequencePatternAutomaton<T> automaton = pattern.getAutomaton();
+    if (automaton == null || matchWithResult) {
+      return true;
+    }
+    if (automatonMemo == null) {
+      automatonMemo = automaton.newMemo(elements.size());
+    }
+    return automaton.canMatchFrom(elements, start, regionEnd, automatonMemo);
+  }
+
   /**
    * Searches for pattern in the region starting
    *  at the next index
@@ -111,6 +111,9 @@ public class SequencePattern<T> implements Serializable {
   // Weight associated with the pattern
   double weight = 0.0;
 
+  // Compiled form used to skip positions where there can be no match (null if not used)
+  private transient SequencePatternAutomaton<T> automaton;
+
   protected SequencePattern(SequencePattern.PatternExpr nodeSequencePattern) {
     this(null, nodeSequencePattern);
   }
@@ -185,6 +188,172 @@ public class SequencePattern<T> implements Serializable {
     return totalGroups;
   }
 
+  /**
+   * Sets whether matchers of this pattern use a {@link SequencePatternAutomaton}
+   * to skip the positions from which the pattern cannot match, rather than
+   * trying the pattern from each one.  The matches found are the same.
+   * Patterns the automaton can't represent (those with back references)
+   * are always matched without it.
+   *
+   * @param useAutomaton Whether to use the automaton
+   * @return true if the automaton is used
+   */
+  public boolean setUseAutomaton(boolean useAutomaton) {
+    automaton = (useAutomaton) ? buildAutomaton() : null;
+    return automaton != null;
+  }
+
+  /** Returns the automaton used to skip positions where there can be no match, or null if there is none */
+  SequencePatternAutomaton<T> getAutomaton() {
+    return automaton;
+  }
+
+  /** Returns the node patterns of the NFA, including those of repeats */
+  Collection<NodePattern<T>> getNodePatterns() {
+    Set<NodePattern<T>> patterns = Collections.newSetFromMap(new IdentityHashMap<NodePattern<T>,Boolean>());
+    Set<State> seen = Collections.newSetFromMap(new IdentityHashMap<State,Boolean>());
+    Queue<State> todo = new LinkedList<State>();
+    todo.add(root);
+    seen.add(root);
+    while (!todo.isEmpty()) {
+      State state = todo.poll();
+      if (state instanceof NodePatternState) {
+        patterns.add(((NodePatternState) state).pattern);
+      }
+      for (State s : allSuccessors(state)) {
+        if (seen.add(s)) {
+          todo.add(s);
+        }
+      }
+    }
+    return patterns;
+  }
+
+  /**
+   * Lowers the NFA to one over node patterns alone, for a SequencePatternAutomaton.
+   * A multi-node pattern becomes a test of whether it matches from a node,
+   * followed by any number of any nodes, and a conjunction becomes its first
+   * pattern, so that the automaton may match more than the NFA, but not less.
+   *
+   * @return null if the NFA has back references
+   */
+  @SuppressWarnings("unchecked")
+  SequencePatternAutomaton<T> buildAutomaton() {
+    // Number the states which consume nodes, and the distinct node patterns
+    Map<State,Integer> nodeStates = new IdentityHashMap<State,Integer>();
+    // The states for the nodes after the first matched by a multi-node pattern
+    Map<State,Integer> multiNodeRestStates = new IdentityHashMap<State,Integer>();
+    List<NodePattern<T>> predicates = new ArrayList<NodePattern<T>>();
+    Map<Object,Integer> predicateIndices = new IdentityHashMap<Object,Integer>();
+    List<Integer> statePredicates = new ArrayList<Integer>();
+    Set<State> seen = Collections.newSetFromMap(new IdentityHashMap<State,Boolean>());
+    Queue<State> todo = new LinkedList<State>();
+    todo.add(root);
+    seen.add(root);
+    while (!todo.isEmpty()) {
+      State state = todo.poll();
+      if (state instanceof BackRefState) {
+        return null;
+      }
+      if (state instanceof NodePatternState) {
+        nodeStates.put(state, statePredicates.size());
+        statePredicates.add(predicateIndex(((NodePatternState) state).pattern, predicates, predicateIndices));
+      } else if (state instanceof MultiNodePatternState) {
+        MultiNodePattern<T> pattern = ((MultiNodePatternState) state).pattern;
+        Integer index = predicateIndices.get(pattern);
+        if (index == null) {
+          index = predicates.size();
+          predicates.add(new SequencePatternAutomaton.MultiNodeStart<T>(pattern));
+          predicateIndices.put(pattern, index);
+        }
+        nodeStates.put(state, statePredicates.size());
+        statePredicates.add(index);
+        multiNodeRestStates.put(state, statePredicates.size());
+        statePredicates.add(predicateIndex(NodePattern.ANY_NODE, predicates, predicateIndices));
+      }
+      for (State s : automatonSuccessors(state)) {
+        if (seen.add(s)) {
+          todo.add(s);
+        }
+      }
+    }
+
+    int numStates = statePredicates.size();
+    BitSet start = new BitSet();
+    automatonClosure(root, nodeStates, numStates, start, Collections.newSetFromMap(new IdentityHashMap<State,Boolean>()));
+    BitSet[] follow = new BitSet[numStates];
+    int[] predicateOfState = new int[numStates];
+    for (int s = 0; s < numStates; s++) {
+      predicateOfState[s] = statePredicates.get(s);
+    }
+    for (Map.Entry<State,Integer> entry : nodeStates.entrySet()) {
+      BitSet next = new BitSet();
+      Set<State> visited = Collections.newSetFromMap(new IdentityHashMap<State,Boolean>());
+      for (State s : automatonSuccessors(entry.getKey())) {
+        automatonClosure(s, nodeStates, numStates, next, visited);
+      }
+      follow[entry.getValue()] = next;
+      Integer rest = multiNodeRestStates.get(entry.getKey());
+      if (rest != null) {
+        // the multi-node pattern may go on matching any nodes
+        next.set(rest);
+        follow[rest] = next;
+      }
+    }
+    return new SequencePatternAutomaton<T>(predicates.toArray(new NodePattern[predicates.size()]),
+        predicateOfState, start, follow);
+  }
+
+  private static <T> int predicateIndex(NodePattern<T> pattern, List<NodePattern<T>> predicates, Map<Object,Integer> predicateIndices) {
+    Integer index = predicateIndices.get(pattern);
+    if (index == null) {
+      index = predicates.size();
+      predicates.add(pattern);
+      predicateIndices.put(pattern, index);
+    }
+    return index;
+  }
+
+  // Returns the successors of a state in the automaton: only the first pattern of a conjunction
+  private static Collection<State> automatonSuccessors(State state) {
+    if (state instanceof ConjStartState && state.next != null && !state.next.isEmpty()) {
+      return Collections.singletonList(state.next.iterator().next());
+    }
+    return allSuccessors(state);
+  }
+
+  // Returns the next states, and for a repeat the start of the repeated pattern (ignoring the counts)
+  private static Collection<State> allSuccessors(State state) {
+    List<State> successors = new ArrayList<State>();
+    if (state instanceof RepeatState) {
+      successors.add(((RepeatState) state).repeatStart);
+    }
+    if (state.next != null) {
+      successors.addAll(state.next);
+    }
+    return successors;
+  }
+
+  /**
+   * Adds the states consuming nodes reached from a state without consuming a
+   * node to out, with bit numStates for the final state.
+   */
+  private static void automatonClosure(State state, Map<State,Integer> nodeStates, int numStates, BitSet out, Set<State> visited) {
+    if (!visited.add(state)) {
+      return;
+    }
+    if (state instanceof MatchState) {
+      out.set(numStates);
+    } else if (nodeStates.containsKey(state)) {
+      out.set(nodeStates.get(state));
+    } else {
+      // Groups, values, repeats, conjunctions, and the start and end of the sequence (which are not checked)
+      for (State s : automatonSuccessors(state)) {
+        automatonClosure(s, nodeStates, numStates, out, visited);
+      }
+    }
+  }
+
   // Compiles string (regex) to NFA for doing pattern simulation
   public static <T> SequencePattern<T> compile(Env env, String string)
   {
@@ -0,0 +1,298 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compiled form of a {@link SequencePattern}, used by its matchers to skip
+ * the positions where no match can start.
+ * <br>
+ * The NFA of the pattern is lowered to one whose only states are its
+ * {@link NodePattern}s: groups, values and the start and end of the
+ * sequence are dropped, and repeats with counts become plain loops.  Its
+ * language is therefore a superset of the pattern's, so if it can't match
+ * from a position neither can the pattern, and where it can the usual
+ * matcher still finds the match and its groups.
+ * <br>
+ * The automaton is determinized lazily: each set of NFA states is made into
+ * a DFA state when first reached, and its transitions are cached under the
+ * results of the node patterns it tests.  The results of node patterns on
+ * each element are remembered (see {@link #newMemo}), since they are asked
+ * for again for each start position tried.  DFA states are shared by all
+ * the matchers of a pattern, so it is safe to use from several threads.
+ * <br>
+ * Multi-node patterns are tested from the first element they would match,
+ * after which any elements are accepted, and only the first pattern of a
+ * conjunction is kept.  Patterns with back references are not compiled, as
+ * what they match depends on the elements matched before.
+ * <br>
+ * The automata of several patterns can be joined into one which searches
+ * for a position from which any of them may match (see {@link #union}).
+ *
+ * @param <T> Type of the elements matched
+ */
+public class SequencePatternAutomaton<T> {
+
+  /** The most DFA states kept; those found after that are made again each time they are reached */
+  private static final int MAX_DFA_STATES = 10000;
+
+  private static final byte UNKNOWN = 0;
+  private static final byte MATCHED = 1;
+  private static final byte NOT_MATCHED = 2;
+
+  /** The distinct node patterns */
+  private final NodePattern<T>[] predicates;
+  /** The index of the node pattern of each NFA state */
+  private final int[] statePredicates;
+  /** The NFA states reached after each NFA state matches; bit numStates means a match is complete */
+  private final BitSet[] follow;
+  private final int numStates;
+  /** The NFA states at the start */
+  private final BitSet startStates;
+  /** Whether matches may start at any element, so that the start states are always active */
+  private final boolean searching;
+
+  private final DFAState start;
+  private final ConcurrentMap<BitSet,DFAState> dfaStates = new ConcurrentHashMap<BitSet,DFAState>();
+
+  /** Tests whether a multi-node pattern matches from an element */
+  static class MultiNodeStart<T> extends NodePattern<T> {
+    private static final long serialVersionUID = 1L;
+
+    final MultiNodePattern<T> pattern;
+
+    MultiNodeStart(MultiNodePattern<T> pattern) {
+      this.pattern = pattern;
+    }
+
+    boolean matchFrom(List<? extends T> elements, int i) {
+      Collection<?> matched = pattern.match(elements, i);
+      return matched != null && !matched.isEmpty();
+    }
+
+    /** Can't tell from a single node, so true */
+    @Override
+    public boolean match(T node) {
+      return true;
+    }
+
+    public String toString() {
+      return pattern.toString();
+    }
+  }
+
+  private class DFAState {
+    /** The NFA states, each waiting for its node pattern to match */
+    final int[] states;
+    /** The distinct node patterns tested by them */
+    final int[] predicates;
+    final boolean accepting;
+    /** Next states, under the bits of which of the predicates matched; null if there are too many predicates for a long */
+    final ConcurrentMap<Long,DFAState> transitions;
+
+    DFAState(BitSet set) {
+      accepting = set.get(numStates);
+      states = new int[set.cardinality() - (accepting ? 1 : 0)];
+      BitSet tested = new BitSet();
+      int n = 0;
+      for (int s = set.nextSetBit(0); s >= 0 && s < numStates; s = set.nextSetBit(s + 1)) {
+        states[n++] = s;
+        tested.set(statePredicates[s]);
+      }
+      predicates = new int[tested.cardinality()];
+      n = 0;
+      for (int p = tested.nextSetBit(0); p >= 0; p = tested.nextSetBit(p + 1)) {
+        predicates[n++] = p;
+      }
+      transitions = (predicates.length <= Long.SIZE) ? new ConcurrentHashMap<Long,DFAState>() : null;
+    }
+  }
+
+  /**
+   * Makes an automaton from an NFA over node patterns.
+   *
+   * @param predicates The distinct node patterns
+   * @param statePredicates The index of the node pattern of each NFA state
+   * @param start The NFA states at the start; bit statePredicates.length means the empty sequence matches
+   * @param follow The NFA states reached after each NFA state matches an element, similarly
+   */
+  SequencePatternAutomaton(NodePattern<T>[] predicates, int[] statePredicates, BitSet start, BitSet[] follow) {
+    this(predicates, statePredicates, start, follow, false);
+  }
+
+  private SequencePatternAutomaton(NodePattern<T>[] predicates, int[] statePredicates, BitSet start, BitSet[] follow,
+                                   boolean searching) {
+    this.predicates = predicates;
+    this.statePredicates = statePredicates;
+    this.follow = follow;
+    this.numStates = statePredicates.length;
+    this.startStates = start;
+    this.searching = searching;
+    this.start = intern(start);
+  }
+
+  /**
+   * Joins automata into one which matches what any of them matches, and
+   * where a match may start at any element: {@link #canMatchFrom} then
+   * tells whether any of them may match from the given position or a
+   * later one, in a single pass over the elements.
+   *
+   * @param automata Automata to join
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> SequencePatternAutomaton<T> union(Collection<SequencePatternAutomaton<T>> automata) {
+    List<NodePattern<T>> predicates = new ArrayList<NodePattern<T>>();
+    Map<NodePattern<T>,Integer> predicateIndices = new IdentityHashMap<NodePattern<T>,Integer>();
+    int numStates = 0;
+    for (SequencePatternAutomaton<T> automaton : automata) {
+      numStates += automaton.numStates;
+    }
+    int[] statePredicates = new int[numStates];
+    BitSet[] follow = new BitSet[numStates];
+    BitSet start = new BitSet();
+    int offset = 0;
+    for (SequencePatternAutomaton<T> automaton : automata) {
+      for (int s = 0; s < automaton.numStates; s++) {
+        NodePattern<T> pattern = automaton.predicates[automaton.statePredicates[s]];
+        Integer index = predicateIndices.get(pattern);
+        if (index == null) {
+          index = predicates.size();
+          predicates.add(pattern);
+          predicateIndices.put(pattern, index);
+        }
+        statePredicates[offset + s] = index;
+        follow[offset + s] = automaton.renumber(automaton.follow[s], offset, numStates);
+      }
+      start.or(automaton.renumber(automaton.startStates, offset, numStates));
+      offset += automaton.numStates;
+    }
+    return new SequencePatternAutomaton<T>(predicates.toArray(new NodePattern[predicates.size()]),
+        statePredicates, start, follow, true);
+  }
+
+  // Moves the NFA states of a set to start at offset, and its final state to numStates
+  private BitSet renumber(BitSet set, int offset, int numStates) {
+    BitSet renumbered = new BitSet();
+    for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+      renumbered.set((s == this.numStates) ? numStates : offset + s);
+    }
+    return renumbered;
+  }
+
+  private DFAState intern(BitSet set) {
+    DFAState state = dfaStates.get(set);
+    if (state == null) {
+      state = new DFAState(set);
+      if (dfaStates.size() < MAX_DFA_STATES) {
+        DFAState old = dfaStates.putIfAbsent(set, state);
+        if (old != null) {
+          state = old;
+        }
+      }
+    }
+    return state;
+  }
+
+  /** The number of distinct node patterns */
+  public int numPredicates() {
+    return predicates.length;
+  }
+
+  /** Returns a distinct node pattern, by its index in the memo */
+  NodePattern<T> getPredicate(int predicate) {
+    return predicates[predicate];
+  }
+
+  /** The number of DFA states made so far */
+  public int numDFAStates() {
+    return dfaStates.size();
+  }
+
+  /** True if the pattern may match an empty sequence */
+  public boolean matchesEmpty() {
+    return start.accepting;
+  }
+
+  /**
+   * Makes space to remember the results of the node patterns on a sequence.
+   *
+   * @param size Length of the sequence
+   */
+  public byte[] newMemo(int size) {
+    return new byte[size * predicates.length];
+  }
+
+  /** Records the result of a node pattern on an element in a memo, so that it won't be tested */
+  void setResult(byte[] memo, int i, int predicate, boolean matched) {
+    memo[i * predicates.length + predicate] = matched ? MATCHED : NOT_MATCHED;
+  }
+
+  private boolean matches(int predicate, List<? extends T> elements, int i, byte[] memo) {
+    int m = i * predicates.length + predicate;
+    byte result = memo[m];
+    if (result == UNKNOWN) {
+      T node = elements.get(i);
+      NodePattern<T> p = predicates[predicate];
+      boolean matched = (p instanceof MultiNodeStart) ? ((MultiNodeStart<T>) p).matchFrom(elements, i)
+          : (node != null && p.match(node));
+      result = matched ? MATCHED : NOT_MATCHED;
+      memo[m] = result;
+    }
+    return result == MATCHED;
+  }
+
+  private DFAState next(DFAState state, List<? extends T> elements, int i, byte[] memo) {
+    if (state.transitions == null) {
+      return intern(follow(state, elements, i, memo));
+    }
+    long key = 0;
+    for (int p = 0; p < state.predicates.length; p++) {
+      if (matches(state.predicates[p], elements, i, memo)) {
+        key |= 1L << p;
+      }
+    }
+    DFAState next = state.transitions.get(key);
+    if (next == null) {
+      next = intern(follow(state, elements, i, memo));
+      state.transitions.put(key, next);
+    }
+    return next;
+  }
+
+  private BitSet follow(DFAState state, List<? extends T> elements, int i, byte[] memo) {
+    BitSet next = new BitSet();
+    for (int s : state.states) {
+      if (matches(statePredicates[s], elements, i, memo)) {
+        next.or(follow[s]);
+      }
+    }
+    if (searching) {
+      next.or(startStates);
+    }
+    return next;
+  }
+
+  /**
+   * Checks if the pattern could match elements starting at the given
+   * position (or for an automaton from {@link #union}, at that position or
+   * a later one), without going past the given end.
+   *
+   * @param elements Sequence to match
+   * @param start Index at which the match would start
+   * @param end Index past the last element which may be matched
+   * @param memo Results of the node patterns so far, from {@link #newMemo}
+   * @return false if there is certainly no match from start
+   */
+  public boolean canMatchFrom(List<? extends T> elements, int start, int end, byte[] memo) {
+    DFAState state = this.start;
+    for (int i = start; !state.accepting; i++) {
+      if (i >= end || state.states.length == 0) {
+        return false;
+      }
+      state = next(state, elements, i, memo);
+    }
+    return true;
+  }
+
+}
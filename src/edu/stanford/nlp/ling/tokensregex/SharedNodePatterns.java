@@ -0,0 +1,176 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+
+/**
+ * Shares the results of identical annotation patterns (such as
+ * {@code word:/[0-9]+/} or {@code tag:NN}) between all the token
+ * patterns of a set of rules, so that each is tested once per token
+ * rather than once per rule.
+ * <br>
+ * The annotation patterns of each {@link ComplexNodePattern} added are
+ * numbered, with identical patterns over the same annotation getting the
+ * same number.  While an evaluation is active on a thread (between
+ * {@link #begin} and {@link #end}), matching a token records the result of
+ * each numbered pattern in a bitset kept for that token, which the other
+ * node patterns then read.  Outside of evaluations, node patterns match as
+ * usual.
+ * <br>
+ * The results are only valid as long as the tokens don't change, so an
+ * evaluation should cover the matching of the rules over some tokens, and
+ * not the actions which may modify them.
+ */
+public class SharedNodePatterns {
+
+  /** The number of each distinct annotation pattern */
+  private final Map<Object,Integer> indices = new HashMap<Object,Integer>();
+  /** The result bitsets of the tokens matched in the current evaluation, by token */
+  private final ThreadLocal<Map<Object,long[]>> results = new ThreadLocal<Map<Object,long[]>>();
+
+  /** The number of distinct annotation patterns */
+  public int size() {
+    return indices.size();
+  }
+
+  /** Shares the annotation patterns of the node patterns of a sequence pattern. */
+  public void add(SequencePattern<?> pattern) {
+    for (NodePattern<?> p : pattern.getNodePatterns()) {
+      add(p);
+    }
+  }
+
+  /** Shares the annotation patterns of a node pattern (and of those it is built from). */
+  public void add(NodePattern<?> pattern) {
+    if (pattern instanceof ComplexNodePattern) {
+      ComplexNodePattern<?,?> p = (ComplexNodePattern<?,?>) pattern;
+      List<? extends Pair<?, NodePattern>> annotationPatterns = p.getAnnotationPatterns();
+      int[] patternIndices = new int[annotationPatterns.size()];
+      for (int i = 0; i < patternIndices.length; i++) {
+        Pair<?, NodePattern> entry = annotationPatterns.get(i);
+        Object key = Arrays.asList(p.getter().getClass(), entry.first(), patternKey(entry.second()));
+        Integer index = indices.get(key);
+        if (index == null) {
+          index = indices.size();
+          indices.put(key, index);
+        }
+        patternIndices[i] = index;
+      }
+      p.share(this, patternIndices);
+    } else if (pattern instanceof NodePattern.NegateNodePattern) {
+      add(((NodePattern.NegateNodePattern<?>) pattern).p);
+    } else if (pattern instanceof NodePattern.ConjNodePattern) {
+      for (NodePattern<?> p : ((NodePattern.ConjNodePattern<?>) pattern).nodePatterns) {
+        add(p);
+      }
+    } else if (pattern instanceof NodePattern.DisjNodePattern) {
+      for (NodePattern<?> p : ((NodePattern.DisjNodePattern<?>) pattern).nodePatterns) {
+        add(p);
+      }
+    }
+  }
+
+  /**
+   * Returns an object equal to that of any other annotation pattern
+   * matching the same values.  Patterns of unknown types are only equal
+   * to themselves.
+   */
+  private static Object patternKey(NodePattern pattern) {
+    if (pattern instanceof ComplexNodePattern.StringAnnotationRegexPattern) {
+      java.util.regex.Pattern regex = ((ComplexNodePattern.StringAnnotationRegexPattern) pattern).pattern;
+      return Arrays.asList(pattern.getClass(), regex.pattern(), regex.flags());
+    } else if (pattern instanceof ComplexNodePattern.StringAnnotationPattern) {
+      ComplexNodePattern.StringAnnotationPattern p = (ComplexNodePattern.StringAnnotationPattern) pattern;
+      return Arrays.asList(pattern.getClass(), p.target, p.flags);
+    } else if (pattern instanceof ComplexNodePattern.StringInSetAnnotationPattern) {
+      ComplexNodePattern.StringInSetAnnotationPattern p = (ComplexNodePattern.StringInSetAnnotationPattern) pattern;
+      return Arrays.asList(pattern.getClass(), p.targets, p.flags);
+    } else if (pattern instanceof ComplexNodePattern.NumericAnnotationPattern) {
+      ComplexNodePattern.NumericAnnotationPattern p = (ComplexNodePattern.NumericAnnotationPattern) pattern;
+      return Arrays.asList(pattern.getClass(), p.cmpType, p.value);
+    } else if (pattern instanceof ComplexNodePattern.NilAnnotationPattern
+        || pattern instanceof ComplexNodePattern.NotNilAnnotationPattern) {
+      return pattern.getClass();
+    } else {
+      return new IdentityKey(pattern);
+    }
+  }
+
+  private static class IdentityKey {
+    private final Object obj;
+
+    private IdentityKey(Object obj) {
+      this.obj = obj;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof IdentityKey && ((IdentityKey) o).obj == obj;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(obj);
+    }
+  }
+
+  /**
+   * Starts an evaluation on this thread, unless one is already active.
+   *
+   * @return true if an evaluation was started, which should then be ended
+   */
+  public boolean begin() {
+    if (results.get() != null) {
+      return false;
+    }
+    results.set(new IdentityHashMap<Object,long[]>());
+    return true;
+  }
+
+  /** Ends the evaluation on this thread, forgetting its results. */
+  public void end() {
+    results.remove();
+  }
+
+  /**
+   * Returns the bitset of results of the current evaluation for a token,
+   * or null if there is no evaluation active.  Each annotation pattern has
+   * two bits: whether it has been tested, and whether it matched.
+   */
+  long[] resultsFor(Object token) {
+    Map<Object,long[]> tokenResults = results.get();
+    if (tokenResults == null) {
+      return null;
+    }
+    long[] bits = tokenResults.get(token);
+    if (bits == null) {
+      bits = new long[2 * ((indices.size() + 63) >> 6)];
+      tokenResults.put(token, bits);
+    }
+    return bits;
+  }
+
+  /** Returns the result of an annotation pattern from a token's results, or null if it is not known yet. */
+  static Boolean get(long[] bits, int index) {
+    int word = 2 * (index >> 6);
+    long mask = 1L << index;
+    if (word >= bits.length || (bits[word] & mask) == 0) {
+      return null;
+    }
+    return (bits[word + 1] & mask) != 0;
+  }
+
+  /** Records the result of an annotation pattern in a token's results. */
+  static void set(long[] bits, int index, boolean matched) {
+    int word = 2 * (index >> 6);
+    if (word < bits.length) {
+      long mask = 1L << index;
+      bits[word] |= mask;
+      if (matched) {
+        bits[word + 1] |= mask;
+      }
+    }
+  }
+
+}
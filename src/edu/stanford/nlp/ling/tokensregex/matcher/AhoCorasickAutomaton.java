@@ -0,0 +1,212 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * An Aho-Corasick automaton for finding all occurrences of a set of keys
+ * (sequences of elements, e.g. the tokens of gazetteer entries) in a
+ * sequence, in one pass over the sequence whatever the number of keys.
+ * <br>
+ * Unlike a {@link TrieMap}, the automaton is compiled into flat arrays and
+ * cannot be changed once built.  The elements of the keys are numbered, and
+ * the children of each state are kept sorted by element number, except for
+ * the children of the root, which are indexed directly.  It is
+ * {@link Serializable} (if the keys and values are), so an automaton over a
+ * large dictionary can be built once and loaded quickly afterwards.
+ * <br>
+ * Elements are compared with {@code equals}; to match ignoring case, say,
+ * normalize both the keys and the sequences searched.
+ *
+ * @param <K> Type of the elements of the keys
+ * @param <V> Type of the values
+ */
+public class AhoCorasickAutomaton<K,V> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The number of each element appearing in a key */
+  private final Map<K,Integer> symbols;
+  /** The child of the root for each element number, or -1 */
+  private final int[] rootChildren;
+  /** The children of state s are edgeTargets[firstEdge[s]] to edgeTargets[firstEdge[s+1]-1], sorted by edgeSymbols */
+  private final int[] firstEdge;
+  private final int[] edgeSymbols;
+  private final int[] edgeTargets;
+  /** For each state, the state for the longest proper suffix of its elements */
+  private final int[] failure;
+  /** For each state, the state for the longest proper suffix of its elements which is a key, or -1 */
+  private final int[] nextKey;
+  /** The number of elements of each state */
+  private final int[] depth;
+  /** For each state which is a key, the index of its value, otherwise -1 */
+  private final int[] valueIndex;
+  private final List<V> values;
+
+  /**
+   * Builds an automaton finding the given keys.
+   *
+   * @param keys Map from each key to its value.  A {@link TrieMap} will do.
+   */
+  public AhoCorasickAutomaton(Map<? extends Iterable<K>, ? extends V> keys) {
+    symbols = new HashMap<K, Integer>();
+    values = new ArrayList<V>(keys.size());
+    // the children of each state, keyed by the state and the element number
+    Map<Long,Integer> children = new HashMap<Long, Integer>();
+    int numStates = 1;
+    int[] depth = new int[16];
+    int[] valueIndex = new int[16];
+    valueIndex[0] = -1;
+    for (Map.Entry<? extends Iterable<K>, ? extends V> entry : keys.entrySet()) {
+      int state = 0;
+      for (K element : entry.getKey()) {
+        Integer symbol = symbols.get(element);
+        if (symbol == null) {
+          symbol = symbols.size();
+          symbols.put(element, symbol);
+        }
+        long edge = ((long) state << 32) | symbol;
+        Integer child = children.get(edge);
+        if (child == null) {
+          if (numStates == depth.length) {
+            depth = Arrays.copyOf(depth, numStates * 2);
+            valueIndex = Arrays.copyOf(valueIndex, numStates * 2);
+          }
+          child = numStates++;
+          depth[child] = depth[state] + 1;
+          valueIndex[child] = -1;
+          children.put(edge, child);
+        }
+        state = child;
+      }
+      if (state == 0) {
+        throw new IllegalArgumentException("Cannot match an empty key");
+      }
+      if (valueIndex[state] < 0) {
+        valueIndex[state] = values.size();
+        values.add(entry.getValue());
+      } else {
+        values.set(valueIndex[state], entry.getValue());
+      }
+    }
+    this.depth = Arrays.copyOf(depth, numStates);
+    this.valueIndex = Arrays.copyOf(valueIndex, numStates);
+
+    // lay out the children of each state together, sorted by element number
+    firstEdge = new int[numStates + 1];
+    for (long edge : children.keySet()) {
+      firstEdge[(int) (edge >>> 32) + 1]++;
+    }
+    for (int s = 0; s < numStates; s++) {
+      firstEdge[s + 1] += firstEdge[s];
+    }
+    long[] edges = new long[children.size()];
+    int[] fill = Arrays.copyOf(firstEdge, numStates);
+    for (Map.Entry<Long,Integer> entry : children.entrySet()) {
+      long edge = entry.getKey();
+      edges[fill[(int) (edge >>> 32)]++] = (edge << 32) | entry.getValue();
+    }
+    children = null;
+    edgeSymbols = new int[edges.length];
+    edgeTargets = new int[edges.length];
+    for (int s = 0; s < numStates; s++) {
+      Arrays.sort(edges, firstEdge[s], firstEdge[s + 1]);
+    }
+    for (int e = 0; e < edges.length; e++) {
+      edgeSymbols[e] = (int) (edges[e] >>> 32);
+      edgeTargets[e] = (int) edges[e];
+    }
+    rootChildren = new int[symbols.size()];
+    Arrays.fill(rootChildren, -1);
+    for (int e = firstEdge[0]; e < firstEdge[1]; e++) {
+      rootChildren[edgeSymbols[e]] = edgeTargets[e];
+    }
+
+    // failure links, breadth first so that those of shorter states are known
+    failure = new int[numStates];
+    nextKey = new int[numStates];
+    nextKey[0] = -1;
+    int[] queue = new int[numStates];
+    int head = 0;
+    int tail = 0;
+    for (int e = firstEdge[0]; e < firstEdge[1]; e++) {
+      int child = edgeTargets[e];
+      nextKey[child] = -1;
+      queue[tail++] = child;
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      for (int e = firstEdge[state]; e < firstEdge[state + 1]; e++) {
+        int child = edgeTargets[e];
+        int fail = step(failure[state], edgeSymbols[e]);
+        failure[child] = fail;
+        nextKey[child] = (this.valueIndex[fail] >= 0) ? fail : nextKey[fail];
+        queue[tail++] = child;
+      }
+    }
+  }
+
+  /** The number of keys */
+  public int size() {
+    return values.size();
+  }
+
+  private int child(int state, int symbol) {
+    if (state == 0) {
+      return rootChildren[symbol];
+    }
+    int lo = firstEdge[state];
+    int hi = firstEdge[state + 1] - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int midSymbol = edgeSymbols[mid];
+      if (midSymbol < symbol) {
+        lo = mid + 1;
+      } else if (midSymbol > symbol) {
+        hi = mid - 1;
+      } else {
+        return edgeTargets[mid];
+      }
+    }
+    return -1;
+  }
+
+  /** The state after the given state and then the element with the given number (-1 for one in no key) */
+  private int step(int state, int symbol) {
+    if (symbol < 0) {
+      return 0;
+    }
+    while (true) {
+      int child = child(state, symbol);
+      if (child >= 0) {
+        return child;
+      } else if (state == 0) {
+        return 0;
+      }
+      state = failure[state];
+    }
+  }
+
+  /**
+   * Finds all the occurrences of keys in a sequence, including
+   * overlapping ones.  Matches are ordered by their end, and then from
+   * the longest to the shortest.
+   *
+   * @param list Sequence to search
+   * @return List of matches
+   */
+  public List<Match<K,V>> findAllMatches(List<K> list) {
+    List<Match<K,V>> matches = new ArrayList<Match<K,V>>();
+    int state = 0;
+    for (int i = 0; i < list.size(); i++) {
+      Integer symbol = symbols.get(list.get(i));
+      state = step(state, (symbol != null) ? symbol : -1);
+      for (int s = (valueIndex[state] >= 0) ? state : nextKey[state]; s >= 0; s = nextKey[s]) {
+        int begin = i + 1 - depth[s];
+        matches.add(new Match<K,V>(list.subList(begin, i + 1), values.get(valueIndex[s]), begin, i + 1));
+      }
+    }
+    return matches;
+  }
+
+}
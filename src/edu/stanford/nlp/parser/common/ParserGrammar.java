@@ -18,6 +18,7 @@ import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreebankLanguagePack;
 import java.util.function.Function;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.ModelRegistry;
 import edu.stanford.nlp.util.ReflectionLoading;
 import edu.stanford.nlp.util.Timing;
 // TODO: it would be nice to move these to common, but that would
@@ -87,8 +88,14 @@ public abstract class ParserGrammar implements Function<List<? extends HasWord>,
     if (op.testOptions.preTag) {
       synchronized(this) { // TODO: rather coarse synchronization
         if (!op.testOptions.taggerSerializedFile.equals(taggerPath)) {
-          taggerPath = op.testOptions.taggerSerializedFile;
-          tagger = ReflectionLoading.loadByReflection("edu.stanford.nlp.tagger.maxent.MaxentTagger", taggerPath);
+          if (taggerPath != null) {
+            ModelRegistry.release(this, taggerPath, "");
+          }
+          String path = op.testOptions.taggerSerializedFile;
+          taggerPath = path;
+          // the same tagger is often used by the pos annotator, so share it
+          tagger = ModelRegistry.acquire(this, path, "",
+                                         () -> ReflectionLoading.loadByReflection("edu.stanford.nlp.tagger.maxent.MaxentTagger", path));
         }
         return tagger;
       }
@@ -69,4 +69,11 @@ public interface ParserQuery {
   boolean parseUnparsable();
 
   List<? extends HasWord> originalSentence();
+
+  /**
+   * Frees what the query holds on to for reading the results of its last
+   * parse, such as pooled parser charts.  None of those results may be
+   * read after this, but the query may parse again.
+   */
+  default void release() { }
 }
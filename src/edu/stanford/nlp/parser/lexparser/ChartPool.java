@@ -0,0 +1,186 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The charts of the exhaustive parsers of a thread, reused by the parser
+ * queries made on that thread.  Without it, every query grows its own
+ * charts to the longest sentence it has seen, and a service which makes
+ * a query per sentence allocates them over and over.
+ * <br>
+ * A parser borrows a chart the first time it parses, and owns it from then
+ * on: the results of its query are read lazily from the chart, so no other
+ * query may use it.  The chart comes back to the pool when the query is
+ * {@link edu.stanford.nlp.parser.common.ParserQuery#release() released},
+ * or else once the parser has been garbage collected.  The pool keeps at
+ * most one free chart per grammar, and only holds its grammars weakly.
+ * A chart grows to the longest sentence parsed with it.
+ * <br>
+ * The charts of a thread, lent or free, are kept within
+ * {@link TestOptions#chartMemoryBudget} megabytes: free charts are dropped
+ * when a chart needs room, and a sentence whose chart would still not fit
+ * fails with a {@link BudgetExceededError}, which the parser query reports
+ * as {@code parseNoMemory()}, rather than an OutOfMemoryError from the heap.
+ * Queries which are neither released nor collected keep their charts in
+ * the budget, so callers making many queries should release them.
+ */
+class ChartPool {
+
+  /** The storage of one chart; subclassed by each kind of parser */
+  abstract static class Chart {
+    /** The number of bytes the arrays of the chart take up */
+    long bytes = 0;
+    /** The pool the chart belongs to */
+    ChartPool pool;
+    /** The grammar the chart is for */
+    Object grammar;
+    /** The loan of the chart, while it is lent */
+    Loan loan;
+  }
+
+  /** Thrown when a chart would take the charts of a thread over budget */
+  static class BudgetExceededError extends OutOfMemoryError {
+    private static final long serialVersionUID = 1L;
+
+    BudgetExceededError(String message) {
+      super(message);
+    }
+  }
+
+  /** A chart lent to a parser, which is returned if the parser is collected without releasing it */
+  private static class Loan extends PhantomReference<Object> {
+    final Chart chart;
+
+    Loan(Object owner, Chart chart, ReferenceQueue<Object> queue) {
+      super(owner, queue);
+      this.chart = chart;
+    }
+  }
+
+  private static final ThreadLocal<ChartPool> pools = ThreadLocal.withInitial(ChartPool::new);
+
+  static ChartPool get() {
+    return pools.get();
+  }
+
+  /** The chart for each grammar which is not lent out */
+  private final Map<Object, Chart> free = new WeakHashMap<>();
+  /** The charts lent out, kept here so that their loans are enqueued */
+  private final Set<Loan> loans = Collections.newSetFromMap(new IdentityHashMap<>());
+  /** Where the loans of collected parsers turn up */
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+  /** The bytes taken up by all the charts of this pool, lent or free */
+  private long bytes = 0;
+
+  /**
+   * Lends a chart for a grammar to a parser, making one if there is no free
+   * chart for the grammar.  The chart is the parser's until it is
+   * {@link #release released} or the parser is garbage collected.
+   */
+  synchronized <T extends Chart> T borrow(Object owner, Object grammar, Supplier<T> factory) {
+    returnCollected();
+    @SuppressWarnings("unchecked")
+    T chart = (T) free.remove(grammar);
+    if (chart == null) {
+      chart = factory.get();
+      chart.pool = this;
+      chart.grammar = grammar;
+    }
+    chart.loan = new Loan(owner, chart, collected);
+    loans.add(chart.loan);
+    return chart;
+  }
+
+  /** Takes back a chart; its parser must not use it any more */
+  synchronized void release(Chart chart) {
+    Loan loan = chart.loan;
+    if (loan == null) {
+      return;
+    }
+    loan.clear();
+    giveBack(loan);
+  }
+
+  private void giveBack(Loan loan) {
+    loans.remove(loan);
+    Chart chart = loan.chart;
+    chart.loan = null;
+    Chart other = free.get(chart.grammar);
+    if (other != null && other.bytes >= chart.bytes) {
+      // keep the larger of the two
+      bytes -= chart.bytes;
+    } else {
+      if (other != null) {
+        bytes -= other.bytes;
+      }
+      free.put(chart.grammar, chart);
+    }
+  }
+
+  /** Takes back the charts of parsers which have been collected without releasing them */
+  private void returnCollected() {
+    for (Reference<?> ref; (ref = collected.poll()) != null; ) {
+      Loan loan = (Loan) ref;
+      if (loan.chart.loan == loan) {
+        giveBack(loan);
+      }
+    }
+  }
+
+  /** The bytes taken up by all the charts of this thread, lent or free */
+  synchronized long bytes() {
+    return bytes;
+  }
+
+  /** The number of charts lent out and not yet returned */
+  synchronized int lent() {
+    returnCollected();
+    return loans.size();
+  }
+
+  /** Records that the arrays of a chart now take up the given number of bytes */
+  synchronized void resize(Chart chart, long newBytes) {
+    bytes += newBytes - chart.bytes;
+    chart.bytes = newBytes;
+  }
+
+  /**
+   * Checks that the charts of this thread stay within budget if a chart
+   * grows to the given number of bytes, dropping free charts if need be.
+   *
+   * @param budgetMegabytes The budget; 0 or less for none
+   * @throws BudgetExceededError if they would not
+   */
+  synchronized void checkBudget(Chart chart, long newBytes, int budgetMegabytes) {
+    if (budgetMegabytes <= 0) {
+      return;
+    }
+    long budget = budgetMegabytes * 1024L * 1024L;
+    if (bytes - chart.bytes + newBytes > budget) {
+      returnCollected();
+      for (Iterator<Chart> it = free.values().iterator(); it.hasNext(); ) {
+        bytes -= it.next().bytes;
+        it.remove();
+      }
+    }
+    long total = bytes - chart.bytes + newBytes;
+    if (total > budget) {
+      throw new BudgetExceededError("Refusal to create such large arrays: " + (total >> 20) +
+                                    " MB of charts is over the budget of " + budgetMegabytes + " MB");
+    }
+  }
+
+  /** Estimates the bytes of a float, int or boolean array, with its header */
+  static long arrayBytes(long length, int elementBytes) {
+    return 16 + length * elementBytes;
+  }
+}
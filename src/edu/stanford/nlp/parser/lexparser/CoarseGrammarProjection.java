@@ -0,0 +1,126 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Map;
+
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Projects a grammar onto the basic categories of its states, for the
+ * coarse pass of coarse-to-fine parsing.  NP^S and NP^VP both become NP,
+ * and a binarized state such as "@NP| DT_JJ" becomes "@NP".  Tags are
+ * left as they are, so that the coarse grammar can be used with the
+ * lexicon of the fine one.
+ * <br>
+ * The score of a coarse rule is the best score of the fine rules which
+ * project onto it.  The Viterbi score of a coarse item is therefore never
+ * lower than that of any fine item which projects onto it.
+ *
+ * @see CoarseToFinePruner
+ */
+class CoarseGrammarProjection implements GrammarProjection {
+  private final BinaryGrammar sourceBG;
+  private final UnaryGrammar sourceUG;
+  private final BinaryGrammar targetBG;
+  private final UnaryGrammar targetUG;
+
+  private final Index<String> targetStateIndex;
+  private final int[] projection;
+
+  CoarseGrammarProjection(BinaryGrammar bg, UnaryGrammar ug, Index<String> stateIndex,
+                          Index<String> tagIndex, TreebankLanguagePack tlp) {
+    this.sourceBG = bg;
+    this.sourceUG = ug;
+
+    targetStateIndex = new HashIndex<String>();
+    targetStateIndex.addToIndex(tlp.startSymbol());
+    projection = new int[stateIndex.size()];
+    for (int state = 0; state < projection.length; state++) {
+      projection[state] = targetStateIndex.addToIndex(coarseState(stateIndex.get(state), tagIndex, tlp));
+    }
+
+    targetBG = new BinaryGrammar(targetStateIndex);
+    Map<BinaryRule, BinaryRule> binaryRules = Generics.newHashMap();
+    for (BinaryRule rule : bg) {
+      BinaryRule coarse = new BinaryRule(project(rule.parent), project(rule.leftChild), project(rule.rightChild), rule.score);
+      BinaryRule best = binaryRules.get(coarse);
+      if (best == null) {
+        binaryRules.put(coarse, coarse);
+        targetBG.addRule(coarse);
+      } else if (best.score < coarse.score) {
+        best.score = coarse.score;
+      }
+    }
+    targetBG.splitRules();
+
+    // the best score of each coarse unary rule is found before it is
+    // added, as adding it closes the grammar under it
+    Map<UnaryRule, UnaryRule> unaryRules = Generics.newHashMap();
+    for (UnaryRule rule : ug) {
+      UnaryRule coarse = new UnaryRule(project(rule.parent), project(rule.child), rule.score);
+      if (coarse.parent == coarse.child) {
+        continue;
+      }
+      UnaryRule best = unaryRules.get(coarse);
+      if (best == null) {
+        unaryRules.put(coarse, coarse);
+      } else if (best.score < coarse.score) {
+        best.score = coarse.score;
+      }
+    }
+    targetUG = new UnaryGrammar(targetStateIndex);
+    for (UnaryRule rule : unaryRules.keySet()) {
+      targetUG.addRule(rule);
+    }
+    targetUG.purgeRules();
+  }
+
+  private static String coarseState(String state, Index<String> tagIndex, TreebankLanguagePack tlp) {
+    if (tagIndex.contains(state)) {
+      return state;
+    }
+    String coarse;
+    if (state.startsWith("@")) {
+      coarse = '@' + tlp.basicCategory(state.substring(1));
+    } else {
+      coarse = tlp.basicCategory(state);
+    }
+    // a phrasal state mustn't end up being scored as a tag
+    if (coarse.isEmpty() || tagIndex.contains(coarse)) {
+      return state;
+    }
+    return coarse;
+  }
+
+  @Override
+  public int project(int state) {
+    return projection[state];
+  }
+
+  /** The states of the coarse grammar */
+  public Index<String> targetStateIndex() {
+    return targetStateIndex;
+  }
+
+  @Override
+  public UnaryGrammar sourceUG() {
+    return sourceUG;
+  }
+
+  @Override
+  public BinaryGrammar sourceBG() {
+    return sourceBG;
+  }
+
+  @Override
+  public UnaryGrammar targetUG() {
+    return targetUG;
+  }
+
+  @Override
+  public BinaryGrammar targetBG() {
+    return targetBG;
+  }
+}
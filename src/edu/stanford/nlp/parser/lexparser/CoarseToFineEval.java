@@ -0,0 +1,60 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+import edu.stanford.nlp.parser.KBestViterbiParser;
+import edu.stanford.nlp.parser.common.ParserQuery;
+import edu.stanford.nlp.parser.metrics.ParserQueryEval;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Adds up how much coarse-to-fine parsing pruned and how long its two
+ * passes took over a treebank.  Read alongside the pcfg LP/LR of the same
+ * run, this gives the speed and accuracy of a given
+ * {@link TestOptions#coarseToFineThreshold}.
+ */
+class CoarseToFineEval implements ParserQueryEval {
+  private final double threshold;
+
+  private int sentences = 0;
+  private int fallbacks = 0;
+  private long keptCells = 0;
+  private long totalCells = 0;
+  private long coarseNanos = 0;
+  private long fineNanos = 0;
+
+  CoarseToFineEval(double threshold) {
+    this.threshold = threshold;
+  }
+
+  @Override
+  public void evaluate(ParserQuery query, Tree gold, PrintWriter pw) {
+    KBestViterbiParser parser = query.getPCFGParser();
+    if ( ! (parser instanceof ExhaustivePCFGParser)) {
+      return;
+    }
+    CoarseToFinePruner pruner = ((ExhaustivePCFGParser) parser).getPruner();
+    if (pruner == null) {
+      return;
+    }
+    sentences++;
+    if (pruner.fellBack) {
+      fallbacks++;
+    }
+    keptCells += pruner.keptCells;
+    totalCells += pruner.totalCells;
+    coarseNanos += pruner.coarseNanos;
+    fineNanos += pruner.fineNanos;
+  }
+
+  @Override
+  public void display(boolean verbose, PrintWriter pw) {
+    NumberFormat nf = new DecimalFormat("0.00");
+    double kept = (totalCells == 0) ? 100.0 : 100.0 * keptCells / totalCells;
+    pw.println("Coarse-to-fine pruning (threshold " + threshold + ") over " + sentences + " sentences: kept " +
+               nf.format(kept) + "% of chart cells; coarse pass " + nf.format(coarseNanos / 1e9) +
+               " s, fine pass " + nf.format(fineNanos / 1e9) + " s; " + fallbacks + " parsed again unpruned");
+  }
+}
@@ -0,0 +1,153 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.List;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * The coarse pass of coarse-to-fine parsing.  The sentence is first
+ * parsed with a {@link CoarseGrammarProjection} of the grammar, computing
+ * both inside and outside Viterbi scores.  A span and coarse state whose
+ * best parse (inside plus outside score) is more than
+ * {@link TestOptions#coarseToFineThreshold} below the best coarse parse
+ * is pruned, and the fine parser then skips every state projecting onto
+ * it over that span.
+ * <br>
+ * Since the coarse scores are upper bounds on the fine ones, the pruning
+ * becomes exact as the threshold grows; a smaller threshold prunes more
+ * and is faster, at some cost in accuracy.  If the fine parser finds no
+ * parse in the pruned chart, it parses the sentence again without it.
+ * <br>
+ * A pruner also keeps the statistics of the last sentence it pruned, which
+ * {@link CoarseToFineEval} adds up over a treebank.
+ */
+class CoarseToFinePruner {
+
+  /** The coarse parser always needs its outside scores */
+  private static class CoarseParser extends ExhaustivePCFGParser {
+    CoarseParser(CoarseGrammarProjection projection, Lexicon lex, Options op, Index<String> wordIndex, Index<String> tagIndex) {
+      super(projection.targetBG(), projection.targetUG(), lex, op, projection.targetStateIndex(), wordIndex, tagIndex);
+    }
+
+    @Override
+    protected boolean computesOutsideScores() {
+      return true;
+    }
+  }
+
+  private final CoarseParser coarseParser;
+  private final int[] projection;
+  /** The number of fine states projecting onto each coarse state */
+  private final int[] numFineStates;
+  private final int numCoarseStates;
+  private final float threshold;
+
+  /** Which coarse states survive over each span */
+  private boolean[][][] kept;
+  private boolean[][] spanKept;
+  /** Reused by {@link #allowedStates}, per thread as the fine parser may fill cells in parallel */
+  private final ThreadLocal<boolean[]> allowed;
+
+  // statistics of the last sentence
+  long coarseNanos;
+  long fineNanos;
+  long keptCells;
+  long totalCells;
+  boolean fellBack;
+
+  CoarseToFinePruner(CoarseGrammarProjection projection, Lexicon lex, Options op, Index<String> stateIndex,
+                     Index<String> wordIndex, Index<String> tagIndex) {
+    this.coarseParser = new CoarseParser(projection, lex, op, wordIndex, tagIndex);
+    this.threshold = (float) op.testOptions.coarseToFineThreshold;
+    this.numCoarseStates = projection.targetStateIndex().size();
+    this.projection = new int[stateIndex.size()];
+    this.numFineStates = new int[numCoarseStates];
+    for (int state = 0; state < this.projection.length; state++) {
+      this.projection[state] = projection.project(state);
+      numFineStates[this.projection[state]]++;
+    }
+    int numStates = stateIndex.size();
+    this.allowed = ThreadLocal.withInitial(() -> new boolean[numStates]);
+  }
+
+  /**
+   * Parses the sentence with the coarse grammar and works out which cells
+   * of the chart to keep.
+   *
+   * @return false if the coarse grammar has no parse, in which case the
+   *     chart should not be pruned
+   */
+  boolean prune(List<? extends HasWord> sentence) {
+    long start = System.nanoTime();
+    fellBack = false;
+    fineNanos = 0;
+    keptCells = 0;
+    totalCells = 0;
+    boolean parsed = coarseParser.parse(sentence);
+    if (parsed) {
+      findKeptCells();
+    }
+    coarseNanos = System.nanoTime() - start;
+    return parsed;
+  }
+
+  private void findKeptCells() {
+    int length = coarseParser.length;
+    if (kept == null || kept.length < length) {
+      kept = new boolean[length][length + 1][];
+      spanKept = new boolean[length][length + 1];
+      for (int start = 0; start < length; start++) {
+        for (int end = start + 1; end <= length; end++) {
+          kept[start][end] = new boolean[numCoarseStates];
+        }
+      }
+    }
+
+    float cutoff = coarseParser.bestScore - threshold;
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        float[] iScore = coarseParser.iScore[start][end];
+        float[] oScore = coarseParser.oScore[start][end];
+        boolean[] keptStates = kept[start][end];
+        boolean anyKept = false;
+        for (int state = 0; state < numCoarseStates; state++) {
+          keptStates[state] = iScore[state] + oScore[state] >= cutoff;
+          if (keptStates[state]) {
+            anyKept = true;
+            if (end - start > 1) {
+              keptCells += numFineStates[state];
+            }
+          }
+        }
+        spanKept[start][end] = anyKept;
+        if (end - start > 1) {
+          totalCells += projection.length;
+        }
+      }
+    }
+  }
+
+  /**
+   * Which fine states the fine parser may build over a span.
+   *
+   * @return null if none at all; the array is reused by the next call
+   *     on the same thread
+   */
+  boolean[] allowedStates(int start, int end) {
+    if ( ! spanKept[start][end]) {
+      return null;
+    }
+    boolean[] allowed = this.allowed.get();
+    boolean[] keptStates = kept[start][end];
+    for (int state = 0; state < projection.length; state++) {
+      allowed[state] = keptStates[projection[state]];
+    }
+    return allowed;
+  }
+
+  /** The fraction of the fine chart cells kept for the last sentence */
+  double keptFraction() {
+    return (totalCells == 0) ? 1.0 : (double) keptCells / totalCells;
+  }
+}
@@ -626,6 +626,7 @@ public class EvaluateTreebank {
           ParserQuery pq = wrapper.poll();
           goldTree = goldTrees.poll();
           processResults(pq, goldTree, pwErr, pwOut, pwFileOut, pwStats, treePrint);
+          pq.release();
         }
       } // for tree iterator
       wrapper.join();
@@ -633,6 +634,7 @@ public class EvaluateTreebank {
         ParserQuery pq = wrapper.poll();
         Tree goldTree = goldTrees.poll();
         processResults(pq, goldTree, pwErr, pwOut, pwFileOut, pwStats, treePrint);
+        pq.release();
       }
     } else {
       ParserQuery pq = pqFactory.parserQuery();
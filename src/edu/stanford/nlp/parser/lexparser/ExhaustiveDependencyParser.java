@@ -116,6 +116,9 @@ public class ExhaustiveDependencyParser implements Scorer, KBestViterbiParser {
   private int arraySize = 0;
   private int myMaxLength = -0xDEADBEEF;
 
+  /** The chart this parser has borrowed, when {@link TestOptions#chartMemoryBudget} pools the charts */
+  private DependencyChart chart = null;
+
   float oScore(int start, int end, int head, int tag) {
     return oScoreH[head][dg.tagBin(tag)][start] + oScoreH[head][dg.tagBin(tag)][end];
   }
@@ -167,10 +170,14 @@ public class ExhaustiveDependencyParser implements Scorer, KBestViterbiParser {
     }
     this.sentence = sentence;
     int length = sentence.size();
+    borrowChart();
     if (length > arraySize) {
       if (length > op.testOptions.maxLength + 1 || length >= myMaxLength) {
         throw new OutOfMemoryError("Refusal to create such large arrays.");
       } else {
+        if (chart != null) {
+          chart.pool.checkBudget(chart, chartBytes(length + 1), op.testOptions.chartMemoryBudget);
+        }
         try {
           createArrays(length + 1);
         } catch (OutOfMemoryError e) {
@@ -182,9 +189,11 @@ public class ExhaustiveDependencyParser implements Scorer, KBestViterbiParser {
               throw new RuntimeException("CANNOT EVEN CREATE ARRAYS OF ORIGINAL SIZE!!! " + arraySize);
             }
           }
+          returnChart();
           throw e;
         }
         arraySize = length + 1;
+        returnChart();
         if (op.testOptions.verbose) {
           System.err.println("Created dparser arrays of size " + arraySize);
         }
@@ -795,6 +804,114 @@ public class ExhaustiveDependencyParser implements Scorer, KBestViterbiParser {
     binDistance = new int[length + 1][length + 1];
   }
 
+  /** The arrays of a parser, kept in a {@link ChartPool} between parses */
+  private static class DependencyChart extends ChartPool.Chart {
+    int arraySize = 0;
+    int numTagBins;
+    int numDistBins;
+
+    float[][][] iScoreH;
+    float[][][] oScoreH;
+    float[][][] iScoreHSum;
+    boolean[][][] iPossibleByL;
+    boolean[][][] iPossibleByR;
+    boolean[][][] oPossibleByL;
+    boolean[][][] oPossibleByR;
+    float[][][][][] headScore;
+    float[][][] headStop;
+    int[][] rawDistance;
+    int[][] binDistance;
+  }
+
+  /**
+   * Borrows a pooled chart for the grammar from the pool of this thread,
+   * if charts are pooled and this parser does not have one already.
+   * The chart is this parser's until {@link #releaseChart}, since the
+   * results of a parse are read from it.  Its arrays are dropped if they
+   * were laid out differently.
+   */
+  private void borrowChart() {
+    if (op.testOptions.chartMemoryBudget <= 0) {
+      releaseChart();
+      return;
+    }
+    if (chart == null) {
+      chart = ChartPool.get().borrow(this, dg, DependencyChart::new);
+    }
+    if (chart.numTagBins != dg.numTagBins() || chart.numDistBins != dg.numDistBins()) {
+      chart.numTagBins = dg.numTagBins();
+      chart.numDistBins = dg.numDistBins();
+      chart.arraySize = 0;
+      chart.pool.resize(chart, 0);
+    }
+    arraySize = chart.arraySize;
+    iScoreH = chart.iScoreH;
+    oScoreH = chart.oScoreH;
+    iScoreHSum = chart.iScoreHSum;
+    iPossibleByL = chart.iPossibleByL;
+    iPossibleByR = chart.iPossibleByR;
+    oPossibleByL = chart.oPossibleByL;
+    oPossibleByR = chart.oPossibleByR;
+    headScore = chart.headScore;
+    headStop = chart.headStop;
+    rawDistance = chart.rawDistance;
+    binDistance = chart.binDistance;
+  }
+
+  /** Puts newly created arrays back in the pooled chart, if there is one */
+  private void returnChart() {
+    if (chart == null) {
+      return;
+    }
+    chart.arraySize = arraySize;
+    chart.pool.resize(chart, chartBytes(arraySize));
+    chart.iScoreH = iScoreH;
+    chart.oScoreH = oScoreH;
+    chart.iScoreHSum = iScoreHSum;
+    chart.iPossibleByL = iPossibleByL;
+    chart.iPossibleByR = iPossibleByR;
+    chart.oPossibleByL = oPossibleByL;
+    chart.oPossibleByR = oPossibleByR;
+    chart.headScore = headScore;
+    chart.headStop = headStop;
+    chart.rawDistance = rawDistance;
+    chart.binDistance = binDistance;
+  }
+
+  /**
+   * Gives this parser's pooled chart back to its pool, if it has one.
+   * The results of the last parse cannot be read after this.
+   */
+  void releaseChart() {
+    if (chart == null) {
+      return;
+    }
+    chart.pool.release(chart);
+    chart = null;
+    arraySize = 0;
+    iScoreH = oScoreH = headStop = iScoreHSum = null;
+    iPossibleByL = iPossibleByR = oPossibleByL = oPossibleByR = null;
+    headScore = null;
+    rawDistance = binDistance = null;
+  }
+
+  /** Estimates the bytes {@link #createArrays} takes for the given length */
+  private long chartBytes(int length) {
+    if (length <= 0) {
+      return 0;
+    }
+    long tagNum = dg.numTagBins();
+    long positions = length + 1;
+    // iScoreH, oScoreH and headStop
+    long bytes = 3 * positions * tagNum * ChartPool.arrayBytes(positions, 4);
+    // the four possible arrays
+    bytes += 4 * positions * positions * ChartPool.arrayBytes(tagNum, 1);
+    bytes += dg.numDistBins() * length * tagNum * length * ChartPool.arrayBytes(tagNum, 4);
+    // rawDistance and binDistance
+    bytes += 2 * positions * ChartPool.arrayBytes(positions, 4);
+    return bytes;
+  }
+
   /** Get the exact k best parses for the sentence.
    *
    *  @param k The number of best parses to return
@@ -44,6 +44,7 @@ import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.PriorityQueue;
 
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 
 /** An exhaustive generalized CKY PCFG parser.
@@ -119,6 +120,16 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
    */
   protected List<ParserConstraint> constraints = null;
 
+  /** Prunes the chart with a coarse pass first, if set */
+  private CoarseToFinePruner pruner = null;
+  /** Whether the current parse is pruned by the pruner */
+  private boolean pruning = false;
+  /** Set while parsing again without pruning, after a pruned parse failed */
+  private boolean skipPruning = false;
+
+  /** The chart this parser has borrowed, when {@link TestOptions#chartMemoryBudget} pools the charts */
+  private PCFGChart chart = null;
+
   private CoreLabel getCoreLabel(int labelIndex) {
     if (originalCoreLabels[labelIndex] != null) {
       CoreLabel terminalLabel = originalCoreLabels[labelIndex];
@@ -344,6 +355,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
     if (spillGuts) {
       tick("Starting PCFG parse...");
     }
+    borrowChart();
     length = sentence.size();
     if (length > arraySize) {
       considerCreatingArrays(length);
@@ -422,7 +434,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
     for (int start = 0; start < length; start++) {
       for (int end = start + 1; end <= length; end++) {
         Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
-        if (op.doDep && ! op.testOptions.useFastFactored) {
+        if (computesOutsideScores()) {
           Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
         }
         if (op.testOptions.lengthNormalization) {
@@ -463,6 +475,8 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
       Timing.tick("done.");
       System.err.print("Starting insides...");
     }
+    pruning = pruner != null && ! skipPruning && pruner.prune(sentence);
+    long insideStart = System.nanoTime();
     // do the inside probabilities
     doInsideScores();
     if (op.testOptions.verbose) {
@@ -472,13 +486,29 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
     }
     bestScore = iScore[0][length][goal];
     boolean succeeded = hasParse();
+    if (pruner != null && ! skipPruning) {
+      pruner.fineNanos = System.nanoTime() - insideStart;
+    }
+    if (pruning && ! succeeded) {
+      // the coarse pass pruned away every parse, so parse again without it
+      pruning = false;
+      skipPruning = true;
+      long retryStart = System.nanoTime();
+      try {
+        return parse(sentence);
+      } finally {
+        skipPruning = false;
+        pruner.fellBack = true;
+        pruner.fineNanos += System.nanoTime() - retryStart;
+      }
+    }
     if (op.testOptions.doRecovery && !succeeded && !floodTags) {
       floodTags = true; // sentence will try to reparse
       // ms: disabled message. this is annoying and it doesn't really provide much information
       //System.err.println("Trying recovery parse...");
       return parse(sentence);
     }
-    if ( ! op.doDep || op.testOptions.useFastFactored) {
+    if ( ! computesOutsideScores()) {
       return succeeded;
     }
     if (op.testOptions.verbose) {
@@ -531,6 +561,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
   }
 
   public boolean parse(Lattice lr) {
+    pruning = false;
     sentence = null; // better nullPointer exception than silent error
     if (lr != this.lr) {
       this.lr = lr;
@@ -543,6 +574,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
 
     // The number of whitespace nodes in the lattice
     length = lr.getNumNodes() - 1; //Subtract 1 since considerCreatingArrays will add the final interstice
+    borrowChart();
     if (length > arraySize)
       considerCreatingArrays(length);
 
@@ -659,160 +691,183 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
   }
 
   private void doOutsideScores() {
+    boolean parallel = parallelCKY();
     for (int diff = length; diff >= 1; diff--) {
       if (Thread.interrupted()) {
         throw new RuntimeInterruptedException();
       }
 
-      for (int start = 0; start + diff <= length; start++) {
-        int end = start + diff;
-        // do unaries
-        for (int s = 0; s < numStates; s++) {
-          float oS = oScore[start][end][s];
-          if (oS == Float.NEGATIVE_INFINITY) {
+      int numCells = length - diff + 1;
+      if (parallel && numCells > 1) {
+        // two spans of the same length can overlap, and then both pass an
+        // outside score down to their overlap, one as a left child and the
+        // other as a right child; doing all the left children first keeps
+        // the cells of each pass apart
+        new DiagonalTask(DiagonalTask.OUTSIDE_LEFT, diff, 0, numCells).invoke();
+        new DiagonalTask(DiagonalTask.OUTSIDE_RIGHT, diff, 0, numCells).invoke();
+      } else {
+        for (int start = 0; start + diff <= length; start++) {
+          doOutsideChartCell(start, start + diff, true, true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Passes the outside scores over a span down to the spans within it,
+   * those of its left children, those of its right children, or both.
+   * Unary rules are done along with the left children.
+   */
+  private void doOutsideChartCell(final int start, final int end, final boolean leftChildren, final boolean rightChildren) {
+    // do unaries
+    if (leftChildren) {
+      for (int s = 0; s < numStates; s++) {
+        float oS = oScore[start][end][s];
+        if (oS == Float.NEGATIVE_INFINITY) {
+          continue;
+        }
+        UnaryRule[] rules = ug.closedRulesByParent(s);
+        for (UnaryRule ur : rules) {
+          float pS = ur.score;
+          float tot = oS + pS;
+          if (tot > oScore[start][end][ur.child] && iScore[start][end][ur.child] > Float.NEGATIVE_INFINITY) {
+            oScore[start][end][ur.child] = tot;
+          }
+        }
+      }
+    }
+    // do binaries
+    for (int s = 0; s < numStates; s++) {
+      int min1 = narrowRExtent[start][s];
+      if (end < min1) {
+        continue;
+      }
+      BinaryRule[] rules = bg.splitRulesWithLC(s);
+      for (BinaryRule br  : rules) {
+        float oS = oScore[start][end][br.parent];
+        if (oS == Float.NEGATIVE_INFINITY) {
+          continue;
+        }
+        int max1 = narrowLExtent[end][br.rightChild];
+        if (max1 < min1) {
+          continue;
+        }
+        int min = min1;
+        int max = max1;
+        if (max - min > 2) {
+          int min2 = wideLExtent[end][br.rightChild];
+          min = (min1 > min2 ? min1 : min2);
+          if (max1 < min) {
             continue;
           }
-          UnaryRule[] rules = ug.closedRulesByParent(s);
-          for (UnaryRule ur : rules) {
-            float pS = ur.score;
-            float tot = oS + pS;
-            if (tot > oScore[start][end][ur.child] && iScore[start][end][ur.child] > Float.NEGATIVE_INFINITY) {
-              oScore[start][end][ur.child] = tot;
-            }
+          int max2 = wideRExtent[start][br.leftChild];
+          max = (max1 < max2 ? max1 : max2);
+          if (max < min) {
+            continue;
           }
         }
-        // do binaries
-        for (int s = 0; s < numStates; s++) {
-          int min1 = narrowRExtent[start][s];
-          if (end < min1) {
+        float pS = br.score;
+        for (int split = min; split <= max; split++) {
+          float lS = iScore[start][split][br.leftChild];
+          if (lS == Float.NEGATIVE_INFINITY) {
             continue;
           }
-          BinaryRule[] rules = bg.splitRulesWithLC(s);
-          for (BinaryRule br  : rules) {
-            float oS = oScore[start][end][br.parent];
-            if (oS == Float.NEGATIVE_INFINITY) {
-              continue;
-            }
-            int max1 = narrowLExtent[end][br.rightChild];
-            if (max1 < min1) {
-              continue;
-            }
-            int min = min1;
-            int max = max1;
-            if (max - min > 2) {
-              int min2 = wideLExtent[end][br.rightChild];
-              min = (min1 > min2 ? min1 : min2);
-              if (max1 < min) {
-                continue;
-              }
-              int max2 = wideRExtent[start][br.leftChild];
-              max = (max1 < max2 ? max1 : max2);
-              if (max < min) {
-                continue;
-              }
-            }
-            float pS = br.score;
-            for (int split = min; split <= max; split++) {
-              float lS = iScore[start][split][br.leftChild];
-              if (lS == Float.NEGATIVE_INFINITY) {
-                continue;
-              }
-              float rS = iScore[split][end][br.rightChild];
-              if (rS == Float.NEGATIVE_INFINITY) {
-                continue;
-              }
-              float totL = pS + rS + oS;
-              if (totL > oScore[start][split][br.leftChild]) {
-                oScore[start][split][br.leftChild] = totL;
-              }
-              float totR = pS + lS + oS;
-              if (totR > oScore[split][end][br.rightChild]) {
-                oScore[split][end][br.rightChild] = totR;
-              }
-            }
+          float rS = iScore[split][end][br.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float totL = pS + rS + oS;
+          if (leftChildren && totL > oScore[start][split][br.leftChild]) {
+            oScore[start][split][br.leftChild] = totL;
           }
+          float totR = pS + lS + oS;
+          if (rightChildren && totR > oScore[split][end][br.rightChild]) {
+            oScore[split][end][br.rightChild] = totR;
+          }
+        }
+      }
+    }
+    for (int s = 0; s < numStates; s++) {
+      int max1 = narrowLExtent[end][s];
+      if (max1 < start) {
+        continue;
+      }
+      BinaryRule[] rules = bg.splitRulesWithRC(s);
+      for (BinaryRule br : rules) {
+        float oS = oScore[start][end][br.parent];
+        if (oS == Float.NEGATIVE_INFINITY) {
+          continue;
         }
-        for (int s = 0; s < numStates; s++) {
-          int max1 = narrowLExtent[end][s];
-          if (max1 < start) {
+        int min1 = narrowRExtent[start][br.leftChild];
+        if (max1 < min1) {
+          continue;
+        }
+        int min = min1;
+        int max = max1;
+        if (max - min > 2) {
+          int min2 = wideLExtent[end][br.rightChild];
+          min = (min1 > min2 ? min1 : min2);
+          if (max1 < min) {
             continue;
           }
-          BinaryRule[] rules = bg.splitRulesWithRC(s);
-          for (BinaryRule br : rules) {
-            float oS = oScore[start][end][br.parent];
-            if (oS == Float.NEGATIVE_INFINITY) {
-              continue;
-            }
-            int min1 = narrowRExtent[start][br.leftChild];
-            if (max1 < min1) {
-              continue;
-            }
-            int min = min1;
-            int max = max1;
-            if (max - min > 2) {
-              int min2 = wideLExtent[end][br.rightChild];
-              min = (min1 > min2 ? min1 : min2);
-              if (max1 < min) {
-                continue;
-              }
-              int max2 = wideRExtent[start][br.leftChild];
-              max = (max1 < max2 ? max1 : max2);
-              if (max < min) {
-                continue;
-              }
-            }
-            float pS = br.score;
-            for (int split = min; split <= max; split++) {
-              float lS = iScore[start][split][br.leftChild];
-              if (lS == Float.NEGATIVE_INFINITY) {
-                continue;
-              }
-              float rS = iScore[split][end][br.rightChild];
-              if (rS == Float.NEGATIVE_INFINITY) {
-                continue;
-              }
-              float totL = pS + rS + oS;
-              if (totL > oScore[start][split][br.leftChild]) {
-                oScore[start][split][br.leftChild] = totL;
-              }
-              float totR = pS + lS + oS;
-              if (totR > oScore[split][end][br.rightChild]) {
-                oScore[split][end][br.rightChild] = totR;
-              }
-            }
+          int max2 = wideRExtent[start][br.leftChild];
+          max = (max1 < max2 ? max1 : max2);
+          if (max < min) {
+            continue;
+          }
+        }
+        float pS = br.score;
+        for (int split = min; split <= max; split++) {
+          float lS = iScore[start][split][br.leftChild];
+          if (lS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float rS = iScore[split][end][br.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float totL = pS + rS + oS;
+          if (leftChildren && totL > oScore[start][split][br.leftChild]) {
+            oScore[start][split][br.leftChild] = totL;
+          }
+          float totR = pS + lS + oS;
+          if (rightChildren && totR > oScore[split][end][br.rightChild]) {
+            oScore[split][end][br.rightChild] = totR;
           }
         }
-        /*
-          for (int s = 0; s < numStates; s++) {
-          float oS = oScore[start][end][s];
-          //if (iScore[start][end][s] == Float.NEGATIVE_INFINITY ||
-          //             oS == Float.NEGATIVE_INFINITY)
-          if (oS == Float.NEGATIVE_INFINITY)
+      }
+    }
+    /*
+      for (int s = 0; s < numStates; s++) {
+      float oS = oScore[start][end][s];
+      //if (iScore[start][end][s] == Float.NEGATIVE_INFINITY ||
+      //             oS == Float.NEGATIVE_INFINITY)
+      if (oS == Float.NEGATIVE_INFINITY)
+      continue;
+      BinaryRule[] rules = bg.splitRulesWithParent(s);
+      for (int r=0; r<rules.length; r++) {
+        BinaryRule br = rules[r];
+        int min1 = narrowRExtent[start][br.leftChild];
+        if (end < min1)
+          continue;
+        int max1 = narrowLExtent[end][br.rightChild];
+        if (max1 < min1)
+          continue;
+        int min2 = wideLExtent[end][br.rightChild];
+        int min = (min1 > min2 ? min1 : min2);
+        if (max1 < min)
+          continue;
+        int max2 = wideRExtent[start][br.leftChild];
+        int max = (max1 < max2 ? max1 : max2);
+        if (max < min)
           continue;
-          BinaryRule[] rules = bg.splitRulesWithParent(s);
-          for (int r=0; r<rules.length; r++) {
-            BinaryRule br = rules[r];
-            int min1 = narrowRExtent[start][br.leftChild];
-            if (end < min1)
-              continue;
-            int max1 = narrowLExtent[end][br.rightChild];
-            if (max1 < min1)
-              continue;
-            int min2 = wideLExtent[end][br.rightChild];
-            int min = (min1 > min2 ? min1 : min2);
-            if (max1 < min)
-              continue;
-            int max2 = wideRExtent[start][br.leftChild];
-            int max = (max1 < max2 ? max1 : max2);
-            if (max < min)
-              continue;
 float pS = (float) br.score;
 for (int split = min; split <= max; split++) {
 float lS = iScore[start][split][br.leftChild];
 if (lS == Float.NEGATIVE_INFINITY)
-          continue;
+      continue;
 float rS = iScore[split][end][br.rightChild];
-              if (rS == Float.NEGATIVE_INFINITY)
+          if (rS == Float.NEGATIVE_INFINITY)
 continue;
 float totL = pS+rS+oS;
 if (totL > oScore[start][split][br.leftChild]) {
@@ -825,15 +880,14 @@ oScore[split][end][br.rightChild] = totR;
 }
 }
 }
-        */
-      }
-    }
+    */
   }
 
   /** Fills in the iScore array of each category over each span
    *  of length 2 or more.
    */
   void doInsideScores() {
+    boolean parallel = parallelCKY();
     for (int diff = 2; diff <= length; diff++) {
       if (Thread.interrupted()) {
         throw new RuntimeInterruptedException();
@@ -842,12 +896,69 @@ oScore[split][end][br.rightChild] = totR;
       // usually stop one short because boundary symbol only combines
       // with whole sentence span. So for 3 word sentence + boundary = 4,
       // length == 4, and do [0,2], [1,3]; [0,3]; [0,4]
-      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
-        doInsideChartCell(diff, start);
-      } // for start
+      int numCells = (diff == length) ? 1: length - diff;
+      if (parallel && numCells > 1) {
+        // a cell only reads the cells of shorter spans, and only writes
+        // the extents of its own start and end, so the cells of a
+        // diagonal can be filled in any order
+        new DiagonalTask(DiagonalTask.INSIDE, diff, 0, numCells).invoke();
+      } else {
+        for (int start = 0; start < numCells; start++) {
+          doInsideChartCell(diff, start);
+        } // for start
+      }
     } // for diff (i.e., span)
   } // end doInsideScores()
 
+  /** Whether the cells of each diagonal of this sentence's chart are filled in parallel */
+  private boolean parallelCKY() {
+    int threshold = op.testOptions.parallelCKYLength;
+    return threshold > 0 && length - 1 > threshold;
+  }
+
+  /**
+   * Fills a range of the cells of one diagonal of the chart, splitting
+   * it in half so that idle workers can steal the larger pieces.  The
+   * scores are the same as filling the cells one after another.
+   */
+  private class DiagonalTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int INSIDE = 0;
+    static final int OUTSIDE_LEFT = 1;
+    static final int OUTSIDE_RIGHT = 2;
+
+    private final int pass;
+    private final int diff;
+    private final int start;
+    private final int end;
+
+    DiagonalTask(int pass, int diff, int start, int end) {
+      this.pass = pass;
+      this.diff = diff;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= 1) {
+        if (start < end) {
+          if (pass == INSIDE) {
+            doInsideChartCell(diff, start);
+          } else {
+            doOutsideChartCell(start, start + diff, pass == OUTSIDE_LEFT, pass == OUTSIDE_RIGHT);
+          }
+        }
+      } else {
+        int middle = (start + end) >>> 1;
+        invokeAll(new DiagonalTask(pass, diff, start, middle),
+                  new DiagonalTask(pass, diff, middle, end));
+      }
+    }
+  }
+
 
   private void doInsideChartCell(final int diff, final int start) {
     final boolean lengthNormalization = op.testOptions.lengthNormalization;
@@ -865,6 +976,15 @@ oScore[split][end][br.rightChild] = totR;
       }
     }
 
+    // the states the coarse pass left over this span, or null for all of them
+    boolean[] allowed = null;
+    if (pruning) {
+      allowed = pruner.allowedStates(start, end);
+      if (allowed == null) {
+        return;
+      }
+    }
+
     // 2011-11-26 jdk1.6: caching/hoisting a bunch of variables gives you about 15% speed up!
     // caching this saves a bit of time in the inner loop, maybe 1.8%
     int[] narrowRExtent_start = narrowRExtent[start];
@@ -883,6 +1003,9 @@ oScore[split][end][br.rightChild] = totR;
       BinaryRule[] leftRules = bg.splitRulesWithLC(leftState);
       //      if (spillGuts) System.out.println("Found " + leftRules.length + " left rules for state " + stateIndex.get(leftState));
       for (BinaryRule rule : leftRules) {
+        if (allowed != null && ! allowed[rule.parent]) {
+          continue;
+        }
         int rightChild = rule.rightChild;
         int narrowL = narrowLExtent_end[rightChild];
         if (narrowL < narrowR) { // can this right constituent fit next to the left constituent?
@@ -1012,6 +1135,9 @@ oScore[split][end][br.rightChild] = totR;
       //      if (spillGuts) System.out.println("Found " + rightRules.length + " right rules for state " + stateIndex.get(rightState));
       for (BinaryRule rule : rightRules) {
         //      if (spillGuts) System.out.println("Considering rule for " + start + " to " + end + ": " + rightRules[i]);
+        if (allowed != null && ! allowed[rule.parent]) {
+          continue;
+        }
 
         int leftChild = rule.leftChild;
         int narrowR = narrowRExtent_start[leftChild];
@@ -1144,6 +1270,9 @@ oScore[split][end][br.rightChild] = totR;
 
       UnaryRule[] unaries = ug.closedRulesByChild(state);
       for (UnaryRule ur : unaries) {
+        if (allowed != null && ! allowed[ur.parent]) {
+          continue;
+        }
 
         if (constraints != null) {
           boolean skip = false;
@@ -2169,6 +2298,27 @@ oScore[split][end][br.rightChild] = totR;
   }
 
 
+  /**
+   * Sets a pruner whose coarse pass prunes the chart before the inside
+   * scores are computed, or null for none.
+   */
+  void setPruner(CoarseToFinePruner pruner) {
+    this.pruner = pruner;
+  }
+
+  CoarseToFinePruner getPruner() {
+    return pruner;
+  }
+
+  /**
+   * Whether the outside scores are computed after the inside scores.
+   * They are only needed by the exact factored parser, but a subclass may
+   * need them for itself.
+   */
+  protected boolean computesOutsideScores() {
+    return op.doDep && ! op.testOptions.useFastFactored;
+  }
+
   public void nudgeDownArraySize() {
     try {
       if (arraySize > 2) {
@@ -2183,6 +2333,9 @@ oScore[split][end][br.rightChild] = totR;
     if (length > op.testOptions.maxLength + 1 || length >= myMaxLength) {
       throw new OutOfMemoryError("Refusal to create such large arrays.");
     } else {
+      if (chart != null) {
+        chart.pool.checkBudget(chart, chartBytes(length + 1), op.testOptions.chartMemoryBudget);
+      }
       try {
         createArrays(length + 1);
       } catch (OutOfMemoryError e) {
@@ -2194,15 +2347,137 @@ oScore[split][end][br.rightChild] = totR;
             throw new RuntimeException("CANNOT EVEN CREATE ARRAYS OF ORIGINAL SIZE!!");
           }
         }
+        returnChart();
         throw e;
       }
       arraySize = length + 1;
+      returnChart();
       if (op.testOptions.verbose) {
         System.err.println("Created PCFG parser arrays of size " + arraySize);
       }
     }
   }
 
+  /** The arrays of a parser, kept in a {@link ChartPool} between parses */
+  private static class PCFGChart extends ChartPool.Chart {
+    int arraySize = 0;
+    int numStates;
+    int numTags;
+    boolean outside;
+    boolean lengthNormalization;
+
+    float[][][] iScore;
+    float[][][] oScore;
+    int[][][] wordsInSpan;
+    boolean[][] iPossibleByL;
+    boolean[][] iPossibleByR;
+    boolean[][] oPossibleByL;
+    boolean[][] oPossibleByR;
+    int[][] narrowLExtent;
+    int[][] wideLExtent;
+    int[][] narrowRExtent;
+    int[][] wideRExtent;
+    boolean[][] tags;
+  }
+
+  /**
+   * Borrows a pooled chart for the grammar from the pool of this thread,
+   * if charts are pooled and this parser does not have one already.
+   * The chart is this parser's until {@link #releaseChart}, since the
+   * results of a parse are read from it.  Its arrays are dropped if they
+   * were laid out differently.
+   */
+  private void borrowChart() {
+    if (op.testOptions.chartMemoryBudget <= 0) {
+      releaseChart();
+      return;
+    }
+    if (chart == null) {
+      chart = ChartPool.get().borrow(this, bg, PCFGChart::new);
+    }
+    int numTags = tagIndex.size();
+    boolean outside = computesOutsideScores();
+    boolean lengthNormalization = op.testOptions.lengthNormalization;
+    if (chart.numStates != numStates || chart.numTags != numTags ||
+        chart.outside != outside || chart.lengthNormalization != lengthNormalization) {
+      chart.numStates = numStates;
+      chart.numTags = numTags;
+      chart.outside = outside;
+      chart.lengthNormalization = lengthNormalization;
+      chart.arraySize = 0;
+      chart.pool.resize(chart, 0);
+    }
+    arraySize = chart.arraySize;
+    iScore = chart.iScore;
+    oScore = chart.oScore;
+    wordsInSpan = chart.wordsInSpan;
+    iPossibleByL = chart.iPossibleByL;
+    iPossibleByR = chart.iPossibleByR;
+    oPossibleByL = chart.oPossibleByL;
+    oPossibleByR = chart.oPossibleByR;
+    narrowLExtent = chart.narrowLExtent;
+    wideLExtent = chart.wideLExtent;
+    narrowRExtent = chart.narrowRExtent;
+    wideRExtent = chart.wideRExtent;
+    tags = chart.tags;
+  }
+
+  /** Puts newly created arrays back in the pooled chart, if there is one */
+  private void returnChart() {
+    if (chart == null) {
+      return;
+    }
+    chart.arraySize = arraySize;
+    chart.pool.resize(chart, chartBytes(arraySize));
+    chart.iScore = iScore;
+    chart.oScore = oScore;
+    chart.wordsInSpan = wordsInSpan;
+    chart.iPossibleByL = iPossibleByL;
+    chart.iPossibleByR = iPossibleByR;
+    chart.oPossibleByL = oPossibleByL;
+    chart.oPossibleByR = oPossibleByR;
+    chart.narrowLExtent = narrowLExtent;
+    chart.wideLExtent = wideLExtent;
+    chart.narrowRExtent = narrowRExtent;
+    chart.wideRExtent = wideRExtent;
+    chart.tags = tags;
+  }
+
+  /**
+   * Gives this parser's pooled chart back to its pool, if it has one.
+   * The results of the last parse cannot be read after this.
+   */
+  void releaseChart() {
+    if (chart == null) {
+      return;
+    }
+    chart.pool.release(chart);
+    chart = null;
+    arraySize = 0;
+    clearArrays();
+    wordsInSpan = null;
+  }
+
+  /** Estimates the bytes {@link #createArrays} takes for the given length */
+  private long chartBytes(int length) {
+    if (length <= 0) {
+      return 0;
+    }
+    long cells = (long) length * (length + 1) / 2;
+    long scores = cells * ChartPool.arrayBytes(numStates, 4);
+    long bytes = scores;
+    if (computesOutsideScores()) {
+      bytes += scores;
+      bytes += (2L * length + 1) * 2 * ChartPool.arrayBytes(numStates, 1);
+    }
+    if (op.testOptions.lengthNormalization) {
+      bytes += scores;
+    }
+    bytes += (2L * length + 1) * 2 * ChartPool.arrayBytes(numStates, 4);
+    bytes += length * ChartPool.arrayBytes(tagIndex.size(), 1);
+    return bytes;
+  }
+
   protected void createArrays(int length) {
     // zero out some stuff first in case we recently ran out of memory and are reallocating
     clearArrays();
@@ -2218,7 +2493,7 @@ oScore[split][end][br.rightChild] = totR;
       }
     }
     //    System.out.println("finished initializing iScore arrays");
-    if (op.doDep && !op.testOptions.useFastFactored) {
+    if (computesOutsideScores()) {
       //      System.out.println("initializing oScore arrays with length " + length + " and numStates " + numStates);
       oScore = new float[length][length + 1][];
       for (int start = 0; start < length; start++) {
@@ -2232,7 +2507,7 @@ oScore[split][end][br.rightChild] = totR;
     wideRExtent = new int[length][numStates];
     narrowLExtent = new int[length + 1][numStates];
     wideLExtent = new int[length + 1][numStates];
-    if (op.doDep && !op.testOptions.useFastFactored) {
+    if (computesOutsideScores()) {
       iPossibleByL = new boolean[length][numStates];
       iPossibleByR = new boolean[length + 1][numStates];
       oPossibleByL = new boolean[length][numStates];
@@ -291,8 +291,8 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
    * an X tree is returned instead of barfing.
    */
   public Tree parse(List<? extends HasWord> lst) {
+    ParserQuery pq = parserQuery();
     try {
-      ParserQuery pq = parserQuery();
       if (pq.parse(lst)) {
         Tree bestparse = pq.getBestParse();
         // -10000 denotes unknown words
@@ -303,6 +303,8 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
       System.err.println("Following exception caught during parsing:");
       e.printStackTrace();
       System.err.println("Recovering using fall through strategy: will construct an (X ...) tree.");
+    } finally {
+      pq.release();
     }
     // if can't parse or exception, fall through
     return ParserUtils.xTree(lst);
@@ -358,10 +360,14 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
    */
   public Tree parseTree(List<? extends HasWord> sentence) {
     ParserQuery pq = parserQuery();
-    if (pq.parse(sentence)) {
-      return pq.getBestParse();
-    } else {
-      return null;
+    try {
+      if (pq.parse(sentence)) {
+        return pq.getBestParse();
+      } else {
+        return null;
+      }
+    } finally {
+      pq.release();
     }
   }
 
@@ -377,9 +383,22 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
 
   @Override
   public List<ParserQueryEval> getParserQueryEvals() {
+    if (op.testOptions.coarseToFineThreshold > 0) {
+      return Collections.<ParserQueryEval>singletonList(new CoarseToFineEval(op.testOptions.coarseToFineThreshold));
+    }
     return Collections.emptyList();
   }
 
+  /** The coarse grammar for coarse-to-fine parsing, made the first time it is needed */
+  private transient CoarseGrammarProjection coarseProjection;
+
+  synchronized CoarseGrammarProjection coarseGrammarProjection() {
+    if (coarseProjection == null) {
+      coarseProjection = new CoarseGrammarProjection(bg, ug, stateIndex, tagIndex, op.langpack());
+    }
+    return coarseProjection;
+  }
+
 
   @Override
   public ParserQuery parserQuery() {
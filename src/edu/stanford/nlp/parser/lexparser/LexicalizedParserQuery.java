@@ -97,6 +97,17 @@ public class LexicalizedParserQuery implements ParserQuery {
   @Override
   public List<? extends HasWord> originalSentence() { return originalSentence; }
 
+  /** Gives back the charts borrowed from the chart pool, if {@link TestOptions#chartMemoryBudget} is set */
+  @Override
+  public void release() {
+    if (pparser != null) {
+      pparser.releaseChart();
+    }
+    if (dparser != null) {
+      dparser.releaseChart();
+    }
+  }
+
   /** Keeps track of whether the sentence had punctuation added, which affects the expected length of the sentence */
   private boolean addedPunct = false;
 
@@ -128,6 +139,10 @@ public class LexicalizedParserQuery implements ParserQuery {
       } else {
         pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       }
+      // iterative CKY computes its own inside scores, which aren't pruned
+      if (op.testOptions.coarseToFineThreshold > 0 && ! op.testOptions.iterativeCKY) {
+        pparser.setPruner(new CoarseToFinePruner(parser.coarseGrammarProjection(), lex, op, stateIndex, wordIndex, tagIndex));
+      }
     } else {
       pparser = null;
     }
@@ -558,14 +573,16 @@ public class LexicalizedParserQuery implements ParserQuery {
         return true;
       }
     } catch (OutOfMemoryError e) {
-      if (op.testOptions.maxLength != -0xDEADBEEF) {
+      // a sentence over the chart memory budget is always reported as
+      // parseNoMemory (or a PCFG fallback), never thrown
+      if (op.testOptions.maxLength != -0xDEADBEEF && ! (e instanceof ChartPool.BudgetExceededError)) {
         // this means they explicitly asked for a length they cannot handle.
         // Throw exception.  Avoid string concatenation before throw it.
         System.err.print("NOT ENOUGH MEMORY TO PARSE SENTENCES OF LENGTH ");
         System.err.println(op.testOptions.maxLength);
         throw e;
       }
-      if (pparser.hasParse() && fallbackToPCFG) {
+      if (pparser != null && pparser.hasParse() && fallbackToPCFG) {
         try {
           whatFailed = "dependency";
           if (dparser.hasParse()) {
@@ -65,12 +65,39 @@ public class TestOptions implements Serializable {
   /** If true, use faster iterative deepening CKY algorithm. */
   public boolean iterativeCKY = false;
 
+  /**
+   * If positive, the PCFG parser first parses with a coarse projection of
+   * its grammar, and skips the states over each span whose best coarse
+   * parse is more than this much (as a log probability) below the best
+   * coarse parse.  Larger values prune less.  0 turns this off.
+   */
+  public double coarseToFineThreshold = 0.0;
+
+  /**
+   * If positive, the exhaustive PCFG parser fills the cells of each
+   * diagonal of the chart in parallel, on a fork-join pool, for sentences
+   * longer than this many words.  The scores are the same as filling them
+   * one at a time.  0 turns this off.
+   */
+  public int parallelCKYLength = 0;
+
   /**
    * The maximum sentence length (including punctuation, etc.) to parse.
    */
   public int maxLength = -0xDEADBEEF;
   // initial value is -0xDEADBEEF (actually positive because of 2s complement)
 
+  /**
+   * If positive, the charts of the exhaustive parsers are pooled per
+   * thread, and are kept within this many megabytes.  A query holds its
+   * charts until it is released ({@code ParserQuery.release()}) or
+   * garbage collected, after which the next query on the thread reuses
+   * them.  A sentence whose charts would not fit is not parsed
+   * ({@code parseNoMemory()}) rather than running the heap out of
+   * memory.  0 gives every query charts of its own, with no budget.
+   */
+  public int chartMemoryBudget = 0;
+
   /**
    * The maximum number of edges and hooks combined that the factored parser
    * will build before giving up.  This number should probably be relative to
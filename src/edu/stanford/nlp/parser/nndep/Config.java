@@ -202,6 +202,21 @@ public class Config
    */
   public String tagger = MaxentTagger.DEFAULT_JAR_PATH;
 
+  /**
+   * If true, parse with a single precision copy of the classifier
+   * (see {@link FloatClassifier}), which is faster but may rarely
+   * choose a different transition when two scores are nearly tied.
+   */
+  public boolean floatInference = false;
+
+  /**
+   * The number of sentences to parse together in lockstep by
+   * {@link DependencyParser#predictBatch(List)}.  Larger batches score
+   * more transitions with each pass over the weights, trading
+   * single sentence latency for throughput.
+   */
+  public int testBatchSize = 1;
+
   public Config(Properties properties) {
     setProperties(properties);
   }
@@ -229,6 +244,8 @@ public class Config
     // Runtime parsing options
     sentenceDelimiter = PropertiesUtils.getString(props, "sentenceDelimiter", sentenceDelimiter);
     tagger = PropertiesUtils.getString(props, "tagger.model", tagger);
+    floatInference = PropertiesUtils.getBool(props, "floatInference", floatInference);
+    testBatchSize = PropertiesUtils.getInt(props, "testBatchSize", testBatchSize);
 
     String escaperClass = props.getProperty("escaper");
     escaper = escaperClass != null ? ReflectionLoading.loadByReflection(escaperClass) : null;
@@ -275,5 +292,7 @@ public class Config
     System.err.printf("unlabeled = %b%n", unlabeled);
     System.err.printf("cPOS = %b%n", cPOS);
     System.err.printf("noPunc = %b%n", noPunc);
+    System.err.printf("floatInference = %b%n", floatInference);
+    System.err.printf("testBatchSize = %d%n", testBatchSize);
   }
 }
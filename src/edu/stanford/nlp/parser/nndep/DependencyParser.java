@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -102,6 +103,11 @@ public class DependencyParser {
    * handles both training and inference.
    */
   protected Classifier classifier;
+  /**
+   * A single precision copy of {@link #classifier} used for parsing
+   * when {@link Config#floatInference} is set, or null otherwise.
+   */
+  protected FloatClassifier floatClassifier;
   protected ParsingSystem system;
 
   public final Config config;
@@ -909,6 +915,9 @@ public class DependencyParser {
     int numTrans = system.numTransitions();
 
     Configuration c = system.initialConfiguration(sentence);
+    if (floatClassifier != null) {
+      return predictInnerFloat(c, numTrans);
+    }
     while (!system.isTerminal(c)) {
       double[] scores = classifier.computeScores(getFeatureArray(c));
 
@@ -926,6 +935,118 @@ public class DependencyParser {
     return c.tree;
   }
 
+  /**
+   * The same as {@link #predictInner(CoreMap)}, but scoring with the
+   * single precision classifier and reusing its scratch arrays for
+   * every transition.
+   */
+  private DependencyTree predictInnerFloat(Configuration c, int numTrans) {
+    float[] hidden = new float[floatClassifier.hiddenSize()];
+    float[] scores = new float[floatClassifier.numLabels()];
+    while (!system.isTerminal(c)) {
+      floatClassifier.computeScores(getFeatureArray(c), hidden, scores);
+
+      float optScore = Float.NEGATIVE_INFINITY;
+      String optTrans = null;
+
+      for (int j = 0; j < numTrans; ++j) {
+        if (scores[j] > optScore && system.canApply(c, system.transitions.get(j))) {
+          optScore = scores[j];
+          optTrans = system.transitions.get(j);
+        }
+      }
+      system.apply(c, optTrans);
+    }
+    return c.tree;
+  }
+
+  /**
+   * Determine the dependency parses of several sentences at once.  Up
+   * to {@link Config#testBatchSize} sentences are advanced in lockstep:
+   * at each step the feature vectors of all of the unfinished sentences
+   * are scored together, and a sentence drops out of the batch as soon
+   * as it reaches a terminal configuration, making room for the next one.
+   * <br>
+   * With {@link Config#floatInference} the scoring is a single
+   * matrix-matrix product per step (see
+   * {@link FloatClassifier#computeScores(int[][], int, float[], float[])});
+   * otherwise each vector is scored separately, and the parses are the
+   * same as those of {@link #predictInner(CoreMap)}.
+   */
+  protected List<DependencyTree> predictInner(List<? extends CoreMap> sentences) {
+    int numTrans = system.numTransitions();
+    int batchSize = Math.max(1, Math.min(config.testBatchSize, sentences.size()));
+
+    DependencyTree[] results = new DependencyTree[sentences.size()];
+    Configuration[] active = new Configuration[batchSize];
+    int[] activeIndex = new int[batchSize];
+    int[][] features = new int[batchSize][];
+    float[] hidden = null, floatScores = null;
+    if (floatClassifier != null) {
+      hidden = new float[batchSize * floatClassifier.hiddenSize()];
+      floatScores = new float[batchSize * floatClassifier.numLabels()];
+    }
+
+    int next = 0;
+    int numActive = 0;
+    while (true) {
+      // fill up the batch, skipping sentences which need no transitions
+      while (numActive < batchSize && next < sentences.size()) {
+        Configuration c = system.initialConfiguration(sentences.get(next));
+        if (system.isTerminal(c)) {
+          results[next] = c.tree;
+        } else {
+          active[numActive] = c;
+          activeIndex[numActive] = next;
+          ++numActive;
+        }
+        ++next;
+      }
+      if (numActive == 0) {
+        break;
+      }
+
+      for (int b = 0; b < numActive; ++b) {
+        features[b] = getFeatureArray(active[b]);
+      }
+      if (floatClassifier != null) {
+        floatClassifier.computeScores(features, numActive, hidden, floatScores);
+      }
+
+      for (int b = 0; b < numActive; ++b) {
+        Configuration c = active[b];
+        double[] scores = (floatClassifier == null) ? classifier.computeScores(features[b]) : null;
+        int offset = b * numTrans;
+
+        double optScore = Double.NEGATIVE_INFINITY;
+        String optTrans = null;
+
+        for (int j = 0; j < numTrans; ++j) {
+          double score = (scores != null) ? scores[j] : floatScores[offset + j];
+          if (score > optScore && system.canApply(c, system.transitions.get(j))) {
+            optScore = score;
+            optTrans = system.transitions.get(j);
+          }
+        }
+        system.apply(c, optTrans);
+      }
+
+      // retire finished sentences, keeping the rest of the batch packed
+      for (int b = 0; b < numActive; ) {
+        if (system.isTerminal(active[b])) {
+          results[activeIndex[b]] = active[b].tree;
+          --numActive;
+          active[b] = active[numActive];
+          activeIndex[b] = activeIndex[numActive];
+          active[numActive] = null;
+        } else {
+          ++b;
+        }
+      }
+    }
+    return Arrays.asList(results);
+  }
+
   /**
    * Determine the dependency parse of the given sentence using the loaded model.
    * You must first load a parser before calling this method.
@@ -938,11 +1059,38 @@ public class DependencyParser {
       throw new IllegalStateException("Parser has not been  " +
           "loaded and initialized; first load a model.");
 
-    DependencyTree result = predictInner(sentence);
+    return makeGrammaticalStructure(sentence, predictInner(sentence));
+  }
+
+  /**
+   * Determine the dependency parses of the given sentences, parsing up
+   * to {@link Config#testBatchSize} of them together in lockstep.  This
+   * gives better throughput than calling {@link #predict(CoreMap)} on
+   * each sentence, at the cost of latency for any one sentence.
+   * You must first load a parser before calling this method.
+   *
+   * @return The parses, in the same order as the sentences
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictBatch(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+
+    List<DependencyTree> results = predictInner(sentences);
+    List<GrammaticalStructure> structures = new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); ++i) {
+      structures.add(makeGrammaticalStructure(sentences.get(i), results.get(i)));
+    }
+    return structures;
+  }
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+  /**
+   * Convert the package-local representation of a parse into a
+   * CoreNLP-standard GrammaticalStructure.
+   */
+  private GrammaticalStructure makeGrammaticalStructure(CoreMap sentence, DependencyTree result) {
 
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
@@ -1078,7 +1226,7 @@ public class DependencyParser {
     }
     System.err.printf("OOV Words: %d / %d = %.2f%%\n", numOOVWords, numWords, numOOVWords * 100.0 / numWords);
 
-    List<DependencyTree> predicted = testSents.stream().map(this::predictInner).collect(toList());
+    List<DependencyTree> predicted = predictInner(testSents);
     Map<String, Double> result = system.evaluate(testSents, predicted, testTrees);
 
     double uas = config.noPunc ? result.get("UASnoPunc") : result.get("UAS");
@@ -1150,7 +1298,9 @@ public class DependencyParser {
     system = new ArcStandard(config.tlp, lDict, verbose);
 
     // Pre-compute matrix multiplications
-    if (config.numPreComputed > 0) {
+    if (config.floatInference) {
+      floatClassifier = new FloatClassifier(config, classifier, preComputed);
+    } else if (config.numPreComputed > 0) {
       classifier.preCompute();
     }
   }
@@ -1228,8 +1378,10 @@ public class DependencyParser {
    * <table>
    *   <tr><th>Option</th><th>Default</th><th>Description</th></tr>
    *   <tr><td><tt>&#8209;escaper</tt></td><td>N/A</td><td>Only applicable for testing with <tt>-textFile</tt>. If provided, use this word-escaper when parsing raw sentences. (Should be a fully-qualified class name like <tt>edu.stanford.nlp.trees.international.arabic.ATBEscaper</tt>.)</td></tr>
+   *   <tr><td><tt>&#8209;floatInference</tt></td><td><tt>false</tt></td><td>If <tt>true</tt>, parse with a single precision copy of the network weights (see {@link FloatClassifier}). This is faster and uses half the memory bandwidth, but may in rare cases choose a different transition when two scores are nearly tied.</td></tr>
    *   <tr><td><tt>&#8209;numPreComputed</tt></td><td>100000</td><td>The parser pre-computes hidden-layer unit activations for particular inputs words at both training and testing time in order to speed up feedforward computation in the neural network. This parameter determines how many words for which we should compute hidden-layer activations.</td></tr>
    *   <tr><td><tt>&#8209;sentenceDelimiter</tt></td><td>N/A</td><td>Only applicable for testing with <tt>-textFile</tt>.  If provided, assume that the given <tt>textFile</tt> has already been sentence-split, and that sentences are separated by this delimiter.</td></tr>
+   *   <tr><td><tt>&#8209;testBatchSize</tt></td><td>1</td><td>The number of sentences to parse together in lockstep. Scoring the transitions of many sentences at once gives better throughput at the cost of latency, especially with <tt>&#8209;floatInference</tt>.</td></tr>
    *   <tr><td><tt>&#8209;tagger.model</tt></td><td>edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger</td><td>Only applicable for testing with <tt>-textFile</tt>. Path to a part-of-speech tagger to use to pre-tag the raw sentences before parsing.</td></tr>
    * </table>
    */
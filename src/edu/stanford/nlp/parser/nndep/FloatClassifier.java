@@ -0,0 +1,310 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.util.List;
+
+/**
+ * A read-only, single precision copy of a {@link Classifier}, used only
+ * for inference.
+ * <br>
+ * The weights are stored in flat row-major {@code float[]} arrays rather
+ * than {@code double[][]}, which halves the memory read for each parser
+ * transition and removes the pointer chase for every row.  The matrices
+ * are also laid out so that every inner loop is a contiguous
+ * <i>y += a * x</i> over the hidden units or labels:
+ * <ul>
+ *   <li>{@code W1} is stored transposed, with the hidden layer weights
+ *   of each input unit in one row of {@code hiddenSize} floats;</li>
+ *   <li>the precomputed hidden activations are rows of the same length;</li>
+ *   <li>{@code W2} is stored transposed, with the label weights of each
+ *   hidden unit in one row of {@code numLabels} floats.</li>
+ * </ul>
+ * Loops of that shape are vectorized by the JIT, whereas the dot
+ * products of the double precision classifier are not, since the JIT
+ * will not reorder floating point sums.  Rows of W1 are added four at
+ * a time, so the hidden layer is read and written once for every four
+ * inputs.  Hidden layers larger than {@link #BLOCK_SIZE} units are
+ * processed a block at a time, so that the running sums of a block stay
+ * in the first level cache while every input unit is added to it; the
+ * usual 200 units fit in a single block.
+ * <br>
+ * Scores agree with {@link Classifier#computeScores(int[])} to about
+ * single precision, so a parser can in rare cases pick a different
+ * transition when two scores are nearly tied.
+ * <br>
+ * This class is thread safe; callers which want to avoid allocating
+ * for each transition can pass their own scratch arrays to
+ * {@link #computeScores(int[], float[], float[])}.
+ */
+public class FloatClassifier {
+
+  /** The number of hidden units added up together in one pass over the inputs */
+  static final int BLOCK_SIZE = 256;
+
+  private final int hiddenSize;
+  private final int embeddingSize;
+  private final int numTokens;
+  private final int numLabels;
+
+  /** numEmbeddings x embeddingSize */
+  private final float[] E;
+  /** (numTokens * embeddingSize) x hiddenSize, the transpose of the original W1 */
+  private final float[] W1;
+  private final float[] b1;
+  /** hiddenSize x numLabels, the transpose of the original W2 */
+  private final float[] W2;
+
+  /** precomputed W1 * E for frequent (token, position) features, one row of hiddenSize per feature */
+  private final float[] saved;
+  /** open addressing map from a feature ID to its row in saved; keys are ID + 1, 0 for an empty slot */
+  private final int[] savedKeys;
+  private final int[] savedRows;
+  private final int savedMask;
+
+  /**
+   * Builds a single precision copy of the given weights, and precomputes
+   * the hidden layer contributions of the given features, as
+   * {@link Classifier#preCompute()} does.
+   */
+  public FloatClassifier(Config config, double[][] E, double[][] W1, double[] b1, double[][] W2, List<Integer> preComputed) {
+    this.hiddenSize = config.hiddenSize;
+    this.embeddingSize = config.embeddingSize;
+    this.numTokens = Config.numTokens;
+    this.numLabels = W2.length;
+
+    this.E = new float[E.length * embeddingSize];
+    for (int i = 0; i < E.length; ++i) {
+      for (int k = 0; k < embeddingSize; ++k) {
+        this.E[i * embeddingSize + k] = (float) E[i][k];
+      }
+    }
+
+    int numInputs = numTokens * embeddingSize;
+    this.W1 = new float[numInputs * hiddenSize];
+    for (int i = 0; i < hiddenSize; ++i) {
+      for (int j = 0; j < numInputs; ++j) {
+        this.W1[j * hiddenSize + i] = (float) W1[i][j];
+      }
+    }
+
+    this.b1 = new float[hiddenSize];
+    for (int i = 0; i < hiddenSize; ++i) {
+      this.b1[i] = (float) b1[i];
+    }
+
+    this.W2 = new float[hiddenSize * numLabels];
+    for (int l = 0; l < numLabels; ++l) {
+      for (int i = 0; i < hiddenSize; ++i) {
+        this.W2[i * numLabels + l] = (float) W2[l][i];
+      }
+    }
+
+    int numSaved = Math.min(preComputed.size(), config.numPreComputed);
+    int tableSize = Integer.highestOneBit(Math.max(2, numSaved * 2 - 1)) << 1;
+    savedKeys = new int[tableSize];
+    savedRows = new int[tableSize];
+    savedMask = tableSize - 1;
+    saved = new float[numSaved * hiddenSize];
+    double[] sum = new double[hiddenSize];
+    for (int row = 0; row < numSaved; ++row) {
+      int feature = preComputed.get(row);
+      int slot = slot(feature);
+      while (savedKeys[slot] != 0) {
+        slot = (slot + 1) & savedMask;
+      }
+      savedKeys[slot] = feature + 1;
+      savedRows[slot] = row;
+
+      // sum in double precision, as the original classifier does
+      int tok = feature / numTokens;
+      int pos = feature % numTokens;
+      for (int i = 0; i < hiddenSize; ++i) {
+        sum[i] = 0.0;
+        for (int k = 0; k < embeddingSize; ++k) {
+          sum[i] += W1[i][pos * embeddingSize + k] * E[tok][k];
+        }
+        saved[row * hiddenSize + i] = (float) sum[i];
+      }
+    }
+  }
+
+  /** Builds a single precision copy of a trained or loaded classifier */
+  public FloatClassifier(Config config, Classifier classifier, List<Integer> preComputed) {
+    this(config, classifier.getE(), classifier.getW1(), classifier.getb1(), classifier.getW2(), preComputed);
+  }
+
+  private int slot(int feature) {
+    int h = feature * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & savedMask;
+  }
+
+  /** Returns the row of {@link #saved} for a feature ID, or -1 if it was not precomputed */
+  private int savedRow(int feature) {
+    int slot = slot(feature);
+    int key;
+    while ((key = savedKeys[slot]) != 0) {
+      if (key == feature + 1) {
+        return savedRows[slot];
+      }
+      slot = (slot + 1) & savedMask;
+    }
+    return -1;
+  }
+
+  public int numLabels() {
+    return numLabels;
+  }
+
+  public int hiddenSize() {
+    return hiddenSize;
+  }
+
+  /**
+   * Feed a feature vector forward through the network. Returns the
+   * values of the output layer.
+   */
+  public float[] computeScores(int[] feature) {
+    float[] scores = new float[numLabels];
+    computeScores(feature, new float[hiddenSize], scores);
+    return scores;
+  }
+
+  /**
+   * Feed a feature vector forward through the network, using the given
+   * arrays instead of allocating new ones.
+   *
+   * @param feature The token ID of each input position
+   * @param hidden Scratch space of at least {@link #hiddenSize()} floats
+   * @param scores Filled in with the values of the output layer; at least {@link #numLabels()} floats
+   */
+  public void computeScores(int[] feature, float[] hidden, float[] scores) {
+    for (int start = 0; start < hiddenSize; start += BLOCK_SIZE) {
+      int end = Math.min(hiddenSize, start + BLOCK_SIZE);
+      System.arraycopy(b1, start, hidden, start, end - start);
+      for (int j = 0; j < feature.length; ++j) {
+        int row = savedRow(feature[j] * numTokens + j);
+        if (row >= 0) {
+          axpy(1.0f, saved, row * hiddenSize, hidden, start, end);
+        } else {
+          int embedding = feature[j] * embeddingSize;
+          int input = j * embeddingSize;
+          int k = 0;
+          for (; k + 4 <= embeddingSize; k += 4) {
+            axpy4(E, embedding + k, W1, (input + k) * hiddenSize, hiddenSize, hidden, start, end);
+          }
+          for (; k < embeddingSize; ++k) {
+            axpy(E[embedding + k], W1, (input + k) * hiddenSize, hidden, start, end);
+          }
+        }
+      }
+      for (int i = start; i < end; ++i) {
+        float h = hidden[i];
+        hidden[i] = h * h * h;  // cube nonlinearity
+      }
+    }
+
+    for (int l = 0; l < numLabels; ++l) {
+      scores[l] = 0.0f;
+    }
+    for (int i = 0; i < hiddenSize; ++i) {
+      axpy(hidden[i], W2, i * numLabels, scores, 0, numLabels);
+    }
+  }
+
+  /**
+   * Feed several feature vectors forward through the network at once.
+   * This computes the same scores as calling
+   * {@link #computeScores(int[], float[], float[])} on each vector, but
+   * as matrix-matrix products: each row of W1 is applied to every vector
+   * which needs it, and each row of W2 to every hidden layer, while the
+   * row is still in cache.
+   *
+   * @param features The feature vectors; only the first {@code batchSize} are scored
+   * @param batchSize The number of feature vectors to score
+   * @param hidden Scratch space of at least {@code batchSize * hiddenSize()} floats
+   * @param scores Filled in with the output layer of vector {@code b} at
+   *               {@code b * numLabels()}; at least {@code batchSize * numLabels()} floats
+   */
+  public void computeScores(int[][] features, int batchSize, float[] hidden, float[] scores) {
+    int numInputs = features[0].length;
+    int[] unsaved = new int[batchSize];
+    for (int start = 0; start < hiddenSize; start += BLOCK_SIZE) {
+      int end = Math.min(hiddenSize, start + BLOCK_SIZE);
+      for (int b = 0; b < batchSize; ++b) {
+        System.arraycopy(b1, start, hidden, b * hiddenSize + start, end - start);
+      }
+      for (int j = 0; j < numInputs; ++j) {
+        int numUnsaved = 0;
+        for (int b = 0; b < batchSize; ++b) {
+          int row = savedRow(features[b][j] * numTokens + j);
+          if (row >= 0) {
+            int base = b * hiddenSize;
+            axpy(1.0f, saved, row * hiddenSize - base, hidden, base + start, base + end);
+          } else {
+            unsaved[numUnsaved++] = b;
+          }
+        }
+        // apply each group of rows of W1 for this position to every
+        // vector in the batch which needs it while the rows are in cache
+        int input = j * embeddingSize;
+        int k = 0;
+        for (; k + 4 <= embeddingSize; k += 4) {
+          int offset = (input + k) * hiddenSize;
+          for (int u = 0; u < numUnsaved; ++u) {
+            int b = unsaved[u];
+            int base = b * hiddenSize;
+            axpy4(E, features[b][j] * embeddingSize + k, W1, offset - base, hiddenSize, hidden, base + start, base + end);
+          }
+        }
+        for (; k < embeddingSize; ++k) {
+          int offset = (input + k) * hiddenSize;
+          for (int u = 0; u < numUnsaved; ++u) {
+            int b = unsaved[u];
+            int base = b * hiddenSize;
+            axpy(E[features[b][j] * embeddingSize + k], W1, offset - base, hidden, base + start, base + end);
+          }
+        }
+      }
+      for (int b = 0; b < batchSize; ++b) {
+        for (int i = b * hiddenSize + start, last = b * hiddenSize + end; i < last; ++i) {
+          float h = hidden[i];
+          hidden[i] = h * h * h;  // cube nonlinearity
+        }
+      }
+    }
+
+    for (int i = 0, n = batchSize * numLabels; i < n; ++i) {
+      scores[i] = 0.0f;
+    }
+    for (int i = 0; i < hiddenSize; ++i) {
+      int offset = i * numLabels;
+      for (int b = 0; b < batchSize; ++b) {
+        int base = b * numLabels;
+        axpy(hidden[b * hiddenSize + i], W2, offset - base, scores, base, base + numLabels);
+      }
+    }
+  }
+
+  /**
+   * {@code y[start:end] += a * x[offset + start : offset + end]}.
+   * Kept as a simple counted loop so that the JIT vectorizes it.
+   */
+  private static void axpy(float a, float[] x, int offset, float[] y, int start, int end) {
+    for (int i = start; i < end; ++i) {
+      y[i] += a * x[offset + i];
+    }
+  }
+
+  /**
+   * Four {@link #axpy}s at once, with coefficients {@code a[aOffset..aOffset+3]}
+   * and rows of {@code x} {@code stride} apart, so that {@code y} is only
+   * read and written once for every four rows.
+   */
+  private static void axpy4(float[] a, int aOffset, float[] x, int offset, int stride, float[] y, int start, int end) {
+    float a0 = a[aOffset], a1 = a[aOffset + 1], a2 = a[aOffset + 2], a3 = a[aOffset + 3];
+    int o0 = offset, o1 = offset + stride, o2 = offset + 2 * stride, o3 = offset + 3 * stride;
+    for (int i = start; i < end; ++i) {
+      y[i] += a0 * x[o0 + i] + a1 * x[o1 + i] + a2 * x[o2 + i] + a3 * x[o3 + i];
+    }
+  }
+
+}
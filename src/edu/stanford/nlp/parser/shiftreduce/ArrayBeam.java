@@ -0,0 +1,96 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * A beam of int ids with double scores, kept in two arrays as a binary
+ * heap with the lowest score on top.  It is meant to be cleared and
+ * reused rather than reallocated for every step of a parse.
+ * <br>
+ * Adding and polling move the entries exactly as a
+ * {@link java.util.PriorityQueue} ordered by
+ * {@link edu.stanford.nlp.util.ScoredComparator#ASCENDING_COMPARATOR}
+ * moves its elements, and {@link #id(int)} and {@link #score(int)} go
+ * through the entries in the order such a queue iterates over them.
+ * Ties are therefore broken the same way as with a PriorityQueue.
+ */
+class ArrayBeam {
+  private int[] ids;
+  private double[] scores;
+  private int size = 0;
+
+  ArrayBeam(int capacity) {
+    ids = new int[Math.max(capacity, 1)];
+    scores = new double[ids.length];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /** The id of the i-th entry, in heap order */
+  public int id(int i) {
+    return ids[i];
+  }
+
+  /** The score of the i-th entry, in heap order */
+  public double score(int i) {
+    return scores[i];
+  }
+
+  /** The lowest score in the beam, which must not be empty */
+  public double lowestScore() {
+    return scores[0];
+  }
+
+  public void add(int id, double score) {
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, size * 2);
+      scores = Arrays.copyOf(scores, size * 2);
+    }
+    int k = size++;
+    while (k > 0) {
+      int parent = (k - 1) >>> 1;
+      if (!(score < scores[parent])) {
+        break;
+      }
+      ids[k] = ids[parent];
+      scores[k] = scores[parent];
+      k = parent;
+    }
+    ids[k] = id;
+    scores[k] = score;
+  }
+
+  /** Removes the entry with the lowest score and returns its id */
+  public int poll() {
+    int result = ids[0];
+    int n = --size;
+    if (n > 0) {
+      int id = ids[n];
+      double score = scores[n];
+      int k = 0;
+      int half = n >>> 1;
+      while (k < half) {
+        int child = 2 * k + 1;
+        int right = child + 1;
+        if (right < n && scores[child] > scores[right]) {
+          child = right;
+        }
+        if (!(score > scores[child])) {
+          break;
+        }
+        ids[k] = ids[child];
+        scores[k] = scores[child];
+        k = child;
+      }
+      ids[k] = id;
+      scores[k] = score;
+    }
+    return result;
+  }
+}
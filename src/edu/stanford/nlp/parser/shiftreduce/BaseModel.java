@@ -116,6 +116,21 @@ public abstract class BaseModel implements Serializable {
 
   public abstract Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints);
 
+  /**
+   * Fills the beam with the same transitions and scores, in the same
+   * order, as {@link #findHighestScoringTransitions(State, boolean, int, List)}
+   * returns them.  A model may override this to use the scratch space of
+   * the buffers instead of allocating a collection per state.
+   */
+  void findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints,
+                                     ArrayBeam transitions, BeamBuffers buffers) {
+    transitions.clear();
+    // adding the entries of a heap in its own order doesn't move them
+    for (ScoredObject<Integer> transition : findHighestScoringTransitions(state, requireLegal, numTransitions, constraints)) {
+      transitions.add(transition.object(), transition.score());
+    }
+  }
+
   /**
    * Train a new model.  This is the method to override for new models
    * such that the ShiftReduceParser will fill in the model.  Given a
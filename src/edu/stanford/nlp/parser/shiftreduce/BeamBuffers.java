@@ -0,0 +1,73 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * The storage a beam search reuses from one step of a parse to the next,
+ * and from one sentence to the next: the two beams of states, the beam of
+ * transitions of a state, and the scratch space for featurizing and
+ * scoring a state.  There is one per thread; see {@link #get()}.
+ * <br>
+ * The states themselves are not pooled.  They share their stacks with
+ * the states they came from, and the trees of the final state are handed
+ * out as the parse, so a state can't be overwritten once made.  Instead,
+ * the parser avoids making states which would fall off the beam at once.
+ */
+class BeamBuffers {
+  private static final ThreadLocal<BeamBuffers> buffers = ThreadLocal.withInitial(BeamBuffers::new);
+
+  static BeamBuffers get() {
+    return buffers.get();
+  }
+
+  final FeatureHashes features = new FeatureHashes();
+  private float[] scores = new float[0];
+
+  final ArrayBeam transitions = new ArrayBeam(8);
+
+  ArrayBeam beam = new ArrayBeam(8);
+  State[] states = new State[8];
+  ArrayBeam oldBeam = new ArrayBeam(8);
+  State[] oldStates = new State[8];
+
+  /** Empties the beams and makes room for a beam of the given size */
+  void reset(int maxBeamSize) {
+    beam.clear();
+    oldBeam.clear();
+    transitions.clear();
+    // one extra slot for the state added before the lowest is polled
+    if (states.length < maxBeamSize + 1) {
+      states = new State[maxBeamSize + 1];
+      oldStates = new State[maxBeamSize + 1];
+    }
+  }
+
+  /** Makes the beam the old beam, and an empty beam the beam */
+  void swap() {
+    ArrayBeam tempBeam = oldBeam;
+    oldBeam = beam;
+    beam = tempBeam;
+    beam.clear();
+
+    State[] tempStates = oldStates;
+    oldStates = states;
+    states = tempStates;
+    Arrays.fill(states, null);
+  }
+
+  /** Lets go of the states of the last sentence */
+  void release() {
+    Arrays.fill(states, null);
+    Arrays.fill(oldStates, null);
+  }
+
+  /** Returns zeroed scores for the given number of transitions */
+  float[] scores(int numTransitions) {
+    if (scores.length != numTransitions) {
+      scores = new float[numTransitions];
+    } else {
+      Arrays.fill(scores, 0.0f);
+    }
+    return scores;
+  }
+}
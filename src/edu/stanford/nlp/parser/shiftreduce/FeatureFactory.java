@@ -16,6 +16,17 @@ public abstract class FeatureFactory implements Serializable {
 
   abstract public List<String> featurize(State state, List<String> features);
 
+  /**
+   * Gives the features of a state to a FeatureSink.  By default this
+   * builds the strings of the features, which factories can avoid by
+   * giving the sink the pieces of each feature instead.
+   */
+  public void featurize(State state, FeatureSink features) {
+    for (String feature : featurize(state)) {
+      features.add(feature);
+    }
+  }
+
   enum Transition {
     LEFT, RIGHT, UNARY
   };
@@ -0,0 +1,64 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * Collects the 64 bit hashes of the features of a state rather than their
+ * strings.  The hash is FNV-1a over the characters of the feature, folded
+ * in piece by piece, so it is the same as {@link #hash(String)} of the
+ * feature's string, which is never built.
+ */
+class FeatureHashes extends FeatureSink {
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  private long[] hashes = new long[200];
+  private int size = 0;
+  private long hash = OFFSET_BASIS;
+
+  private static long fold(long hash, String piece) {
+    for (int i = 0; i < piece.length(); ++i) {
+      hash ^= piece.charAt(i);
+      hash *= PRIME;
+    }
+    return hash;
+  }
+
+  /** 0 marks an empty slot of a FeatureWeightTable, so no feature hashes to it */
+  private static long finish(long hash) {
+    return (hash == 0) ? 1 : hash;
+  }
+
+  public static long hash(String feature) {
+    return finish(fold(OFFSET_BASIS, feature));
+  }
+
+  @Override
+  public FeatureSink append(String piece) {
+    // as string concatenation does
+    hash = fold(hash, String.valueOf(piece));
+    return this;
+  }
+
+  @Override
+  public void end() {
+    if (size == hashes.length) {
+      hashes = Arrays.copyOf(hashes, size * 2);
+    }
+    hashes[size++] = finish(hash);
+    hash = OFFSET_BASIS;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long get(int i) {
+    return hashes[i];
+  }
+
+  public void clear() {
+    size = 0;
+    hash = OFFSET_BASIS;
+  }
+}
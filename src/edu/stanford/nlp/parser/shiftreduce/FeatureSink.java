@@ -0,0 +1,53 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Receives the features of a state from a {@link FeatureFactory}.
+ * <br>
+ * A feature is given as the pieces of its string: each call to
+ * {@link #end()} finishes a feature made of the pieces appended since the
+ * last one.  This lets a sink such as {@link FeatureHashes} use the
+ * features without ever concatenating their strings.
+ */
+public abstract class FeatureSink {
+
+  /** Appends a piece to the current feature. */
+  public abstract FeatureSink append(String piece);
+
+  /** Finishes the current feature. */
+  public abstract void end();
+
+  /** Adds a whole feature. */
+  public void add(String feature) {
+    append(feature).end();
+  }
+
+  /** Adds the features as strings to a list. */
+  public static class ToList extends FeatureSink {
+    private final List<String> features;
+    private final StringBuilder feature = new StringBuilder();
+
+    public ToList(List<String> features) {
+      this.features = features;
+    }
+
+    @Override
+    public FeatureSink append(String piece) {
+      feature.append(piece);
+      return this;
+    }
+
+    @Override
+    public void end() {
+      features.add(feature.toString());
+      feature.setLength(0);
+    }
+
+    @Override
+    public void add(String feature) {
+      features.add(feature);
+    }
+  }
+
+}
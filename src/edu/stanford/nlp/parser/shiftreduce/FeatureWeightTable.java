@@ -0,0 +1,115 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The feature weights of a PerceptronModel compiled for scoring.
+ * <br>
+ * Features are looked up by their {@link FeatureHashes} hash in an open
+ * addressing table of longs, next to which is the packed array of their
+ * nonzero weights, as in {@link Weight}.  Scoring a state therefore needs
+ * neither the strings of its features nor a Weight object per feature.
+ * <br>
+ * The table shares the packed arrays of the Weights it is built from
+ * rather than copying them, so it only adds a hash and a reference per
+ * slot, and it has between two and four slots per feature.  It must be
+ * rebuilt if those Weights change.
+ * <br>
+ * A feature which isn't in the model but whose hash is that of one which
+ * is would be scored as that feature.  With 64 bit hashes this is
+ * vanishingly unlikely; two features of the model hashing the same is
+ * checked for when the table is built.
+ */
+class FeatureWeightTable {
+  /** The hash of the feature in each slot, or 0 for an empty slot */
+  private final long[] keys;
+  /** The packed weights of the feature in each slot */
+  private final long[][] weights;
+  private final int mask;
+  private final int numFeatures;
+
+  private FeatureWeightTable(int numFeatures) {
+    int capacity = Integer.highestOneBit(Math.max(numFeatures, 1) * 2 - 1) << 1;
+    keys = new long[capacity];
+    weights = new long[capacity][];
+    mask = capacity - 1;
+    this.numFeatures = numFeatures;
+  }
+
+  /** Thrown when two features of a model have the same hash */
+  static class HashCollisionException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    HashCollisionException(String feature, String other) {
+      super("Features " + other + " and " + feature + " have the same hash");
+    }
+  }
+
+  /**
+   * Compiles a map from features to weights.
+   *
+   * @param hash The hash of a feature; always {@link FeatureHashes#hash(String)},
+   *             except in tests which need features which collide
+   * @throws HashCollisionException if two of the features hash the same
+   */
+  static FeatureWeightTable build(Map<String, Weight> featureWeights, ToLongFunction<String> hash)
+      throws HashCollisionException {
+    int numFeatures = 0;
+    for (Weight weight : featureWeights.values()) {
+      if (weight.size() > 0) {
+        ++numFeatures;
+      }
+    }
+
+    FeatureWeightTable table = new FeatureWeightTable(numFeatures);
+    String[] features = new String[table.keys.length];
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      Weight weight = entry.getValue();
+      if (weight.size() == 0) {
+        continue;
+      }
+      long h = hash.applyAsLong(entry.getKey());
+      int slot = table.slot(h);
+      if (table.keys[slot] != 0) {
+        throw new HashCollisionException(entry.getKey(), features[slot]);
+      }
+      table.keys[slot] = h;
+      table.weights[slot] = weight.packed;
+      features[slot] = entry.getKey();
+    }
+    return table;
+  }
+
+  /** Returns the slot holding a hash, or the empty slot where it would go. */
+  private int slot(long hash) {
+    int slot = (int) (hash ^ (hash >>> 32)) & mask;
+    while (keys[slot] != 0 && keys[slot] != hash) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * Adds the weights of the features to the scores of each transition,
+   * ignoring features not in the model, in the same order as
+   * {@link Weight#score} would.
+   */
+  public void score(FeatureHashes features, float[] scores) {
+    for (int i = 0; i < features.size(); ++i) {
+      int slot = slot(features.get(i));
+      if (keys[slot] == 0) {
+        continue;
+      }
+      for (final long pack : weights[slot]) {
+        final int index = (int) (pack >>> 32);
+        final float score = Float.intBitsToFloat((int) (pack & 0xFFFFFFFF));
+        scores[index] += score;
+      }
+    }
+  }
+}
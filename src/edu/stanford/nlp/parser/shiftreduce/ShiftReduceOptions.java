@@ -28,6 +28,14 @@ public class ShiftReduceOptions extends Options {
 
   public String featureFactoryClass = "edu.stanford.nlp.parser.shiftreduce.BasicFeatureFactory";
 
+  /**
+   * Parse with a new PriorityQueue for every step, as the parser used
+   * to, rather than with the reusable array beam.  Both give the same
+   * parses; the array beam allocates far less.  Models saved before this
+   * option existed read it as false.
+   */
+  public boolean priorityQueueBeam = false;
+
   protected int setOptionFlag(String[] args, int i) {
     int j = super.setOptionFlag(args, i);
     if (i != j) {
@@ -45,6 +53,12 @@ public class ShiftReduceOptions extends Options {
     } else if (args[i].equalsIgnoreCase("-nocompoundUnaries")) {
       compoundUnaries = false;
       i++;
+    } else if (args[i].equalsIgnoreCase("-priorityQueueBeam")) {
+      priorityQueueBeam = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-noPriorityQueueBeam")) {
+      priorityQueueBeam = false;
+      i++;
     } else if (args[i].equalsIgnoreCase("-featureFactory")) {
       featureFactoryClass = args[i + 1];
       i += 2;
@@ -65,6 +65,9 @@ public class ShiftReduceParserQuery implements ParserQuery {
     Tsurgeon.parseOperation("[move punc >-1 top] [if exists single prune single]");
 
   private boolean parseInternal() {
+    if (!parser.op.priorityQueueBeam) {
+      return parseInternalArrayBeam();
+    }
     final int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
 
     success = true;
@@ -122,20 +125,117 @@ public class ShiftReduceParserQuery implements ParserQuery {
       }
     }
     if (beam.size() == 0) {
-      success = false;
-      unparsable = true;
-      debinarized = null;
-      finalState = null;
-      bestParses = Collections.emptyList();
-    } else {
-      // TODO: filter out beam elements that aren't finished
-      bestParses = Generics.newArrayList(beam);
-      Collections.sort(bestParses, beam.comparator());
-      Collections.reverse(bestParses);
-      finalState = bestParses.get(0);
-      debinarized = debinarizer.transformTree(finalState.stack.peek());
-      debinarized = Tsurgeon.processPattern(rearrangeFinalPunctuationTregex, rearrangeFinalPunctuationTsurgeon, debinarized);
+      return setFailed();
     }
+    // TODO: filter out beam elements that aren't finished
+    return setBestParses(Generics.newArrayList(beam));
+  }
+
+  /**
+   * The same search as with PriorityQueues, but over the reusable beams
+   * of this thread's {@link BeamBuffers}.  The beams move their states
+   * exactly as the PriorityQueues would, so the parses are the same.
+   * A transition whose state would be added to a full beam only to be
+   * polled right back off is not applied at all.
+   */
+  private boolean parseInternalArrayBeam() {
+    final int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
+
+    success = true;
+    unparsable = false;
+    BeamBuffers buffers = BeamBuffers.get();
+    buffers.reset(maxBeamSize);
+    ArrayBeam transitions = buffers.transitions;
+    buffers.beam.add(0, initialState.score());
+    buffers.states[0] = initialState;
+    while (buffers.beam.size() > 0) {
+      buffers.swap();
+      ArrayBeam oldBeam = buffers.oldBeam;
+      State[] oldStates = buffers.oldStates;
+      ArrayBeam beam = buffers.beam;
+      State[] states = buffers.states;
+      // the slot of the state last polled off the beam
+      int freeSlot = -1;
+      State bestState = null;
+      for (int i = 0; i < oldBeam.size(); ++i) {
+        State state = oldStates[oldBeam.id(i)];
+        parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints, transitions, buffers);
+        for (int j = 0; j < transitions.size(); ++j) {
+          double score = state.score + transitions.score(j);
+          if (beam.size() == maxBeamSize && score < beam.lowestScore()) {
+            // The new state would go to the top of the heap and be
+            // polled at once, so nothing else on the beam could be
+            // better than it.  Move the heap the same way without it.
+            beam.add(-1, score);
+            beam.poll();
+            continue;
+          }
+          Transition transition = parser.model.transitionIndex.get(transitions.id(j));
+          State newState = transition.apply(state, transitions.score(j));
+          if (bestState == null || bestState.score() < newState.score()) {
+            bestState = newState;
+          }
+          int slot = (freeSlot >= 0) ? freeSlot : beam.size();
+          freeSlot = -1;
+          states[slot] = newState;
+          beam.add(slot, newState.score());
+          if (beam.size() > maxBeamSize) {
+            freeSlot = beam.poll();
+            states[freeSlot] = null;
+          }
+        }
+      }
+      if (beam.size() == 0) {
+        // The same fallback as parseInternal; see there
+        for (int i = 0; i < oldBeam.size(); ++i) {
+          State state = oldStates[oldBeam.id(i)];
+          Transition transition = parser.model.findEmergencyTransition(state, constraints);
+          if (transition != null) {
+            State newState = transition.apply(state);
+            if (bestState == null || bestState.score() < newState.score()) {
+              bestState = newState;
+            }
+            states[beam.size()] = newState;
+            beam.add(beam.size(), newState.score());
+          }
+        }
+      }
+
+      if (bestState == null || bestState.isFinished()) {
+        break;
+      }
+    }
+
+    ArrayBeam beam = buffers.beam;
+    if (beam.size() == 0) {
+      buffers.release();
+      return setFailed();
+    }
+    List<State> finalStates = Generics.newArrayList(beam.size());
+    for (int i = 0; i < beam.size(); ++i) {
+      finalStates.add(buffers.states[beam.id(i)]);
+    }
+    buffers.release();
+    return setBestParses(finalStates);
+  }
+
+  private boolean setFailed() {
+    success = false;
+    unparsable = true;
+    debinarized = null;
+    finalState = null;
+    bestParses = Collections.emptyList();
+    return success;
+  }
+
+  /** Sorts the states left on the beam, best first, and debinarizes the best one */
+  private boolean setBestParses(List<State> states) {
+    bestParses = states;
+    Collections.sort(bestParses, ScoredComparator.ASCENDING_COMPARATOR);
+    Collections.reverse(bestParses);
+    finalState = bestParses.get(0);
+    debinarized = debinarizer.transformTree(finalState.stack.peek());
+    debinarized = Tsurgeon.processPattern(rearrangeFinalPunctuationTregex, rearrangeFinalPunctuationTsurgeon, debinarized);
     return success;
   }
 
@@ -7,6 +7,8 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 
 
@@ -29,6 +31,17 @@ public class AnnotationPipeline implements Annotator {
   private final List<Annotator> annotators;
   private List<MutableLong> accumulatedTime;
 
+  /**
+   * If set, sentence level annotators split each document into one task
+   * per sentence on this pool, with the other annotators acting as
+   * barriers between them.  The pool is shared by every document this
+   * pipeline annotates, so a long document can use the whole pool.
+   */
+  private volatile ForkJoinPool sentencePool;
+
+  /** If set, the time and resources each annotator uses on each document are recorded here */
+  private PipelineMetrics metrics;
+
   public AnnotationPipeline(List<Annotator> annotators) {
     this.annotators = annotators;
     if (TIME) {
@@ -51,21 +64,84 @@ public class AnnotationPipeline implements Annotator {
     }
   }
 
+  /** The annotators of this pipeline, in the order they are run */
+  public List<Annotator> getAnnotators() {
+    return Collections.unmodifiableList(annotators);
+  }
+
+  /**
+   * Annotate the sentences of each document in parallel on a shared pool
+   * with the given number of threads, in addition to whatever parallelism
+   * there is across documents.  A value of 0 or less turns this off.
+   * The pool this replaces, if any, is shut down once the documents
+   * already using it are done with it.
+   *
+   * @param numThreads The number of threads in the shared sentence pool
+   */
+  public void setSentenceThreads(int numThreads) {
+    ForkJoinPool old;
+    synchronized (this) {
+      old = sentencePool;
+      sentencePool = (numThreads > 0) ? new ForkJoinPool(numThreads) : null;
+    }
+    if (old != null) {
+      old.shutdown();
+    }
+  }
+
+  /**
+   * Shut down the threads of the sentence pool set with
+   * {@link #setSentenceThreads(int)}, if there is one.  Call this when
+   * done with the pipeline; it then annotates sentences on the calling
+   * thread, as if the number of sentence threads had been set to 0.
+   */
+  public void closeSentencePool() {
+    setSentenceThreads(0);
+  }
+
+  /**
+   * Record per-annotator latency, CPU time and allocation for every
+   * document this pipeline annotates.  The same metrics may be shared by
+   * several pipelines.  Null turns this off.
+   */
+  public void setMetrics(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * The name the i-th annotator is reported under in the metrics.
+   * By default this is its class name.
+   */
+  protected String annotatorName(int i) {
+    return StringUtils.getShortClassName(annotators.get(i));
+  }
+
   /**
    * Run the pipeline on an input annotation.
    * The annotation is modified in place.
+   * If the calling thread is interrupted, the pipeline stops before the
+   * next annotator with a {@link RuntimeInterruptedException}.
    *
    * @param annotation The input annotation, usually a raw document
    */
   @Override
   public void annotate(Annotation annotation) {
+    PipelineMetrics metrics = this.metrics;
+    if (metrics != null) {
+      annotateWithMetrics(annotation, metrics);
+      return;
+    }
     Iterator<MutableLong> it = accumulatedTime.iterator();
     Timing t = new Timing();
     for (Annotator annotator : annotators) {
       if (TIME) {
         t.start();
       }
-      annotator.annotate(annotation);
+      annotateWith(annotator, annotation);
       if (TIME) {
         long elapsed = t.stop();
         MutableLong m = it.next();
@@ -74,6 +150,45 @@ public class AnnotationPipeline implements Annotator {
     }
   }
 
+  private void annotateWith(Annotator annotator, Annotation annotation) {
+    if (Thread.interrupted()) {
+      throw new RuntimeInterruptedException();
+    }
+    ForkJoinPool pool = sentencePool;
+    if (pool != null && annotator instanceof SentenceAnnotator) {
+      try {
+        ((SentenceAnnotator) annotator).annotate(annotation, pool);
+      } catch (RejectedExecutionException e) {
+        // the pool was replaced and shut down before this document got to it
+        annotator.annotate(annotation);
+      }
+    } else {
+      annotator.annotate(annotation);
+    }
+  }
+
+  private void annotateWithMetrics(Annotation annotation, PipelineMetrics metrics) {
+    int num = annotators.size();
+    long[] wallNanos = new long[num];
+    long[] cpuNanos = new long[num];
+    long[] allocatedBytes = new long[num];
+    List<String> names = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      long cpuStart = PipelineMetrics.threadCpuTime();
+      long allocatedStart = PipelineMetrics.threadAllocatedBytes();
+      long start = System.nanoTime();
+      annotateWith(annotators.get(i), annotation);
+      wallNanos[i] = System.nanoTime() - start;
+      cpuNanos[i] = (cpuStart < 0) ? -1 : PipelineMetrics.threadCpuTime() - cpuStart;
+      allocatedBytes[i] = (allocatedStart < 0) ? -1 : PipelineMetrics.threadAllocatedBytes() - allocatedStart;
+      names.add(annotatorName(i));
+      if (TIME) {
+        accumulatedTime.get(i).incValue(wallNanos[i] / 1000000);
+      }
+    }
+    metrics.record(annotation, names, wallNanos, cpuNanos, allocatedBytes);
+  }
+
   /**
    * Annotate a collection of input annotations IN PARALLEL, making use of
    * all available cores.
@@ -554,7 +554,8 @@ public class AnnotatorFactories {
 
       @Override
       public String additionalSignature() {
-        return "sentiment.model=" + properties.get("sentiment.model");
+        return "sentiment.model=" + properties.get("sentiment.model") +
+            "sentiment.nthreads=" + properties.getProperty("sentiment.nthreads", properties.getProperty("nthreads", ""));
       }
     };
   }
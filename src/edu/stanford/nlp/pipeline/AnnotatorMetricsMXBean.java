@@ -0,0 +1,47 @@
+package edu.stanford.nlp.pipeline;
+
+/**
+ * The statistics of one annotator which {@link PipelineMetrics} makes
+ * available through JMX, e.g. in jconsole or VisualVM.  All times are
+ * in milliseconds.
+ *
+ * @see PipelineMetrics.AnnotatorMetrics
+ */
+public interface AnnotatorMetricsMXBean {
+
+  /** The name of the annotator, such as "pos" */
+  String getName();
+
+  /** The number of documents the annotator has processed */
+  long getDocuments();
+
+  /** The number of tokens in those documents */
+  long getTokens();
+
+  /** The number of sentences in those documents */
+  long getSentences();
+
+  /** The total wall clock time spent in the annotator */
+  double getTotalMillis();
+
+  double getMeanMillis();
+
+  double getMedianMillis();
+
+  double getP90Millis();
+
+  double getP99Millis();
+
+  /** The longest time the annotator spent on one document */
+  double getMaxMillis();
+
+  /** Wall clock time per thousand tokens */
+  double getMillisPerThousandTokens();
+
+  /** The CPU time of the calling thread, or 0 if thread CPU time is not available */
+  double getCpuMillis();
+
+  /** The bytes allocated by the calling thread, or 0 if allocation counting is not available */
+  long getAllocatedBytes();
+
+}
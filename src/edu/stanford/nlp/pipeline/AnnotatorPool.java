@@ -3,6 +3,7 @@ package edu.stanford.nlp.pipeline;
 import java.util.Map;
 
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.ModelRegistry;
 
 /**
  * An object for keeping track of Annotators. Typical use is to allow multiple
@@ -58,7 +59,10 @@ public class AnnotatorPool {
         // existing pipelines which use the old annotator, but if
         // those are all gone, then the old annotator will be garbage
         // collected and memory will be freed up
-        annotators.remove(name);
+        Annotator old = annotators.remove(name);
+        if (old != null) {
+          ModelRegistry.releaseAll(old);
+        }
       }
       // nothing to do if an annotator with same name and signature already exists
     } else {
@@ -87,4 +91,16 @@ public class AnnotatorPool {
     return this.annotators.get(name);
   }
 
+  /**
+   * Drop all of the annotators created so far, releasing the references
+   * they hold in the {@link ModelRegistry}.  Pipelines already using them
+   * are not affected.
+   */
+  public synchronized void clear() {
+    for (Annotator annotator : annotators.values()) {
+      ModelRegistry.releaseAll(annotator);
+    }
+    annotators.clear();
+  }
+
 }
@@ -1,5 +1,6 @@
 package edu.stanford.nlp.pipeline;
 
+import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.parser.nndep.DependencyParser;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
@@ -10,6 +11,7 @@ import edu.stanford.nlp.util.MetaClass;
 import edu.stanford.nlp.util.PropertiesUtils;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class adds dependency parse information to an Annotation.
@@ -63,10 +65,46 @@ public class DependencyParseAnnotator extends SentenceAnnotator {
     return maxTime;
   }
 
+  /**
+   * If the parser has a <code>testBatchSize</code> greater than 1, all of
+   * the sentences of the document are parsed in lockstep batches on the
+   * calling thread, rather than one at a time.  Batching favors
+   * throughput over latency; run several documents at once to use more
+   * than one core.  Otherwise, and whenever there is a time limit on
+   * each sentence, sentences are parsed one at a time as usual.
+   */
+  @Override
+  public void annotate(Annotation annotation) {
+    if (batching() && annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+      List<GrammaticalStructure> parses = parser.predictBatch(sentences);
+      for (int i = 0; i < sentences.size(); ++i) {
+        setDependencies(sentences.get(i), parses.get(i));
+      }
+    } else {
+      super.annotate(annotation);
+    }
+  }
+
+  @Override
+  public void annotate(Annotation annotation, ForkJoinPool pool) {
+    if (batching()) {
+      annotate(annotation);
+    } else {
+      super.annotate(annotation, pool);
+    }
+  }
+
+  private boolean batching() {
+    return parser.config.testBatchSize > 1 && maxTime <= 0;
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    GrammaticalStructure gs = parser.predict(sentence);
+    setDependencies(sentence, parser.predict(sentence));
+  }
 
+  private void setDependencies(CoreMap sentence, GrammaticalStructure gs) {
     SemanticGraph deps = SemanticGraphFactory.makeFromTree(gs, SemanticGraphFactory.Mode.COLLAPSED, extraDependencies, true, null),
                   uncollapsedDeps = SemanticGraphFactory.makeFromTree(gs, SemanticGraphFactory.Mode.BASIC, extraDependencies, true, null),
                   ccDeps = SemanticGraphFactory.makeFromTree(gs, SemanticGraphFactory.Mode.CCPROCESSED, extraDependencies, true, null);
@@ -74,9 +112,6 @@ public class DependencyParseAnnotator extends SentenceAnnotator {
     sentence.set(SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class, deps);
     sentence.set(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class, uncollapsedDeps);
     sentence.set(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class, ccDeps);
-
-
-
   }
 
   @Override
@@ -97,7 +132,9 @@ public class DependencyParseAnnotator extends SentenceAnnotator {
 
   public static String signature(String annotatorName, Properties props) {
     return annotatorName +
-            ".extradependencies:" + props.getProperty(annotatorName + ".extradependencies", "NONE").toLowerCase();
+            ".extradependencies:" + props.getProperty(annotatorName + ".extradependencies", "NONE").toLowerCase() +
+            annotatorName + ".floatInference:" + props.getProperty(annotatorName + ".floatInference", "false") +
+            annotatorName + ".testBatchSize:" + props.getProperty(annotatorName + ".testBatchSize", "1");
   }
 
 }
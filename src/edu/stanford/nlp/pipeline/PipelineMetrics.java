@@ -0,0 +1,607 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-annotator statistics for one or more {@link AnnotationPipeline}s:
+ * a histogram of the time spent on each document, the number of tokens
+ * and sentences processed, and the CPU time and bytes allocated by the
+ * annotating thread.  It also keeps a histogram of sentence lengths and
+ * a breakdown of the slowest documents seen, which usually explains why
+ * a few documents take much longer than the median one.
+ * <br>
+ * Turn it on with {@link AnnotationPipeline#setMetrics(PipelineMetrics)},
+ * or the <code>metrics</code> property of {@link StanfordCoreNLP}.
+ * Several pipelines can share one PipelineMetrics, in which case the
+ * statistics of annotators with the same name are combined.  The
+ * statistics of each annotator can be published through JMX with
+ * {@link #registerMBeans()}, and are available in the Prometheus text
+ * format from {@link #toPrometheus()}, which is what the
+ * <code>/metrics</code> endpoint of {@link StanfordCoreNLPServer} returns.
+ * <br>
+ * CPU time and allocation are measured with the {@link ThreadMXBean} of
+ * the thread which calls the annotator, so work an annotator hands off
+ * to its own threads (for example with <code>nthreads</code> or
+ * <code>sentenceThreads</code>) is not counted in them.  Wall clock times
+ * always include it.
+ */
+public class PipelineMetrics {
+
+  /** Bucket upper bounds for the time spent on one document, in microseconds */
+  private static final long[] LATENCY_BOUNDS = { 50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+                                                 100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000,
+                                                 25000000, 60000000 };
+
+  /** Bucket upper bounds for the number of tokens in a sentence */
+  private static final long[] SENTENCE_LENGTH_BOUNDS = { 5, 10, 20, 30, 40, 50, 75, 100, 150, 200, 300, 500, 1000 };
+
+  /** The number of slow documents to keep */
+  private static final int NUM_SLOWEST = 10;
+
+  private static final String JMX_DOMAIN = "edu.stanford.nlp";
+
+  private final String name;
+  private final Map<String, AnnotatorMetrics> annotators = new LinkedHashMap<>();
+  private final AnnotatorMetrics documents = new AnnotatorMetrics("pipeline");
+  private final Histogram sentenceLengths = new Histogram(SENTENCE_LENGTH_BOUNDS);
+  /** the slowest documents seen, slowest first */
+  private final List<DocumentSample> slowest = new ArrayList<>();
+
+  private MBeanServer mbeanServer; // = null until registerMBeans is called
+  /** The MXBeans this published, and so may unregister */
+  private final Set<ObjectName> registered = new HashSet<>();
+
+  /**
+   * @param name Identifies these metrics in JMX and the Prometheus output,
+   *             in case there are several in one process
+   */
+  public PipelineMetrics(String name) {
+    this.name = name;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /** The statistics of the annotator with the given name, created if needed */
+  public AnnotatorMetrics annotator(String annotatorName) {
+    synchronized (annotators) {
+      AnnotatorMetrics metrics = annotators.get(annotatorName);
+      if (metrics == null) {
+        metrics = new AnnotatorMetrics(annotatorName);
+        annotators.put(annotatorName, metrics);
+        if (mbeanServer != null) {
+          register(metrics);
+        }
+      }
+      return metrics;
+    }
+  }
+
+  /** The statistics of every annotator seen so far, in the order they were first run */
+  public List<AnnotatorMetrics> annotators() {
+    synchronized (annotators) {
+      return new ArrayList<>(annotators.values());
+    }
+  }
+
+  /** The statistics of the pipeline as a whole, summed over all of its annotators */
+  public AnnotatorMetrics documents() {
+    return documents;
+  }
+
+  /** The number of tokens in each sentence annotated */
+  public Histogram sentenceLengths() {
+    return sentenceLengths;
+  }
+
+  /** The slowest documents seen so far, slowest first */
+  public List<DocumentSample> slowestDocuments() {
+    synchronized (slowest) {
+      return new ArrayList<>(slowest);
+    }
+  }
+
+
+  // -- Measurement
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  /**
+   * The CPU time of the current thread in nanoseconds, or -1 if the JVM
+   * does not measure it.
+   */
+  public static long threadCpuTime() {
+    return (threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()) ?
+        threads.getCurrentThreadCpuTime() : -1;
+  }
+
+  /**
+   * The number of bytes allocated so far by the current thread, or -1 if
+   * the JVM does not count them.
+   */
+  public static long threadAllocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+      if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+        return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Record the annotation of one document.  The arrays give, for each
+   * annotator run on the document in order, its wall clock time, thread
+   * CPU time and bytes allocated, all as differences of the values above
+   * (negative if not available).
+   */
+  public void record(Annotation annotation, List<String> annotatorNames, long[] wallNanos, long[] cpuNanos, long[] allocatedBytes) {
+    List<CoreLabel> tokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    int numTokens = (tokens == null) ? 0 : tokens.size();
+    int numSentences = (sentences == null) ? 0 : sentences.size();
+    int longestSentence = 0;
+    if (sentences != null) {
+      for (CoreMap sentence : sentences) {
+        List<CoreLabel> sentenceTokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+        int length = (sentenceTokens == null) ? 0 : sentenceTokens.size();
+        sentenceLengths.record(length);
+        longestSentence = Math.max(longestSentence, length);
+      }
+    }
+
+    long totalWall = 0, totalCpu = 0, totalAllocated = 0;
+    for (int i = 0; i < annotatorNames.size(); ++i) {
+      annotator(annotatorNames.get(i)).record(wallNanos[i], cpuNanos[i], allocatedBytes[i], numTokens, numSentences);
+      totalWall += wallNanos[i];
+      totalCpu += Math.max(0, cpuNanos[i]);
+      totalAllocated += Math.max(0, allocatedBytes[i]);
+    }
+    documents.record(totalWall, totalCpu, totalAllocated, numTokens, numSentences);
+
+    synchronized (slowest) {
+      if (slowest.size() < NUM_SLOWEST || totalWall > slowest.get(slowest.size() - 1).nanos) {
+        DocumentSample sample = new DocumentSample(annotation.get(CoreAnnotations.DocIDAnnotation.class), totalWall,
+                                                   numTokens, numSentences, longestSentence,
+                                                   annotatorNames, wallNanos);
+        int index = 0;
+        while (index < slowest.size() && slowest.get(index).nanos >= totalWall) {
+          ++index;
+        }
+        slowest.add(index, sample);
+        if (slowest.size() > NUM_SLOWEST) {
+          slowest.remove(slowest.size() - 1);
+        }
+      }
+    }
+  }
+
+
+  // -- JMX
+
+  /**
+   * Publish the statistics of each annotator, and of the pipeline as a
+   * whole, as MXBeans named
+   * <code>edu.stanford.nlp:type=AnnotatorMetrics,pipeline=</code><i>name</i><code>,annotator=</code><i>annotator</i>.
+   * Annotators first seen later are published as they appear.
+   * <br>
+   * If another PipelineMetrics of the same name has already published an
+   * annotator, a warning is logged and this one's statistics for it are
+   * not published; give each its own name.
+   */
+  public void registerMBeans() {
+    synchronized (annotators) {
+      if (mbeanServer != null) {
+        return;
+      }
+      mbeanServer = ManagementFactory.getPlatformMBeanServer();
+      register(documents);
+      for (AnnotatorMetrics metrics : annotators.values()) {
+        register(metrics);
+      }
+    }
+  }
+
+  /** Remove the MXBeans published by {@link #registerMBeans()} */
+  public void unregisterMBeans() {
+    synchronized (annotators) {
+      if (mbeanServer == null) {
+        return;
+      }
+      List<AnnotatorMetrics> all = new ArrayList<>(annotators.values());
+      all.add(documents);
+      for (AnnotatorMetrics metrics : all) {
+        try {
+          ObjectName objectName = objectName(metrics);
+          // leave alone those another PipelineMetrics of the same name published
+          if (registered.remove(objectName) && mbeanServer.isRegistered(objectName)) {
+            mbeanServer.unregisterMBean(objectName);
+          }
+        } catch (JMException e) {
+          Redwood.log(Redwood.WARN, "Could not unregister metrics for " + metrics.getName() + ": " + e);
+        }
+      }
+      mbeanServer = null;
+    }
+  }
+
+  private ObjectName objectName(AnnotatorMetrics metrics) throws JMException {
+    return new ObjectName(JMX_DOMAIN + ":type=AnnotatorMetrics,pipeline=" + ObjectName.quote(name) +
+                          ",annotator=" + ObjectName.quote(metrics.getName()));
+  }
+
+  private void register(AnnotatorMetrics metrics) {
+    try {
+      ObjectName objectName = objectName(metrics);
+      if (mbeanServer.isRegistered(objectName)) {
+        Redwood.log(Redwood.WARN, "Metrics " + objectName + " are already published by another pipeline named " + name +
+                    "; not publishing these.  Give each pipeline its own metrics.name");
+      } else {
+        mbeanServer.registerMBean(metrics, objectName);
+        registered.add(objectName);
+      }
+    } catch (JMException e) {
+      Redwood.log(Redwood.WARN, "Could not register metrics for " + metrics.getName() + ": " + e);
+    }
+  }
+
+
+  // -- Output
+
+  /**
+   * The statistics in the Prometheus text exposition format.
+   * Latencies are histograms in seconds, labeled with the pipeline and
+   * annotator name; the whole pipeline is the annotator "pipeline".
+   */
+  public String toPrometheus() {
+    List<AnnotatorMetrics> all = annotators();
+    all.add(documents);
+    String pipelineLabel = "pipeline=\"" + escapeLabel(name) + '"';
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("# HELP corenlp_annotator_latency_seconds Time spent annotating one document\n");
+    sb.append("# TYPE corenlp_annotator_latency_seconds histogram\n");
+    for (AnnotatorMetrics metrics : all) {
+      String labels = pipelineLabel + ",annotator=\"" + escapeLabel(metrics.getName()) + '"';
+      appendHistogram(sb, "corenlp_annotator_latency_seconds", labels, metrics.latency, 1e-6);
+    }
+    appendCounter(sb, all, pipelineLabel, "corenlp_annotator_cpu_seconds_total", "CPU time of the annotating thread",
+                  m -> String.valueOf(m.cpuNanos.sum() / 1e9));
+    appendCounter(sb, all, pipelineLabel, "corenlp_annotator_allocated_bytes_total", "Bytes allocated by the annotating thread",
+                  m -> String.valueOf(m.allocatedBytes.sum()));
+    appendCounter(sb, all, pipelineLabel, "corenlp_annotator_tokens_total", "Tokens in the documents annotated",
+                  m -> String.valueOf(m.tokens.sum()));
+    appendCounter(sb, all, pipelineLabel, "corenlp_annotator_sentences_total", "Sentences in the documents annotated",
+                  m -> String.valueOf(m.sentences.sum()));
+
+    sb.append("# HELP corenlp_sentence_tokens Number of tokens in each sentence\n");
+    sb.append("# TYPE corenlp_sentence_tokens histogram\n");
+    appendHistogram(sb, "corenlp_sentence_tokens", pipelineLabel, sentenceLengths, 1.0);
+    return sb.toString();
+  }
+
+  private static void appendCounter(StringBuilder sb, List<AnnotatorMetrics> all, String pipelineLabel,
+                                    String metric, String help, java.util.function.Function<AnnotatorMetrics, String> value) {
+    sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(metric).append(" counter\n");
+    for (AnnotatorMetrics metrics : all) {
+      sb.append(metric).append('{').append(pipelineLabel).append(",annotator=\"").append(escapeLabel(metrics.getName()))
+          .append("\"} ").append(value.apply(metrics)).append('\n');
+    }
+  }
+
+  private static void appendHistogram(StringBuilder sb, String metric, String labels, Histogram histogram, double scale) {
+    long[] counts = histogram.counts();
+    long cumulative = 0;
+    for (int i = 0; i < histogram.bounds.length; ++i) {
+      cumulative += counts[i];
+      sb.append(metric).append("_bucket{").append(labels).append(",le=\"").append(histogram.bounds[i] * scale)
+          .append("\"} ").append(cumulative).append('\n');
+    }
+    cumulative += counts[histogram.bounds.length];
+    sb.append(metric).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+    sb.append(metric).append("_sum{").append(labels).append("} ").append(histogram.sum() * scale).append('\n');
+    sb.append(metric).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /**
+   * A human readable summary: latency percentiles, CPU time and
+   * allocation for each annotator, the distribution of sentence lengths,
+   * and where the time went in the slowest documents.
+   */
+  @Override
+  public String toString() {
+    List<AnnotatorMetrics> all = annotators();
+    all.add(documents);
+    StringBuilder sb = new StringBuilder();
+    sb.append("Annotation pipeline metrics for ").append(name).append(":\n");
+    sb.append(String.format(Locale.ROOT, "%-20s %8s %9s %9s %9s %9s %9s %10s %9s %10s%n", "annotator", "docs",
+                            "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "ms/1k tok", "cpu sec", "alloc MB"));
+    for (AnnotatorMetrics metrics : all) {
+      sb.append(String.format(Locale.ROOT, "%-20s %8d %9.1f %9.1f %9.1f %9.1f %9.1f %10.2f %9.1f %10.1f%n",
+                              metrics.getName(), metrics.getDocuments(), metrics.getMeanMillis(),
+                              metrics.getMedianMillis(), metrics.getP90Millis(), metrics.getP99Millis(),
+                              metrics.getMaxMillis(), metrics.getMillisPerThousandTokens(),
+                              metrics.getCpuMillis() / 1000.0, metrics.getAllocatedBytes() / 1048576.0));
+    }
+    sb.append(String.format(Locale.ROOT, "Sentence length: %d sentences, median %.0f tokens, p99 %.0f tokens, max %d tokens%n",
+                            sentenceLengths.count(), sentenceLengths.quantile(0.5), sentenceLengths.quantile(0.99),
+                            sentenceLengths.max()));
+    List<DocumentSample> slow = slowestDocuments();
+    if ( ! slow.isEmpty()) {
+      sb.append("Slowest documents:\n");
+      for (DocumentSample sample : slow) {
+        sb.append("  ").append(sample).append('\n');
+      }
+    }
+    return sb.toString().trim();
+  }
+
+
+  /**
+   * A histogram over fixed buckets, safe to update from several threads.
+   * Quantiles are interpolated linearly within a bucket, so they are only
+   * as precise as the buckets; the minimum and maximum are exact.
+   */
+  public static class Histogram {
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param bounds The inclusive upper bounds of the buckets, in
+     *               increasing order; values above the last bound go in
+     *               an overflow bucket
+     */
+    public Histogram(long[] bounds) {
+      this.bounds = bounds.clone();
+      this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void record(long value) {
+      int bucket = Arrays.binarySearch(bounds, value);
+      if (bucket < 0) {
+        bucket = -bucket - 1;
+      }
+      counts.incrementAndGet(bucket);
+      sum.add(value);
+      long previous;
+      while (value < (previous = min.get())) {
+        if (min.compareAndSet(previous, value)) {
+          break;
+        }
+      }
+      while (value > (previous = max.get())) {
+        if (max.compareAndSet(previous, value)) {
+          break;
+        }
+      }
+    }
+
+    /** The number of values in each bucket, with the overflow bucket last */
+    public long[] counts() {
+      long[] result = new long[counts.length()];
+      for (int i = 0; i < result.length; ++i) {
+        result[i] = counts.get(i);
+      }
+      return result;
+    }
+
+    public long count() {
+      long total = 0;
+      for (long count : counts()) {
+        total += count;
+      }
+      return total;
+    }
+
+    public long sum() {
+      return sum.sum();
+    }
+
+    /** The smallest value recorded, or 0 if there are none */
+    public long min() {
+      long value = min.get();
+      return (value == Long.MAX_VALUE) ? 0 : value;
+    }
+
+    public long max() {
+      return max.get();
+    }
+
+    /**
+     * An estimate of the given quantile, between 0 and 1, or 0 if
+     * nothing has been recorded.
+     */
+    public double quantile(double q) {
+      long[] snapshot = counts();
+      long total = 0;
+      for (long count : snapshot) {
+        total += count;
+      }
+      if (total == 0) {
+        return 0.0;
+      }
+      double rank = q * total;
+      long seen = 0;
+      for (int i = 0; i < snapshot.length; ++i) {
+        if (snapshot[i] > 0 && seen + snapshot[i] >= rank) {
+          double lower = Math.max((i == 0) ? 0.0 : bounds[i - 1], min());
+          double upper = (i < bounds.length) ? Math.min(bounds[i], max()) : max();
+          double fraction = (rank - seen) / snapshot[i];
+          return lower + Math.max(0.0, fraction) * Math.max(0.0, upper - lower);
+        }
+        seen += snapshot[i];
+      }
+      return max();
+    }
+  }
+
+
+  /** The statistics of one annotator; see {@link AnnotatorMetricsMXBean} */
+  public static class AnnotatorMetrics implements AnnotatorMetricsMXBean {
+    private final String name;
+    /** in microseconds */
+    private final Histogram latency = new Histogram(LATENCY_BOUNDS);
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder sentences = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    AnnotatorMetrics(String name) {
+      this.name = name;
+    }
+
+    void record(long wallNanos, long cpu, long allocated, int numTokens, int numSentences) {
+      latency.record(wallNanos / 1000);
+      tokens.add(numTokens);
+      sentences.add(numSentences);
+      if (cpu > 0) {
+        cpuNanos.add(cpu);
+      }
+      if (allocated > 0) {
+        allocatedBytes.add(allocated);
+      }
+    }
+
+    /** The distribution of time spent on one document, in microseconds */
+    public Histogram latency() {
+      return latency;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public long getDocuments() {
+      return latency.count();
+    }
+
+    @Override
+    public long getTokens() {
+      return tokens.sum();
+    }
+
+    @Override
+    public long getSentences() {
+      return sentences.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+      return latency.sum() / 1000.0;
+    }
+
+    @Override
+    public double getMeanMillis() {
+      long count = latency.count();
+      return (count == 0) ? 0.0 : getTotalMillis() / count;
+    }
+
+    @Override
+    public double getMedianMillis() {
+      return latency.quantile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP90Millis() {
+      return latency.quantile(0.9) / 1000.0;
+    }
+
+    @Override
+    public double getP99Millis() {
+      return latency.quantile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMillis() {
+      return latency.max() / 1000.0;
+    }
+
+    @Override
+    public double getMillisPerThousandTokens() {
+      long numTokens = tokens.sum();
+      return (numTokens == 0) ? 0.0 : getTotalMillis() * 1000.0 / numTokens;
+    }
+
+    @Override
+    public double getCpuMillis() {
+      return cpuNanos.sum() / 1e6;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+      return allocatedBytes.sum();
+    }
+  }
+
+
+  /** Where the time went in annotating one document */
+  public static class DocumentSample {
+    /** The DocIDAnnotation of the document, if it had one */
+    public final String docID;
+    public final long nanos;
+    public final int tokens;
+    public final int sentences;
+    public final int longestSentence;
+    public final List<String> annotators;
+    public final long[] annotatorNanos;
+
+    DocumentSample(String docID, long nanos, int tokens, int sentences, int longestSentence,
+                   List<String> annotators, long[] annotatorNanos) {
+      this.docID = docID;
+      this.nanos = nanos;
+      this.tokens = tokens;
+      this.sentences = sentences;
+      this.longestSentence = longestSentence;
+      this.annotators = Collections.unmodifiableList(new ArrayList<>(annotators));
+      this.annotatorNanos = Arrays.copyOf(annotatorNanos, annotators.size());
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format(Locale.ROOT, "%.1f ms, %d tokens, %d sentences (longest %d)",
+                              nanos / 1e6, tokens, sentences, longestSentence));
+      if (docID != null) {
+        sb.append(", docID ").append(docID);
+      }
+      sb.append(':');
+      for (int i = 0; i < annotators.size(); ++i) {
+        sb.append(String.format(Locale.ROOT, " %s %.1f", annotators.get(i), annotatorNanos[i] / 1e6));
+      }
+      return sb.toString();
+    }
+  }
+
+}
@@ -1,6 +1,8 @@
 package edu.stanford.nlp.pipeline;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RejectedExecutionException;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
@@ -101,6 +103,66 @@ public abstract class SentenceAnnotator implements Annotator {
     }
   }
 
+  /**
+   * Annotate the sentences of the document as independent tasks on a
+   * pool which may be shared with other annotators and other documents.
+   * This call returns only once every sentence has been processed, so
+   * whatever runs after it sees the complete annotation.
+   * <br>
+   * Annotators with a maximum time fall back to
+   * {@link #annotate(Annotation)}, since a task which has timed out
+   * cannot be abandoned from inside a fork-join pool.
+   *
+   * @param annotation The document to annotate
+   * @param pool The pool to schedule the sentences on
+   */
+  public void annotate(Annotation annotation, ForkJoinPool pool) {
+    if (maxTime() > 0) {
+      annotate(annotation);
+      return;
+    }
+    if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+      pool.invoke(new SentenceTask(annotation, sentences, 0, sentences.size()));
+    } else {
+      throw new RuntimeException("unable to find sentences in: " + annotation);
+    }
+  }
+
+  /**
+   * Recursively splits a range of sentences in half, so idle workers
+   * can steal the larger pieces of a long document.
+   */
+  private class SentenceTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Annotation annotation;
+    private final List<CoreMap> sentences;
+    private final int start;
+    private final int end;
+
+    SentenceTask(Annotation annotation, List<CoreMap> sentences, int start, int end) {
+      this.annotation = annotation;
+      this.sentences = sentences;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= 1) {
+        if (start < end) {
+          doOneSentence(annotation, sentences.get(start));
+        }
+      } else {
+        int middle = (start + end) >>> 1;
+        invokeAll(new SentenceTask(annotation, sentences, start, middle),
+                  new SentenceTask(annotation, sentences, middle, end));
+      }
+    }
+  }
+
   protected abstract int nThreads();
 
   /**
@@ -1,7 +1,6 @@
 package edu.stanford.nlp.pipeline;
 
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -19,6 +18,7 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.IntPair;
+import edu.stanford.nlp.util.PropertiesUtils;
 
 /**
  * This annotator attaches a binarized tree with sentiment annotations
@@ -38,13 +38,14 @@ import edu.stanford.nlp.util.IntPair;
  *
  * @author John Bauer
  */
-public class SentimentAnnotator implements Annotator {
+public class SentimentAnnotator extends SentenceAnnotator {
 
   private static final String DEFAULT_MODEL = "edu/stanford/nlp/models/sentiment/sentiment.ser.gz";
 
   private final String modelPath;
   private final SentimentModel model;
   private final CollapseUnaryTransformer transformer = new CollapseUnaryTransformer();
+  private final int nThreads;
 
   public SentimentAnnotator(String name, Properties props) {
     this.modelPath = props.getProperty(name + ".model", DEFAULT_MODEL);
@@ -52,6 +53,7 @@ public class SentimentAnnotator implements Annotator {
       throw new IllegalArgumentException("No model specified for Sentiment annotator");
     }
     this.model = SentimentModel.loadSerialized(modelPath);
+    this.nThreads = PropertiesUtils.getInt(props, name + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
   }
 
   @Override
@@ -65,53 +67,60 @@ public class SentimentAnnotator implements Annotator {
   }
 
   @Override
-  public void annotate(Annotation annotation) {
-    if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      // TODO: parallelize
-      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
-      for (CoreMap sentence : sentences) {
-        Tree binarized = sentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
-        if (binarized == null) {
-          throw new AssertionError("Binarized sentences not built by parser");
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return 0;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    Tree binarized = sentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
+    if (binarized == null) {
+      throw new AssertionError("Binarized sentences not built by parser");
+    }
+    Tree collapsedUnary = transformer.transformTree(binarized);
+    SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
+    scorer.forwardPropagateTree(collapsedUnary);
+    sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, collapsedUnary);
+    int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
+    sentence.set(SentimentCoreAnnotations.SentimentClass.class, SentimentUtils.sentimentString(model, sentiment));
+    Tree tree = sentence.get(TreeCoreAnnotations.TreeAnnotation.class);
+    if (tree != null) {
+      collapsedUnary.setSpans();
+      // map the sentiment annotations onto the tree
+      Map<IntPair,String> spanSentiment = Generics.newHashMap();
+      for (Tree bt : collapsedUnary) {
+        IntPair p = bt.getSpan();
+        int sen = RNNCoreAnnotations.getPredictedClass(bt);
+        String sentStr = SentimentUtils.sentimentString(model, sen);
+        if ( ! spanSentiment.containsKey(p)) {
+          // we'll take the first = highest one discovered
+          spanSentiment.put(p, sentStr);
         }
-        Tree collapsedUnary = transformer.transformTree(binarized);
-        SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
-        scorer.forwardPropagateTree(collapsedUnary);
-        sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, collapsedUnary);
-        int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
-        sentence.set(SentimentCoreAnnotations.SentimentClass.class, SentimentUtils.sentimentString(model, sentiment));
-        Tree tree = sentence.get(TreeCoreAnnotations.TreeAnnotation.class);
-        if (tree != null) {
-          collapsedUnary.setSpans();
-          // map the sentiment annotations onto the tree
-          Map<IntPair,String> spanSentiment = Generics.newHashMap();
-          for (Tree bt : collapsedUnary) {
-            IntPair p = bt.getSpan();
-            int sen = RNNCoreAnnotations.getPredictedClass(bt);
-            String sentStr = SentimentUtils.sentimentString(model, sen);
-            if ( ! spanSentiment.containsKey(p)) {
-              // we'll take the first = highest one discovered
-              spanSentiment.put(p, sentStr);
-            }
-          }
-          if (((CoreLabel) tree.label()).containsKey(CoreAnnotations.SpanAnnotation.class)) {
-            throw new IllegalStateException("This code assumes you don't have SpanAnnotation");
-          }
-          tree.setSpans();
-          for (Tree t : tree) {
-            IntPair p = t.getSpan();
-            String str = spanSentiment.get(p);
-            if (str != null) {
-              CoreLabel cl = (CoreLabel) t.label();
-              cl.set(SentimentCoreAnnotations.SentimentClass.class, str);
-              cl.remove(CoreAnnotations.SpanAnnotation.class);
-            }
-          }
+      }
+      if (((CoreLabel) tree.label()).containsKey(CoreAnnotations.SpanAnnotation.class)) {
+        throw new IllegalStateException("This code assumes you don't have SpanAnnotation");
+      }
+      tree.setSpans();
+      for (Tree t : tree) {
+        IntPair p = t.getSpan();
+        String str = spanSentiment.get(p);
+        if (str != null) {
+          CoreLabel cl = (CoreLabel) t.label();
+          cl.set(SentimentCoreAnnotations.SentimentClass.class, str);
+          cl.remove(CoreAnnotations.SpanAnnotation.class);
         }
       }
-    } else {
-      throw new RuntimeException("unable to find sentences in: " + annotation);
     }
   }
 
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    // with no time limit there are no failed sentences to fill in
+  }
+
 }
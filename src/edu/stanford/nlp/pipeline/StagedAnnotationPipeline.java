@@ -0,0 +1,264 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a list of annotators as a streaming pipeline.  Each annotator is
+ * a stage with its own threads, and the stages are connected by bounded
+ * queues, so that while one document is being parsed the next ones are
+ * already being tokenized and tagged.  Each stage can be given as many
+ * threads as it needs, so cheap stages such as tokenize do not have to be
+ * provisioned like expensive ones such as parse.
+ * <br>
+ * Documents may come out of the pipeline in a different order than they
+ * went in.  If an annotator throws an exception, the exception is stored
+ * in the {@link CoreAnnotations.ExceptionAnnotation} of that document, the
+ * remaining stages skip it, and it is passed to the callback as usual.
+ * If the callback or the input iterator throws an exception, the documents
+ * already in the pipeline are still finished and its threads stopped, and
+ * then the exception is rethrown from {@link #annotate}.
+ * <br>
+ * Each stage keeps some simple statistics (documents processed, time
+ * spent annotating, current and maximum queue depth) which can be read
+ * while the pipeline is running.
+ */
+public class StagedAnnotationPipeline {
+
+  /** Passed down the queues to tell each stage there are no more documents */
+  private static final Annotation END_OF_INPUT = new Annotation("");
+
+  private final List<Stage> stages;
+
+  /**
+   * Builds a pipeline with one stage per annotator.
+   *
+   * @param annotators The annotators, in the order they should be run
+   * @param stageThreads The number of threads to give each annotator
+   * @param queueSize The maximum number of documents waiting in front of each stage
+   */
+  public StagedAnnotationPipeline(List<Annotator> annotators, int[] stageThreads, int queueSize) {
+    if (annotators.size() != stageThreads.length) {
+      throw new IllegalArgumentException("Got " + stageThreads.length + " thread counts for " + annotators.size() + " annotators");
+    }
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+    }
+    List<Stage> stages = new ArrayList<>(annotators.size());
+    for (int i = 0; i < annotators.size(); ++i) {
+      stages.add(new Stage(annotators.get(i), Math.max(1, stageThreads[i]), queueSize));
+    }
+    this.stages = Collections.unmodifiableList(stages);
+  }
+
+  /** The stages of this pipeline, in order */
+  public List<Stage> stages() {
+    return stages;
+  }
+
+  /**
+   * Annotate all of the given documents, returning once the last one has
+   * been passed to the callback.  The callback is called from the threads
+   * of the last stage, so it may be called concurrently.
+   * <br>
+   * If the callback throws, the remaining documents are still passed to it,
+   * and the first exception it threw is rethrown once all are done.  If the
+   * iterator throws, the documents it gave are finished before its
+   * exception is rethrown.
+   *
+   * @param annotations The documents to annotate
+   * @param callback A function to be called when an annotation finishes
+   */
+  public void annotate(Iterator<Annotation> annotations, Consumer<Annotation> callback) {
+    if (stages.isEmpty()) {
+      annotations.forEachRemaining(callback);
+      return;
+    }
+    List<Thread> threads = new ArrayList<>();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    for (int i = 0; i < stages.size(); ++i) {
+      Stage stage = stages.get(i);
+      Stage next = (i + 1 < stages.size()) ? stages.get(i + 1) : null;
+      AtomicInteger running = new AtomicInteger(stage.numThreads);
+      for (int j = 0; j < stage.numThreads; ++j) {
+        Thread thread = new Thread(() -> stage.run(next, callback, running, failure),
+                                   "StagedAnnotationPipeline-" + StringUtils.getShortClassName(stage.annotator) + '-' + j);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+      }
+    }
+    try {
+      Stage first = stages.get(0);
+      try {
+        while (annotations.hasNext()) {
+          first.put(annotations.next());
+        }
+      } finally {
+        // even if the input failed, finish what is in the pipeline and stop its threads
+        first.put(END_OF_INPUT);
+        for (Thread thread : threads) {
+          thread.join();
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (RuntimeException | Error e) {
+      if (failure.get() != null) {
+        e.addSuppressed(failure.get());
+      }
+      throw e;
+    }
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  /**
+   * Return a String with the throughput and queue statistics of each
+   * stage, in the same spirit as {@link AnnotationPipeline#timingInformation()}.
+   */
+  public String statistics() {
+    StringBuilder sb = new StringBuilder("Staged annotation pipeline statistics:");
+    for (Stage stage : stages) {
+      sb.append('\n').append(stage);
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * One annotator, the threads which run it, and the queue of documents
+   * waiting for it.
+   */
+  public static class Stage {
+
+    private final Annotator annotator;
+    private final int numThreads;
+    private final BlockingQueue<Annotation> queue;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    Stage(Annotator annotator, int numThreads, int queueSize) {
+      this.annotator = annotator;
+      this.numThreads = numThreads;
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    public Annotator annotator() {
+      return annotator;
+    }
+
+    public int numThreads() {
+      return numThreads;
+    }
+
+    /** The number of documents currently waiting for this stage */
+    public int queueDepth() {
+      return queue.size();
+    }
+
+    /** The largest number of documents seen waiting for this stage */
+    public int maxQueueDepth() {
+      return maxQueueDepth.get();
+    }
+
+    /** The number of documents this stage has finished */
+    public long processed() {
+      return processed.get();
+    }
+
+    /** The total time spent annotating, summed over all threads of this stage, in milliseconds */
+    public long busyTime() {
+      return busyNanos.get() / 1000000;
+    }
+
+    /** Documents per second for each busy thread of this stage */
+    public double throughput() {
+      long nanos = busyNanos.get();
+      return (nanos == 0) ? 0.0 : processed.get() * 1e9 / nanos;
+    }
+
+    private void put(Annotation annotation) throws InterruptedException {
+      queue.put(annotation);
+      int depth = queue.size();
+      int max;
+      while (depth > (max = maxQueueDepth.get())) {
+        if (maxQueueDepth.compareAndSet(max, depth)) {
+          break;
+        }
+      }
+    }
+
+    private void run(Stage next, Consumer<Annotation> callback, AtomicInteger running, AtomicReference<Throwable> failure) {
+      try {
+        while (true) {
+          Annotation annotation = queue.take();
+          if (annotation == END_OF_INPUT) {
+            // leave the marker for the other threads of this stage;
+            // the last one to finish removes it and tells the next stage
+            if (running.decrementAndGet() > 0) {
+              queue.put(END_OF_INPUT);
+            } else if (next != null) {
+              next.put(END_OF_INPUT);
+            }
+            return;
+          }
+          if ( ! annotation.containsKey(CoreAnnotations.ExceptionAnnotation.class)) {
+            long start = System.nanoTime();
+            try {
+              annotator.annotate(annotation);
+            } catch (Throwable t) {
+              annotation.set(CoreAnnotations.ExceptionAnnotation.class, t);
+            }
+            busyNanos.addAndGet(System.nanoTime() - start);
+          }
+          processed.incrementAndGet();
+          if (next != null) {
+            next.put(annotation);
+          } else {
+            try {
+              callback.accept(annotation);
+            } catch (Throwable t) {
+              // keep going, so that the end of input still reaches every thread
+              failure.compareAndSet(null, t);
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s [%d threads]: %d docs, %s sec., %.2f docs/sec/thread, queue %d (max %d)",
+          StringUtils.getShortClassName(annotator), numThreads, processed(),
+          Timing.toSecondsString(busyTime()), throughput(), queueDepth(), maxQueueDepth());
+    }
+  }
+
+}
@@ -41,6 +41,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
@@ -93,6 +94,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
 
   public static final String DEFAULT_OUTPUT_FORMAT = isXMLOutputPresent() ? "xml" : "text";
 
+  /** Numbers the pipelines with metrics but no metrics.name */
+  private static final AtomicInteger METRICS_INSTANCES = new AtomicInteger();
+
   /** Formats the constituent parse trees for display */
   private TreePrint constituentTreePrinter;
   /** Formats the dependency parse trees for human-readable display */
@@ -108,6 +112,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
 
   private Semaphore availableProcessors;
 
+  /** The names of the annotators in this pipeline, in order */
+  private final List<String> annotatorNames = new ArrayList<>();
+
 
   /**
    * Constructs a pipeline using as properties the properties file found in the classpath
@@ -344,6 +351,7 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     } else {
       this.availableProcessors = new Semaphore(1);
     }
+    setSentenceThreads(PropertiesUtils.getInt(this.properties, "sentenceThreads", 0));
 
     // now construct the annotators from the given properties in the given order
     List<String> annoNames = Arrays.asList(getRequiredProperty(props, "annotators").split("[, \t]+"));
@@ -356,6 +364,7 @@ public class StanfordCoreNLP extends AnnotationPipeline {
 
       Annotator an = pool.get(name);
       this.addAnnotator(an);
+      annotatorNames.add(name);
 
       if (enforceRequirements) {
         Set<Requirement> allRequirements = an.requires();
@@ -376,14 +385,37 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     if (! alreadyAddedAnnoNames.contains(STANFORD_SSPLIT)) {
       System.setProperty(NEWLINE_SPLITTER_PROPERTY, "false");
     }
+
+    if (PropertiesUtils.getBool(props, "metrics", false)) {
+      // each pipeline gets its own name unless told otherwise, so their MXBeans don't collide
+      String metricsName = props.getProperty("metrics.name");
+      if (metricsName == null) {
+        metricsName = "StanfordCoreNLP-" + METRICS_INSTANCES.incrementAndGet();
+      }
+      PipelineMetrics metrics = new PipelineMetrics(metricsName);
+      metrics.registerMBeans();
+      setMetrics(metrics);
+    }
+  }
+
+  /** Annotators are reported under the names they were given in the annotators property */
+  @Override
+  protected String annotatorName(int i) {
+    return (i < annotatorNames.size()) ? annotatorNames.get(i) : super.annotatorName(i);
   }
 
   /**
    * Call this if you are no longer using StanfordCoreNLP and want to
    * release the memory associated with the annotators.
+   * Models in the {@link ModelRegistry} which are no longer used by any
+   * annotator are removed from it as well.
    */
   public static synchronized void clearAnnotatorPool() {
+    if (pool != null) {
+      pool.clear();
+    }
     pool = null;
+    ModelRegistry.evictIdle();
   }
 
   /**
@@ -515,6 +547,26 @@ public class StanfordCoreNLP extends AnnotationPipeline {
 
 
 
+  /**
+   * Builds a streaming version of this pipeline, in which each annotator
+   * runs as its own stage with a bounded queue in front of it.  The number
+   * of threads for each annotator is taken from the
+   * {@code <annotator>.stageThreads} property (default 1), and the
+   * size of the queues from {@code stageQueueSize} (default 16).
+   * For example, {@code parse.stageThreads=12} gives the parser twelve
+   * threads while the cheaper annotators keep one each.
+   *
+   * @return A pipeline sharing the annotators of this one
+   */
+  public StagedAnnotationPipeline stagedPipeline() {
+    int[] stageThreads = new int[annotatorNames.size()];
+    for (int i = 0; i < stageThreads.length; ++i) {
+      stageThreads[i] = PropertiesUtils.getInt(properties, annotatorNames.get(i) + ".stageThreads", 1);
+    }
+    int queueSize = PropertiesUtils.getInt(properties, "stageQueueSize", 16);
+    return new StagedAnnotationPipeline(getAnnotators(), stageThreads, queueSize);
+  }
+
   /**
    * Determines whether the parser annotator should default to
    * producing binary trees.  Currently there is only one condition
@@ -725,6 +777,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     os.println("\t\"replaceExtension\" - flag to chop off the last extension before adding outputExtension to file");
     os.println("\t\"noClobber\" - don't automatically override (clobber) output files that already exist");
 		os.println("\t\"threads\" - multithread on this number of threads");
+    os.println("\t\"sentenceThreads\" - also split the sentences of each document across a shared pool of this many threads");
+    os.println("\t\"metrics\" - record latency percentiles, CPU time and allocation for each annotator, and publish them through JMX");
+    os.println("\t\"metrics.name\" - the pipeline name the metrics are published under (defaults to StanfordCoreNLP-1, StanfordCoreNLP-2, ...)");
     os.println();
     os.println("If none of the above are present, run the pipeline in an interactive shell (default properties will be loaded from the classpath).");
     os.println("The shell accepts input from stdin and displays the output at stdout.");
@@ -1165,6 +1220,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     if (TIME) {
       log();
       log(this.timingInformation());
+      if (getMetrics() != null) {
+        log(getMetrics().toString());
+      }
       log("Pipeline setup: " +
           Timing.toSecondsString(setupTime) + " sec.");
       log("Total time for StanfordCoreNLP pipeline: " +
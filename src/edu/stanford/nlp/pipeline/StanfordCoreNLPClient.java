@@ -8,6 +8,7 @@ import edu.stanford.nlp.util.logging.StanfordRedwoodConfiguration;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.Socket;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
@@ -201,6 +202,8 @@ public class StanfordCoreNLPClient extends AnnotationPipeline {
 
   /** The path on the server to connect to. */
   private final String path = "";
+  /** The path on the server to send batches of documents to. */
+  private final String batchPath = "/batch";
   /** The Properties file to annotate with. */
   private final Properties properties;
 
@@ -398,6 +401,225 @@ public class StanfordCoreNLPClient extends AnnotationPipeline {
     }.start());
   }
 
+  /**
+   * Annotate many documents with a single request to the server's batch endpoint,
+   * rather than one request per document.  The documents are streamed to the server
+   * as delimited protocol buffers, and each one is handed to the callback as soon as
+   * the server streams it back, in the order given.
+   * This call returns immediately; the batch runs on one backend.
+   * <br>
+   * The server starts answering before it has read the whole batch, and
+   * {@link HttpURLConnection} will not read a response until it has sent the whole
+   * request, so a large batch could fill the network buffers both ways and stall.
+   * This method therefore speaks HTTP/1.1 over a plain socket, writing the documents
+   * on one thread while it reads the annotated ones back on another.
+   *
+   * @param annotations The annotations to annotate.
+   * @param callback Called once for each document the server has returned.
+   *                 The input to this callback is the same as the passed Annotation object.
+   */
+  @SuppressWarnings("unchecked")
+  public void annotateBatch(final List<Annotation> annotations, final Consumer<Annotation> callback) {
+    scheduler.schedule((Backend backend, Consumer<Backend> isFinishedCallback) -> new Thread() {
+      @Override
+      public void run() {
+        try (Socket socket = new Socket(backend.host, backend.port)) {
+          // 1. Send the request headers
+          String queryParams = String.format(
+              "properties=%s",
+              URLEncoder.encode(StanfordCoreNLPClient.this.propsAsJSON, "utf-8"));
+          OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+          String request = "POST " + StanfordCoreNLPClient.this.batchPath + "?" + queryParams + " HTTP/1.1\r\n" +
+              "Host: " + backend.host + ':' + backend.port + "\r\n" +
+              "Content-Type: application/x-protobuf\r\n" +
+              "Transfer-Encoding: chunked\r\n" +
+              "Accept-Charset: utf-8\r\n" +
+              "User-Agent: " + StanfordCoreNLPClient.class.getName() + "\r\n" +
+              "Connection: close\r\n" +
+              "\r\n";
+          os.write(request.getBytes("ISO-8859-1"));
+
+          // 2. Stream the documents to the server, one chunk each, on their own thread
+          Thread writer = new Thread(() -> {
+            try {
+              ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+              for (Annotation annotation : annotations) {
+                chunk.reset();
+                serializer.toProto(annotation).writeDelimitedTo(chunk);
+                os.write((Integer.toHexString(chunk.size()) + "\r\n").getBytes("ISO-8859-1"));
+                chunk.writeTo(os);
+                os.write("\r\n".getBytes("ISO-8859-1"));
+                os.flush();
+              }
+              os.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+              os.flush();
+            } catch (IOException e) {
+              // The connection is gone; the reader will find out, and report it
+            }
+          }, "StanfordCoreNLPClient-batch");
+          writer.setDaemon(true);
+          writer.start();
+
+          // 3. Read the documents back as they finish
+          InputStream is = readResponseHeaders(new BufferedInputStream(socket.getInputStream()));
+          for (Annotation annotation : annotations) {
+            Annotation response = serializer.read(is).first;
+            for (Class key : response.keySet()) {
+              annotation.set(key, response.get(key));
+            }
+            callback.accept(annotation);
+          }
+        } catch (IOException e) {
+          throw new RuntimeIOException("Could not connect to server: " + backend.host + ":" + backend.port, e);
+        } catch (ClassNotFoundException e) {
+          e.printStackTrace();
+        } finally {
+          // 4. Release the backend, whether or not the batch went through
+          isFinishedCallback.accept(backend);
+        }
+      }
+    }.start());
+  }
+
+  /**
+   * Read the status line and headers of an HTTP response.
+   *
+   * @param is The response, as read from the socket.
+   *
+   * @return The body of the response, with any chunked transfer encoding undone.
+   *
+   * @throws IOException Thrown if the server did not answer with 200 OK.
+   */
+  private static InputStream readResponseHeaders(InputStream is) throws IOException {
+    String status = readHTTPLine(is);
+    if (status == null || ! status.matches("HTTP/1\\.[01] 200\\b.*")) {
+      throw new IOException("Server returned " + status);
+    }
+    boolean chunked = false;
+    String header;
+    while ((header = readHTTPLine(is)) != null && ! header.isEmpty()) {
+      if (header.toLowerCase().matches("transfer-encoding:\\s*chunked\\s*")) {
+        chunked = true;
+      }
+    }
+    return chunked ? new ChunkedInputStream(is) : is;
+  }
+
+  /**
+   * Read a CRLF terminated line of an HTTP header.
+   *
+   * @return The line, without its terminator, or null at the end of the stream.
+   */
+  private static String readHTTPLine(InputStream is) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = is.read()) != '\n') {
+      if (c < 0) {
+        return line.length() == 0 ? null : line.toString();
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  /**
+   * Undoes the chunked transfer encoding of an HTTP response body.
+   */
+  private static class ChunkedInputStream extends FilterInputStream {
+    /** The bytes left in the current chunk. */
+    private int remaining = 0;
+    /** Set once the last, empty, chunk has been read. */
+    private boolean done = false;
+
+    private ChunkedInputStream(InputStream in) {
+      super(in);
+    }
+
+    /**
+     * Make sure we are inside a chunk with data left, unless the body is over.
+     *
+     * @return false at the end of the body.
+     */
+    private boolean fill() throws IOException {
+      if (remaining == 0 && ! done) {
+        String size = readHTTPLine(in);
+        if (size == null) {
+          throw new EOFException("Response ended in the middle of a chunk");
+        }
+        int extension = size.indexOf(';');
+        remaining = Integer.parseInt((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+        if (remaining == 0) {
+          done = true;
+          // Skip the trailers
+          String trailer;
+          while ((trailer = readHTTPLine(in)) != null && ! trailer.isEmpty()) { }
+        }
+      }
+      return ! done;
+    }
+
+    /**
+     * Skip the CRLF after a chunk, once it has been read.
+     */
+    private void endChunk() throws IOException {
+      if (remaining == 0) {
+        readHTTPLine(in);
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if ( ! fill()) {
+        return -1;
+      }
+      int c = in.read();
+      if (c < 0) {
+        throw new EOFException("Response ended in the middle of a chunk");
+      }
+      remaining -= 1;
+      endChunk();
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if ( ! fill()) {
+        return -1;
+      }
+      int read = in.read(b, off, Math.min(len, remaining));
+      if (read < 0) {
+        throw new EOFException("Response ended in the middle of a chunk");
+      }
+      remaining -= read;
+      endChunk();
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
+      while (skipped < n && read() >= 0) {
+        skipped += 1;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return done ? 0 : Math.min(remaining, in.available());
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
   /**
    * Runs the entire pipeline on the content of the given text passed in.
    * @param text The text to process
@@ -22,6 +22,7 @@ import java.net.URI;
 import java.net.URLDecoder;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -29,7 +30,16 @@ import static edu.stanford.nlp.util.logging.Redwood.Util.log;
 
 /**
  * This class creates a server that runs a new Java annotator in each thread.
- *
+ * <br>
+ * Requests are handled asynchronously: the HTTP threads only read requests
+ * and write responses, while the annotation itself runs on a separate pool
+ * of CoreNLP threads.  Work waiting for a CoreNLP thread is held in a
+ * bounded queue, and when that queue is full the server answers with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header rather
+ * than letting requests pile up.  Every request has a deadline (the
+ * {@code timeout} URL parameter, in milliseconds, or the server default),
+ * after which its annotation is cancelled, whether it is still waiting in
+ * the queue or already running.
  */
 public class StanfordCoreNLPServer implements Runnable {
   protected static int DEFAULT_PORT = 9000;
@@ -42,10 +52,18 @@ public class StanfordCoreNLPServer implements Runnable {
   public static int HTTP_OK = 200;
   public static int HTTP_BAD_INPUT = 400;
   public static int HTTP_ERR = 500;
+  public static int HTTP_UNAVAILABLE = 503;
   public final Properties defaultProps;
 
+  /**
+   * The default time a request may take, including the time spent waiting
+   * for a CoreNLP thread, in milliseconds.
+   */
+  protected final long timeoutMilliseconds;
+
   /**
    * The thread pool for the HTTP server.
+   * These threads only do I/O; they never wait on an annotation.
    */
   public final ExecutorService serverExecutor = Executors.newFixedThreadPool(Execution.threads);
   /**
@@ -54,13 +72,57 @@ public class StanfordCoreNLPServer implements Runnable {
    */
   private final WeakHashMap<Properties, StanfordCoreNLP> pipelineCache = new WeakHashMap<>();
   /**
-   * An executor to time out CoreNLP execution with.
+   * The pipelines being created, so that requests for the same pipeline wait for
+   * one another, but not for the creation of other pipelines.
+   * Guarded by pipelineCache.
+   */
+  private final Map<Properties, FutureTask<StanfordCoreNLP>> pipelinesLoading = new HashMap<>();
+  /**
+   * The threads which run the annotators, with a bounded queue of requests waiting for them.
+   */
+  private final ThreadPoolExecutor corenlpExecutor;
+  /**
+   * Reads and writes the bodies of batch requests.  Each batch keeps a
+   * reading and a writing thread for as long as it lasts, so these are kept
+   * apart from the HTTP threads, which must stay free for other requests.
    */
-  private final ExecutorService corenlpExecutor = Executors.newFixedThreadPool(Execution.threads);
+  private final ExecutorService batchExecutor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "StanfordCoreNLPServer-batch");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /**
+   * Cancels requests which have gone past their deadline.
+   */
+  private final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "StanfordCoreNLPServer-timeout");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /**
+   * Per-annotator statistics, shared by every pipeline the server creates.
+   */
+  private final PipelineMetrics metrics = new PipelineMetrics("server");
 
 
   public StanfordCoreNLPServer(int port) throws IOException {
+    this(port, 5000, 4 * Execution.threads);
+  }
+
+  /**
+   * Create a server.
+   *
+   * @param port The port to listen on.
+   * @param timeoutMilliseconds The default deadline for a request, in milliseconds.
+   * @param queueSize The number of requests which may wait for a CoreNLP thread before
+   *                  the server starts turning requests away.
+   */
+  public StanfordCoreNLPServer(int port, long timeoutMilliseconds, int queueSize) throws IOException {
     serverPort = port;
+    this.timeoutMilliseconds = timeoutMilliseconds;
+    this.corenlpExecutor = new ThreadPoolExecutor(Execution.threads, Execution.threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize));
+    metrics.registerMBeans();
 
     defaultProps = new Properties();
     defaultProps.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner, parse, depparse, natlog, openie, dcoref");
@@ -145,19 +207,59 @@ public class StanfordCoreNLPServer implements Runnable {
 
   /**
    * Create (or retrieve) a StanfordCoreNLP object corresponding to these properties.
+   * Loading the models can take a long time, so this should be called on an HTTP
+   * thread before the request's job is submitted, so that the loading does not
+   * count against the request's deadline or hold a CoreNLP thread.
+   * The cache is not locked while a pipeline is created.
+   *
    * @param props The properties to create the object with.
    * @return A pipeline parameterized by these properties.
    */
   private StanfordCoreNLP mkStanfordCoreNLP(Properties props) {
-    StanfordCoreNLP impl;
+    FutureTask<StanfordCoreNLP> loading;
+    boolean load = false;
     synchronized (pipelineCache) {
-      impl = pipelineCache.get(props);
-      if (impl == null) {
-        impl = new StanfordCoreNLP(props);
-        pipelineCache.put(props, impl);
+      StanfordCoreNLP impl = pipelineCache.get(props);
+      if (impl != null) {
+        return impl;
+      }
+      loading = pipelinesLoading.get(props);
+      if (loading == null) {
+        loading = new FutureTask<>(() -> {
+          StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+          pipeline.setMetrics(metrics);
+          return pipeline;
+        });
+        pipelinesLoading.put(props, loading);
+        load = true;
       }
     }
-    return impl;
+    if (load) {
+      loading.run();
+      synchronized (pipelineCache) {
+        pipelinesLoading.remove(props);
+        if ( ! loading.isCancelled()) {
+          try {
+            pipelineCache.put(props, loading.get());
+          } catch (InterruptedException | ExecutionException e) {
+            // reported to the caller below
+          }
+        }
+      }
+    }
+    try {
+      return loading.get();
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
   }
 
   /**
@@ -176,6 +278,171 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * A helper function to turn a request away because the server is too busy to queue it.
+   *
+   * @param httpExchange The exchange to send the error over.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the error.
+   */
+  private void respondUnavailable(HttpExchange httpExchange) throws IOException {
+    String response = "CoreNLP server is busy; try again later\n";
+    httpExchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+    httpExchange.getResponseHeaders().add("Retry-After", Long.toString(Math.max(1, timeoutMilliseconds / 1000)));
+    byte[] bytes = response.getBytes("utf-8");
+    httpExchange.sendResponseHeaders(HTTP_UNAVAILABLE, bytes.length);
+    httpExchange.getResponseBody().write(bytes);
+    httpExchange.close();
+  }
+
+  /**
+   * Writes the result of a job back to the client.
+   */
+  @FunctionalInterface
+  private interface ResponseWriter<T> {
+    void write(T result) throws IOException;
+  }
+
+  /**
+   * A request's annotation job, as queued on the CoreNLP threads.
+   * It answers its exchange exactly once, whichever of finishing, failing,
+   * or running out of time happens first, and it cancels its deadline
+   * as soon as it is done.
+   */
+  private class Job<T> extends FutureTask<T> {
+    private final HttpExchange httpExchange;
+    private final ResponseWriter<T> writer;
+    private final String timeoutMessage;
+    /** Set by whoever answers the exchange, so that it is only answered once. */
+    private final AtomicBoolean responded = new AtomicBoolean(false);
+    /** The scheduled cancellation of this job, once it has been scheduled. */
+    private volatile ScheduledFuture<?> deadline;
+
+    private Job(HttpExchange httpExchange, Callable<T> job, ResponseWriter<T> writer, String timeoutMessage) {
+      super(job);
+      this.httpExchange = httpExchange;
+      this.writer = writer;
+      this.timeoutMessage = timeoutMessage;
+    }
+
+    /**
+     * Queue this job, and cancel it if it is not done in the given time.
+     *
+     * @return false if the queue is full and the job was not accepted.
+     */
+    private boolean start(long timeout) {
+      try {
+        corenlpExecutor.execute(this);
+      } catch (RejectedExecutionException e) {
+        return false;
+      }
+      deadline = timeoutExecutor.schedule(this::expire, timeout, TimeUnit.MILLISECONDS);
+      if (isDone()) {
+        // We finished before the deadline was set, so done() could not cancel it
+        deadline.cancel(false);
+      }
+      return true;
+    }
+
+    /**
+     * Cancel the job at its deadline.  A job still in the queue is taken out
+     * of it, so that it does not hold up the admission of new requests.
+     * A running job is interrupted, which the pipeline checks between annotators.
+     */
+    private void expire() {
+      if (cancel(true)) {
+        corenlpExecutor.remove(this);
+      }
+    }
+
+    /**
+     * Claim the right to answer the exchange.
+     *
+     * @return true for the first caller only.
+     */
+    private boolean claimResponse() {
+      return responded.compareAndSet(false, true);
+    }
+
+    @Override
+    protected void done() {
+      ScheduledFuture<?> deadline = this.deadline;
+      if (deadline != null) {
+        deadline.cancel(false);
+      }
+      if ( ! claimResponse()) {
+        return;
+      }
+      serverExecutor.execute(() -> {
+        try {
+          if (isCancelled()) {
+            respondError(timeoutMessage, httpExchange);
+          } else {
+            try {
+              writer.write(get());
+            } catch (ExecutionException e) {
+              Throwable cause = e.getCause();
+              cause.printStackTrace();
+              respondError(cause.getClass().getName() + ": " + cause.getMessage(), httpExchange);
+            }
+          }
+        } catch (IOException | InterruptedException e) {
+          e.printStackTrace();
+          httpExchange.close();
+        }
+      });
+    }
+  }
+
+  /**
+   * Run a job on the CoreNLP threads without blocking the calling HTTP thread.
+   * When the job finishes, its result is handed to the writer on an HTTP thread.
+   * If the job queue is full, the request is answered with a 503 straight away;
+   * if the job is not done by the request's deadline, it is cancelled and the
+   * request is answered with a timeout error.
+   * <br>
+   * The job itself should not write to the exchange; to send an error, it
+   * should throw, and the message of the exception is sent to the client.
+   * Only CPU work belongs in the job: the request body should already have
+   * been read, and the pipeline created, on the HTTP thread, since the job's
+   * deadline starts as soon as it is queued.
+   * <br>
+   * Cancelling a running job interrupts its thread.  The pipeline checks for
+   * this between annotators, but an annotator already running keeps its
+   * thread until it returns, unless it checks for interruption itself (as
+   * the parsers do).
+   *
+   * @param httpExchange The exchange the job is answering.
+   * @param job The work to do on a CoreNLP thread.
+   * @param writer Sends the result of the job to the client.
+   * @param timeoutMessage The error to send to the client if the job times out.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate an error.
+   */
+  private <T> void submit(HttpExchange httpExchange, Callable<T> job, ResponseWriter<T> writer, String timeoutMessage) throws IOException {
+    Job<T> task = new Job<>(httpExchange, job, writer, timeoutMessage);
+    if ( ! task.start(getTimeout(httpExchange))) {
+      log("[" + httpExchange.getRemoteAddress() + "] Rejected: " + corenlpExecutor.getQueue().size() + " requests already queued");
+      respondUnavailable(httpExchange);
+    }
+  }
+
+  /**
+   * The deadline for this request: the {@code timeout} URL parameter if given, otherwise the server default.
+   */
+  private long getTimeout(HttpExchange httpExchange) throws UnsupportedEncodingException {
+    String timeout = getURLParams(httpExchange.getRequestURI()).get("timeout");
+    if (timeout != null) {
+      try {
+        return Long.parseLong(timeout.trim());
+      } catch (NumberFormatException e) {
+        log("[" + httpExchange.getRemoteAddress() + "] Ignoring bad timeout: " + timeout);
+      }
+    }
+    return timeoutMilliseconds;
+  }
+
+
   /**
    * A simple ping test. Responds with pong.
    */
@@ -191,6 +458,37 @@ public class StanfordCoreNLPServer implements Runnable {
     }
   }
 
+  /**
+   * Reports the latency, CPU time and allocation of each annotator, and how
+   * many requests are running and waiting, in the Prometheus text format.
+   * With {@code format=text} it returns a human readable summary instead.
+   */
+  protected class MetricsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      Map<String, String> urlParams = getURLParams(httpExchange.getRequestURI());
+      String response;
+      if ("text".equals(urlParams.get("format"))) {
+        response = metrics.toString() + '\n' +
+            "Requests: " + corenlpExecutor.getActiveCount() + " running, " + corenlpExecutor.getQueue().size() + " queued\n";
+        httpExchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      } else {
+        response = metrics.toPrometheus() +
+            "# HELP corenlp_requests_running Requests being annotated\n" +
+            "# TYPE corenlp_requests_running gauge\n" +
+            "corenlp_requests_running " + corenlpExecutor.getActiveCount() + '\n' +
+            "# HELP corenlp_requests_queued Requests waiting for a CoreNLP thread\n" +
+            "# TYPE corenlp_requests_queued gauge\n" +
+            "corenlp_requests_queued " + corenlpExecutor.getQueue().size() + '\n';
+        httpExchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      }
+      byte[] bytes = response.getBytes("utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, bytes.length);
+      httpExchange.getResponseBody().write(bytes);
+      httpExchange.close();
+    }
+  }
+
   /**
    * Sending the appropriate shutdown key will gracefully shutdown the server.
    * This key is, by default, saved into the local file /tmp/corenlp.shutdown on the
@@ -288,6 +586,7 @@ public class StanfordCoreNLPServer implements Runnable {
       Properties props;
       Annotation ann;
       StanfordCoreNLP.OutputFormat of;
+      StanfordCoreNLP pipeline;
       log("[" + httpExchange.getRemoteAddress() + "] Received message");
       try {
         props = getProperties(httpExchange);
@@ -300,40 +599,28 @@ public class StanfordCoreNLPServer implements Runnable {
           return;
         }
         log("[" + httpExchange.getRemoteAddress() + "] API call");
+        // Load the models before the deadline starts
+        pipeline = mkStanfordCoreNLP(props);
       } catch (Exception e) {
         e.printStackTrace();
         respondError("Could not handle incoming annotation", httpExchange);
         return;
       }
 
-      try {
-        // Annotate
-        StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-        Future<Annotation> completedAnnotationFuture = corenlpExecutor.submit(() -> {
-          pipeline.annotate(ann);
-          return ann;
-        });
-        Annotation completedAnnotation = completedAnnotationFuture.get(5, TimeUnit.SECONDS);
-
-        // Get output
+      // Annotate and serialize on a CoreNLP thread; send the result from an HTTP thread
+      submit(httpExchange, () -> {
+        pipeline.annotate(ann);
         ByteArrayOutputStream os = new ByteArrayOutputStream();
-        StanfordCoreNLP.createOutputter(props, AnnotationOutputter.getOptions(pipeline)).accept(completedAnnotation, os);
+        StanfordCoreNLP.createOutputter(props, AnnotationOutputter.getOptions(pipeline)).accept(ann, os);
         os.close();
-        byte[] response = os.toByteArray();
-
+        return os.toByteArray();
+      }, response -> {
         httpExchange.getResponseHeaders().add("Content-Type", getContentType(props, of));
         httpExchange.getResponseHeaders().add("Content-Length", Integer.toString(response.length));
         httpExchange.sendResponseHeaders(HTTP_OK, response.length);
         httpExchange.getResponseBody().write(response);
         httpExchange.close();
-      } catch (TimeoutException e) {
-        e.printStackTrace();
-        respondError("CoreNLP request timed out", httpExchange);
-      } catch (Exception e) {
-        e.printStackTrace();
-        // Return error message.
-        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
-      }
+      }, "CoreNLP request timed out");
     }
 
     /**
@@ -346,7 +633,7 @@ public class StanfordCoreNLPServer implements Runnable {
      *
      * @throws UnsupportedEncodingException Thrown if we could not decode the key/value pairs with UTF-8.
      */
-    private Properties getProperties(HttpExchange httpExchange) throws UnsupportedEncodingException {
+    protected Properties getProperties(HttpExchange httpExchange) throws UnsupportedEncodingException {
       // Load the default properties
       Properties props = new Properties();
       defaultProps.entrySet().stream()
@@ -372,100 +659,315 @@ public class StanfordCoreNLPServer implements Runnable {
 
 
   /**
-   * A handler for matching TokensRegex patterns against text.
+   * A handler for annotating many documents over one connection.
+   * The request body is either newline-delimited text (one document per
+   * non-empty line), or, if the input format is {@code serialized}, a
+   * stream of length-delimited {@link CoreNLPProtos.Document} messages.
+   * The response is a stream of length-delimited
+   * {@link CoreNLPProtos.Document} messages, one per input document and in
+   * the same order, each written with {@link ProtobufAnnotationSerializer}
+   * as soon as that document has been annotated.
+   * <br>
+   * The request body is read, a few documents ahead of the annotation, and
+   * the response written, each on a thread of its own outside the HTTP
+   * threads, so neither a slow upload nor a slow reader holds a CoreNLP
+   * thread or keeps other requests waiting.
+   * The documents of a batch are annotated one at a time, each as its own
+   * job on the CoreNLP threads, so a client wanting more throughput should
+   * open several batch connections.  If the CoreNLP queue is full when a
+   * batch arrives, the request gets a 503, as for single documents; once
+   * a batch has started, its next document waits for room in the queue.
+   * Batches have no deadline, since their length is up to the client.
    */
-  protected class TokensRegexHandler implements HttpHandler {
+  protected class BatchHandler extends CoreNLPHandler {
+
+    public BatchHandler(Properties props) {
+      super(props);
+    }
 
     @Override
     public void handle(HttpExchange httpExchange) throws IOException {
       // Set common response headers
       httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
 
-      Future<String> json = corenlpExecutor.submit(() -> {
-        try {
-          // Get the document
-          Properties props = new Properties() {{
-            setProperty("annotators", "tokenize,ssplit,pos,lemma,ner");
-          }};
-          Annotation doc = getDocument(props, httpExchange);
-          if (!doc.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-            StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-            pipeline.annotate(doc);
-          }
+      Properties props;
+      try {
+        props = getProperties(httpExchange);
+      } catch (Exception e) {
+        e.printStackTrace();
+        respondError("Could not handle incoming batch", httpExchange);
+        return;
+      }
+      log("[" + httpExchange.getRemoteAddress() + "] Batch call");
+
+      if (corenlpExecutor.getQueue().remainingCapacity() == 0) {
+        log("[" + httpExchange.getRemoteAddress() + "] Rejected: " + corenlpExecutor.getQueue().size() + " requests already queued");
+        respondUnavailable(httpExchange);
+        return;
+      }
+      new Batch(props, httpExchange).start();
+    }
+  }
+
+  /**
+   * One request to the batch endpoint.
+   * A reading thread parses documents from the request body into
+   * {@link Batch#pending}, blocking when it is full.  A writing thread takes
+   * them in order, hands each to the CoreNLP threads as a job of its own, and
+   * writes it back once it is annotated.  Both run on {@link #batchExecutor}.
+   */
+  private class Batch {
+    /** The number of documents read ahead of the one being annotated. */
+    private static final int READ_AHEAD = 16;
+    /** How long to wait before queueing a document again when the CoreNLP queue is full, in milliseconds. */
+    private static final long RETRY_MILLISECONDS = 100;
+
+    private final Properties props;
+    private final HttpExchange httpExchange;
+    private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+    /** Documents which have been read, but not yet annotated, followed by {@link Batch#end} once all are read. */
+    private final BlockingQueue<Annotation> pending = new ArrayBlockingQueue<>(READ_AHEAD);
+    /** Marks the end of the request body in {@link Batch#pending}. */
+    private final Annotation end = new Annotation("");
+    /** Set once the exchange is closed, whether the batch finished or failed. */
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    /** Whether the response headers have been sent, after which errors can no longer be reported. */
+    private volatile boolean responding = false;
+    /** The number of documents written back so far. */
+    private volatile int numDocuments = 0;
+
+    private Batch(Properties props, HttpExchange httpExchange) {
+      this.props = props;
+      this.httpExchange = httpExchange;
+    }
+
+    /**
+     * Start reading and writing the batch, and return straight away.
+     * The exchange is closed by the writing thread, or by whichever thread fails.
+     */
+    private void start() {
+      batchExecutor.execute(this::read);
+      batchExecutor.execute(this::write);
+    }
 
-          // Construct the matcher
-          Map<String, String> params = getURLParams(httpExchange.getRequestURI());
-          // (get the pattern)
-          if (!params.containsKey("pattern")) {
-            respondError("Missing required parameter 'pattern'", httpExchange);
-            return "";
+    /**
+     * Read the documents of the request into the pending queue.
+     */
+    private void read() {
+      try {
+        boolean serialized = "serialized".equals(props.getProperty("inputFormat", "text"));
+        InputStream is = httpExchange.getRequestBody();
+        BufferedReader reader = serialized ? null : new BufferedReader(new InputStreamReader(is, "utf-8"));
+        while (true) {
+          Annotation ann;
+          if (serialized) {
+            CoreNLPProtos.Document doc = CoreNLPProtos.Document.parseDelimitedFrom(is);
+            if (doc == null) {
+              break;
+            }
+            ann = serializer.fromProto(doc);
+          } else {
+            String line = reader.readLine();
+            if (line == null) {
+              break;
+            }
+            if (line.trim().isEmpty()) {
+              continue;
+            }
+            ann = new Annotation(line);
+          }
+          if ( ! put(ann)) {
+            return;
           }
-          String pattern = params.get("pattern");
-          // (get whether to filter / find)
-          String filterStr = params.getOrDefault("filter", "false");
-          final boolean filter = filterStr.trim().isEmpty() || "true".equalsIgnoreCase(filterStr.toLowerCase());
-          // (create the matcher)
-          final TokenSequencePattern regex = TokenSequencePattern.compile(pattern);
-
-          // Run TokensRegex
-          return JSONOutputter.JSONWriter.objectToJSON((docWriter) -> {
-            if (filter) {
-              // Case: just filter sentences
-              docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence ->
-                      regex.matcher(sentence.get(CoreAnnotations.TokensAnnotation.class)).matches()
-              ).collect(Collectors.toList()));
-            } else {
-              // Case: find matches
-              docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence -> (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer sentWriter) -> {
-                List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-                TokenSequenceMatcher matcher = regex.matcher(tokens);
-                int i = 0;
-                while (matcher.find()) {
-                  sentWriter.set(Integer.toString(i), (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer matchWriter) -> {
-                    matchWriter.set("text", matcher.group());
-                    matchWriter.set("begin", matcher.start());
-                    matchWriter.set("end", matcher.end());
-                    for (int groupI = 0; groupI < matcher.groupCount(); ++groupI) {
-                      SequenceMatchResult.MatchedGroupInfo<CoreMap> info = matcher.groupInfo(groupI + 1);
-                      matchWriter.set(info.varName == null ? Integer.toString(groupI + 1) : info.varName, (Consumer<JSONOutputter.Writer>) groupWriter -> {
-                        groupWriter.set("text", info.text);
-                        if (info.nodes.size() > 0) {
-                          groupWriter.set("begin", info.nodes.get(0).get(CoreAnnotations.IndexAnnotation.class) - 1);
-                          groupWriter.set("end", info.nodes.get(info.nodes.size() - 1).get(CoreAnnotations.IndexAnnotation.class));
-                        }
-                      });
-                    }
-                  });
-                  i += 1;
-                }
-                sentWriter.set("length", i);
-              }));
+        }
+        put(end);
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * Add a document to the pending queue, waiting for room in it.
+     *
+     * @return false if the batch was closed in the meantime.
+     */
+    private boolean put(Annotation ann) throws InterruptedException {
+      while ( ! pending.offer(ann, 1, TimeUnit.SECONDS)) {
+        if (closed.get()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Annotate the pending documents one by one, and write each back as soon as it is done.
+     */
+    private void write() {
+      try {
+        // Load the models before anything is sent, so that a failure can still be reported
+        StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
+        httpExchange.getResponseHeaders().add("Content-Type", "application/x-protobuf");
+        responding = true;
+        httpExchange.sendResponseHeaders(HTTP_OK, 0);  // 0 means a chunked response of unknown length
+        OutputStream os = httpExchange.getResponseBody();
+        while (true) {
+          Annotation ann = pending.poll(1, TimeUnit.SECONDS);
+          if (closed.get()) {
+            return;
+          } else if (ann == end) {
+            break;
+          } else if (ann != null) {
+            if ( ! annotate(pipeline, ann)) {
+              return;
             }
-          });
-        } catch (Exception e) {
-          e.printStackTrace();
+            serializer.write(ann, os);
+            numDocuments += 1;
+          }
+        }
+        if (closed.compareAndSet(false, true)) {
+          log("[" + httpExchange.getRemoteAddress() + "] Batch of " + numDocuments + " documents done");
+          httpExchange.close();
+        }
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * Annotate one document as a job on the CoreNLP threads, waiting for room
+     * in their queue if it is full, and then for the job to finish.
+     *
+     * @return false if the batch was closed while waiting for room in the queue.
+     */
+    private boolean annotate(StanfordCoreNLP pipeline, Annotation ann) throws InterruptedException, ExecutionException {
+      while (true) {
+        Future<?> job;
+        try {
+          job = corenlpExecutor.submit(() -> pipeline.annotate(ann));
+        } catch (RejectedExecutionException e) {
+          if (closed.get()) {
+            return false;
+          }
+          Thread.sleep(RETRY_MILLISECONDS);
+          continue;
+        }
+        job.get();
+        return true;
+      }
+    }
+
+    /**
+     * Give up on the batch.
+     * If the response has started, all we can do is cut it short.
+     */
+    private void fail(Exception e) {
+      if (closed.compareAndSet(false, true)) {
+        log("[" + httpExchange.getRemoteAddress() + "] Batch failed after " + numDocuments + " documents");
+        e.printStackTrace();
+        pending.clear();
+        if (responding) {
+          httpExchange.close();
+        } else {
           try {
             respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
           } catch (IOException ignored) {
+            httpExchange.close();
           }
         }
-        return "";
-      });
+      }
+    }
+  }
+
+  /**
+   * A handler for matching TokensRegex patterns against text.
+   */
+  protected class TokensRegexHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      // Set common response headers
+      httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+
+      // (get the pattern)
+      Map<String, String> params = getURLParams(httpExchange.getRequestURI());
+      if (!params.containsKey("pattern")) {
+        respondError("Missing required parameter 'pattern'", httpExchange);
+        return;
+      }
+      String pattern = params.get("pattern");
+      // (get whether to filter / find)
+      String filterStr = params.getOrDefault("filter", "false");
+      final boolean filter = filterStr.trim().isEmpty() || "true".equalsIgnoreCase(filterStr.toLowerCase());
 
-      // Send response
-      byte[] response = new byte[0];
+      // Read the document and load the pipeline on this thread, before the deadline starts
+      Properties props = new Properties() {{
+        setProperty("annotators", "tokenize,ssplit,pos,lemma,ner");
+      }};
+      Annotation doc;
+      StanfordCoreNLP pipeline;
       try {
-        response = json.get(5, TimeUnit.SECONDS).getBytes();
-      } catch (InterruptedException | ExecutionException | TimeoutException e) {
-        respondError("Timeout when executing TokensRegex query", httpExchange);
+        doc = getDocument(props, httpExchange);
+        pipeline = doc.containsKey(CoreAnnotations.SentencesAnnotation.class) ? null : mkStanfordCoreNLP(props);
+      } catch (Exception e) {
+        e.printStackTrace();
+        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        return;
       }
-      if (response.length > 0) {
+
+      // Errors thrown here are sent to the client by submit()
+      submit(httpExchange, () -> {
+        if (pipeline != null) {
+          pipeline.annotate(doc);
+        }
+
+        // Construct the matcher
+        final TokenSequencePattern regex = TokenSequencePattern.compile(pattern);
+
+        // Run TokensRegex
+        return JSONOutputter.JSONWriter.objectToJSON((docWriter) -> {
+          if (filter) {
+            // Case: just filter sentences
+            docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence ->
+                    regex.matcher(sentence.get(CoreAnnotations.TokensAnnotation.class)).matches()
+            ).collect(Collectors.toList()));
+          } else {
+            // Case: find matches
+            docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence -> (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer sentWriter) -> {
+              List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+              TokenSequenceMatcher matcher = regex.matcher(tokens);
+              int i = 0;
+              while (matcher.find()) {
+                sentWriter.set(Integer.toString(i), (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer matchWriter) -> {
+                  matchWriter.set("text", matcher.group());
+                  matchWriter.set("begin", matcher.start());
+                  matchWriter.set("end", matcher.end());
+                  for (int groupI = 0; groupI < matcher.groupCount(); ++groupI) {
+                    SequenceMatchResult.MatchedGroupInfo<CoreMap> info = matcher.groupInfo(groupI + 1);
+                    matchWriter.set(info.varName == null ? Integer.toString(groupI + 1) : info.varName, (Consumer<JSONOutputter.Writer>) groupWriter -> {
+                      groupWriter.set("text", info.text);
+                      if (info.nodes.size() > 0) {
+                        groupWriter.set("begin", info.nodes.get(0).get(CoreAnnotations.IndexAnnotation.class) - 1);
+                        groupWriter.set("end", info.nodes.get(info.nodes.size() - 1).get(CoreAnnotations.IndexAnnotation.class));
+                      }
+                    });
+                  }
+                });
+                i += 1;
+              }
+              sentWriter.set("length", i);
+            }));
+          }
+        });
+      }, json -> {
+        // Send response
+        byte[] response = json.getBytes();
         httpExchange.getResponseHeaders().add("Content-Type", "text/json");
         httpExchange.getResponseHeaders().add("Content-Length", Integer.toString(response.length));
         httpExchange.sendResponseHeaders(HTTP_OK, response.length);
         httpExchange.getResponseBody().write(response);
         httpExchange.close();
-      }
+      }, "Timeout when executing TokensRegex query");
     }
   }
 
@@ -481,89 +983,83 @@ public class StanfordCoreNLPServer implements Runnable {
       // Set common response headers
       httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
 
-      Future<String> json = corenlpExecutor.submit(() -> {
-        try {
-          // Get the document
-          Properties props = new Properties() {{
-            setProperty("annotators", "tokenize,ssplit,pos,lemma,ner,depparse");
-          }};
-          Annotation doc = getDocument(props, httpExchange);
-          if (!doc.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-            StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-            pipeline.annotate(doc);
-          }
-
-          // Construct the matcher
-          Map<String, String> params = getURLParams(httpExchange.getRequestURI());
-          // (get the pattern)
-          if (!params.containsKey("pattern")) {
-            respondError("Missing required parameter 'pattern'", httpExchange);
-            return "";
-          }
-          String pattern = params.get("pattern");
-          // (get whether to filter / find)
-          String filterStr = params.getOrDefault("filter", "false");
-          final boolean filter = filterStr.trim().isEmpty() || "true".equalsIgnoreCase(filterStr.toLowerCase());
-          // (create the matcher)
-          final SemgrexPattern regex = SemgrexPattern.compile(pattern);
-
-          // Run TokensRegex
-          return JSONOutputter.JSONWriter.objectToJSON((docWriter) -> {
-            if (filter) {
-              // Case: just filter sentences
-              docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence ->
-                      regex.matcher(sentence.get(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class)).matches()
-              ).collect(Collectors.toList()));
-            } else {
-              // Case: find matches
-              docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence -> (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer sentWriter) -> {
-                SemgrexMatcher matcher = regex.matcher(sentence.get(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class));
-                int i = 0;
-                while (matcher.find()) {
-                  sentWriter.set(Integer.toString(i), (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer matchWriter) -> {
-                    IndexedWord match = matcher.getMatch();
-                    matchWriter.set("text", match.word());
-                    matchWriter.set("begin", match.index() - 1);
-                    matchWriter.set("end", match.index());
-                    for (String capture : matcher.getNodeNames()) {
-                      matchWriter.set("$" + capture, (Consumer<JSONOutputter.Writer>) groupWriter -> {
-                        IndexedWord node = matcher.getNode(capture);
-                        groupWriter.set("text", node.word());
-                        groupWriter.set("begin", node.index() - 1);
-                        groupWriter.set("end", node.index());
-                      });
-                    }
-                  });
-                  i += 1;
-                }
-                sentWriter.set("length", i);
-              }));
-            }
-          });
-        } catch (Exception e) {
-          e.printStackTrace();
-          try {
-            respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
-          } catch (IOException ignored) {
-          }
-        }
-        return "";
-      });
+      // (get the pattern)
+      Map<String, String> params = getURLParams(httpExchange.getRequestURI());
+      if (!params.containsKey("pattern")) {
+        respondError("Missing required parameter 'pattern'", httpExchange);
+        return;
+      }
+      String pattern = params.get("pattern");
+      // (get whether to filter / find)
+      String filterStr = params.getOrDefault("filter", "false");
+      final boolean filter = filterStr.trim().isEmpty() || "true".equalsIgnoreCase(filterStr.toLowerCase());
 
-      // Send response
-      byte[] response = new byte[0];
+      // Read the document and load the pipeline on this thread, before the deadline starts
+      Properties props = new Properties() {{
+        setProperty("annotators", "tokenize,ssplit,pos,lemma,ner,depparse");
+      }};
+      Annotation doc;
+      StanfordCoreNLP pipeline;
       try {
-        response = json.get(5, TimeUnit.SECONDS).getBytes();
-      } catch (InterruptedException | ExecutionException | TimeoutException e) {
-        respondError("Timeout when executing Semgrex query", httpExchange);
+        doc = getDocument(props, httpExchange);
+        pipeline = doc.containsKey(CoreAnnotations.SentencesAnnotation.class) ? null : mkStanfordCoreNLP(props);
+      } catch (Exception e) {
+        e.printStackTrace();
+        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        return;
       }
-      if (response.length > 0) {
+
+      // Errors thrown here are sent to the client by submit()
+      submit(httpExchange, () -> {
+        if (pipeline != null) {
+          pipeline.annotate(doc);
+        }
+
+        // Construct the matcher
+        final SemgrexPattern regex = SemgrexPattern.compile(pattern);
+
+        // Run TokensRegex
+        return JSONOutputter.JSONWriter.objectToJSON((docWriter) -> {
+          if (filter) {
+            // Case: just filter sentences
+            docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence ->
+                    regex.matcher(sentence.get(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class)).matches()
+            ).collect(Collectors.toList()));
+          } else {
+            // Case: find matches
+            docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence -> (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer sentWriter) -> {
+              SemgrexMatcher matcher = regex.matcher(sentence.get(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class));
+              int i = 0;
+              while (matcher.find()) {
+                sentWriter.set(Integer.toString(i), (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer matchWriter) -> {
+                  IndexedWord match = matcher.getMatch();
+                  matchWriter.set("text", match.word());
+                  matchWriter.set("begin", match.index() - 1);
+                  matchWriter.set("end", match.index());
+                  for (String capture : matcher.getNodeNames()) {
+                    matchWriter.set("$" + capture, (Consumer<JSONOutputter.Writer>) groupWriter -> {
+                      IndexedWord node = matcher.getNode(capture);
+                      groupWriter.set("text", node.word());
+                      groupWriter.set("begin", node.index() - 1);
+                      groupWriter.set("end", node.index());
+                    });
+                  }
+                });
+                i += 1;
+              }
+              sentWriter.set("length", i);
+            }));
+          }
+        });
+      }, json -> {
+        // Send response
+        byte[] response = json.getBytes();
         httpExchange.getResponseHeaders().add("Content-Type", "text/json");
         httpExchange.getResponseHeaders().add("Content-Length", Integer.toString(response.length));
         httpExchange.sendResponseHeaders(HTTP_OK, response.length);
         httpExchange.getResponseBody().write(response);
         httpExchange.close();
-      }
+      }, "Timeout when executing Semgrex query");
     }
   }
 
@@ -580,11 +1076,13 @@ public class StanfordCoreNLPServer implements Runnable {
     try {
       server = HttpServer.create(new InetSocketAddress(serverPort), 0); // 0 is the default 'backlog'
       server.createContext("/", new CoreNLPHandler(defaultProps));
+      server.createContext("/batch", new BatchHandler(defaultProps));
       server.createContext("/tokensregex", new TokensRegexHandler());
       server.createContext("/semgrex", new SemgrexHandler());
       server.createContext("/corenlp-brat.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.js"));
       server.createContext("/corenlp-brat.cs", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.css"));
       server.createContext("/ping", new PingHandler());
+      server.createContext("/metrics", new MetricsHandler());
       server.createContext("/shutdown", new ShutdownHandler());
       server.setExecutor(serverExecutor);
       server.start();
@@ -607,9 +1105,27 @@ public class StanfordCoreNLPServer implements Runnable {
     if(args.length > 0) {
       port = Integer.parseInt(args[0]);
     }
-    StanfordCoreNLPServer server = new StanfordCoreNLPServer(port);
-    if (args.length > 2 && args[1].equals("-model")) {
-      server.defaultProps.setProperty("depparse.model", args[2]);
+    String model = null;
+    long timeout = 5000;
+    int queueSize = 4 * Execution.threads;
+    for (int i = 1; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "-model":
+          model = args[i + 1];
+          break;
+        case "-timeout":
+          timeout = Long.parseLong(args[i + 1]);
+          break;
+        case "-queueSize":
+          queueSize = Integer.parseInt(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown argument: " + args[i]);
+      }
+    }
+    StanfordCoreNLPServer server = new StanfordCoreNLPServer(port, timeout, queueSize);
+    if (model != null) {
+      server.defaultProps.setProperty("depparse.model", model);
     }
     server.run();
   }
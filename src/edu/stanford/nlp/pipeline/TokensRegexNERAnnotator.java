@@ -5,13 +5,21 @@ import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.*;
+import edu.stanford.nlp.ling.tokensregex.matcher.AhoCorasickAutomaton;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -63,6 +71,13 @@ import java.util.regex.Pattern;
  * </p>
  *
  * <p>
+ * Entries which are just a sequence of words (made only of letters, digits, underscores, hyphens and apostrophes,
+ * as most entries of a gazetteer are) are not compiled into TokensRegex patterns.  They are all found in
+ * one pass over the tokens by an {@link AhoCorasickAutomaton}, which can be saved to a file
+ * (<code>literalCache</code>) so that later runs do not have to build it again.
+ * </p>
+ *
+ * <p>
  * This annotator is similar to {@link RegexNERAnnotator} but uses TokensRegex as the underlying library for matching
  * regular expressions.  This allows for more flexibility in the types of expressions matched as well as utilizing
  * any optimization that is included in the TokensRegex library.
@@ -120,6 +135,10 @@ import java.util.regex.Pattern;
  *      <td><code>false</code></td></tr>
  *   <tr><td><code>verbose</code></td><td>If true, turns on extra debugging messages.</td>
  *      <td><code>false</code></td></tr>
+ *   <tr><td><code>literalCache</code></td>
+ *      <td>File to save the compiled entries which are sequences of words to, and to load them from
+ *          if they were compiled from the same mappings.</td>
+ *      <td><code></code></td></tr>
  * </table>
  * </p>
  *
@@ -139,8 +158,10 @@ public class TokensRegexNERAnnotator implements Annotator {
   private final boolean ignoreCase;
   private final Set<String> commonWords;
   private final List<Entry> entries;
-  private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
+  private final Map<SequencePattern<CoreMap>,Integer> patternToEntryIndex;
   private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
+  // entries which are sequences of words, from their (case folded) words to their indices in entries
+  private final AhoCorasickAutomaton<String,int[]> literalMatcher;
   private final List<Class> annotationFields; // list of fields to annotate (default to just NamedEntityTag)
 
   private final Set<String> myLabels;  // set of labels to always overwrite
@@ -174,6 +195,7 @@ public class TokensRegexNERAnnotator implements Annotator {
                   " specified overwriteableType for the regex will the NER type be overwritten."),
           new PropertiesUtils.Property("backgroundSymbol", DEFAULT_BACKGROUND_SYMBOL, "Comma separated list of NER labels to always replace."),
           new PropertiesUtils.Property("verbose", "false", ""),
+          new PropertiesUtils.Property("literalCache", "", "File to save the compiled entries which are sequences of words to, and to load them from."),
   };
 
   /** Construct a new TokensRegexAnnotator.
@@ -203,6 +225,8 @@ public class TokensRegexNERAnnotator implements Annotator {
     return props;
   }
 
+  // Node regexes which TokensRegex matches as plain strings (see ComplexNodePattern.newStringRegexPattern)
+  private static final Pattern LITERAL_PATTERN = Pattern.compile("[A-Za-z0-9_\\-']*");
   private static Pattern FILE_DELIMITERS_PATTERN = Pattern.compile("\\s*[,;]\\s*");
   private static Pattern COMMA_DELIMITERS_PATTERN = Pattern.compile("\\s*,\\s*");
   public TokensRegexNERAnnotator(String name, Properties properties) {
@@ -278,9 +302,12 @@ public class TokensRegexNERAnnotator implements Annotator {
       validPosPattern = null;
     }
     entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCase, verbose, headerFields, annotationFieldnames, mappings));
-    IdentityHashMap<SequencePattern<CoreMap>, Entry> patternToEntry = new IdentityHashMap<SequencePattern<CoreMap>, Entry>();
-    multiPatternMatcher = createPatternMatcher(patternToEntry);
-    this.patternToEntry = Collections.unmodifiableMap(patternToEntry);
+    IdentityHashMap<SequencePattern<CoreMap>, Integer> patternToEntryIndex = new IdentityHashMap<SequencePattern<CoreMap>, Integer>();
+    Map<List<String>, int[]> literals = new LinkedHashMap<List<String>, int[]>();
+    multiPatternMatcher = createPatternMatcher(patternToEntryIndex, literals);
+    this.patternToEntryIndex = Collections.unmodifiableMap(patternToEntryIndex);
+    literalMatcher = (literals.isEmpty())? null:
+            createLiteralMatcher(name, literals, properties.getProperty(prefix + "literalCache"));
     Set<String> myLabels = Generics.newHashSet();
     // Can always override background or none.
     Collections.addAll(myLabels, backgroundSymbols);
@@ -319,7 +346,8 @@ public class TokensRegexNERAnnotator implements Annotator {
       System.err.println("done.");
   }
 
-  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
+  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Integer> patternToEntryIndex,
+                                                            Map<List<String>, int[]> literals) {
     // Convert to tokensregex pattern
     int patternFlags = ignoreCase? Pattern.CASE_INSENSITIVE:0;
     int stringMatchFlags = ignoreCase? NodePattern.CASE_INSENSITIVE:0;
@@ -329,7 +357,24 @@ public class TokensRegexNERAnnotator implements Annotator {
     NodePattern<String> posTagPattern = (validPosPattern != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType))?
             new CoreMapNodePattern.StringAnnotationRegexPattern(validPosPattern):null;
     List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>(entries.size());
-    for (Entry entry:entries) {
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (isLiteral(entry)) {
+        // a sequence of words: matched by the literal matcher instead
+        List<String> key = new ArrayList<String>(entry.regex.length);
+        for (String word:entry.regex) {
+          key.add(normalizeWord(word));
+        }
+        int[] indices = literals.get(key);
+        if (indices == null) {
+          indices = new int[] { i };
+        } else {
+          indices = Arrays.copyOf(indices, indices.length + 1);
+          indices[indices.length - 1] = i;
+        }
+        literals.put(key, indices);
+        continue;
+      }
       TokenSequencePattern pattern;
       if (entry.tokensRegex != null) {
         // TODO: posTagPatterns...
@@ -352,26 +397,210 @@ public class TokensRegexNERAnnotator implements Annotator {
       pattern.setPriority(entry.priority);
       pattern.setWeight(entry.weight);
       patterns.add(pattern);
-      patternToEntry.put(pattern, entry);
+      patternToEntryIndex.put(pattern, i);
     }
     return TokenSequencePattern.getMultiPatternMatcher(patterns);
   }
 
+  private static boolean isLiteral(Entry entry) {
+    if (entry.tokensRegex != null || entry.annotateGroup != 0) {
+      return false;
+    }
+    for (String p:entry.regex) {
+      if (!LITERAL_PATTERN.matcher(p).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Folds the case of a word if case is ignored, the same way as {@link String#equalsIgnoreCase} */
+  private String normalizeWord(String word) {
+    if (!ignoreCase || word == null) {
+      return word;
+    }
+    char[] chars = word.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * A SHA-256 digest of the entries which are sequences of words: each word
+   * and entry index is written out in full, so two different sets of entries
+   * only get the same digest if SHA-256 collides.
+   */
+  static byte[] literalDigest(Map<List<String>, int[]> literals) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      DataOutputStream out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+      }, digest));
+      out.writeInt(literals.size());
+      for (Map.Entry<List<String>, int[]> literal:literals.entrySet()) {
+        out.writeInt(literal.getKey().size());
+        for (String word:literal.getKey()) {
+          // writeUTF is limited to 64K bytes, so write the characters with their count
+          out.writeInt(word.length());
+          out.writeChars(word);
+        }
+        out.writeInt(literal.getValue().length);
+        for (int index:literal.getValue()) {
+          out.writeInt(index);
+        }
+      }
+      out.flush();
+      return digest.digest();
+    } catch (NoSuchAlgorithmException | IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Compiles the entries which are sequences of words into an automaton, or
+   * loads it from the cache file if that was compiled from the same entries.
+   */
+  private static AhoCorasickAutomaton<String,int[]> createLiteralMatcher(String annotatorName,
+                                                                        Map<List<String>, int[]> literals,
+                                                                        String cacheFile) {
+    byte[] digest = literalDigest(literals);
+    if (cacheFile != null && !cacheFile.isEmpty() && new File(cacheFile).exists()) {
+      try {
+        Pair<byte[], AhoCorasickAutomaton<String,int[]>> cached = IOUtils.readObjectFromFile(cacheFile);
+        if (MessageDigest.isEqual(cached.first(), digest)) {
+          logger.log("TokensRegexNERAnnotator " + annotatorName + ": Loaded " + literals.size() + " word sequences from " + cacheFile);
+          return cached.second();
+        }
+        logger.log("TokensRegexNERAnnotator " + annotatorName + ": Mappings have changed since " + cacheFile + " was saved, recompiling");
+      } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        logger.warn("TokensRegexNERAnnotator " + annotatorName + ": Cannot load " + cacheFile + ", recompiling: " + e);
+      }
+    }
+    AhoCorasickAutomaton<String,int[]> literalMatcher = new AhoCorasickAutomaton<String,int[]>(literals);
+    if (cacheFile != null && !cacheFile.isEmpty()) {
+      try {
+        IOUtils.writeObjectToFile(new Pair<byte[], AhoCorasickAutomaton<String,int[]>>(digest, literalMatcher), cacheFile);
+      } catch (IOException e) {
+        logger.warn("TokensRegexNERAnnotator " + annotatorName + ": Cannot save " + cacheFile + ": " + e);
+      }
+    }
+    return literalMatcher;
+  }
+
+  /** A match of an entry, by either the literal matcher or its TokensRegex pattern */
+  private static class EntryMatch implements HasInterval<Integer> {
+    final Entry entry;
+    final int order;  // the index of the entry
+    final Interval<Integer> interval;  // the whole match
+    final int start;  // start of the group to annotate
+    final int end;    // end of the group to annotate
+
+    EntryMatch(Entry entry, int order, int matchStart, int matchEnd, int start, int end) {
+      this.entry = entry;
+      this.order = order;
+      this.interval = Interval.toInterval(matchStart, matchEnd, Interval.INTERVAL_OPEN_END);
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public Interval<Integer> getInterval() {
+      return interval;
+    }
+
+    int length() {
+      return interval.getEnd() - interval.getBegin();
+    }
+  }
+
+  // The same order as SequenceMatchResult.DEFAULT_COMPARATOR:
+  //   priority, weight, length (highest first), then entry order and offsets (smallest first)
+  private static final Comparator<EntryMatch> ENTRY_MATCH_COMPARATOR = (m1, m2) -> {
+    if (m1.entry.priority != m2.entry.priority) {
+      return (m1.entry.priority > m2.entry.priority)? -1:1;
+    } else if (m1.entry.weight != m2.entry.weight) {
+      return (m1.entry.weight > m2.entry.weight)? -1:1;
+    } else if (m1.length() != m2.length()) {
+      return (m1.length() > m2.length())? -1:1;
+    } else if (m1.order != m2.order) {
+      return (m1.order < m2.order)? -1:1;
+    } else {
+      return m1.interval.compareTo(m2.interval);
+    }
+  };
+
+  /**
+   * Finds the matches of all the entries, and keeps non overlapping ones the way
+   * {@link MultiPatternMatcher#findNonOverlapping} would if every entry were a pattern.
+   */
+  private List<EntryMatch> findNonOverlapping(List<CoreLabel> tokens) {
+    List<EntryMatch> all = new ArrayList<EntryMatch>();
+    if (literalMatcher != null) {
+      List<String> words = new ArrayList<String>(tokens.size());
+      for (CoreLabel token:tokens) {
+        words.add(normalizeWord(token.word()));
+      }
+      // TokensRegex finds the matches of each pattern from left to right without overlaps
+      Map<Integer,Integer> lastEnds = null;
+      for (Match<String,int[]> m:literalMatcher.findAllMatches(words)) {
+        if (!checkAllPosTags(tokens, m.getBegin(), m.getEnd())) {
+          continue;
+        }
+        for (int index:m.getValue()) {
+          if (lastEnds == null) {
+            lastEnds = Generics.newHashMap();
+          }
+          Integer lastEnd = lastEnds.get(index);
+          if (lastEnd != null && m.getBegin() < lastEnd) {
+            continue;
+          }
+          lastEnds.put(index, m.getEnd());
+          all.add(new EntryMatch(entries.get(index), index, m.getBegin(), m.getEnd(), m.getBegin(), m.getEnd()));
+        }
+      }
+    }
+    if (!patternToEntryIndex.isEmpty()) {
+      for (SequenceMatchResult<CoreMap> m:multiPatternMatcher.findAllMatches(tokens)) {
+        int index = patternToEntryIndex.get(m.pattern());
+        Entry entry = entries.get(index);
+        int g = entry.annotateGroup;
+        all.add(new EntryMatch(entry, index, m.start(), m.end(), m.start(g), m.end(g)));
+      }
+    }
+    List<EntryMatch> res = IntervalTree.getNonOverlapping(all, ENTRY_MATCH_COMPARATOR);
+    Collections.sort(res, (m1, m2) -> m1.interval.compareTo(m2.interval));
+    return res;
+  }
+
+  // For literal matches, what the POS tag patterns added to each node when matching all tokens would check
+  private boolean checkAllPosTags(List<CoreLabel> tokens, int start, int end) {
+    if (validPosPattern != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType)) {
+      for (int i = start; i < end; i++) {
+        String pos = tokens.get(i).get(CoreAnnotations.PartOfSpeechAnnotation.class);
+        if (pos == null || !validPosPattern.matcher(pos).matches()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   private void annotateMatched(List<CoreLabel> tokens) {
-    List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
-    for (SequenceMatchResult<CoreMap> m:matched) {
-      Entry entry = patternToEntry.get(m.pattern());
+    List<EntryMatch> matched = findNonOverlapping(tokens);
+    for (EntryMatch m:matched) {
+      Entry entry = m.entry;
 
       // Check if we will overwrite the existing annotation with this annotation
-      int g = entry.annotateGroup;
-      int start = m.start(g);
-      int end = m.end(g);
+      int start = m.start;
+      int end = m.end;
 
-      String str = m.group(g);
+      String str = (start >= 0)? ChunkAnnotationUtils.getTokenText(tokens.subList(start, end), CoreAnnotations.TextAnnotation.class): null;
       if (commonWords.contains(str)) {
         if (verbose) {
           System.err.println("Not annotating (common word) '" + str + "': " +
-              StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+              StringUtils.joinFields(tokens.subList(start, end), CoreAnnotations.NamedEntityTagAnnotation.class)
               + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
         continue;
@@ -391,8 +620,8 @@ public class TokensRegexNERAnnotator implements Annotator {
         }
       } else {
         if (verbose) {
-          System.err.println("Not annotating  '" + m.group(g) + "': " +
-                  StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+          System.err.println("Not annotating  '" + str + "': " +
+                  StringUtils.joinFields(tokens.subList(start, end), CoreAnnotations.NamedEntityTagAnnotation.class)
                   + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
       }
@@ -0,0 +1,513 @@
+package edu.stanford.nlp.semgraph;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.util.Pair;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * An immutable {@link SemanticGraph} stored in a few arrays, for keeping
+ * many graphs in memory and reading them.
+ * <br>
+ * A SemanticGraph keeps a map of maps of lists of edges for each
+ * direction, which for a typical sentence takes several times the memory
+ * of its words.  Here the vertices are numbered in their sorted order
+ * (that of {@link SemanticGraph#vertexListSorted()}, which is token order)
+ * and the edges are in compressed sparse row form: the edges out of
+ * vertex <code>v</code> are numbers <code>firstOutEdge(v)</code> to
+ * <code>endOutEdge(v) - 1</code>, sorted by their target and relation,
+ * each with the number of its source and target vertices and of its
+ * relation in a table of the distinct relations of the graph.  The edges
+ * into each vertex are indexed the same way.
+ * <br>
+ * The read methods have the names and results of those of SemanticGraph,
+ * except that vertices and edges come in sorted order and edges are made
+ * as they are asked for.  There are no methods to change the graph:
+ * convert it with {@link #toSemanticGraph()}, and back with
+ * {@link #CompactSemanticGraph(SemanticGraph)}.
+ */
+public class CompactSemanticGraph implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final IndexedWord[] vertices;
+  private final int[] roots;
+
+  /** The edges out of vertex v are outStart[v] to outStart[v+1] - 1 */
+  private final int[] outStart;
+  private final int[] edgeSource;
+  private final int[] edgeTarget;
+  private final int[] edgeRelation;
+  private final GrammaticalRelation[] relations;
+  /** The weight of each edge, or null if they all weigh commonWeight */
+  private final double[] edgeWeight;
+  private final double commonWeight;
+  /** Which edges are extra, or null if none are */
+  private final BitSet extraEdges;
+
+  /** The edges into vertex v are inEdges[inStart[v]] to inEdges[inStart[v+1] - 1] */
+  private final int[] inStart;
+  private final int[] inEdges;
+
+  private final String[] comments;
+
+  public CompactSemanticGraph(SemanticGraph sg) {
+    List<IndexedWord> sorted = sg.vertexListSorted();
+    vertices = sorted.toArray(new IndexedWord[sorted.size()]);
+    Map<IndexedWord, Integer> numbers = new HashMap<>();
+    for (int v = 0; v < vertices.length; v++) {
+      numbers.put(vertices[v], v);
+    }
+
+    int numEdges = sg.edgeCount();
+    outStart = new int[vertices.length + 1];
+    edgeSource = new int[numEdges];
+    edgeTarget = new int[numEdges];
+    edgeRelation = new int[numEdges];
+    double[] weights = new double[numEdges];
+    boolean sameWeights = true;
+    BitSet extra = new BitSet();
+    Map<GrammaticalRelation, Integer> relationNumbers = new HashMap<>();
+    List<GrammaticalRelation> relationList = new ArrayList<>();
+    int e = 0;
+    for (int v = 0; v < vertices.length; v++) {
+      outStart[v] = e;
+      List<SemanticGraphEdge> out = sg.outgoingEdgeList(vertices[v]);
+      out.sort(Comparator.<SemanticGraphEdge>comparingInt(edge -> numbers.get(edge.getTarget()))
+          .thenComparing(edge -> edge.getRelation().toString()));
+      for (SemanticGraphEdge edge : out) {
+        edgeSource[e] = v;
+        edgeTarget[e] = numbers.get(edge.getTarget());
+        Integer relation = relationNumbers.get(edge.getRelation());
+        if (relation == null) {
+          relation = relationList.size();
+          relationNumbers.put(edge.getRelation(), relation);
+          relationList.add(edge.getRelation());
+        }
+        edgeRelation[e] = relation;
+        weights[e] = edge.getWeight();
+        sameWeights &= Double.compare(weights[e], weights[0]) == 0;
+        if (edge.isExtra()) {
+          extra.set(e);
+        }
+        e++;
+      }
+    }
+    outStart[vertices.length] = e;
+    relations = relationList.toArray(new GrammaticalRelation[relationList.size()]);
+    // edges mostly all have the default weight, Double.NEGATIVE_INFINITY
+    edgeWeight = sameWeights ? null : weights;
+    commonWeight = numEdges == 0 ? Double.NEGATIVE_INFINITY : weights[0];
+    extraEdges = extra.isEmpty() ? null : extra;
+
+    // counting sort of the edges by target, which keeps them in order of source
+    inStart = new int[vertices.length + 1];
+    for (int edge = 0; edge < numEdges; edge++) {
+      inStart[edgeTarget[edge] + 1]++;
+    }
+    for (int v = 0; v < vertices.length; v++) {
+      inStart[v + 1] += inStart[v];
+    }
+    inEdges = new int[numEdges];
+    int[] next = Arrays.copyOf(inStart, vertices.length);
+    for (int edge = 0; edge < numEdges; edge++) {
+      inEdges[next[edgeTarget[edge]]++] = edge;
+    }
+
+    List<IndexedWord> sortedRoots = new ArrayList<>(sg.getRoots());
+    Collections.sort(sortedRoots);
+    roots = new int[sortedRoots.size()];
+    for (int i = 0; i < roots.length; i++) {
+      roots[i] = numbers.get(sortedRoots.get(i));
+    }
+    comments = sg.getComments().toArray(new String[0]);
+  }
+
+  /** Returns a new SemanticGraph with the vertices, edges, roots and comments of this one. */
+  public SemanticGraph toSemanticGraph() {
+    SemanticGraph sg = new SemanticGraph();
+    for (IndexedWord vertex : vertices) {
+      sg.addVertex(vertex);
+    }
+    for (int e = 0; e < edgeSource.length; e++) {
+      sg.addEdge(vertices[edgeSource[e]], vertices[edgeTarget[e]], edgeRelation(e), edgeWeight(e), isExtra(e));
+    }
+    for (int root : roots) {
+      sg.addRoot(vertices[root]);
+    }
+    for (String comment : comments) {
+      sg.addComment(comment);
+    }
+    return sg;
+  }
+
+  // vertices and edges by number
+
+  /** The number of vertices. */
+  public int size() {
+    return vertices.length;
+  }
+
+  public int edgeCount() {
+    return edgeSource.length;
+  }
+
+  public boolean isEmpty() {
+    return vertices.length == 0;
+  }
+
+  /** The vertex numbered v, the v-th in sorted order. */
+  public IndexedWord vertex(int v) {
+    return vertices[v];
+  }
+
+  /** The number of a vertex, or -1 if it isn't in this graph. */
+  public int vertexNumber(IndexedWord vertex) {
+    int lo = 0;
+    int hi = vertices.length - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int cmp = vertices[mid].compareTo(vertex);
+      if (cmp < 0) {
+        lo = mid + 1;
+      } else if (cmp > 0) {
+        hi = mid - 1;
+      } else {
+        // vertices which compare the same needn't be equal
+        for (int v = mid; v >= 0 && vertices[v].compareTo(vertex) == 0; v--) {
+          if (vertices[v].equals(vertex)) return v;
+        }
+        for (int v = mid + 1; v < vertices.length && vertices[v].compareTo(vertex) == 0; v++) {
+          if (vertices[v].equals(vertex)) return v;
+        }
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  public int firstOutEdge(int v) {
+    return outStart[v];
+  }
+
+  public int endOutEdge(int v) {
+    return outStart[v + 1];
+  }
+
+  /** The number of the i-th edge into vertex v, in order of source. */
+  public int inEdge(int v, int i) {
+    return inEdges[inStart[v] + i];
+  }
+
+  public int inDegree(int v) {
+    return inStart[v + 1] - inStart[v];
+  }
+
+  public int outDegree(int v) {
+    return outStart[v + 1] - outStart[v];
+  }
+
+  public int edgeSource(int e) {
+    return edgeSource[e];
+  }
+
+  public int edgeTarget(int e) {
+    return edgeTarget[e];
+  }
+
+  public GrammaticalRelation edgeRelation(int e) {
+    return relations[edgeRelation[e]];
+  }
+
+  public double edgeWeight(int e) {
+    return edgeWeight == null ? commonWeight : edgeWeight[e];
+  }
+
+  public boolean isExtra(int e) {
+    return extraEdges != null && extraEdges.get(e);
+  }
+
+  /** Returns a new SemanticGraphEdge for edge number e. */
+  public SemanticGraphEdge edge(int e) {
+    return new SemanticGraphEdge(vertices[edgeSource[e]], vertices[edgeTarget[e]], edgeRelation(e), edgeWeight(e), isExtra(e));
+  }
+
+  // the read methods of SemanticGraph
+
+  private int checkVertex(IndexedWord vertex) {
+    int v = vertexNumber(vertex);
+    if (v < 0) {
+      throw new IllegalArgumentException();
+    }
+    return v;
+  }
+
+  public boolean containsVertex(IndexedWord vertex) {
+    return vertexNumber(vertex) >= 0;
+  }
+
+  public List<IndexedWord> vertexListSorted() {
+    return Collections.unmodifiableList(Arrays.asList(vertices));
+  }
+
+  public List<SemanticGraphEdge> edgeListSorted() {
+    List<SemanticGraphEdge> edges = new ArrayList<>(edgeSource.length);
+    for (int e = 0; e < edgeSource.length; e++) {
+      edges.add(edge(e));
+    }
+    edges.sort(SemanticGraphEdge.orderByTargetComparator());
+    return edges;
+  }
+
+  public int outDegree(IndexedWord vertex) {
+    return outDegree(checkVertex(vertex));
+  }
+
+  public int inDegree(IndexedWord vertex) {
+    return inDegree(checkVertex(vertex));
+  }
+
+  public List<SemanticGraphEdge> outgoingEdgeList(IndexedWord vertex) {
+    int v = checkVertex(vertex);
+    List<SemanticGraphEdge> edges = new ArrayList<>(outDegree(v));
+    for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+      edges.add(edge(e));
+    }
+    return edges;
+  }
+
+  public List<SemanticGraphEdge> incomingEdgeList(IndexedWord vertex) {
+    int v = checkVertex(vertex);
+    List<SemanticGraphEdge> edges = new ArrayList<>(inDegree(v));
+    for (int i = inStart[v]; i < inStart[v + 1]; i++) {
+      edges.add(edge(inEdges[i]));
+    }
+    return edges;
+  }
+
+  /** Returns an edge from gov to dep, or null if there is none. */
+  public SemanticGraphEdge getEdge(IndexedWord gov, IndexedWord dep) {
+    int g = vertexNumber(gov);
+    int d = vertexNumber(dep);
+    if (g < 0 || d < 0) {
+      return null;
+    }
+    for (int e = outStart[g]; e < outStart[g + 1]; e++) {
+      if (edgeTarget[e] == d) {
+        return edge(e);
+      }
+    }
+    return null;
+  }
+
+  public boolean hasChildren(IndexedWord vertex) {
+    return outDegree(vertex) > 0;
+  }
+
+  /** The children of a vertex, sorted and without repeats. */
+  public List<IndexedWord> getChildList(IndexedWord vertex) {
+    int v = checkVertex(vertex);
+    List<IndexedWord> children = new ArrayList<>(outDegree(v));
+    for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+      if (e == outStart[v] || edgeTarget[e] != edgeTarget[e - 1]) {
+        children.add(vertices[edgeTarget[e]]);
+      }
+    }
+    return children;
+  }
+
+  public Set<IndexedWord> getChildren(IndexedWord vertex) {
+    return new LinkedHashSet<>(getChildList(vertex));
+  }
+
+  /** The parents of a vertex, sorted and without repeats. */
+  public List<IndexedWord> getParentList(IndexedWord vertex) {
+    int v = checkVertex(vertex);
+    List<IndexedWord> parents = new ArrayList<>(inDegree(v));
+    for (int i = inStart[v]; i < inStart[v + 1]; i++) {
+      if (i == inStart[v] || edgeSource[inEdges[i]] != edgeSource[inEdges[i - 1]]) {
+        parents.add(vertices[edgeSource[inEdges[i]]]);
+      }
+    }
+    return parents;
+  }
+
+  public Set<IndexedWord> getParents(IndexedWord vertex) {
+    return new LinkedHashSet<>(getParentList(vertex));
+  }
+
+  public List<Pair<GrammaticalRelation, IndexedWord>> childPairs(IndexedWord vertex) {
+    int v = checkVertex(vertex);
+    List<Pair<GrammaticalRelation, IndexedWord>> childPairs = new ArrayList<>(outDegree(v));
+    for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+      childPairs.add(new Pair<>(edgeRelation(e), vertices[edgeTarget[e]]));
+    }
+    return childPairs;
+  }
+
+  public List<Pair<GrammaticalRelation, IndexedWord>> parentPairs(IndexedWord vertex) {
+    int v = checkVertex(vertex);
+    List<Pair<GrammaticalRelation, IndexedWord>> parentPairs = new ArrayList<>(inDegree(v));
+    for (int i = inStart[v]; i < inStart[v + 1]; i++) {
+      parentPairs.add(new Pair<>(edgeRelation(inEdges[i]), vertices[edgeSource[inEdges[i]]]));
+    }
+    return parentPairs;
+  }
+
+  /** Returns the relation of an edge from a to b, or null if there is none. */
+  public GrammaticalRelation reln(IndexedWord a, IndexedWord b) {
+    int av = checkVertex(a);
+    int bv = vertexNumber(b);
+    for (int e = outStart[av]; e < outStart[av + 1]; e++) {
+      if (edgeTarget[e] == bv) {
+        return edgeRelation(e);
+      }
+    }
+    return null;
+  }
+
+  public Set<IndexedWord> getChildrenWithReln(IndexedWord vertex, GrammaticalRelation reln) {
+    if (vertex.equals(IndexedWord.NO_WORD))
+      return Collections.emptySet();
+    int v = checkVertex(vertex);
+    Set<IndexedWord> children = new LinkedHashSet<>();
+    for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+      if (edgeRelation(e).equals(reln)) {
+        children.add(vertices[edgeTarget[e]]);
+      }
+    }
+    return children;
+  }
+
+  /** Returns the first child bearing a relation, or null if none. */
+  public IndexedWord getChildWithReln(IndexedWord vertex, GrammaticalRelation reln) {
+    if (vertex.equals(IndexedWord.NO_WORD))
+      return null;
+    int v = checkVertex(vertex);
+    for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+      if (edgeRelation(e).equals(reln)) {
+        return vertices[edgeTarget[e]];
+      }
+    }
+    return null;
+  }
+
+  public boolean hasChildWithReln(IndexedWord vertex, GrammaticalRelation reln) {
+    return getChildWithReln(vertex, reln) != null;
+  }
+
+  /** Returns the vertex with its descendants. */
+  public Set<IndexedWord> descendants(IndexedWord vertex) {
+    BitSet reached = new BitSet(vertices.length);
+    int[] stack = new int[vertices.length];
+    int top = 0;
+    stack[top++] = checkVertex(vertex);
+    reached.set(stack[0]);
+    while (top > 0) {
+      int v = stack[--top];
+      for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+        if (!reached.get(edgeTarget[e])) {
+          reached.set(edgeTarget[e]);
+          stack[top++] = edgeTarget[e];
+        }
+      }
+    }
+    Set<IndexedWord> descendants = new LinkedHashSet<>();
+    for (int v = reached.nextSetBit(0); v >= 0; v = reached.nextSetBit(v + 1)) {
+      descendants.add(vertices[v]);
+    }
+    return descendants;
+  }
+
+  public Collection<IndexedWord> getRoots() {
+    List<IndexedWord> rootList = new ArrayList<>(roots.length);
+    for (int root : roots) {
+      rootList.add(vertices[root]);
+    }
+    return rootList;
+  }
+
+  public IndexedWord getFirstRoot() {
+    if (roots.length == 0)
+      throw new RuntimeException("No roots in graph:\n" + this);
+    return vertices[roots[0]];
+  }
+
+  private boolean isRoot(int v) {
+    for (int root : roots) {
+      if (root == v) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Finds the path from a vertex to a root, as
+   * {@link SemanticGraph#getPathToRoot} does, trying parents in sorted
+   * order.  The path does not include the vertex.
+   *
+   * @return the path, which is empty if vertex is a root, or null if no root can be reached
+   */
+  public List<IndexedWord> getPathToRoot(IndexedWord vertex) {
+    List<IndexedWord> path = new ArrayList<>();
+    if (!pathToRoot(checkVertex(vertex), new BitSet(vertices.length), path)) {
+      return null;
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /** Builds up the path backwards, avoiding the vertices used on the way. */
+  private boolean pathToRoot(int v, BitSet used, List<IndexedWord> path) {
+    if (isRoot(v)) {
+      return true;
+    }
+    used.set(v);
+    for (int i = inStart[v]; i < inStart[v + 1]; i++) {
+      int parent = edgeSource[inEdges[i]];
+      if (!used.get(parent) && pathToRoot(parent, used, path)) {
+        path.add(vertices[parent]);
+        used.clear(v);
+        return true;
+      }
+    }
+    used.clear(v);
+    return false;
+  }
+
+  /** Returns the syntactic parent of a vertex, the first on its path to a root. */
+  public IndexedWord getParent(IndexedWord vertex) {
+    List<IndexedWord> path = getPathToRoot(vertex);
+    return (path != null && !path.isEmpty()) ? path.get(0) : null;
+  }
+
+  /**
+   * Returns the first vertex with a given index, or null if there is none.
+   */
+  public IndexedWord getNodeByIndexSafe(int index) {
+    for (IndexedWord vertex : vertices) {
+      if (vertex.index() == index) {
+        return vertex;
+      }
+    }
+    return null;
+  }
+
+  public IndexedWord getNodeByIndex(int index) throws IllegalArgumentException {
+    IndexedWord node = getNodeByIndexSafe(index);
+    if (node == null)
+      throw new IllegalArgumentException("No SemanticGraph vertex with index " + index);
+    return node;
+  }
+
+  public List<String> getComments() {
+    return Collections.unmodifiableList(Arrays.asList(comments));
+  }
+
+  @Override
+  public String toString() {
+    return toSemanticGraph().toString();
+  }
+
+}
@@ -1,6 +1,8 @@
 package edu.stanford.nlp.semgraph.semgrex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -35,6 +37,9 @@ public class NodePattern extends SemgrexPattern {
   // specifies the groups in a regex that are captured as
   // matcher-global string variables
   private List<Pair<Integer, String>> variableGroups;
+  /** The batch sharing the results of nodeAttrMatch, if any, and this pattern's number in it */
+  private transient SemgrexBatchMatcher batch;
+  private transient int batchIndex;
 
   public NodePattern(GraphRelation r, boolean negDesc,
                      Map<String, String> attrs,
@@ -114,8 +119,18 @@ public class NodePattern extends SemgrexPattern {
     this.variableGroups = variableGroups;
   }
 
-  @SuppressWarnings("unchecked")
   public boolean nodeAttrMatch(IndexedWord node, final SemanticGraph sg, boolean ignoreCase) {
+    if (batch != null) {
+      Boolean shared = batch.nodeAttrMatch(batchIndex, node, sg, ignoreCase);
+      if (shared != null) {
+        return shared;
+      }
+    }
+    return unsharedNodeAttrMatch(node, sg, ignoreCase);
+  }
+
+  @SuppressWarnings("unchecked")
+  boolean unsharedNodeAttrMatch(IndexedWord node, final SemanticGraph sg, boolean ignoreCase) {
     // System.out.println(node.word());
     if (isRoot)
       return (negDesc ? !sg.getRoots().contains(node) : sg.getRoots().contains(node));
@@ -147,20 +162,7 @@ public class NodePattern extends SemgrexPattern {
 
       // Get the node pattern
       Object toMatch = ignoreCase ? attr.getValue().second : attr.getValue().first;
-      boolean matches;
-      if (toMatch instanceof Boolean) {
-        matches = ((Boolean) toMatch);
-      } else if (toMatch instanceof String) {
-        if (ignoreCase) {
-          matches = nodeValue.equalsIgnoreCase(toMatch.toString());
-        } else {
-          matches = nodeValue.equals(toMatch.toString());
-        }
-      } else if (toMatch instanceof Pattern) {
-        matches = ((Pattern) toMatch).matcher(nodeValue).matches();
-      } else {
-        throw new IllegalStateException("Unknown matcher type: " + toMatch + " (of class + " + toMatch.getClass() + ")");
-      }
+      boolean matches = valueMatches(toMatch, nodeValue, ignoreCase);
 
       if (!matches) {
         // System.out.println("doesn't match");
@@ -173,6 +175,76 @@ public class NodePattern extends SemgrexPattern {
     return !negDesc;
   }
 
+  /** Tests a node's value of an attribute against a value of the attributes map. */
+  static boolean valueMatches(Object toMatch, String nodeValue, boolean ignoreCase) {
+    if (toMatch instanceof Boolean) {
+      return ((Boolean) toMatch);
+    } else if (toMatch instanceof String) {
+      if (ignoreCase) {
+        return nodeValue.equalsIgnoreCase(toMatch.toString());
+      } else {
+        return nodeValue.equals(toMatch.toString());
+      }
+    } else if (toMatch instanceof Pattern) {
+      return ((Pattern) toMatch).matcher(nodeValue).matches();
+    } else {
+      throw new IllegalStateException("Unknown matcher type: " + toMatch + " (of class + " + toMatch.getClass() + ")");
+    }
+  }
+
+  /**
+   * Returns an object equal to that of any other node pattern whose
+   * {@link #nodeAttrMatch} matches the same nodes.
+   */
+  Object nodeAttrKey() {
+    // an Env without variables looks up the same annotations as no Env
+    Env keyEnv = (env == null || env.variables.isEmpty()) ? null : env;
+    return Arrays.asList(keyEnv, descString, negDesc);
+  }
+
+  /** Shares the results of {@link #nodeAttrMatch} with the other patterns of a batch. */
+  void share(SemgrexBatchMatcher batch, int index) {
+    this.batch = batch;
+    this.batchIndex = index;
+  }
+
+  /**
+   * Finds the vertices of an indexed graph which {@link #nodeAttrMatch}
+   * matches, testing each attribute on each distinct value the vertices
+   * have for it rather than on each vertex.
+   *
+   * @return the numbers of the vertices matched, or null if an attribute
+   *   isn't a known annotation
+   */
+  BitSet nodeAttrMatches(SemgrexBatchMatcher.GraphIndex graph, boolean ignoreCase) {
+    BitSet matched = new BitSet(graph.size());
+    if (isRoot || isEmpty) {
+      for (int v = 0; v < graph.size(); v++) {
+        if (unsharedNodeAttrMatch(graph.vertex(v), graph.graph(), ignoreCase)) {
+          matched.set(v);
+        }
+      }
+      return matched;
+    }
+    matched.set(0, graph.size());
+    for (Map.Entry<String, Pair<Object, Object>> attr : attributes.entrySet()) {
+      Class c = Env.lookupAnnotationKey(env, attr.getKey());
+      if (c == null) {
+        return null;
+      }
+      Object toMatch = ignoreCase ? attr.getValue().second : attr.getValue().first;
+      matched.and(graph.valueMatches(c, toMatch, ignoreCase));
+    }
+    if (negDesc) {
+      matched.flip(0, graph.size());
+    }
+    return matched;
+  }
+
+  GraphRelation getRelation() {
+    return reln;
+  }
+
   public void makeLink() {
     isLink = true;
   }
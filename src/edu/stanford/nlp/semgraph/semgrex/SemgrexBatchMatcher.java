@@ -0,0 +1,278 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Matches many semgrex patterns against a graph at once.
+ * <br>
+ * Matching each pattern of a large batch on its own repeats a lot of
+ * work: every pattern tries every vertex of the graph as its root, and
+ * node descriptions such as <code>{tag:/VB.*}</code> which many patterns
+ * have in common are tested again for each of them.  A batch matcher
+ * instead tests each distinct node description once per graph, on the
+ * distinct values the vertices have for its attributes, and remembers
+ * which vertices it matched.  A pattern is then only tried from the
+ * vertices its root description matched, and skipped when there are
+ * none, while the matchers of the batch look up the descriptions deeper
+ * in their patterns rather than test them again.
+ * <br>
+ * The matches found, and the order they are found in, are those of
+ * {@link SemgrexPattern#matcher(SemanticGraph, boolean)}.  A batch matcher
+ * can be used from several threads at once, each matching its own graph.
+ * A pattern should not be in two batches, as only the last one it was
+ * added to shares its results, and the variables of its {@link Env}
+ * should be bound before it is added.
+ *
+ * @see SemgrexBatchParser
+ */
+public class SemgrexBatchMatcher {
+
+  private final List<SemgrexPattern> patterns;
+  /** The description of the root of each pattern, or -1 to try every vertex */
+  private final int[] rootPredicates;
+  private final List<NodePattern> predicates = new ArrayList<>();
+
+  private final ThreadLocal<GraphIndex> current = new ThreadLocal<>();
+
+  public SemgrexBatchMatcher(Collection<SemgrexPattern> patterns) {
+    this.patterns = new ArrayList<>(patterns);
+    this.rootPredicates = new int[this.patterns.size()];
+    Map<Object, Integer> numbers = new HashMap<>();
+    for (SemgrexPattern pattern : this.patterns) {
+      share(pattern, numbers);
+    }
+    for (int i = 0; i < rootPredicates.length; i++) {
+      NodePattern root = rootNode(this.patterns.get(i));
+      rootPredicates[i] = root == null ? -1 : numbers.get(root.nodeAttrKey());
+    }
+  }
+
+  private void share(SemgrexPattern pattern, Map<Object, Integer> numbers) {
+    if (pattern instanceof NodePattern) {
+      NodePattern node = (NodePattern) pattern;
+      Integer number = numbers.get(node.nodeAttrKey());
+      if (number == null) {
+        number = predicates.size();
+        numbers.put(node.nodeAttrKey(), number);
+        predicates.add(node);
+      }
+      node.share(this, number);
+    }
+    for (SemgrexPattern child : pattern.getChildren()) {
+      share(child, numbers);
+    }
+  }
+
+  /**
+   * Returns the node pattern every vertex a pattern is matched from has to
+   * match, or null if the pattern can be matched from any vertex.
+   */
+  private static NodePattern rootNode(SemgrexPattern pattern) {
+    if (pattern instanceof CoordinationPattern) {
+      CoordinationPattern coordination = (CoordinationPattern) pattern;
+      // the patterns after a ':' are a conjunction whose first pattern is matched at the root
+      if (!coordination.isNodeCoord() || !coordination.isConj() || coordination.isNegated() || coordination.isOptional()) {
+        return null;
+      }
+      pattern = coordination.getChildren().get(0);
+    }
+    if (!(pattern instanceof NodePattern) || pattern.isNegated() || pattern.isOptional()) {
+      return null;
+    }
+    NodePattern node = (NodePattern) pattern;
+    return node.getRelation() == GraphRelation.ROOT ? node : null;
+  }
+
+  /** The patterns of this batch, in the order their matches are found. */
+  public List<SemgrexPattern> patterns() {
+    return Collections.unmodifiableList(patterns);
+  }
+
+  /** Finds the matches of every pattern in a graph. */
+  public void findAll(SemanticGraph sg, BiConsumer<SemgrexPattern, SemgrexMatcher> handler) {
+    findAll(sg, false, handler);
+  }
+
+  /**
+   * Finds the matches of every pattern in a graph, pattern after pattern,
+   * passing each to a handler as it is found.  The handler is given the
+   * pattern and its matcher, positioned at the match; it may read the
+   * match and the named nodes and relations of the matcher, but should
+   * not call its find() or reset it.
+   */
+  public void findAll(SemanticGraph sg, boolean ignoreCase, BiConsumer<SemgrexPattern, SemgrexMatcher> handler) {
+    GraphIndex previous = current.get();
+    GraphIndex graph = new GraphIndex(sg);
+    current.set(graph);
+    try {
+      for (int i = 0; i < patterns.size(); i++) {
+        SemgrexMatcher matcher = patterns.get(i).matcher(sg, ignoreCase);
+        if (rootPredicates[i] >= 0) {
+          List<IndexedWord> roots = graph.matching(rootPredicates[i], ignoreCase);
+          if (roots.isEmpty()) {
+            continue;
+          }
+          matcher.findNodes = roots;
+        }
+        while (matcher.find()) {
+          handler.accept(patterns.get(i), matcher);
+        }
+      }
+    } finally {
+      if (previous == null) {
+        current.remove();
+      } else {
+        current.set(previous);
+      }
+    }
+  }
+
+  /** Returns the patterns which match a graph, in the order of the batch. */
+  public List<SemgrexPattern> findMatchingPatterns(SemanticGraph sg) {
+    List<SemgrexPattern> matching = new ArrayList<>();
+    findAll(sg, (pattern, matcher) -> {
+      if (matching.isEmpty() || matching.get(matching.size() - 1) != pattern) {
+        matching.add(pattern);
+      }
+    });
+    return matching;
+  }
+
+  /** The number of distinct node descriptions in the patterns of this batch. */
+  public int numPredicates() {
+    return predicates.size();
+  }
+
+  /**
+   * Looks up whether a vertex matches a node description, if this thread
+   * is matching the vertex's graph.
+   *
+   * @return whether the vertex matches, or null if it has to be tested
+   */
+  Boolean nodeAttrMatch(int predicate, IndexedWord node, SemanticGraph sg, boolean ignoreCase) {
+    GraphIndex graph = current.get();
+    if (graph == null || graph.sg != sg) {
+      return null;
+    }
+    return graph.matches(predicate, node, ignoreCase);
+  }
+
+  /**
+   * The vertices of a graph, numbered in the order find() tries them,
+   * with the values they have for the attributes the patterns test and
+   * the descriptions they have been found to match.
+   */
+  class GraphIndex {
+
+    private final SemanticGraph sg;
+    private final List<IndexedWord> vertices;
+    private final Map<IndexedWord, Integer> numbers = new IdentityHashMap<>();
+    /** For each attribute, the vertices with each value of it */
+    private final Map<Class, Map<String, BitSet>> values = new HashMap<>();
+    private final Map<List<Object>, BitSet> valueMatches = new HashMap<>();
+    /** The vertices matching each description, with and without case */
+    private final BitSet[][] matched = new BitSet[2][];
+
+    GraphIndex(SemanticGraph sg) {
+      this.sg = sg;
+      this.vertices = SemgrexMatcher.findOrder(sg);
+      for (int v = 0; v < vertices.size(); v++) {
+        numbers.put(vertices.get(v), v);
+      }
+    }
+
+    SemanticGraph graph() {
+      return sg;
+    }
+
+    int size() {
+      return vertices.size();
+    }
+
+    IndexedWord vertex(int v) {
+      return vertices.get(v);
+    }
+
+    /**
+     * Returns the vertices whose value of an attribute matches a value of
+     * a node pattern's attributes map, testing each distinct value once.
+     */
+    BitSet valueMatches(Class key, Object toMatch, boolean ignoreCase) {
+      Object matcherKey = toMatch instanceof Pattern ?
+          Arrays.asList(((Pattern) toMatch).pattern(), ((Pattern) toMatch).flags()) : toMatch;
+      List<Object> cacheKey = Arrays.asList(key, matcherKey, ignoreCase);
+      BitSet matches = valueMatches.get(cacheKey);
+      if (matches == null) {
+        matches = new BitSet(vertices.size());
+        for (Map.Entry<String, BitSet> value : values(key).entrySet()) {
+          if (NodePattern.valueMatches(toMatch, value.getKey(), ignoreCase)) {
+            matches.or(value.getValue());
+          }
+        }
+        valueMatches.put(cacheKey, matches);
+      }
+      return matches;
+    }
+
+    private Map<String, BitSet> values(Class key) {
+      Map<String, BitSet> keyValues = values.get(key);
+      if (keyValues == null) {
+        keyValues = new HashMap<>();
+        for (int v = 0; v < vertices.size(); v++) {
+          Object value = vertices.get(v).get(key);
+          // a vertex without the attribute matches no value of it
+          if (value != null) {
+            keyValues.computeIfAbsent(value.toString(), k -> new BitSet(vertices.size())).set(v);
+          }
+        }
+        values.put(key, keyValues);
+      }
+      return keyValues;
+    }
+
+    private BitSet matched(int predicate, boolean ignoreCase) {
+      BitSet[] byPredicate = matched[ignoreCase ? 1 : 0];
+      if (byPredicate == null) {
+        byPredicate = matched[ignoreCase ? 1 : 0] = new BitSet[predicates.size()];
+      }
+      if (byPredicate[predicate] == null) {
+        BitSet vertexMatches = predicates.get(predicate).nodeAttrMatches(this, ignoreCase);
+        if (vertexMatches == null) {
+          // an unknown attribute: test each vertex, which reports it
+          vertexMatches = new BitSet(vertices.size());
+          for (int v = 0; v < vertices.size(); v++) {
+            if (predicates.get(predicate).unsharedNodeAttrMatch(vertices.get(v), sg, ignoreCase)) {
+              vertexMatches.set(v);
+            }
+          }
+        }
+        byPredicate[predicate] = vertexMatches;
+      }
+      return byPredicate[predicate];
+    }
+
+    Boolean matches(int predicate, IndexedWord node, boolean ignoreCase) {
+      Integer v = numbers.get(node);
+      if (v == null) {
+        return null;
+      }
+      return matched(predicate, ignoreCase).get(v);
+    }
+
+    List<IndexedWord> matching(int predicate, boolean ignoreCase) {
+      BitSet vertexMatches = matched(predicate, ignoreCase);
+      List<IndexedWord> matching = new ArrayList<>(vertexMatches.cardinality());
+      for (int v = vertexMatches.nextSetBit(0); v >= 0; v = vertexMatches.nextSetBit(v + 1)) {
+        matching.add(vertices.get(v));
+      }
+      return matching;
+    }
+
+  }
+
+}
@@ -31,6 +31,8 @@ public abstract class SemgrexMatcher {
   // these things are used by "find"
   Iterator<IndexedWord> findIterator;
   IndexedWord findCurrent;
+  /** The nodes find() tries, in order; null for all the nodes of the graph */
+  List<IndexedWord> findNodes;
 
   SemgrexMatcher(SemanticGraph sg, 
                  Alignment alignment,
@@ -124,6 +126,25 @@ public abstract class SemgrexMatcher {
    */
   private static final WeakHashMap<Integer, List<IndexedWord>> topologicalSortCache = new WeakHashMap<>();
 
+  /**
+   * Returns the vertices of a graph in the order {@link #find} tries them:
+   * sorted topologically, or as they are if the graph has cycles.
+   */
+  static List<IndexedWord> findOrder(SemanticGraph sg) {
+    try {
+      synchronized (topologicalSortCache) {
+        List<IndexedWord> topoSort = topologicalSortCache.get(System.identityHashCode(sg));
+        if (topoSort == null || topoSort.size() != sg.size()) {  // size check to mitigate a stale cache
+          topoSort = sg.topologicalSort();
+          topologicalSortCache.put(System.identityHashCode(sg), topoSort);
+        }
+        return topoSort;
+      }
+    } catch (Exception ex) {
+      return new ArrayList<>(sg.vertexSet());
+    }
+  }
+
   /**
    * Find the next match of the pattern in the graph
    *
@@ -132,36 +153,14 @@ public abstract class SemgrexMatcher {
   public boolean find() {
     // System.err.println("hyp: " + hyp);
     if (findIterator == null) {
-      try {
-        if (hyp) {
-          synchronized (topologicalSortCache) {
-            List<IndexedWord> topoSort = topologicalSortCache.get(System.identityHashCode(sg));
-            if (topoSort == null || topoSort.size() != sg.size()) {  // size check to mitigate a stale cache
-              topoSort = sg.topologicalSort();
-              topologicalSortCache.put(System.identityHashCode(sg), topoSort);
-            }
-            findIterator = topoSort.iterator();
-          }
-        } else if (sg_aligned == null) {
-          return false;
-        } else {
-          synchronized (topologicalSortCache) {
-            List<IndexedWord> topoSort = topologicalSortCache.get(System.identityHashCode(sg_aligned));
-            if (topoSort == null || topoSort.size() != sg_aligned.size()) {  // size check to mitigate a stale cache
-              topoSort = sg_aligned.topologicalSort();
-              topologicalSortCache.put(System.identityHashCode(sg_aligned), topoSort);
-            }
-            findIterator = topoSort.iterator();
-          }
-        }
-      } catch (Exception ex) {
-        if (hyp) {
-          findIterator = sg.vertexSet().iterator();
-        } else if (sg_aligned == null) {
-          return false;
-        } else {
-          findIterator = sg_aligned.vertexSet().iterator();
-        }
+      if (findNodes != null) {
+        findIterator = findNodes.iterator();
+      } else if (hyp) {
+        findIterator = findOrder(sg).iterator();
+      } else if (sg_aligned == null) {
+        return false;
+      } else {
+        findIterator = findOrder(sg_aligned).iterator();
       }
     }
   //  System.out.println("first");
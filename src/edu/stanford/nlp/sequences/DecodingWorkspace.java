@@ -0,0 +1,86 @@
+package edu.stanford.nlp.sequences;
+
+/**
+ * Reusable scratch arrays for decoding sequence models.  The best sequence
+ * finders and the CRF clique tree lay out their lattices (the score and
+ * backpointer of every window at every position, messages, and so on) in
+ * flat primitive arrays, one after the other, rather than in an array per
+ * position.  Those arrays are kept in a workspace per thread and reused
+ * from one sentence to the next, so that tagging a long document does not
+ * allocate new lattices for every sentence.
+ * <br>
+ * A workspace is taken with {@link #acquire()} and must be given back with
+ * {@link #release()}, usually in a {@code finally} block.  If the thread's
+ * workspace is already in use, for example because a sequence model itself
+ * decodes something while it is being decoded, {@code acquire} gives a new
+ * workspace instead, so callers never see each other's arrays.
+ * <br>
+ * Each user of a workspace names the arrays it uses by slot number.  The
+ * contents of an array are not cleared between uses, and an array may be
+ * longer than asked for.
+ */
+public final class DecodingWorkspace {
+
+  /** The number of double and of int arrays in a workspace */
+  public static final int NUM_SLOTS = 4;
+
+  /** Arrays longer than this are not kept after a workspace is released, so that one huge document does not pin its lattice to the thread. */
+  private static final int MAX_RETAINED_LENGTH = 1 << 22;
+
+  private static final ThreadLocal<DecodingWorkspace> workspaces = ThreadLocal.withInitial(DecodingWorkspace::new);
+
+  private final double[][] doubles = new double[NUM_SLOTS][];
+  private final int[][] ints = new int[NUM_SLOTS][];
+  private boolean inUse;
+
+  private DecodingWorkspace() {}
+
+  /** Returns this thread's workspace, or a new one if it is already in use. */
+  public static DecodingWorkspace acquire() {
+    DecodingWorkspace workspace = workspaces.get();
+    if (workspace.inUse) {
+      workspace = new DecodingWorkspace();
+    }
+    workspace.inUse = true;
+    return workspace;
+  }
+
+  /** Gives this workspace back.  Its arrays may be handed out again afterwards. */
+  public void release() {
+    for (int i = 0; i < NUM_SLOTS; i++) {
+      if (doubles[i] != null && doubles[i].length > MAX_RETAINED_LENGTH) {
+        doubles[i] = null;
+      }
+      if (ints[i] != null && ints[i].length > MAX_RETAINED_LENGTH) {
+        ints[i] = null;
+      }
+    }
+    inUse = false;
+  }
+
+  /** Returns the double array in the given slot, at least {@code length} long. */
+  public double[] doubles(int slot, int length) {
+    double[] array = doubles[slot];
+    if (array == null || array.length < length) {
+      array = new double[grow(array == null ? 0 : array.length, length)];
+      doubles[slot] = array;
+    }
+    return array;
+  }
+
+  /** Returns the int array in the given slot, at least {@code length} long. */
+  public int[] ints(int slot, int length) {
+    int[] array = ints[slot];
+    if (array == null || array.length < length) {
+      array = new int[grow(array == null ? 0 : array.length, length)];
+      ints[slot] = array;
+    }
+    return array;
+  }
+
+  private static int grow(int current, int needed) {
+    int length = Math.max(needed, current + (current >> 1));
+    return Math.max(length, 16);
+  }
+
+}
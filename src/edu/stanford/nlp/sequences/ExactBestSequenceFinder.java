@@ -15,6 +15,14 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
 
   private static final boolean DEBUG = false;
 
+  // slots of the DecodingWorkspace used for the lattice
+  private static final int WINDOW_SCORE = 0;
+  private static final int SCORE = 1;
+  private static final int TRACE = 0;
+  private static final int OFFSETS = 1;
+  private static final int PRODUCT_SIZES = 2;
+  private static final int TAG_NUM = 3;
+
   public static Pair<int[], Double> bestSequenceWithLinearConstraints(SequenceModel ts, double[][] linearConstraints) {
     return bestSequence(ts, linearConstraints);
   }
@@ -32,6 +40,20 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
   }
 
   private static Pair<int[], Double> bestSequence(SequenceModel ts, double[][] linearConstraints) {
+    DecodingWorkspace workspace = DecodingWorkspace.acquire();
+    try {
+      return bestSequence(ts, linearConstraints, workspace);
+    } finally {
+      workspace.release();
+    }
+  }
+
+  /**
+   * The Viterbi algorithm proper.  The window scores, scores and backtraces
+   * of all the positions are laid out one after the other in flat arrays
+   * from the workspace, position pos starting at offset[pos].
+   */
+  private static Pair<int[], Double> bestSequence(SequenceModel ts, double[][] linearConstraints, DecodingWorkspace workspace) {
     // Set up tag options
     int length = ts.length();
     int leftWindow = ts.leftWindow();
@@ -40,7 +62,7 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
     if (linearConstraints != null && linearConstraints.length != padLength)
       throw new RuntimeException("linearConstraints.length (" +  linearConstraints.length + ") does not match padLength (" + padLength + ") of SequenceModel" + ", length=="+length+", leftW="+leftWindow+", rightW="+rightWindow);
     int[][] tags = new int[padLength][];
-    int[] tagNum = new int[padLength];
+    int[] tagNum = workspace.ints(TAG_NUM, padLength);
     if (DEBUG) { System.err.println("Doing bestSequence length " + length + "; leftWin " + leftWindow + "; rightWin " + rightWindow + "; padLength " + padLength); }
     for (int pos = 0; pos < padLength; pos++) {
       tags[pos] = ts.getPossibleValues(pos);
@@ -50,8 +72,9 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
 
     int[] tempTags = new int[padLength];
 
-    // Set up product space sizes
-    int[] productSizes = new int[padLength];
+    // Set up product space sizes, and where each position starts in the lattice
+    int[] productSizes = workspace.ints(PRODUCT_SIZES, padLength);
+    Arrays.fill(productSizes, 0, padLength, 0);
 
     int curProduct = 1;
     for (int i = 0; i < leftWindow + rightWindow; i++) {
@@ -64,14 +87,20 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
       curProduct *= tagNum[pos]; // shift on
       productSizes[pos - rightWindow] = curProduct;
     }
+    int[] offset = workspace.ints(OFFSETS, padLength + 1);
+    offset[0] = 0;
+    for (int pos = 0; pos < padLength; pos++) {
+      offset[pos + 1] = offset[pos] + productSizes[pos];
+    }
+    int latticeSize = offset[padLength];
 
     // Score all of each window's options
-    double[][] windowScore = new double[padLength][];
+    double[] windowScore = workspace.doubles(WINDOW_SCORE, latticeSize);
+    Arrays.fill(windowScore, 0, latticeSize, 0.0);
     for (int pos = leftWindow; pos < leftWindow + length; pos++) {
       if (DEBUG) { System.err.println("scoring word " + pos + " / " + (leftWindow + length) + ", productSizes =  " + productSizes[pos] + ", tagNum = " + tagNum[pos] + "..."); }
-      windowScore[pos] = new double[productSizes[pos]];
+      int base = offset[pos];
       Arrays.fill(tempTags, tags[0][0]);
-      if (DEBUG) { System.err.println("windowScore[" + pos + "] has size (productSizes[pos]) " + windowScore[pos].length); }
 
       for (int product = 0; product < productSizes[pos]; product++) {
         int p = product;
@@ -90,71 +119,70 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
           // get all tags at once
           double[] scores = ts.scoresOf(tempTags, pos);
           if (DEBUG) { System.err.println("Matched at array index [product] " + product + "; tempTags[pos] == tags[pos][0] == " + tempTags[pos]); }
-          if (DEBUG) { System.err.println("For pos " + pos + " scores.length is " + scores.length + "; tagNum[pos] = " + tagNum[pos] + "; windowScore[pos].length = " + windowScore[pos].length); }
+          if (DEBUG) { System.err.println("For pos " + pos + " scores.length is " + scores.length + "; tagNum[pos] = " + tagNum[pos] + "; productSizes[pos] = " + productSizes[pos]); }
           if (DEBUG) { System.err.println("scores: " + Arrays.toString(scores)); }
           // fill in the relevant windowScores
           for (int t = 0; t < tagNum[pos]; t++) {
             if (DEBUG) { System.err.println("Setting value of windowScore[" + pos + "][" + product + "+" + t + "*" + shift + "] = " + scores[t]); }
-            windowScore[pos][product + t * shift] = scores[t];
+            windowScore[base + product + t * shift] = scores[t];
           }
         }
       }
     }
 
     // Set up score and backtrace arrays
-    double[][] score = new double[padLength][];
-    int[][] trace = new int[padLength][];
-    for (int pos = 0; pos < padLength; pos++) {
-      score[pos] = new double[productSizes[pos]];
-      trace[pos] = new int[productSizes[pos]];
-    }
+    double[] score = workspace.doubles(SCORE, latticeSize);
+    int[] trace = workspace.ints(TRACE, latticeSize);
 
     // Do forward Viterbi algorithm
 
     // loop over the classification spot
-    //System.err.println();
     for (int pos = leftWindow; pos < length + leftWindow; pos++) {
-      //System.err.print(".");
+      int base = offset[pos];
       // loop over window product types
       for (int product = 0; product < productSizes[pos]; product++) {
+        int cell = base + product;
         // check for initial spot
         if (pos == leftWindow) {
           // no predecessor type
-          score[pos][product] = windowScore[pos][product];
+          score[cell] = windowScore[cell];
           if (linearConstraints != null) {
             if (DEBUG) {
               if (linearConstraints[pos][product % tagNum[pos]] != 0) {
-                System.err.println("Applying linear constraints=" + linearConstraints[pos][product % tagNum[pos]] + " to preScore="+ windowScore[pos][product] + " at pos="+pos+" for tag="+(product % tagNum[pos]));
+                System.err.println("Applying linear constraints=" + linearConstraints[pos][product % tagNum[pos]] + " to preScore="+ windowScore[cell] + " at pos="+pos+" for tag="+(product % tagNum[pos]));
               }
             }
-            score[pos][product] += linearConstraints[pos][product % tagNum[pos]];
+            score[cell] += linearConstraints[pos][product % tagNum[pos]];
           }
-          trace[pos][product] = -1;
+          trace[cell] = -1;
         } else {
           // loop over possible predecessor types
-          score[pos][product] = Double.NEGATIVE_INFINITY;
-          trace[pos][product] = -1;
+          double bestScore = Double.NEGATIVE_INFINITY;
+          int bestTrace = -1;
+          int predBase = offset[pos - 1];
           int sharedProduct = product / tagNum[pos + rightWindow];
           int factor = productSizes[pos] / tagNum[pos + rightWindow];
           for (int newTagNum = 0; newTagNum < tagNum[pos - leftWindow - 1]; newTagNum++) {
             int predProduct = newTagNum * factor + sharedProduct;
-            double predScore = score[pos - 1][predProduct] + windowScore[pos][product];
+            double predScore = score[predBase + predProduct] + windowScore[cell];
 
             if (linearConstraints != null) {
               if (DEBUG) {
                 if (pos == 2 && linearConstraints[pos][product % tagNum[pos]] != 0) {
                   System.err.println("Applying linear constraints=" + linearConstraints[pos][product % tagNum[pos]] + " to preScore="+ predScore + " at pos="+pos+" for tag="+(product % tagNum[pos]));
-                  System.err.println("predScore:" + predScore + " = score["+(pos - 1)+"]["+predProduct+"]:" + score[pos - 1][predProduct] + " + windowScore["+pos+"]["+product+"]:" + windowScore[pos][product]);
+                  System.err.println("predScore:" + predScore + " = score["+(pos - 1)+"]["+predProduct+"]:" + score[predBase + predProduct] + " + windowScore["+pos+"]["+product+"]:" + windowScore[cell]);
                 }
               }
               predScore += linearConstraints[pos][product % tagNum[pos]];
             }
 
-            if (predScore > score[pos][product]) {
-              score[pos][product] = predScore;
-              trace[pos][product] = predProduct;
+            if (predScore > bestScore) {
+              bestScore = predScore;
+              bestTrace = predProduct;
             }
           }
+          score[cell] = bestScore;
+          trace[cell] = bestTrace;
         }
       }
     }
@@ -162,10 +190,11 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
     // Project the actual tag sequence
     double bestFinalScore = Double.NEGATIVE_INFINITY;
     int bestCurrentProduct = -1;
+    int lastBase = offset[leftWindow + length - 1];
     for (int product = 0; product < productSizes[leftWindow + length - 1]; product++) {
-      if (score[leftWindow + length - 1][product] > bestFinalScore) {
+      if (score[lastBase + product] > bestFinalScore) {
         bestCurrentProduct = product;
-        bestFinalScore = score[leftWindow + length - 1][product];
+        bestFinalScore = score[lastBase + product];
       }
     }
     int lastProduct = bestCurrentProduct;
@@ -175,7 +204,7 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
     }
     for (int pos = leftWindow + length - 2; pos >= leftWindow; pos--) {
       int bestNextProduct = bestCurrentProduct;
-      bestCurrentProduct = trace[pos + 1][bestNextProduct];
+      bestCurrentProduct = trace[offset[pos + 1] + bestNextProduct];
       tempTags[pos - leftWindow] = tags[pos - leftWindow][bestCurrentProduct / (productSizes[pos] / tagNum[pos - leftWindow])];
     }
     return new Pair<int[], Double>(tempTags, bestFinalScore);
@@ -1,6 +1,7 @@
 package edu.stanford.nlp.sequences;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.io.Serializable;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
@@ -80,6 +81,25 @@ public abstract class FeatureFactory<IN> implements Serializable {
    */
   public abstract Collection<String> getCliqueFeatures(PaddedList<IN> info, int position, Clique clique);
 
+  /**
+   * Gives the same features as {@link #getCliqueFeatures}, but as groups
+   * of feature names before the clique suffix is added, each with the
+   * suffix that {@link #addAllInterningAndSuffixing} would add to it.
+   * This lets a classifier look up each feature in its index without
+   * building the full feature name.  The same feature may be passed
+   * more than once.
+   * <br>
+   * The default passes the full names from getCliqueFeatures with an
+   * empty suffix.  Feature factories which build their features with
+   * addAllInterningAndSuffixing can override it to skip that step.
+   *
+   * @param sink Called with each group of feature names and their suffix
+   */
+  public void getCliqueFeatures(PaddedList<IN> info, int position, Clique clique,
+                                BiConsumer<Collection<String>, String> sink) {
+    sink.accept(getCliqueFeatures(info, position, clique), "");
+  }
+
 
   /** Makes more complete feature names out of partial feature names, by
    *  adding a suffix to the String feature name, adding results to an
@@ -13,6 +13,14 @@ import java.util.Arrays;
  */
 public class KBestSequenceFinder implements BestSequenceFinder {
 
+  // slots of the DecodingWorkspace used for the lattice
+  private static final int WINDOW_SCORE = 0;
+  private static final int SCORE = 1;
+  private static final int NUM_WAYS = 0;
+  private static final int K_START = 1;
+  private static final int TRACE_PRODUCT = 2;
+  private static final int TRACE_DERIVATION = 3;
+
   /**
    * Runs the Viterbi algorithm on the sequence model
    * in order to find the best sequence.
@@ -36,6 +44,23 @@ public class KBestSequenceFinder implements BestSequenceFinder {
    */
   @SuppressWarnings("MethodMayBeStatic")
   public Counter<int[]> kBestSequences(SequenceModel ts, int k) {
+    DecodingWorkspace workspace = DecodingWorkspace.acquire();
+    try {
+      return kBestSequences(ts, k, workspace);
+    } finally {
+      workspace.release();
+    }
+  }
+
+  /**
+   * The k-best Viterbi algorithm proper.  Window scores are laid out one
+   * position after another in a flat array, position pos starting at
+   * offset[pos].  Each cell of that lattice in turn owns a run of
+   * numWaysToMake entries in the flat score and backtrace arrays, starting
+   * at kStart[cell]; a backtrace is the predecessor product and which of
+   * its k best it extends.
+   */
+  private static Counter<int[]> kBestSequences(SequenceModel ts, int k, DecodingWorkspace workspace) {
 
     // Set up tag options
     int length = ts.length();
@@ -71,12 +96,18 @@ public class KBestSequenceFinder implements BestSequenceFinder {
       curProduct *= tagNum[pos]; // shift on
       productSizes[pos - rightWindow] = curProduct;
     }
+    int[] offset = new int[padLength + 1];
+    for (int pos = 0; pos < padLength; pos++) {
+      offset[pos + 1] = offset[pos] + productSizes[pos];
+    }
+    int numCells = offset[padLength];
 
-    double[][] windowScore = new double[padLength][];
+    double[] windowScore = workspace.doubles(WINDOW_SCORE, numCells);
+    Arrays.fill(windowScore, 0, numCells, 0.0);
 
     // Score all of each window's options
     for (int pos = leftWindow; pos < leftWindow + length; pos++) {
-      windowScore[pos] = new double[productSizes[pos]];
+      int base = offset[pos];
       Arrays.fill(tempTags, tags[0][0]);
 
       for (int product = 0; product < productSizes[pos]; product++) {
@@ -94,76 +125,81 @@ public class KBestSequenceFinder implements BestSequenceFinder {
           double[] scores = ts.scoresOf(tempTags, pos);
           // fill in the relevant windowScores
           for (int t = 0; t < tagNum[pos]; t++) {
-            windowScore[pos][product + t * shift] = scores[t];
+            windowScore[base + product + t * shift] = scores[t];
           }
         }
       }
     }
 
     // Set up score and backtrace arrays
-    double[][][] score = new double[padLength][][];
-    int[][][][] trace = new int[padLength][][][];
-    int[][] numWaysToMake = new int[padLength][];
+    int[] numWaysToMake = workspace.ints(NUM_WAYS, numCells);
+    int[] kStart = workspace.ints(K_START, numCells + 1);
+    kStart[0] = 0;
     for (int pos = 0; pos < padLength; pos++) {
-
-      score[pos] = new double[productSizes[pos]][];
-      trace[pos] = new int[productSizes[pos]][][]; // the 2 is for backtrace, and which of the k best for that backtrace
-
-      numWaysToMake[pos] = new int[productSizes[pos]];
-      Arrays.fill(numWaysToMake[pos], 1);
+      int base = offset[pos];
       for (int product = 0; product < productSizes[pos]; product++) {
+        int cell = base + product;
+        numWaysToMake[cell] = 1;
         if (pos > leftWindow) {
           // loop over possible predecessor types
           int sharedProduct = product / tagNum[pos];
           int factor = productSizes[pos] / tagNum[pos];
+          int predBase = offset[pos - 1];
 
-          numWaysToMake[pos][product] = 0;
-          for (int newTagNum = 0; newTagNum < tagNum[pos - leftWindow - 1] && numWaysToMake[pos][product] < k; newTagNum++) {
+          numWaysToMake[cell] = 0;
+          for (int newTagNum = 0; newTagNum < tagNum[pos - leftWindow - 1] && numWaysToMake[cell] < k; newTagNum++) {
             int predProduct = newTagNum * factor + sharedProduct;
-            numWaysToMake[pos][product] += numWaysToMake[pos-1][predProduct];
+            numWaysToMake[cell] += numWaysToMake[predBase + predProduct];
           }
-          if (numWaysToMake[pos][product] > k) { numWaysToMake[pos][product] = k; }
+          if (numWaysToMake[cell] > k) { numWaysToMake[cell] = k; }
         }
-
-        score[pos][product] = new double[numWaysToMake[pos][product]];
-        Arrays.fill(score[pos][product], Double.NEGATIVE_INFINITY);
-        trace[pos][product] = new int[numWaysToMake[pos][product]][];
-        Arrays.fill(trace[pos][product], new int[]{-1,-1});
+        kStart[cell + 1] = kStart[cell] + numWaysToMake[cell];
       }
     }
+    int numEntries = kStart[numCells];
+    double[] score = workspace.doubles(SCORE, numEntries);
+    Arrays.fill(score, 0, numEntries, Double.NEGATIVE_INFINITY);
+    int[] tracePred = workspace.ints(TRACE_PRODUCT, numEntries);
+    Arrays.fill(tracePred, 0, numEntries, -1);
+    int[] traceK = workspace.ints(TRACE_DERIVATION, numEntries);
+    Arrays.fill(traceK, 0, numEntries, -1);
 
     // Do forward Viterbi algorithm
     // this is the hottest loop, so cache loop control variables hoping for a little speed....
 
     // loop over the classification spot
     for (int pos = leftWindow, posMax = length + leftWindow; pos < posMax; pos++) {
+      int base = offset[pos];
       // loop over window product types
       for (int product = 0, productMax = productSizes[pos]; product < productMax; product++) {
+        int cell = base + product;
         // check for initial spot
-        double[] scorePos = score[pos][product];
-        int[][] tracePos = trace[pos][product];
+        int from = kStart[cell];
         if (pos == leftWindow) {
           // no predecessor type
-          scorePos[0] = windowScore[pos][product];
+          score[from] = windowScore[cell];
         } else {
           // loop over possible predecessor types/k-best
-
+          int to = kStart[cell + 1];
+          int predBase = offset[pos - 1];
           int sharedProduct = product / tagNum[pos + rightWindow];
           int factor = productSizes[pos] / tagNum[pos + rightWindow];
           for (int newTagNum = 0, maxTagNum = tagNum[pos - leftWindow - 1]; newTagNum < maxTagNum; newTagNum++) {
             int predProduct = newTagNum * factor + sharedProduct;
-            double[] scorePosPrev = score[pos-1][predProduct];
-            for (int k1 = 0; k1 < scorePosPrev.length; k1++) {
-              double predScore = scorePosPrev[k1] + windowScore[pos][product];
-              if (predScore > scorePos[0]) { // new value higher then lowest value we should keep
-                int k2 = Arrays.binarySearch(scorePos, predScore);
+            int predCell = predBase + predProduct;
+            for (int k1 = 0, predWays = numWaysToMake[predCell], predFrom = kStart[predCell]; k1 < predWays; k1++) {
+              double predScore = score[predFrom + k1] + windowScore[cell];
+              if (predScore > score[from]) { // new value higher then lowest value we should keep
+                int k2 = Arrays.binarySearch(score, from, to, predScore);
                 k2 = k2 < 0 ? -k2 - 2 : k2 - 1;
                 // open a spot at k2 by shifting off the lowest value
-                System.arraycopy(scorePos, 1, scorePos, 0, k2);
-                System.arraycopy(tracePos, 1, tracePos, 0, k2);
+                System.arraycopy(score, from + 1, score, from, k2 - from);
+                System.arraycopy(tracePred, from + 1, tracePred, from, k2 - from);
+                System.arraycopy(traceK, from + 1, traceK, from, k2 - from);
 
-                scorePos[k2] = predScore;
-                tracePos[k2]= new int[] {predProduct, k1};
+                score[k2] = predScore;
+                tracePred[k2] = predProduct;
+                traceK[k2] = k1;
               }
             }
           }
@@ -178,12 +214,14 @@ public class KBestSequenceFinder implements BestSequenceFinder {
     Arrays.fill(bestFinalScores, Double.NEGATIVE_INFINITY);
 
     // just the last guy
+    int lastBase = offset[padLength - 1];
     for (int product = 0; product < productSizes[padLength - 1]; product++) {
-      double[] scorePos = score[padLength - 1][product];
-      for (int k1 = scorePos.length - 1;
-            k1 >= 0 && scorePos[k1] > bestFinalScores[0];
+      int cell = lastBase + product;
+      int from = kStart[cell];
+      for (int k1 = numWaysToMake[cell] - 1;
+            k1 >= 0 && score[from + k1] > bestFinalScores[0];
             k1--) {
-        int k2 = Arrays.binarySearch(bestFinalScores, scorePos[k1]);
+        int k2 = Arrays.binarySearch(bestFinalScores, score[from + k1]);
         k2 = k2 < 0 ? -k2 - 2 : k2 - 1;
         // open a spot at k2 by shifting off the lowest value
         System.arraycopy(bestFinalScores, 1, bestFinalScores, 0, k2);
@@ -192,7 +230,7 @@ public class KBestSequenceFinder implements BestSequenceFinder {
 
         bestCurrentProducts[k2] = product;
         whichDerivation[k2] = k1;
-        bestFinalScores[k2] = scorePos[k1];
+        bestFinalScores[k2] = score[from + k1];
       }
     }
     ClassicCounter<int[]> kBestWithScores = new ClassicCounter<int[]>();
@@ -205,8 +243,9 @@ public class KBestSequenceFinder implements BestSequenceFinder {
 
       for (int pos = leftWindow + length - 2; pos >= leftWindow; pos--) {
         int bestNextProduct = bestCurrentProducts[k1];
-        bestCurrentProducts[k1] = trace[pos + 1][bestNextProduct][whichDerivation[k1]][0];
-        whichDerivation[k1] = trace[pos + 1][bestNextProduct][whichDerivation[k1]][1];
+        int entry = kStart[offset[pos + 1] + bestNextProduct] + whichDerivation[k1];
+        bestCurrentProducts[k1] = tracePred[entry];
+        whichDerivation[k1] = traceK[entry];
         tempTags[pos - leftWindow] =
                  tags[pos - leftWindow][bestCurrentProducts[k1]
                        / (productSizes[pos] / tagNum[pos - leftWindow])];
@@ -432,6 +432,14 @@ public class SeqClassifierFlags implements Serializable {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  /** Write the classifier in the memory mapped format of {@link edu.stanford.nlp.ie.crf.CRFClassifier#serializeMappedClassifier} */
+  public transient String serializeToMapped = null;
+  /**
+   * Look up test time CRF features by their full names, as built by the
+   * feature factory, rather than from their parts.  Both give the same
+   * features; this is slower, and only useful for debugging.
+   */
+  public transient boolean stringFeatureLookup = false;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<String>();
@@ -1546,6 +1554,10 @@ public class SeqClassifierFlags implements Serializable {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("serializeToMapped")) {
+        serializeToMapped = val;
+      } else if (key.equalsIgnoreCase("stringFeatureLookup")) {
+        stringFeatureLookup = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
@@ -0,0 +1,140 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * The weights of a {@link MaxentTagger}, compiled for fast tagging.
+ * <br>
+ * A trained tagger keeps, for each extractor and each value it extracts,
+ * the index in the lambda array of the feature for each tag.  Scoring a
+ * position then means looking up every value, and then every feature
+ * weight through its index.  Here each extractor value instead maps to
+ * its weights for all the tags, laid out densely, so scoring adds whole
+ * rows.
+ * <br>
+ * Extractors whose value is just some of the neighboring tags (see
+ * {@link Extractor#tagPositions()}) are compiled further, into a table of
+ * rows indexed by the tags at those positions, so that during the search
+ * for the best tag sequence they are scored from the tag numbers alone,
+ * without building their values.  A tag position outside the sentence
+ * has the index {@code ySize}.
+ * <br>
+ * The scores are exactly those of the lambda lookups, as absent features
+ * have weight zero and the rows are added in the same order.  The rows
+ * take about twice the memory of the feature indices, which is why this
+ * is an option, {@code denseScoring}, rather than the default.
+ */
+class DenseTaggerWeights {
+
+  /** The largest number of rows in the table of a tag extractor */
+  private static final int MAX_TAG_TABLE_SIZE = 1 << 20;
+
+  private final int ySize;
+
+  /** For each extractor, common then rare, the weights of each value for every tag */
+  private final List<Map<String, double[]>> rows;
+
+  /** For each extractor, the positions of the tags it extracts, or null */
+  private final int[][] tagPositions;
+
+  /** For each extractor with tag positions, its rows indexed by the tags at those positions, or null */
+  private final double[][][] tagTables;
+
+  DenseTaggerWeights(MaxentTagger tagger) {
+    this.ySize = tagger.ySize;
+    double[] lambda = tagger.getLambdaSolve().lambda;
+    int numExtractors = tagger.fAssociations.size();
+    rows = Generics.newArrayList(numExtractors);
+    for (Map<String, int[]> associations : tagger.fAssociations) {
+      Map<String, double[]> weights = Generics.newHashMap(associations.size());
+      for (Map.Entry<String, int[]> entry : associations.entrySet()) {
+        int[] fNums = entry.getValue();
+        double[] row = new double[ySize];
+        for (int i = 0; i < ySize; i++) {
+          if (fNums[i] > -1) {
+            row[i] = lambda[fNums[i]];
+          }
+        }
+        weights.put(entry.getKey(), row);
+      }
+      rows.add(weights);
+    }
+
+    tagPositions = new int[numExtractors][];
+    tagTables = new double[numExtractors][][];
+    int numCommon = tagger.extractors.size();
+    // tag numbers must all be below ySize, which stands for outside the sentence,
+    // and all name a tag
+    boolean tagsFit = tagger.tags.getSize() == ySize;
+    for (int kf = 0; tagsFit && kf < numExtractors; kf++) {
+      Extractor extractor = kf < numCommon ? tagger.extractors.get(kf) : tagger.extractorsRare.get(kf - numCommon);
+      int[] positions = extractor.tagPositions();
+      if (positions != null && tableSize(positions.length) <= MAX_TAG_TABLE_SIZE) {
+        tagPositions[kf] = positions;
+        tagTables[kf] = tagTable(tagger.tags, rows.get(kf), positions.length);
+      }
+    }
+  }
+
+  private long tableSize(int numPositions) {
+    long size = 1;
+    for (int i = 0; i < numPositions; i++) {
+      size *= ySize + 1;
+    }
+    return size;
+  }
+
+  /** Finds the row for every assignment of tags, or "NA", to the positions */
+  private double[][] tagTable(TTags tags, Map<String, double[]> weights, int numPositions) {
+    double[][] table = new double[(int) tableSize(numPositions)][];
+    StringBuilder value = new StringBuilder();
+    for (int code = 0; code < table.length; code++) {
+      value.setLength(0);
+      // the first position is the most significant digit of the code
+      for (int i = numPositions - 1, rest = code, divisor = table.length / (ySize + 1); i >= 0; i--) {
+        int tag = rest / divisor;
+        rest %= divisor;
+        divisor /= ySize + 1;
+        if (i != numPositions - 1) {
+          value.append('!');
+        }
+        value.append(tag == ySize ? TestSentence.naTag : tags.getTag(tag));
+      }
+      table[code] = weights.get(value.toString());
+    }
+    return table;
+  }
+
+  /** The weights of the given value of extractor kf, or null if it has no features */
+  double[] row(int kf, String value) {
+    return rows.get(kf).get(value);
+  }
+
+  /** The positions of the tags extractor kf extracts, if it can be scored from tag numbers, or null */
+  int[] tagPositions(int kf) {
+    return tagPositions[kf];
+  }
+
+  /**
+   * The weights of extractor kf when its tag positions hold the given
+   * tags, or null if it has no features there.
+   *
+   * @param tags The tag numbers of a sequence, with tags[pos] the tag at relative position 0
+   * @param pos The current position in tags
+   * @param first The first position in tags which is in the sentence
+   * @param last The last position in tags which is in the sentence
+   */
+  double[] row(int kf, int[] tags, int pos, int first, int last) {
+    int[] positions = tagPositions[kf];
+    int code = 0;
+    for (int position : positions) {
+      int j = pos + position;
+      code = code * (ySize + 1) + (j >= first && j <= last ? tags[j] : ySize);
+    }
+    return tagTables[kf][code];
+  }
+
+}
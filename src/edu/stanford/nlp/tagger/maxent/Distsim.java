@@ -2,6 +2,7 @@ package edu.stanford.nlp.tagger.maxent;
 
 import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.ModelRegistry;
 import edu.stanford.nlp.util.Timing;
 
 import java.io.File;
@@ -16,10 +17,6 @@ import java.util.regex.Pattern;
  * results are used in the tagger.
  */
 public class Distsim implements Serializable {
-  // avoid loading the same lexicon twice but allow different lexicons
-  // TODO: when loading a distsim, should we populate this map?
-  private static final Map<String,Distsim> lexiconMap = Generics.newHashMap();
-
   private final Map<String,String> lexicon;
 
   private final String unk;
@@ -58,17 +55,27 @@ public class Distsim implements Serializable {
     }
   }
 
+  /**
+   * Returns the lexicon for the given path, loading it only if no one
+   * else in this process has already loaded it.  The lexicon stays in
+   * the {@link ModelRegistry} until it is unloaded explicitly.
+   */
   static public Distsim initLexicon(String path) {
-    synchronized (lexiconMap) {
-      Distsim lex = lexiconMap.get(path);
-      if (lex == null) {
-        Timing.startDoing("Loading distsim lexicon from " + path);
-        lex = new Distsim(path);
-        lexiconMap.put(path, lex);
-        Timing.endDoing();
-      }
+    return initLexicon(path, Distsim.class);
+  }
+
+  /**
+   * Returns the lexicon for the given path from the {@link ModelRegistry},
+   * loading it only if no one else in this process has already loaded it.
+   * The lexicon can be evicted once the owner is no longer in use.
+   */
+  static public Distsim initLexicon(String path, Object owner) {
+    return ModelRegistry.acquire(owner, path, "", () -> {
+      Timing.startDoing("Loading distsim lexicon from " + path);
+      Distsim lex = new Distsim(path);
+      Timing.endDoing();
       return lex;
-    }
+    });
   }
 
   /**
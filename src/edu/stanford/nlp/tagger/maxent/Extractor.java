@@ -173,6 +173,19 @@ public class Extractor implements Serializable {
     return isTag ? pH.getTag(h, position) : pH.getWord(h, position);
   }
 
+  /**
+   * If the value of this extractor is nothing but the tags at some
+   * positions, joined with '!', returns those positions in the order they
+   * appear in the value.  Otherwise returns null, which subclasses get
+   * unless they say otherwise.  This lets dense scoring look up the
+   * features of the extractor from the tag numbers alone.
+   *
+   * @return The positions of the tags which make up the value, or null
+   */
+  int[] tagPositions() {
+    return isTag && getClass() == Extractor.class ? new int[] { position } : null;
+  }
+
   @SuppressWarnings({"MethodMayBeStatic"})
   String extractLV(History h, PairsHolder pH) {
     // should extract last verbal word and also the current word
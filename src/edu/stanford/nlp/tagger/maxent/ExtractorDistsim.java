@@ -19,7 +19,7 @@ public class ExtractorDistsim extends Extractor {
 
   ExtractorDistsim(String distSimPath, int position) {
     super(position, false);
-    lexicon = Distsim.initLexicon(distSimPath);
+    lexicon = Distsim.initLexicon(distSimPath, this);
   }
 
   @Override public boolean isLocal() { return position == 0; }
@@ -30,7 +30,7 @@ public class ExtractorDistsimConjunction extends Extractor {
 
   ExtractorDistsimConjunction(String distSimPath, int left, int right) {
     super();
-    lexicon = Distsim.initLexicon(distSimPath);
+    lexicon = Distsim.initLexicon(distSimPath, this);
     this.left = left;
     this.right = right;
     name = "ExtractorDistsimConjunction(" + left + ',' + right + ')';
@@ -460,6 +460,11 @@ public class ExtractorFrames {
       return pH.getTag(h, leftPosition) + '!' + pH.getTag(h, rightPosition);
     }
 
+    @Override
+    int[] tagPositions() {
+      return new int[] { leftPosition, rightPosition };
+    }
+
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
 
@@ -552,6 +557,15 @@ public class ExtractorFrames {
       return sb.toString();
     }
 
+    @Override
+    int[] tagPositions() {
+      int[] positions = new int[Math.abs(position)];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = position < 0 ? position + i : position - i;
+      }
+      return positions;
+    }
+
   }
 
 
@@ -612,6 +626,11 @@ public class ExtractorFrames {
       return pH.getTag(h, position1) + '!' + pH.getTag(h, position2) + '!' + pH.getTag(h, position3);
     }
 
+    @Override
+    int[] tagPositions() {
+      return new int[] { position1, position2, position3 };
+    }
+
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
 
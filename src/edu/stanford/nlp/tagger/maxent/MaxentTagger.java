@@ -350,6 +350,10 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   private double defaultScore;
   private double[] defaultScores = null;
 
+  /** Whether to tag with the weights compiled by {@link #denseWeights()} */
+  private boolean denseScoring = false;
+  private volatile DenseTaggerWeights denseWeights;
+
   int leftContext;
   int rightContext;
 
@@ -491,6 +495,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
 
       if(config.getDefaultScore() >= 0)
         defaultScore = config.getDefaultScore();
+      denseScoring = config.getDenseScoring();
     }
 
     // just in case, reset the defaultScores array so it will be
@@ -537,6 +542,27 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return defaultScore > 0.0;
   }
 
+  /**
+   * Returns the weights compiled for dense scoring, building them the
+   * first time, or null if the tagger does not use dense scoring.
+   */
+  DenseTaggerWeights denseWeights() {
+    if (!denseScoring) {
+      return null;
+    }
+    DenseTaggerWeights weights = denseWeights;
+    if (weights == null) {
+      synchronized (this) {
+        weights = denseWeights;
+        if (weights == null) {
+          weights = new DenseTaggerWeights(this);
+          denseWeights = weights;
+        }
+      }
+    }
+    return weights;
+  }
+
   /**
    * Figures out what tokenizer factory might be described by the
    * config.  If it's described by name in the config, uses reflection
@@ -58,6 +58,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
   XML_INPUT = "",
   TAG_INSIDE = "",
   APPROXIMATE = "-1.0",
+  DENSE_SCORING = "false",
   TOKENIZER_OPTIONS = "",
   DEFAULT_REG_L1 = "1.0",
   OUTPUT_FILE = "",
@@ -99,6 +100,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     defaultValues.put("tagInside", TAG_INSIDE);
     defaultValues.put("sgml", SGML);
     defaultValues.put("approximate", APPROXIMATE);
+    defaultValues.put("denseScoring", DENSE_SCORING);
     defaultValues.put("tokenizerOptions", TOKENIZER_OPTIONS);
     defaultValues.put("regL1", DEFAULT_REG_L1);
     defaultValues.put("outputFile", OUTPUT_FILE);
@@ -251,6 +253,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
     this.setProperty("tagInside", props.getProperty("tagInside", this.getProperty("tagInside"))); //this isn't something we save from time to time
     this.setProperty("approximate", props.getProperty("approximate", this.getProperty("approximate"))); //this isn't something we save from time to time
+    this.setProperty("denseScoring", props.getProperty("denseScoring", this.getProperty("denseScoring", DENSE_SCORING))); //this isn't something we save from time to time
     this.setProperty("tokenizerOptions", props.getProperty("tokenizerOptions", this.getProperty("tokenizerOptions"))); //this isn't something we save from time to time
     this.setProperty("outputFile", props.getProperty("outputFile", this.getProperty("outputFile")).trim()); //this isn't something we save from time to time
     this.setProperty("outputFormat", props.getProperty("outputFormat", this.getProperty("outputFormat")).trim()); //this isn't something we save from time to time
@@ -373,6 +376,13 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
   public int getNThreads() { return Integer.parseInt(getProperty("nthreads")); }
 
+  /**
+   * Whether to tag with the weights compiled into dense tables (see
+   * DenseTaggerWeights).  This gives the same tags faster, but takes about
+   * twice the memory for the weights.
+   */
+  public boolean getDenseScoring() { return Boolean.parseBoolean(getProperty("denseScoring")); }
+
 
   /** Return a regex of XML elements to tag inside of.  This may return an
    *  empty String, but never null.
@@ -471,6 +481,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     pw.println("            outputFormat = " + getProperty("outputFormat"));
     pw.println("     outputFormatOptions = " + getProperty("outputFormatOptions"));
     pw.println("                nthreads = " + getProperty("nthreads"));
+    pw.println("            denseScoring = " + getProperty("denseScoring"));
     pw.flush();
   }
 
@@ -714,6 +725,11 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
     out.println("# testFile and textFile can use multiple threads to process text.");
     out.println("# nthreads = " + NTHREADS);
+    out.println();
+
+    out.println("# tag using weights compiled into dense tables, which is faster");
+    out.println("# but takes more memory.");
+    out.println("# denseScoring = " + DENSE_SCORING);
   }
 
   public Mode getMode() {
@@ -71,11 +71,14 @@ public class TestSentence implements SequenceModel {
   protected volatile double[][] localContextScores;
 
   protected final MaxentTagger maxentTagger;
+  /** The tagger's weights compiled for dense scoring, or null to score with feature lookups */
+  private final DenseTaggerWeights denseWeights;
 
   public TestSentence(MaxentTagger maxentTagger) {
     assert(maxentTagger != null);
     assert(maxentTagger.getLambdaSolve() != null);
     this.maxentTagger = maxentTagger;
+    this.denseWeights = maxentTagger.denseWeights();
     if (maxentTagger.config != null) {
       tagSeparator = maxentTagger.config.getTagSeparator();
       encoding = maxentTagger.config.getEncoding();
@@ -364,17 +367,18 @@ public class TestSentence implements SequenceModel {
   }
 
   // This scores the current assignment in PairsHolder at
-  // current position h.current (returns normalized scores)
-  private double[] getScores(History h) {
+  // current position h.current (returns normalized scores).
+  // The same assignment is in tagSeq, with h.current at pos.
+  private double[] getScores(History h, int[] tagSeq, int pos) {
     if (maxentTagger.hasApproximateScoring()) {
-      return getApproximateScores(h);
+      return getApproximateScores(h, tagSeq, pos);
     }
-    return getExactScores(h);
+    return getExactScores(h, tagSeq, pos);
   }
 
-  private double[] getExactScores(History h) {
+  private double[] getExactScores(History h, int[] tagSeq, int pos) {
     String[] tags = stringTagsAt(h.current - h.start + leftWindow());
-    double[] histories = getHistories(tags, h); // log score for each tag
+    double[] histories = getHistories(tags, h, tagSeq, pos); // log score for each tag
     ArrayMath.logNormalize(histories);
     double[] scores = new double[tags.length];
     for (int j = 0; j < tags.length; j++) {
@@ -389,9 +393,9 @@ public class TestSentence implements SequenceModel {
   // In this method, each tag that is incompatible with the current word
   // (e.g., apple_CC) gets a default (constant) score instead of its exact score.
   // The scores of all other tags are computed exactly.
-  private double[] getApproximateScores(History h) {
+  private double[] getApproximateScores(History h, int[] tagSeq, int pos) {
     String[] tags = stringTagsAt(h.current - h.start + leftWindow());
-    double[] scores = getHistories(tags, h); // log score for each active tag, unnormalized
+    double[] scores = getHistories(tags, h, tagSeq, pos); // log score for each active tag, unnormalized
 
     // Number of tags that get assigned a default score:
     int nDefault = maxentTagger.ySize - tags.length;
@@ -405,13 +409,19 @@ public class TestSentence implements SequenceModel {
 
   // This precomputes scores of local features (localScores).
   protected double[] getHistories(String[] tags, History h) {
+    return getHistories(tags, h, null, 0);
+  }
+
+  // As above; if tagSeq is not null, it holds the tags in h, with
+  // h.current at pos, for scoring dynamic features from tag numbers
+  private double[] getHistories(String[] tags, History h, int[] tagSeq, int pos) {
     boolean rare = maxentTagger.isRare(ExtractorFrames.cWord.extract(h));
     Extractors ex = maxentTagger.extractors, exR = maxentTagger.extractorsRare;
     String w = pairs.getWord(h.current);
     double[] lS, lcS;
     lS = localScores.get(w);
     if (lS == null) {
-      lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
+      lS = getHistories(tags, h, ex.local, rare ? exR.local : null, null, 0);
       localScores.put(w,lS);
     } else if (lS.length != tags.length) {
       // This case can occur when a word was given a specific forced
@@ -419,22 +429,24 @@ public class TestSentence implements SequenceModel {
       // TODO: if a word is given a forced tag, we should always get
       // its features rather than use the cache, just in case the tag
       // given is not the same tag as before
-      lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
+      lS = getHistories(tags, h, ex.local, rare ? exR.local : null, null, 0);
       if (tags.length > 1) {
         localScores.put(w,lS);
       }
     }
     if((lcS = localContextScores[h.current]) == null) {
-      lcS = getHistories(tags, h, ex.localContext, rare ? exR.localContext : null);
+      lcS = getHistories(tags, h, ex.localContext, rare ? exR.localContext : null, null, 0);
       localContextScores[h.current] = lcS;
       ArrayMath.pairwiseAddInPlace(lcS,lS);
     }
-    double[] totalS = getHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null);
+    double[] totalS = getHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null, tagSeq, pos);
     ArrayMath.pairwiseAddInPlace(totalS,lcS);
     return totalS;
   }
 
-  private double[] getHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
+  private double[] getHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare, int[] tagSeq, int pos) {
+    if (denseWeights != null)
+      return getDenseHistories(tags, h, extractors, extractorsRare, tagSeq, pos);
     if(maxentTagger.hasApproximateScoring())
       return getApproximateHistories(tags, h, extractors, extractorsRare);
     return getExactHistories(h, extractors, extractorsRare);
@@ -521,6 +533,56 @@ public class TestSentence implements SequenceModel {
   }
 
 
+  // Returns an unnormalized score (in log space) for each tag, as
+  // getExactHistories or getApproximateHistories do, but adding up rows of
+  // denseWeights.  Extractors of nothing but tags are looked up from
+  // tagSeq, if given, rather than by extracting their values.
+  private double[] getDenseHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare, int[] tagSeq, int pos) {
+    double[] scores;
+    int[] tagIndices = null;
+    if (maxentTagger.hasApproximateScoring()) {
+      scores = new double[tags.length];
+      tagIndices = new int[tags.length];
+      for (int j = 0; j < tags.length; j++) {
+        tagIndices[j] = maxentTagger.tags.getIndex(tags[j]);
+      }
+    } else {
+      scores = new double[maxentTagger.ySize];
+    }
+    addDenseScores(scores, tagIndices, h, extractors, 0, tagSeq, pos);
+    if (extractorsRare != null) {
+      addDenseScores(scores, tagIndices, h, extractorsRare, maxentTagger.extractors.size(), tagSeq, pos);
+    }
+    return scores;
+  }
+
+  private void addDenseScores(double[] scores, int[] tagIndices, History h, List<Pair<Integer,Extractor>> extractors, int kfOffset, int[] tagSeq, int pos) {
+    int first = leftWindow();
+    int last = leftWindow() + size - 1;
+    for (Pair<Integer,Extractor> e : extractors) {
+      int kf = e.first() + kfOffset;
+      double[] row;
+      if (tagSeq != null && denseWeights.tagPositions(kf) != null) {
+        row = denseWeights.row(kf, tagSeq, pos, first, last);
+      } else {
+        row = denseWeights.row(kf, e.second().extract(h));
+      }
+      if (row == null) {
+        continue;
+      }
+      if (tagIndices == null) {
+        for (int i = 0; i < scores.length; i++) {
+          scores[i] += row[i];
+        }
+      } else {
+        for (int j = 0; j < scores.length; j++) {
+          scores[j] += row[tagIndices[j]];
+        }
+      }
+    }
+  }
+
+
   /**
    * This method should be called after the sentence has been tagged.
    * For every unknown word, this method prints the 3 most probable tags
@@ -710,7 +772,7 @@ public class TestSentence implements SequenceModel {
     }
     history.init(endSizePairs - size, endSizePairs - 1, endSizePairs - size + pos - leftWindow());
     setHistory(pos, history, tags);
-    return getScores(history);
+    return getScores(history, tags, pos);
   }
 
   // todo [cdm 2013]: Tagging could be sped up quite a bit here if we cached int arrays of tags by index, not Strings
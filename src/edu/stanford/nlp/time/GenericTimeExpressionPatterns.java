@@ -78,6 +78,12 @@ public class GenericTimeExpressionPatterns implements TimeExpressionPatterns {
     env.setDefaultStringPatternFlags(Pattern.CASE_INSENSITIVE);
 
     env.bind("options", options);
+    if (options.shareNodePatterns) {
+      env.bind("shareNodePatterns", true);
+    }
+    if (options.prefilter) {
+      env.bind("prefilter", true);
+    }
     env.bind("TIME_REF", SUTime.TIME_REF);
     env.bind("TIME_REF_UNKNOWN", SUTime.TIME_REF_UNKNOWN);
     env.bind("TIME_UNKNOWN", SUTime.TIME_UNKNOWN);
@@ -30,6 +30,13 @@ public class Options {
   boolean includeRange = false;
   // Look for document date in the document text (if not provided)
   boolean searchForDocDate = false;
+  // Test identical annotation patterns of the rules once per token (see CoreMapExpressionExtractor)
+  boolean shareNodePatterns = false;
+  // Skip the sentences none of the rules can match (see ExtractRulePrefilter)
+  boolean prefilter = false;
+  // After each document, log how many sentences the prefilter has skipped and tested.
+  // These are running totals over every document this annotator has seen, not per document counts
+  boolean reportPrefilter = false;
   // TODO: Add default country for holidays and default time format
   // would want a per document default as well
   String grammarFilename = null;
@@ -63,6 +70,9 @@ public class Options {
     grammarFilename = props.getProperty(name + ".rules", DEFAULT_GRAMMAR_FILES);
 
     searchForDocDate = PropertiesUtils.getBool(props, name + ".searchForDocDate", searchForDocDate);
+    shareNodePatterns = PropertiesUtils.getBool(props, name + ".shareNodePatterns", shareNodePatterns);
+    prefilter = PropertiesUtils.getBool(props, name + ".prefilter", prefilter);
+    reportPrefilter = PropertiesUtils.getBool(props, name + ".prefilter.report", reportPrefilter);
 
     String binderProperty = props.getProperty(name + ".binders");
     int nBinders;
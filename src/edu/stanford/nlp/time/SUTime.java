@@ -158,6 +158,10 @@ public class SUTime {
 
     SUTime.Time docDate;
 
+    // The last reference date parsed for this document, so that it isn't parsed again for each sentence
+    private String refDateString;
+    private SUTime.Time refDate;
+
     public TimeIndex() {
       addTemporal(SUTime.TIME_REF);
     }
@@ -166,11 +170,22 @@ public class SUTime {
       temporalExprIndex.clear();
       temporalIndex.clear();
       temporalFuncIndex.clear();
+      refDateString = null;
+      refDate = null;
       // t0 is the document date (reserve)
       temporalExprIndex.add(null);
       addTemporal(SUTime.TIME_REF);
     }
 
+    /** Parses a reference date, reusing the last result if the string is the same */
+    SUTime.Time parseRefDate(String dateStr) {
+      if (!dateStr.equals(refDateString)) {
+        refDate = SUTime.parseDateTime(dateStr, true);
+        refDateString = dateStr;
+      }
+      return refDate;
+    }
+
     public int getNumberOfTemporals() { return temporalIndex.size(); }
     public int getNumberOfTemporalExprs() { return temporalExprIndex.size(); }
     public int getNumberOfTemporalFuncs() { return temporalFuncIndex.size(); }
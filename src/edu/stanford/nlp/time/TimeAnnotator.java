@@ -226,6 +226,11 @@ public class TimeAnnotator implements Annotator {
       allTimeExpressions = annotateSingleSentence(annotation, docDate, timeIndex);
     }
     annotation.set(TimeAnnotations.TimexAnnotations.class, allTimeExpressions);
+    // running totals, not counts for this document
+    String prefilterReport = timexExtractor.prefilterReport();
+    if (prefilterReport != null && !quiet) {
+      Redwood.log(prefilterReport);
+    }
   }
 
   /**
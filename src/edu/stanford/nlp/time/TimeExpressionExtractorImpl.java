@@ -93,8 +93,7 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
     if (timeIndex.docDate == null && docDate != null) {
       try {
         // TODO: have more robust parsing of document date?  docDate may not have century....
-        // TODO: if docDate didn't change, we can cache the parsing of the docDate and not repeat it for every sentence
-        timeIndex.docDate = SUTime.parseDateTime(docDate,true);
+        timeIndex.docDate = timeIndex.parseRefDate(docDate);
       } catch (Exception e) {
         throw new RuntimeException("Could not parse date string: [" + docDate + "]", e);
       }
@@ -117,6 +116,22 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
     return toCoreMaps(annotation, timeExpressions, timeIndex);
   }
 
+  /**
+   * Returns how many sentences have been skipped because none of the rules
+   * could match them, or null if the options don't ask for it.  The counts
+   * are running totals over all the sentences this extractor has seen, on
+   * any thread, since documents may be annotated concurrently.
+   */
+  String prefilterReport() {
+    ExtractRulePrefilter prefilter = expressionExtractor.getPrefilter();
+    if (!options.reportPrefilter || prefilter == null) {
+      return null;
+    }
+    return "SUTime skipped " + prefilter.getNumSkipped() + " of " + prefilter.getNumTested() + " sentences so far" +
+        " (running totals over all documents)" +
+        (prefilter.passesAll() ? " (its rules can't be prefiltered)" : "");
+  }
+
   public void finalize(CoreMap docAnnotation) {
     docAnnotation.remove(TimeExpression.TimeIndexAnnotation.class);
   }
@@ -169,8 +184,7 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
     if (refDateStr != null) {
       try {
         // TODO: have more robust parsing of document date?  docDate may not have century....
-        // TODO: if docDate didn't change, we can cache the parsing of the docDate and not repeat it for every sentence
-        refDate = SUTime.parseDateTime(refDateStr,true);
+        refDate = timeIndex.parseRefDate(refDateStr);
       } catch (Exception e) {
         throw new RuntimeException("Could not parse date string: [" + refDateStr + "]", e);
       }
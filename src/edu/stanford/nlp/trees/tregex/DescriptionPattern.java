@@ -269,6 +269,51 @@ class DescriptionPattern extends TregexPattern {
     child = n;
   }
 
+  Relation relation() {
+    return rel;
+  }
+
+  /**
+   * Returns the only value a node matched by this pattern may have, or
+   * null if there may be others.  When it is non-null, it is the only
+   * value {@link #valueFilter()} passes.
+   */
+  String exactValue() {
+    if (descriptionMode != DescriptionMode.EXACT || negDesc || basicCatFunction != null) {
+      return null;
+    }
+    return exactMatch;
+  }
+
+  /**
+   * Returns a test of the values of the nodes this pattern may match,
+   * ignoring its variables, or null if it may match nodes of any value
+   * (or without one).
+   */
+  Predicate<String> valueFilter() {
+    if (descriptionMode == null || descriptionMode == DescriptionMode.ANYTHING || negDesc) {
+      return null;
+    }
+    return value -> {
+      if (value == null) {
+        return false;
+      }
+      if (basicCatFunction != null) {
+        value = basicCatFunction.apply(value);
+      }
+      switch (descriptionMode) {
+      case EXACT:
+        return value.equals(exactMatch);
+      case PATTERN:
+        return descPattern.matcher(value).find();
+      case STRINGS:
+        return stringFilter.test(value);
+      default:
+        throw new IllegalArgumentException("Unexpected match mode");
+      }
+    };
+  }
+
   @Override
   public List<TregexPattern> getChildren() {
     if (child == null) {
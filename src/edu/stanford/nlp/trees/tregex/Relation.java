@@ -203,6 +203,16 @@ abstract class Relation implements Serializable {
     this.symbol = symbol;
   }
 
+  /**
+   * Whether the nodes this relation finds from a node are always proper
+   * descendants of it (so that {@link TreeIndex} can look for them within
+   * the node's span).
+   */
+  static boolean isDescendantRelation(Relation r) {
+    return r == DOMINATES || r == PARENT_OF || r == HAS_LEFTMOST_DESCENDANT ||
+        r == HAS_RIGHTMOST_DESCENDANT || r == HAS_ONLY_CHILD || r instanceof HasIthChild;
+  }
+
   @Override
   public String toString() {
     return symbol;
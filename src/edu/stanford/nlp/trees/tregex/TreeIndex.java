@@ -0,0 +1,872 @@
+package edu.stanford.nlp.trees.tregex;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * An index of trees kept on disk, with which a {@link TregexPattern} finds
+ * the trees and nodes it may match without matching every tree.
+ * <br>
+ * The nodes of each tree are numbered in preorder, so that the nodes a
+ * node dominates are those numbered from it to the end of its span.  The
+ * index keeps postings from each node value (categories and words alike)
+ * to the nodes with that value, and the span of each node.  A pattern is
+ * reduced to tests of the values of nodes any tree it matches must have,
+ * and tests of the value of the node at the root of a match and of nodes
+ * which that one must dominate.  Each test is made once on each distinct
+ * value, and its postings then give the trees and the nodes to try.
+ * <br>
+ * Trees are added in batches with {@link #addAll}, each of which is written
+ * as new segments of the index, so that adding trees never rewrites what
+ * is already there.  The values, postings and spans are memory mapped and
+ * read in place, and the trees themselves are read from disk when asked
+ * for.  The postings of a test passing a few values are read straight from
+ * the mapped postings of each; only tests passing many values have their
+ * postings merged on the heap, and at most 64 MB of these are kept.
+ * <br>
+ * Usage:
+ * <pre>
+ *   TreeIndex index = new TreeIndex(new File("wsj.idx"));
+ *   index.addAll(treebank);
+ *   for (int id : index.candidateTrees(pattern)) {
+ *     TregexMatcher matcher = pattern.matcher(index, id);
+ *     while (matcher.find()) {
+ *       ...
+ *     }
+ *   }
+ * </pre>
+ */
+public class TreeIndex implements Closeable {
+
+  /** The most trees in a segment; larger batches are split */
+  private static final int SEGMENT_SIZE = 100000;
+  /** The most values a test may pass and still have its postings read in place, value by value */
+  private static final int STREAMED_VALUES = 16;
+  /** The most bytes of merged postings kept for reuse */
+  private static final long MERGED_CACHE_BYTES = 64L << 20;
+
+  private static final String TREES_FILE = "trees.dat";
+  private static final String OFFSETS_FILE = "trees.off";
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String VALUES_SUFFIX = ".values";
+  private static final String SPANS_SUFFIX = ".spans";
+  private static final String POSTINGS_SUFFIX = ".postings";
+
+  private final File dir;
+  private final TreeFactory treeFactory;
+  private final List<Segment> segments = new ArrayList<Segment>();
+  private volatile int numTrees;
+  /** The trees, one after another */
+  private final FileChannel trees;
+  /** The offset of the end of each tree in trees */
+  private final FileChannel offsets;
+  /** The tests each pattern is reduced to */
+  private final Map<TregexPattern,Query> queries = Collections.synchronizedMap(new WeakHashMap<TregexPattern,Query>());
+  /** The merged postings of tests passing many values, by segment and test, least recently used first */
+  private final LinkedHashMap<List<Object>,long[]> merged = new LinkedHashMap<List<Object>,long[]>(16, 0.75f, true);
+  /** The bytes of the postings in merged */
+  private long mergedBytes;
+
+  /**
+   * A run of trees in the index.  A segment is written once and then only
+   * read: its values file, written last, has the node starts of its trees
+   * and the table of its values, and is memory mapped with the other two.
+   * <br>
+   * The values file holds, as ints, the first tree, the number of trees and
+   * the number of values, then the node starts, the posting starts and the
+   * byte offsets of the values, and last the values themselves in UTF-8,
+   * sorted by their bytes.
+   */
+  private static class Segment {
+    final int firstTree;
+    final int numTrees;
+    final int numValues;
+    /** The index in spans of the first node of each tree, and the number of nodes at the end */
+    final IntBuffer nodeStarts;
+    /** The end of the span of each node (the number of the first node after its descendants) */
+    final IntBuffer spans;
+    /** The index in postings of the first node with each value, and the number of postings at the end */
+    final IntBuffer postingStarts;
+    /** The offset in valueBytes of each value, and the number of bytes at the end */
+    final IntBuffer valueStarts;
+    /** The distinct node values, in UTF-8, sorted */
+    final ByteBuffer valueBytes;
+    /** (tree, node) pairs, ordered, for each value in turn */
+    final IntBuffer postings;
+
+    Segment(ByteBuffer values, IntBuffer spans, IntBuffer postings) {
+      IntBuffer ints = values.asIntBuffer();
+      firstTree = ints.get(0);
+      numTrees = ints.get(1);
+      numValues = ints.get(2);
+      int start = 3;
+      nodeStarts = slice(ints, start, numTrees + 1);
+      start += numTrees + 1;
+      postingStarts = slice(ints, start, numValues + 1);
+      start += numValues + 1;
+      valueStarts = slice(ints, start, numValues + 1);
+      start += numValues + 1;
+      values.position(4 * start);
+      valueBytes = values.slice();
+      this.spans = spans;
+      this.postings = postings;
+    }
+
+    private static IntBuffer slice(IntBuffer ints, int start, int length) {
+      IntBuffer slice = ints.duplicate();
+      slice.position(start);
+      slice.limit(start + length);
+      return slice.slice();
+    }
+
+    int numNodes(int tree) {
+      return nodeStarts.get(tree + 1) - nodeStarts.get(tree);
+    }
+
+    int spanEnd(int tree, int node) {
+      return spans.get(nodeStarts.get(tree) + node);
+    }
+
+    String value(int v) {
+      byte[] bytes = new byte[valueStarts.get(v + 1) - valueStarts.get(v)];
+      ByteBuffer value = valueBytes.duplicate();
+      value.position(valueStarts.get(v));
+      value.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The number of a value, or -1 if no node of the segment has it */
+    int valueId(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      int lo = 0;
+      int hi = numValues - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int cmp = compareValue(mid, bytes);
+        if (cmp < 0) {
+          lo = mid + 1;
+        } else if (cmp > 0) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    // Compares a value of the segment with the UTF-8 bytes of another, as unsigned bytes
+    private int compareValue(int v, byte[] bytes) {
+      int start = valueStarts.get(v);
+      int length = valueStarts.get(v + 1) - start;
+      for (int i = 0, n = Math.min(length, bytes.length); i < n; i++) {
+        int cmp = Integer.compare(valueBytes.get(start + i) & 0xff, bytes[i] & 0xff);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return Integer.compare(length, bytes.length);
+    }
+
+    /** The index in postings of the first posting of a value at or after a node */
+    int lowerBound(int v, int tree, int node) {
+      int lo = postingStarts.get(v);
+      int hi = postingStarts.get(v + 1);
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int postingTree = postings.get(2 * mid);
+        if (postingTree < tree || (postingTree == tree && postings.get(2 * mid + 1) < node)) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+  }
+
+  /**
+   * Opens the index in a directory, creating it if there is none.
+   *
+   * @param dir The directory of the index
+   */
+  public TreeIndex(File dir) throws IOException {
+    this(dir, new LabeledScoredTreeFactory());
+  }
+
+  /**
+   * Opens the index in a directory, creating it if there is none.
+   *
+   * @param dir The directory of the index
+   * @param treeFactory Makes the trees read back from the index
+   */
+  public TreeIndex(File dir, TreeFactory treeFactory) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create index directory " + dir);
+    }
+    this.dir = dir;
+    this.treeFactory = treeFactory;
+    File[] valuesFiles = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(VALUES_SUFFIX));
+    List<Segment> found = new ArrayList<Segment>();
+    for (File file : valuesFiles) {
+      found.add(readSegment(file));
+    }
+    found.sort((s1, s2) -> Integer.compare(s1.firstTree, s2.firstTree));
+    for (Segment segment : found) {
+      if (segment.firstTree != numTrees) {
+        throw new IOException("Index " + dir + " has no segment for tree " + numTrees);
+      }
+      segments.add(segment);
+      numTrees += segment.numTrees;
+    }
+    File treesFile = new File(dir, TREES_FILE);
+    File offsetsFile = new File(dir, OFFSETS_FILE);
+    treesFile.createNewFile();
+    offsetsFile.createNewFile();
+    if (offsetsFile.length() < 8L * numTrees) {
+      throw new IOException("Index " + dir + " is missing trees");
+    }
+    trees = new RandomAccessFile(treesFile, "r").getChannel();
+    offsets = new RandomAccessFile(offsetsFile, "r").getChannel();
+  }
+
+  private static Segment readSegment(File valuesFile) throws IOException {
+    String path = valuesFile.getPath();
+    String base = path.substring(0, path.length() - VALUES_SUFFIX.length());
+    return new Segment(map(valuesFile), map(new File(base + SPANS_SUFFIX)).asIntBuffer(),
+        map(new File(base + POSTINGS_SUFFIX)).asIntBuffer());
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /** The number of trees in the index */
+  public int size() {
+    return numTrees;
+  }
+
+  /**
+   * Adds trees to the end of the index, numbered from {@link #size()} on.
+   * They are added a segment at a time, once the segment is written, so if
+   * this fails the index still has the trees of the segments written.
+   */
+  public synchronized void addAll(Iterable<? extends Tree> newTrees) throws IOException {
+    // drop what an add which failed may have left
+    long end = (numTrees == 0) ? 0 : readLong(offsets, 8L * (numTrees - 1));
+    try (RandomAccessFile file = new RandomAccessFile(new File(dir, OFFSETS_FILE), "rw")) {
+      file.setLength(8L * numTrees);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(new File(dir, TREES_FILE), "rw")) {
+      file.setLength(end);
+    }
+    try (DataOutputStream treesOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, TREES_FILE), true)));
+         DataOutputStream offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, OFFSETS_FILE), true)))) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream treeOut = new DataOutputStream(bytes);
+      SegmentWriter writer = new SegmentWriter(numTrees);
+      for (Tree tree : newTrees) {
+        bytes.reset();
+        writeTree(tree, treeOut);
+        bytes.writeTo(treesOut);
+        end += bytes.size();
+        offsetsOut.writeLong(end);
+        writer.add(tree);
+        if (writer.numTrees() == SEGMENT_SIZE) {
+          commit(writer, treesOut, offsetsOut);
+          writer = new SegmentWriter(numTrees);
+        }
+      }
+      if (writer.numTrees() > 0) {
+        commit(writer, treesOut, offsetsOut);
+      }
+    }
+  }
+
+  private void commit(SegmentWriter writer, DataOutputStream treesOut, DataOutputStream offsetsOut) throws IOException {
+    treesOut.flush();
+    offsetsOut.flush();
+    Segment segment = writer.write(new File(dir, SEGMENT_PREFIX + writer.firstTree));
+    synchronized (segments) {
+      segments.add(segment);
+    }
+    numTrees += segment.numTrees;
+  }
+
+  private static void writeTree(Tree tree, DataOutputStream out) throws IOException {
+    String value = tree.value();
+    out.writeBoolean(value != null);
+    if (value != null) {
+      writeString(value, out);
+    }
+    Tree[] children = tree.children();
+    out.writeInt(children.length);
+    for (Tree child : children) {
+      writeTree(child, out);
+    }
+  }
+
+  private Tree readTree(DataInputStream in) throws IOException {
+    String value = in.readBoolean() ? readString(in) : null;
+    int numChildren = in.readInt();
+    if (numChildren == 0) {
+      return treeFactory.newLeaf(value);
+    }
+    List<Tree> children = new ArrayList<Tree>(numChildren);
+    for (int i = 0; i < numChildren; i++) {
+      children.add(readTree(in));
+    }
+    return treeFactory.newTreeNode(value, children);
+  }
+
+  // Unlike writeUTF, takes strings of any length
+  private static void writeString(String s, DataOutputStream out) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static long readLong(FileChannel channel, long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(8);
+    readFully(channel, buffer, position);
+    return buffer.getLong(0);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  /** Reads a tree of the index back. */
+  public Tree getTree(int id) {
+    if (id < 0 || id >= numTrees) {
+      throw new IndexOutOfBoundsException("No tree " + id + " in an index of " + numTrees);
+    }
+    try {
+      long start = (id == 0) ? 0 : readLong(offsets, 8L * (id - 1));
+      long end = readLong(offsets, 8L * id);
+      ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+      readFully(trees, buffer, start);
+      return readTree(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    trees.close();
+    offsets.close();
+  }
+
+  /** A growable array of ints */
+  private static class IntList {
+    int[] ints = new int[8];
+    int size;
+
+    void add(int i) {
+      if (size == ints.length) {
+        ints = Arrays.copyOf(ints, 2 * size);
+      }
+      ints[size++] = i;
+    }
+  }
+
+  /** Collects the postings and spans of a segment in memory until it is written */
+  private static class SegmentWriter {
+    final int firstTree;
+    final IntList nodeStarts = new IntList();
+    final IntList spans = new IntList();
+    final Map<String,IntList> postings = new HashMap<String,IntList>();
+
+    SegmentWriter(int firstTree) {
+      this.firstTree = firstTree;
+      nodeStarts.add(0);
+    }
+
+    int numTrees() {
+      return nodeStarts.size - 1;
+    }
+
+    void add(Tree tree) {
+      addNode(tree, numTrees(), nodeStarts.ints[nodeStarts.size - 1]);
+      nodeStarts.add(spans.size);
+    }
+
+    // Numbers the nodes under a node in preorder, adding their spans and postings
+    private void addNode(Tree node, int tree, int treeStart) {
+      int n = spans.size - treeStart;
+      spans.add(0);
+      String value = node.value();
+      if (value != null) {
+        IntList nodes = postings.get(value);
+        if (nodes == null) {
+          nodes = new IntList();
+          postings.put(value, nodes);
+        }
+        nodes.add(tree);
+        nodes.add(n);
+      }
+      for (Tree child : node.children()) {
+        addNode(child, tree, treeStart);
+      }
+      spans.ints[treeStart + n] = spans.size - treeStart;
+    }
+
+    Segment write(File base) throws IOException {
+      String[] values = postings.keySet().toArray(new String[postings.size()]);
+      byte[][] valueBytes = new byte[values.length][];
+      for (int v = 0; v < values.length; v++) {
+        valueBytes[v] = values[v].getBytes(StandardCharsets.UTF_8);
+      }
+      Integer[] order = new Integer[values.length];
+      for (int v = 0; v < order.length; v++) {
+        order[v] = v;
+      }
+      Arrays.sort(order, (v1, v2) -> compareBytes(valueBytes[v1], valueBytes[v2]));
+      int[] postingStarts = new int[values.length + 1];
+      File postingsFile = new File(base.getPath() + POSTINGS_SUFFIX);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(postingsFile)))) {
+        for (int i = 0; i < order.length; i++) {
+          IntList nodes = postings.get(values[order[i]]);
+          for (int j = 0; j < nodes.size; j++) {
+            out.writeInt(nodes.ints[j]);
+          }
+          postingStarts[i + 1] = postingStarts[i] + nodes.size / 2;
+        }
+      }
+      File spansFile = new File(base.getPath() + SPANS_SUFFIX);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spansFile)))) {
+        for (int i = 0; i < spans.size; i++) {
+          out.writeInt(spans.ints[i]);
+        }
+      }
+      // the values file is what makes the segment part of the index, so it is written last
+      File valuesFile = new File(base.getPath() + VALUES_SUFFIX);
+      File tmpFile = new File(base.getPath() + VALUES_SUFFIX + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+        out.writeInt(firstTree);
+        out.writeInt(numTrees());
+        out.writeInt(values.length);
+        for (int i = 0; i < nodeStarts.size; i++) {
+          out.writeInt(nodeStarts.ints[i]);
+        }
+        for (int start : postingStarts) {
+          out.writeInt(start);
+        }
+        int offset = 0;
+        out.writeInt(offset);
+        for (int v : order) {
+          offset += valueBytes[v].length;
+          out.writeInt(offset);
+        }
+        for (int v : order) {
+          out.write(valueBytes[v]);
+        }
+      }
+      if (!tmpFile.renameTo(valuesFile)) {
+        throw new IOException("Could not write " + valuesFile);
+      }
+      return readSegment(valuesFile);
+    }
+
+    private static int compareBytes(byte[] b1, byte[] b2) {
+      for (int i = 0, n = Math.min(b1.length, b2.length); i < n; i++) {
+        int cmp = Integer.compare(b1[i] & 0xff, b2[i] & 0xff);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return Integer.compare(b1.length, b2.length);
+    }
+  }
+
+  /** A test of node values */
+  private static class ValueTest {
+    final Predicate<String> test;
+    /** The only value passing the test, or null if others may */
+    final String exact;
+
+    ValueTest(Predicate<String> test, String exact) {
+      this.test = test;
+      this.exact = exact;
+    }
+
+    static ValueTest of(DescriptionPattern pattern) {
+      Predicate<String> test = pattern.valueFilter();
+      return (test == null) ? null : new ValueTest(test, pattern.exactValue());
+    }
+  }
+
+  /** The test of a node at the root of a match */
+  private static class RootTest {
+    /** The test of its value, or null if any value passes */
+    final ValueTest value;
+    /** Tests of nodes it must dominate */
+    final List<ValueTest> dominated;
+
+    RootTest(ValueTest value, List<ValueTest> dominated) {
+      this.value = value;
+      this.dominated = dominated;
+    }
+  }
+
+  /** The tests a pattern is reduced to, and the values which pass them in each segment */
+  private static class Query {
+    /** Tests of which any matched tree has a node passing each */
+    final List<ValueTest> required = new ArrayList<ValueTest>();
+    /** The root of a match passes one of these; null if any node may be */
+    List<RootTest> roots = new ArrayList<RootTest>();
+    /** The numbers of the values passing each test, by segment */
+    private final Map<Segment,Map<ValueTest,int[]>> values = new IdentityHashMap<Segment,Map<ValueTest,int[]>>();
+
+    Query(TregexPattern pattern) {
+      addRequired(pattern, required);
+      List<TregexPattern> alternatives = (pattern instanceof CoordinationPattern && !((CoordinationPattern) pattern).isConjunction()) ?
+          pattern.getChildren() : Collections.singletonList(pattern);
+      for (TregexPattern alternative : alternatives) {
+        RootTest test = rootTest(alternative);
+        if (test == null) {
+          roots = null;
+          break;
+        }
+        roots.add(test);
+      }
+    }
+
+    // Adds the tests of nodes which any tree matched by the pattern has
+    private static void addRequired(TregexPattern pattern, List<ValueTest> required) {
+      if (pattern.isNegated() || pattern.isOptional()) {
+        return;
+      }
+      if (pattern instanceof DescriptionPattern) {
+        ValueTest test = ValueTest.of((DescriptionPattern) pattern);
+        if (test != null) {
+          required.add(test);
+        }
+        for (TregexPattern child : pattern.getChildren()) {
+          addRequired(child, required);
+        }
+      } else if (pattern instanceof CoordinationPattern) {
+        if (((CoordinationPattern) pattern).isConjunction()) {
+          for (TregexPattern child : pattern.getChildren()) {
+            addRequired(child, required);
+          }
+        } else {
+          // one of the alternatives matches, so the tree passes one of their tests
+          Predicate<String> any = null;
+          for (TregexPattern child : pattern.getChildren()) {
+            List<ValueTest> tests = new ArrayList<ValueTest>();
+            addRequired(child, tests);
+            if (tests.isEmpty()) {
+              return;
+            }
+            any = (any == null) ? tests.get(0).test : any.or(tests.get(0).test);
+          }
+          required.add(new ValueTest(any, null));
+        }
+      }
+    }
+
+    private static RootTest rootTest(TregexPattern pattern) {
+      if (!(pattern instanceof DescriptionPattern) || pattern.isNegated() || pattern.isOptional()) {
+        return null;
+      }
+      List<ValueTest> dominated = new ArrayList<ValueTest>();
+      addDominated(pattern, dominated);
+      ValueTest value = ValueTest.of((DescriptionPattern) pattern);
+      if (value == null && dominated.isEmpty()) {
+        return null;
+      }
+      return new RootTest(value, dominated);
+    }
+
+    // Adds the tests of nodes which a node matched by the pattern dominates, through its relations to its descendants
+    private static void addDominated(TregexPattern pattern, List<ValueTest> dominated) {
+      for (TregexPattern child : pattern.getChildren()) {
+        if (child.isNegated() || child.isOptional()) {
+          continue;
+        }
+        if (child instanceof CoordinationPattern && ((CoordinationPattern) child).isConjunction()) {
+          addDominated(child, dominated);
+        } else if (child instanceof DescriptionPattern &&
+            Relation.isDescendantRelation(((DescriptionPattern) child).relation())) {
+          ValueTest test = ValueTest.of((DescriptionPattern) child);
+          if (test != null) {
+            dominated.add(test);
+          }
+          addDominated(child, dominated);
+        }
+      }
+    }
+
+    /** The numbers of the values of a segment passing a test, in order */
+    synchronized int[] values(Segment segment, ValueTest test) {
+      Map<ValueTest,int[]> segmentValues = values.get(segment);
+      if (segmentValues == null) {
+        segmentValues = new IdentityHashMap<ValueTest,int[]>();
+        values.put(segment, segmentValues);
+      }
+      int[] passed = segmentValues.get(test);
+      if (passed == null) {
+        if (test.exact != null) {
+          int v = segment.valueId(test.exact);
+          passed = (v < 0) ? new int[0] : new int[] { v };
+        } else {
+          IntList list = new IntList();
+          for (int v = 0; v < segment.numValues; v++) {
+            if (test.test.test(segment.value(v))) {
+              list.add(v);
+            }
+          }
+          passed = Arrays.copyOf(list.ints, list.size);
+        }
+        segmentValues.put(test, passed);
+      }
+      return passed;
+    }
+  }
+
+  /**
+   * The nodes of a segment passing a test.  These are read in place from
+   * the postings of each value passing it, unless there are many such
+   * values, when they are merged into keys.
+   */
+  private static class Postings {
+    final Segment segment;
+    final int[] values;
+    /** The (tree, node) keys of the nodes, in order, or null to read the postings of each value */
+    final long[] keys;
+
+    Postings(Segment segment, int[] values, long[] keys) {
+      this.segment = segment;
+      this.values = values;
+      this.keys = keys;
+    }
+
+    /** Sets the trees with a node passing the test */
+    void addTrees(BitSet trees) {
+      IntBuffer postings = segment.postings;
+      for (int v : values) {
+        for (int p = segment.postingStarts.get(v), end = segment.postingStarts.get(v + 1); p < end; p++) {
+          trees.set(postings.get(2 * p));
+        }
+      }
+    }
+
+    /** Whether a tree has a node passing the test */
+    boolean hasTree(int t) {
+      if (keys != null) {
+        int i = lowerBound(keys, key(t, 0));
+        return i < keys.length && (int) (keys[i] >>> 32) == t;
+      }
+      for (int v : values) {
+        int p = segment.lowerBound(v, t, 0);
+        if (p < segment.postingStarts.get(v + 1) && segment.postings.get(2 * p) == t) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Sets the nodes of a tree passing the test */
+    void addNodes(int t, BitSet nodes) {
+      if (keys != null) {
+        for (int i = lowerBound(keys, key(t, 0)); i < keys.length && (int) (keys[i] >>> 32) == t; i++) {
+          nodes.set((int) keys[i]);
+        }
+        return;
+      }
+      IntBuffer postings = segment.postings;
+      for (int v : values) {
+        for (int p = segment.lowerBound(v, t, 0), end = segment.postingStarts.get(v + 1);
+             p < end && postings.get(2 * p) == t; p++) {
+          nodes.set(postings.get(2 * p + 1));
+        }
+      }
+    }
+  }
+
+  private static long key(int tree, int node) {
+    return ((long) tree << 32) | node;
+  }
+
+  /** The index of the first key at least key */
+  private static int lowerBound(long[] keys, long key) {
+    int i = Arrays.binarySearch(keys, key);
+    return (i >= 0) ? i : -i - 1;
+  }
+
+  private Query query(TregexPattern pattern) {
+    Query query = queries.get(pattern);
+    if (query == null) {
+      query = new Query(pattern);
+      queries.put(pattern, query);
+    }
+    return query;
+  }
+
+  /** The nodes of a segment passing a test of a query */
+  private Postings postings(Query query, Segment segment, ValueTest test) {
+    int[] values = query.values(segment, test);
+    if (values.length <= STREAMED_VALUES) {
+      return new Postings(segment, values, null);
+    }
+    List<Object> cacheKey = Arrays.<Object>asList(segment, test);
+    synchronized (merged) {
+      long[] keys = merged.get(cacheKey);
+      if (keys != null) {
+        return new Postings(segment, values, keys);
+      }
+    }
+    int count = 0;
+    for (int v : values) {
+      count += segment.postingStarts.get(v + 1) - segment.postingStarts.get(v);
+    }
+    long[] keys = new long[count];
+    int k = 0;
+    for (int v : values) {
+      for (int p = segment.postingStarts.get(v), end = segment.postingStarts.get(v + 1); p < end; p++) {
+        keys[k++] = key(segment.postings.get(2 * p), segment.postings.get(2 * p + 1));
+      }
+    }
+    // the postings of each value are in order, but not those of several
+    Arrays.sort(keys);
+    long bytes = 8L * keys.length;
+    if (bytes <= MERGED_CACHE_BYTES) {
+      synchronized (merged) {
+        if (merged.put(cacheKey, keys) == null) {
+          mergedBytes += bytes;
+        }
+        for (Iterator<long[]> it = merged.values().iterator(); mergedBytes > MERGED_CACHE_BYTES; ) {
+          mergedBytes -= 8L * it.next().length;
+          it.remove();
+        }
+      }
+    }
+    return new Postings(segment, values, keys);
+  }
+
+  private Segment segment(int id) {
+    synchronized (segments) {
+      int lo = 0;
+      int hi = segments.size() - 1;
+      while (lo < hi) {
+        int mid = (lo + hi + 1) >>> 1;
+        if (segments.get(mid).firstTree <= id) {
+          lo = mid;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      return segments.get(lo);
+    }
+  }
+
+  /**
+   * Returns the ids of the trees the pattern may match, in order.  It
+   * certainly doesn't match the others.
+   */
+  public int[] candidateTrees(TregexPattern pattern) {
+    Query query = query(pattern);
+    List<Segment> searched;
+    synchronized (segments) {
+      searched = new ArrayList<Segment>(segments);
+    }
+    IntList candidates = new IntList();
+    for (Segment segment : searched) {
+      BitSet trees = new BitSet(segment.numTrees);
+      trees.set(0, segment.numTrees);
+      for (ValueTest test : query.required) {
+        BitSet passed = new BitSet(segment.numTrees);
+        new Postings(segment, query.values(segment, test), null).addTrees(passed);
+        trees.and(passed);
+      }
+      for (int t = trees.nextSetBit(0); t >= 0; t = trees.nextSetBit(t + 1)) {
+        if (query.roots == null || !candidateRoots(query, segment, t).isEmpty()) {
+          candidates.add(segment.firstTree + t);
+        }
+      }
+    }
+    return Arrays.copyOf(candidates.ints, candidates.size);
+  }
+
+  /**
+   * Returns the nodes of a tree of the index which may be the root of a
+   * match of the pattern, in preorder, or null if they all may be.
+   *
+   * @param tree The tree, as read from the index
+   */
+  List<Tree> candidateRoots(TregexPattern pattern, int id, Tree tree) {
+    Query query = query(pattern);
+    Segment segment = segment(id);
+    int t = id - segment.firstTree;
+    for (ValueTest test : query.required) {
+      if (!postings(query, segment, test).hasTree(t)) {
+        return Collections.emptyList();
+      }
+    }
+    if (query.roots == null) {
+      return null;
+    }
+    BitSet roots = candidateRoots(query, segment, t);
+    List<Tree> nodes = tree.preOrderNodeList();
+    if (nodes.size() != segment.numNodes(t)) {
+      throw new IllegalArgumentException("Tree " + id + " is not the tree in the index");
+    }
+    List<Tree> candidates = new ArrayList<Tree>(roots.cardinality());
+    for (int n = roots.nextSetBit(0); n >= 0; n = roots.nextSetBit(n + 1)) {
+      candidates.add(nodes.get(n));
+    }
+    return candidates;
+  }
+
+  // The nodes of a tree of a segment passing one of the root tests
+  private BitSet candidateRoots(Query query, Segment segment, int t) {
+    int numNodes = segment.numNodes(t);
+    BitSet roots = new BitSet(numNodes);
+    for (RootTest test : query.roots) {
+      BitSet passed = new BitSet(numNodes);
+      if (test.value == null) {
+        passed.set(0, numNodes);
+      } else {
+        postings(query, segment, test.value).addNodes(t, passed);
+      }
+      for (ValueTest dominated : test.dominated) {
+        BitSet below = new BitSet(numNodes);
+        postings(query, segment, dominated).addNodes(t, below);
+        for (int n = passed.nextSetBit(0); n >= 0; n = passed.nextSetBit(n + 1)) {
+          // a node it dominates is numbered after it, and before the end of its span
+          int next = below.nextSetBit(n + 1);
+          if (next < 0 || next >= segment.spanEnd(t, n)) {
+            passed.clear(n);
+          }
+        }
+      }
+      roots.or(passed);
+    }
+    return roots;
+  }
+
+}
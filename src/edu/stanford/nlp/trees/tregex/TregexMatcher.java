@@ -51,6 +51,8 @@ public abstract class TregexMatcher {
   // these things are used by "find"
   Iterator<Tree> findIterator;
   Tree findCurrent;
+  /** The nodes find() tries, in order; null for all the nodes of the tree */
+  List<Tree> findNodes;
 
   final HeadFinder headFinder;
 
@@ -128,7 +130,7 @@ public abstract class TregexMatcher {
    */
   public boolean find() {
     if (findIterator == null) {
-      findIterator = root.iterator();
+      findIterator = (findNodes == null) ? root.iterator() : findNodes.iterator();
     }
     if (findCurrent != null && matches()) {
       return true;
@@ -424,6 +424,22 @@ public abstract class TregexPattern implements Serializable {
     return matcher(t, t, null, ArrayMap.<String, Tree>newArrayMap(), new VariableStrings(), headFinder);
   }
 
+  /**
+   * Get a {@link TregexMatcher} for this pattern on a tree of a {@link TreeIndex}.
+   * Its {@link TregexMatcher#find()} only tries the nodes the index can't
+   * rule out as the root of a match, so it finds the same matches faster.
+   *
+   * @param index the index holding the tree
+   * @param treeId the tree to match on, usually one of {@link TreeIndex#candidateTrees}
+   * @return a TregexMatcher
+   */
+  public TregexMatcher matcher(TreeIndex index, int treeId) {
+    Tree t = index.getTree(treeId);
+    TregexMatcher matcher = matcher(t);
+    matcher.findNodes = index.candidateRoots(this, treeId, t);
+    return matcher;
+  }
+
   /**
    * Creates a pattern from the given string using the default HeadFinder and
    * BasicCategoryFunction.  If you want to use a different HeadFinder or
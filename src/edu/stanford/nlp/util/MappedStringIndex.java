@@ -0,0 +1,351 @@
+package edu.stanford.nlp.util;
+
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only {@link Index} of Strings which lives in a flat binary
+ * region, typically a memory mapped file, instead of on the heap.
+ * Nothing is deserialized up front: {@link #indexOf} probes an open
+ * addressing hash table stored in the region and compares the stored
+ * UTF-8 bytes directly, and {@link #get} decodes a String only when
+ * asked.  Several processes mapping the same file share its pages
+ * through the OS page cache.
+ * <br>
+ * The layout written by {@link #write} is, in big endian order:
+ * the number of entries <i>n</i>, the hash table size <i>t</i> (a power
+ * of two), <i>n</i> String hash codes, <i>t</i> table slots holding entry
+ * number + 1 (0 for an empty slot), <i>n</i> + 1 offsets into the
+ * character data, and then the UTF-8 character data itself.
+ * <br>
+ * Since the index cannot change, the add methods throw an
+ * UnsupportedOperationException.  Wrap it in a {@link DeltaIndex} if
+ * new entries are needed.
+ *
+ * @see HashIndex
+ */
+public class MappedStringIndex extends AbstractCollection<String> implements Index<String> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int size;
+  private final int mask;
+  private final IntBuffer hashes;
+  private final IntBuffer table;
+  private final IntBuffer offsets;
+  private final ByteBuffer chars;
+
+  /**
+   * Reads an index from a buffer in the format written by {@link #write}.
+   * The buffer is not copied, so it must not change while the index is in use.
+   *
+   * @param buffer A buffer positioned at the start of the index
+   */
+  public MappedStringIndex(ByteBuffer buffer) {
+    ByteBuffer header = buffer.duplicate();
+    size = header.getInt();
+    int tableSize = header.getInt();
+    mask = tableSize - 1;
+    hashes = slice(header, size).asIntBuffer();
+    table = slice(header, tableSize).asIntBuffer();
+    offsets = slice(header, size + 1).asIntBuffer();
+    int numBytes = offsets.get(size);
+    ByteBuffer data = header.slice();
+    data.limit(numBytes);
+    chars = data;
+  }
+
+  /** Returns the next {@code numInts} ints of the buffer as a separate buffer, and skips past them */
+  private static ByteBuffer slice(ByteBuffer buffer, int numInts) {
+    ByteBuffer slice = buffer.slice();
+    slice.limit(numInts * 4);
+    buffer.position(buffer.position() + numInts * 4);
+    return slice;
+  }
+
+  /**
+   * Maps the given part of a file and reads an index from it.
+   *
+   * @param channel The file to map
+   * @param position Where the index starts in the file
+   * @param length The number of bytes written by {@link #write}
+   */
+  public static MappedStringIndex map(FileChannel channel, long position, long length) throws IOException {
+    return new MappedStringIndex(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+  }
+
+  /** Spreads the bits of a String hash code, as HashMap does */
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Writes the entries of the given index, in index order, in the format
+   * read by {@link #MappedStringIndex(ByteBuffer)}.
+   *
+   * @return The number of bytes written
+   */
+  public static long write(Index<String> index, DataOutputStream out) throws IOException {
+    int size = index.size();
+    int tableSize = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+    int mask = tableSize - 1;
+    int[] table = new int[tableSize];
+    byte[][] encoded = new byte[size][];
+    for (int i = 0; i < size; ++i) {
+      String s = index.get(i);
+      encoded[i] = s.getBytes(StandardCharsets.UTF_8);
+      int slot = spread(s.hashCode()) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = i + 1;
+    }
+
+    out.writeInt(size);
+    out.writeInt(tableSize);
+    for (int i = 0; i < size; ++i) {
+      out.writeInt(index.get(i).hashCode());
+    }
+    for (int slot : table) {
+      out.writeInt(slot);
+    }
+    int offset = 0;
+    out.writeInt(offset);
+    for (byte[] bytes : encoded) {
+      offset += bytes.length;
+      out.writeInt(offset);
+    }
+    for (byte[] bytes : encoded) {
+      out.write(bytes);
+    }
+    // DataOutputStream.size() overflows for large files, so count the bytes ourselves
+    return 4L * (2 + size + tableSize + size + 1) + offset;
+  }
+
+  /** Java serialization writes a HashIndex with the same entries, since the buffers cannot be serialized */
+  private Object writeReplace() {
+    return new HashIndex<String>(objectsList());
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + size + ")");
+    }
+    int start = offsets.get(i);
+    byte[] bytes = new byte[offsets.get(i + 1) - start];
+    ByteBuffer data = chars.duplicate();
+    data.position(start);
+    data.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int indexOf(String o) {
+    if (o == null) {
+      return -1;
+    }
+    int hash = o.hashCode();
+    int slot = spread(hash) & mask;
+    while (true) {
+      int entry = table.get(slot) - 1;
+      if (entry < 0) {
+        return -1;
+      }
+      if (hashes.get(entry) == hash && matches(entry, o, "")) {
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Returns the index of the concatenation of two Strings, without
+   * concatenating them.
+   *
+   * @param prefix The start of the String to look up
+   * @param suffix The rest of the String to look up
+   * @param hash The hash code of prefix + suffix, which the caller can
+   *   compute from the hash codes of the parts
+   * @return The index of prefix + suffix, or -1 if it is not in the index
+   */
+  public int indexOf(String prefix, String suffix, int hash) {
+    int slot = spread(hash) & mask;
+    while (true) {
+      int entry = table.get(slot) - 1;
+      if (entry < 0) {
+        return -1;
+      }
+      if (hashes.get(entry) == hash && matches(entry, prefix, suffix)) {
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Compares the stored bytes of an entry to prefix + suffix, without
+   * decoding the entry unless it contains non-ASCII characters.
+   */
+  private boolean matches(int entry, String prefix, String suffix) {
+    int start = offsets.get(entry);
+    int end = offsets.get(entry + 1);
+    int prefixLength = prefix.length();
+    int length = prefixLength + suffix.length();
+    if (end - start < length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      byte b = chars.get(start + i);
+      if (b < 0) {
+        String name = get(entry);
+        return name.length() == length && name.startsWith(prefix) && name.endsWith(suffix);
+      }
+      char c = (i < prefixLength) ? prefix.charAt(i) : suffix.charAt(i - prefixLength);
+      if (b != c) {
+        return false;
+      }
+    }
+    return end - start == length;
+  }
+
+  @Override
+  public int addToIndex(String o) {
+    int index = indexOf(o);
+    if (index < 0) {
+      throw new UnsupportedOperationException("Cannot add to a MappedStringIndex");
+    }
+    return index;
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    if (add) {
+      return addToIndex(o);
+    } else {
+      return indexOf(o);
+    }
+  }
+
+  @Override
+  public List<String> objectsList() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return MappedStringIndex.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> objects(int[] indices) {
+    List<String> result = new ArrayList<String>(indices.length);
+    for (int index : indices) {
+      result.add(get(index));
+    }
+    return result;
+  }
+
+  /** A MappedStringIndex is always locked */
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  @Override
+  public void lock() {
+    // already locked
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("Cannot unlock a MappedStringIndex");
+  }
+
+  @Override
+  public void saveToWriter(Writer out) throws IOException {
+    for (int i = 0; i < size; ++i) {
+      out.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    try (Writer bw = new BufferedWriter(new FileWriter(file))) {
+      saveToWriter(bw);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return (o instanceof String) && indexOf((String) o) >= 0;
+  }
+
+  @Override
+  public boolean add(String e) {
+    throw new UnsupportedOperationException("Cannot add to a MappedStringIndex");
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    throw new UnsupportedOperationException("Cannot add to a MappedStringIndex");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("Cannot clear a MappedStringIndex");
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public String next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        return get(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,217 @@
+package edu.stanford.nlp.util;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A process-wide cache of loaded models, so that several annotators,
+ * pipelines or parsers which need the same model share one copy of it.
+ * For example, the pos annotator and the parser's tagger both use the
+ * same MaxentTagger, and English and Spanish pipelines in one JVM load
+ * each of their common models only once.
+ * <br>
+ * Models are keyed by their path and a configuration string, which
+ * should capture any options which change the model once it is loaded
+ * (for example, the properties passed to a CRFClassifier).  Each call to
+ * {@link #acquire} adds a reference to the model on behalf of an owner
+ * object, usually the annotator or classifier using the model.
+ * References are dropped either by calling {@link #release}, or
+ * automatically once the owner has been garbage collected, since the
+ * registry only keeps weak references to owners.
+ * <br>
+ * The registry itself only holds models through soft references; it is
+ * the owners which keep a model in memory, by holding on to it.  A model
+ * with no references left is idle.  Idle models stay in the registry,
+ * so that a pipeline built again later does not need to load them again,
+ * until {@link #evictIdle()} is called or the garbage collector needs
+ * their memory, in which case the next call to acquire loads them again.
+ * {@link #unload} removes a model whether or not it is in use; existing
+ * users keep their copy, but the next call to acquire will load a new one.
+ * <br>
+ * Models which are shared this way are used from several threads at
+ * once, and must not be modified by their users.
+ *
+ * @see edu.stanford.nlp.pipeline.AnnotatorPool
+ */
+public class ModelRegistry {
+
+  private ModelRegistry() {} // static methods
+
+  private static final Map<Pair<String, String>, Entry> models = Generics.newHashMap();
+
+  /** One model, which may still be loading, and the owners holding references to it */
+  private static class Entry {
+    private volatile SoftReference<Object> model; // = null until loaded
+    private final List<WeakReference<Object>> owners = new ArrayList<>();
+
+    /** The number of references whose owners are still alive.  Must be called with the registry locked. */
+    private int references() {
+      owners.removeIf(owner -> owner.get() == null);
+      return owners.size();
+    }
+
+    /** Removes one reference held by the given owner.  Must be called with the registry locked. */
+    private boolean removeOwner(Object owner) {
+      for (Iterator<WeakReference<Object>> it = owners.iterator(); it.hasNext(); ) {
+        if (it.next().get() == owner) {
+          it.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the model with the given path and configuration, loading it
+   * with the given loader if it is not already loaded, and adds a
+   * reference to it on behalf of the owner.  If several threads ask for
+   * the same model at once, it is only loaded once and the other
+   * threads wait for it.  If the loader throws an exception, nothing is
+   * added to the registry and the exception is passed on.
+   *
+   * @param owner The object which will use the model
+   * @param path Where the model is loaded from
+   * @param configuration Any options which change the loaded model, or "" if there are none
+   * @param loader Loads the model if it is not already in the registry
+   * @return The shared model
+   */
+  public static <T> T acquire(Object owner, String path, String configuration, Supplier<T> loader) {
+    if (owner == null) {
+      throw new IllegalArgumentException("Models must be acquired on behalf of an owner");
+    }
+    Pair<String, String> key = new Pair<>(path, configuration);
+    Entry entry;
+    synchronized (models) {
+      entry = models.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        models.put(key, entry);
+      }
+      entry.owners.add(new WeakReference<>(owner));
+    }
+    synchronized (entry) {
+      Object model = (entry.model == null) ? null : entry.model.get();
+      if (model == null) {
+        try {
+          model = loader.get();
+          entry.model = new SoftReference<>(model);
+        } catch (RuntimeException | Error e) {
+          synchronized (models) {
+            entry.removeOwner(owner);
+            if (entry.references() == 0 && models.get(key) == entry) {
+              models.remove(key);
+            }
+          }
+          throw e;
+        }
+      }
+      return ErasureUtils.uncheckedCast(model);
+    }
+  }
+
+  /**
+   * Removes one reference to a model held by the given owner.
+   *
+   * @return true if the owner held a reference to the model
+   */
+  public static boolean release(Object owner, String path, String configuration) {
+    synchronized (models) {
+      Entry entry = models.get(new Pair<>(path, configuration));
+      return entry != null && entry.removeOwner(owner);
+    }
+  }
+
+  /**
+   * Removes every reference held by the given owner, for example when an
+   * annotator is dropped from an {@link edu.stanford.nlp.pipeline.AnnotatorPool}.
+   *
+   * @return The number of references removed
+   */
+  public static int releaseAll(Object owner) {
+    int released = 0;
+    synchronized (models) {
+      for (Entry entry : models.values()) {
+        while (entry.removeOwner(owner)) {
+          ++released;
+        }
+      }
+    }
+    return released;
+  }
+
+  /**
+   * The number of references to a model whose owners are still in use,
+   * or 0 if the model is not in the registry.
+   */
+  public static int references(String path, String configuration) {
+    synchronized (models) {
+      Entry entry = models.get(new Pair<>(path, configuration));
+      return (entry == null) ? 0 : entry.references();
+    }
+  }
+
+  /**
+   * Returns true if the registry holds the given model, whether or not it is in use,
+   * and the garbage collector has not reclaimed it.
+   */
+  public static boolean isLoaded(String path, String configuration) {
+    synchronized (models) {
+      Entry entry = models.get(new Pair<>(path, configuration));
+      SoftReference<Object> model = (entry == null) ? null : entry.model;
+      return model != null && model.get() != null;
+    }
+  }
+
+  /**
+   * Removes a model from the registry, even if it is still referenced.
+   * Its current users are unaffected, but the next {@link #acquire}
+   * will load it again.
+   *
+   * @return true if the model was in the registry
+   */
+  public static boolean unload(String path, String configuration) {
+    synchronized (models) {
+      return models.remove(new Pair<>(path, configuration)) != null;
+    }
+  }
+
+  /**
+   * Removes all of the models which are no longer referenced, so that
+   * their memory can be reclaimed.
+   *
+   * @return The number of models removed
+   */
+  public static int evictIdle() {
+    int evicted = 0;
+    synchronized (models) {
+      for (Iterator<Entry> it = models.values().iterator(); it.hasNext(); ) {
+        if (it.next().references() == 0) {
+          it.remove();
+          ++evicted;
+        }
+      }
+    }
+    return evicted;
+  }
+
+  /** Removes every model from the registry */
+  public static void clear() {
+    synchronized (models) {
+      models.clear();
+    }
+  }
+
+  /** The number of models in the registry, including idle ones */
+  public static int size() {
+    synchronized (models) {
+      return models.size();
+    }
+  }
+
+}
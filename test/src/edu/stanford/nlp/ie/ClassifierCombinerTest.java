@@ -2,6 +2,7 @@ package edu.stanford.nlp.ie;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
@@ -129,4 +130,21 @@ public class ClassifierCombinerTest extends TestCase {
     assertEquals(result, input1);
   }
 
+  /** Properties only the combiner reads do not stop base classifiers from being shared */
+  public void testLoadingConfiguration() {
+    Properties props1 = new Properties();
+    props1.setProperty("encoding", "utf-8");
+    props1.setProperty("loadClassifier1", "a.ser.gz");
+    props1.setProperty("ner.combinationMode", "HIGH_RECALL");
+    props1.setProperty("sutime.rules", "a.txt");
+    Properties props2 = new Properties();
+    props2.setProperty("encoding", "utf-8");
+    props2.setProperty("sutime.binders", "0");
+    assertEquals(ClassifierCombiner.loadingConfiguration(props1), ClassifierCombiner.loadingConfiguration(props2));
+
+    props2.setProperty("maxAdditionalKnownLCWords", "0");
+    assertFalse(ClassifierCombiner.loadingConfiguration(props1).equals(ClassifierCombiner.loadingConfiguration(props2)));
+    assertEquals("", ClassifierCombiner.loadingConfiguration(null));
+  }
+
 }
@@ -0,0 +1,166 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.sequences.ExactBestSequenceFinder;
+import edu.stanford.nlp.sequences.KBestSequenceFinder;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.stats.Counters;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Checks the calibrated clique tree against message passing done the
+ * straightforward way, with a FactorTable for every message, and decoding
+ * it against trying every sequence.
+ */
+public class CRFCliqueTreeTest extends TestCase {
+
+  private static final int NUM_CLASSES = 3;
+  private static final int WINDOW = 3;
+  private static final int LENGTH = 6;
+
+  private final Index<String> classIndex = new HashIndex<>(Arrays.asList("O", "A", "B"));
+  private final List<Index<CRFLabel>> labelIndices = new ArrayList<>();
+  /** potentials[position][clique size - 1][label index] */
+  private double[][][] potentials;
+  private int[][][] data;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(1234);
+    for (int size = 1; size <= WINDOW; size++) {
+      Index<CRFLabel> labelIndex = new HashIndex<>();
+      int numLabels = (int) Math.pow(NUM_CLASSES, size);
+      for (int i = 0; i < numLabels; i++) {
+        // leave a few labelings out, as happens when they are never seen in training
+        if (size > 1 && i % 7 == 3) {
+          continue;
+        }
+        int[] label = new int[size];
+        for (int j = size - 1, rest = i; j >= 0; j--, rest /= NUM_CLASSES) {
+          label[j] = rest % NUM_CLASSES;
+        }
+        labelIndex.add(new CRFLabel(label));
+      }
+      labelIndices.add(labelIndex);
+    }
+    potentials = new double[LENGTH][WINDOW][];
+    data = new int[LENGTH][WINDOW][0];
+    for (int i = 0; i < LENGTH; i++) {
+      for (int j = 0; j < WINDOW; j++) {
+        potentials[i][j] = new double[labelIndices.get(j).size()];
+        for (int k = 0; k < potentials[i][j].length; k++) {
+          potentials[i][j][k] = random.nextGaussian();
+        }
+      }
+    }
+  }
+
+  private CRFCliqueTree<String> cliqueTree() {
+    CliquePotentialFunction potentialFunction = (cliqueSize, labelIndex, cliqueFeatures, featureVal, posInSent) ->
+        potentials[posInSent][cliqueSize - 1][labelIndex];
+    return CRFCliqueTree.getCalibratedCliqueTree(data, labelIndices, NUM_CLASSES, classIndex, "O", potentialFunction, null);
+  }
+
+  /** Calibrates the clique tree as it used to be, with new tables for everything */
+  private FactorTable[] referenceFactorTables() {
+    FactorTable[] factorTables = new FactorTable[LENGTH];
+    FactorTable[] messages = new FactorTable[LENGTH - 1];
+    for (int i = 0; i < LENGTH; i++) {
+      FactorTable factorTable = null;
+      for (int j = 0; j < WINDOW; j++) {
+        FactorTable ft = new FactorTable(NUM_CLASSES, j + 1);
+        for (int k = 0; k < labelIndices.get(j).size(); k++) {
+          ft.setValue(labelIndices.get(j).get(k).getLabel(), potentials[i][j][k]);
+        }
+        if (j > 0) {
+          ft.multiplyInEnd(factorTable);
+        }
+        factorTable = ft;
+      }
+      factorTables[i] = factorTable;
+      if (i > 0) {
+        messages[i - 1] = factorTables[i - 1].sumOutFront();
+        factorTables[i].multiplyInFront(messages[i - 1]);
+      }
+    }
+    for (int i = LENGTH - 2; i >= 0; i--) {
+      FactorTable summedOut = factorTables[i + 1].sumOutEnd();
+      summedOut.divideBy(messages[i]);
+      factorTables[i].multiplyInEnd(summedOut);
+    }
+    return factorTables;
+  }
+
+  public void testCalibration() {
+    FactorTable[] expected = referenceFactorTables();
+    // twice, so that the second tree is built in a reused workspace
+    for (int repeat = 0; repeat < 2; repeat++) {
+      FactorTable[] actual = cliqueTree().getFactorTables();
+      assertEquals(expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i].size(), actual[i].size());
+        for (int j = 0; j < expected[i].size(); j++) {
+          assertEquals(expected[i].getValue(j), actual[i].getValue(j), 0.0);
+        }
+      }
+    }
+  }
+
+  public void testMarginals() {
+    FactorTable[] expected = referenceFactorTables();
+    CRFCliqueTree<String> cliqueTree = cliqueTree();
+    for (int i = 0; i < LENGTH; i++) {
+      for (int label = 0; label < NUM_CLASSES; label++) {
+        double u = expected[i].unnormalizedLogProbEnd(new int[] { label });
+        assertEquals(u - expected[0].totalMass(), cliqueTree.logProb(i, label), 1e-12);
+      }
+    }
+  }
+
+  private static double score(TestSequenceModel model, int[] tags) {
+    double score = 0.0;
+    for (int pos = model.leftWindow(); pos < tags.length; pos++) {
+      score += model.scoreOf(tags, pos);
+    }
+    // after a pair of labels which cannot happen, every label has probability 0 / 0
+    return Double.isNaN(score) ? Double.NEGATIVE_INFINITY : score;
+  }
+
+  /** The scores of all the sequences, best first */
+  private static List<double[]> allSequences(TestSequenceModel model) {
+    List<double[]> scores = new ArrayList<>();
+    int numSequences = (int) Math.pow(NUM_CLASSES, LENGTH);
+    int[] tags = new int[model.leftWindow() + LENGTH];
+    for (int s = 0; s < numSequences; s++) {
+      for (int pos = 0, rest = s; pos < LENGTH; pos++, rest /= NUM_CLASSES) {
+        tags[model.leftWindow() + pos] = rest % NUM_CLASSES;
+      }
+      scores.add(new double[] { score(model, tags), s });
+    }
+    scores.sort((x, y) -> Double.compare(y[0], x[0]));
+    return scores;
+  }
+
+  public void testBestSequence() {
+    TestSequenceModel model = new TestSequenceModel(cliqueTree());
+    List<double[]> all = allSequences(model);
+    int[] best = new ExactBestSequenceFinder().bestSequence(model);
+    assertEquals(all.get(0)[0], score(model, best), 1e-9);
+
+    Counter<int[]> kBest = new KBestSequenceFinder().kBestSequences(model, 5);
+    List<int[]> sequences = Counters.toSortedList(kBest);
+    assertEquals(5, sequences.size());
+    for (int k = 0; k < 5; k++) {
+      assertEquals(all.get(k)[0], kBest.getCount(sequences.get(k)), 1e-9);
+      assertEquals(all.get(k)[0], score(model, sequences.get(k)), 1e-9);
+    }
+  }
+
+}
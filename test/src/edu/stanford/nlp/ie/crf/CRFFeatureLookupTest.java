@@ -0,0 +1,99 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Triple;
+
+/**
+ * Checks that looking up test time features from their parts gives the
+ * same features, and so the same labels, as looking up their full names.
+ */
+public class CRFFeatureLookupTest extends TestCase {
+
+  private static final String TRAIN =
+      "John\tPERSON\nSmith\tPERSON\nworks\tO\nfor\tO\nAcme\tORGANIZATION\nCorp.\tORGANIZATION\nin\tO\nBoston\tLOCATION\n.\tO\n\n" +
+      "Mary\tPERSON\nvisited\tO\nParis\tLOCATION\nlast\tO\nyear\tO\n.\tO\n\n" +
+      "The\tO\nBoston\tORGANIZATION\nGlobe\tORGANIZATION\nhired\tO\nJane\tPERSON\nDoe\tPERSON\n.\tO\n\n" +
+      "Shares\tO\nof\tO\nAcme\tORGANIZATION\nfell\tO\n12\tO\npercent\tO\nin\tO\nLondon\tLOCATION\n.\tO\n";
+
+  private static final String TEST =
+      "John Doe said that Acme Corp. will open an office in Paris next year. " +
+      "Shares of the Boston Globe rose 3 percent in London on Tuesday.";
+
+  private static CRFClassifier<CoreLabel> train(int maxLeft) throws IOException {
+    File trainFile = File.createTempFile("crf", ".tsv");
+    trainFile.deleteOnExit();
+    IOUtils.writeStringToFile(TRAIN, trainFile.getPath(), "utf-8");
+
+    Properties props = new Properties();
+    props.setProperty("trainFile", trainFile.getPath());
+    props.setProperty("map", "word=0,answer=1");
+    props.setProperty("useClassFeature", "true");
+    props.setProperty("useWord", "true");
+    props.setProperty("useNGrams", "true");
+    props.setProperty("maxNGramLeng", "4");
+    props.setProperty("usePrev", "true");
+    props.setProperty("useNext", "true");
+    props.setProperty("useSequences", "true");
+    props.setProperty("usePrevSequences", "true");
+    props.setProperty("useTypeSeqs", "true");
+    props.setProperty("useTypeSeqs2", "true");
+    props.setProperty("wordShape", "chris2useLC");
+    props.setProperty("maxLeft", Integer.toString(maxLeft));
+    props.setProperty("maxIterations", "20");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train();
+    return crf;
+  }
+
+  private static void checkSameFeatures(int maxLeft) throws IOException {
+    CRFClassifier<CoreLabel> crf = train(maxLeft);
+    for (List<CoreLabel> document : crf.makeObjectBankFromString(TEST, crf.plainTextReaderAndWriter())) {
+      crf.flags.stringFeatureLookup = true;
+      Triple<int[][][], int[], double[][][]> expected = crf.documentToDataAndLabels(document);
+      crf.flags.stringFeatureLookup = false;
+      Triple<int[][][], int[], double[][][]> actual = crf.documentToDataAndLabels(document);
+      assertEquals(expected.first().length, actual.first().length);
+      assertTrue(expected.first()[0][0].length > 0);
+      for (int j = 0; j < expected.first().length; ++j) {
+        for (int k = 0; k < expected.first()[j].length; ++k) {
+          int[] features = expected.first()[j][k].clone();
+          Arrays.sort(features);
+          assertTrue(Arrays.equals(features, actual.first()[j][k]));
+        }
+      }
+      assertTrue(Arrays.equals(expected.second(), actual.second()));
+
+      crf.flags.stringFeatureLookup = true;
+      List<CoreLabel> expectedLabels = crf.classify(document);
+      String[] expectedAnswers = new String[expectedLabels.size()];
+      for (int i = 0; i < expectedAnswers.length; ++i) {
+        expectedAnswers[i] = expectedLabels.get(i).get(CoreAnnotations.AnswerAnnotation.class);
+      }
+      crf.flags.stringFeatureLookup = false;
+      List<CoreLabel> labels = crf.classify(document);
+      for (int i = 0; i < expectedAnswers.length; ++i) {
+        assertEquals(expectedAnswers[i], labels.get(i).get(CoreAnnotations.AnswerAnnotation.class));
+      }
+    }
+  }
+
+  public void testSameFeatures() throws IOException {
+    checkSameFeatures(1);
+  }
+
+  /** Larger cliques, including the two cliques which have two names */
+  public void testSameFeaturesLargerCliques() throws IOException {
+    checkSameFeatures(2);
+  }
+
+}
@@ -0,0 +1,141 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.MappedStringIndex;
+
+/**
+ * Checks that a classifier written with -serializeToMapped and loaded back
+ * gives the same labels and scores as the serialized classifier it came from.
+ */
+public class CRFMappedClassifierTest extends TestCase {
+
+  private static final String TRAIN =
+      "John\tPERSON\nSmith\tPERSON\nworks\tO\nfor\tO\nAcme\tORGANIZATION\nCorp.\tORGANIZATION\nin\tO\nBoston\tLOCATION\n.\tO\n\n" +
+      "Mary\tPERSON\nvisited\tO\nParis\tLOCATION\nlast\tO\nyear\tO\n.\tO\n\n" +
+      "The\tO\nBoston\tORGANIZATION\nGlobe\tORGANIZATION\nhired\tO\nJane\tPERSON\nDoe\tPERSON\n.\tO\n";
+
+  private static final String TEST =
+      "John Doe said that Acme Corp. will open an office in Paris next year. " +
+      "Shares of the Boston Globe rose 3 percent in London on Tuesday.";
+
+  private static File tempFile(String suffix) throws IOException {
+    File file = File.createTempFile("crf", suffix);
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static CRFClassifier<CoreLabel> train() throws IOException {
+    File trainFile = tempFile(".tsv");
+    IOUtils.writeStringToFile(TRAIN, trainFile.getPath(), "utf-8");
+
+    Properties props = new Properties();
+    props.setProperty("trainFile", trainFile.getPath());
+    props.setProperty("map", "word=0,answer=1");
+    props.setProperty("useClassFeature", "true");
+    props.setProperty("useWord", "true");
+    props.setProperty("useNGrams", "true");
+    props.setProperty("maxNGramLeng", "4");
+    props.setProperty("usePrev", "true");
+    props.setProperty("useNext", "true");
+    props.setProperty("useSequences", "true");
+    props.setProperty("usePrevSequences", "true");
+    props.setProperty("wordShape", "chris2useLC");
+    props.setProperty("maxLeft", "2");
+    props.setProperty("maxIterations", "20");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train();
+    return crf;
+  }
+
+  public void testRoundTrip() throws Exception {
+    File serialized = tempFile(".ser.gz");
+    train().serializeClassifier(serialized.getPath());
+    CRFClassifier<CoreLabel> expected = CRFClassifier.getClassifier(serialized);
+
+    File mapped = tempFile(".mapped");
+    expected.serializeMappedClassifier(mapped.getPath());
+    assertTrue(CRFClassifier.isMappedClassifier(mapped));
+    assertFalse(CRFClassifier.isMappedClassifier(serialized));
+    CRFClassifier<CoreLabel> actual = CRFClassifier.getClassifier(mapped);
+    assertTrue(actual.featureIndex instanceof MappedStringIndex);
+    assertNull(actual.weights);
+    assertEquals(expected.getNumWeights(), actual.getNumWeights());
+
+    for (List<CoreLabel> document : expected.makeObjectBankFromString(TEST, expected.plainTextReaderAndWriter())) {
+      CRFCliqueTree<String> expectedTree = expected.getCliqueTree(document);
+      CRFCliqueTree<String> actualTree = actual.getCliqueTree(document);
+      assertEquals(expectedTree.length(), actualTree.length());
+      assertEquals(expectedTree.totalMass(), actualTree.totalMass(), 0.0);
+      for (int i = 0; i < expectedTree.length(); ++i) {
+        for (int label = 0; label < expectedTree.getNumClasses(); ++label) {
+          assertEquals(expectedTree.logProb(i, label), actualTree.logProb(i, label), 0.0);
+        }
+      }
+
+      List<CoreLabel> expectedLabels = expected.classify(document);
+      String[] expectedAnswers = new String[expectedLabels.size()];
+      for (int i = 0; i < expectedAnswers.length; ++i) {
+        expectedAnswers[i] = expectedLabels.get(i).get(CoreAnnotations.AnswerAnnotation.class);
+      }
+      List<CoreLabel> labels = actual.classify(document);
+      for (int i = 0; i < expectedAnswers.length; ++i) {
+        assertEquals(expectedAnswers[i], labels.get(i).get(CoreAnnotations.AnswerAnnotation.class));
+      }
+    }
+  }
+
+  /** Writing a mapped classifier back out copies its weights onto the heap first */
+  public void testReserialize() throws Exception {
+    File mapped = tempFile(".mapped");
+    CRFClassifier<CoreLabel> crf = train();
+    crf.serializeMappedClassifier(mapped.getPath());
+    CRFClassifier<CoreLabel> loaded = CRFClassifier.getClassifier(mapped);
+
+    File serialized = tempFile(".ser.gz");
+    loaded.serializeClassifier(serialized.getPath());
+    assertNotNull(loaded.weights);
+    CRFClassifier<CoreLabel> reloaded = CRFClassifier.getClassifier(serialized);
+    assertEquals(crf.weights.length, reloaded.weights.length);
+    for (int i = 0; i < crf.weights.length; ++i) {
+      assertEquals(crf.weights[i].length, reloaded.weights[i].length);
+      for (int j = 0; j < crf.weights[i].length; ++j) {
+        assertEquals(crf.weights[i][j], reloaded.weights[i][j], 0.0);
+      }
+    }
+  }
+
+  /** A mapped classifier read from a stream, as from the classpath, is recognized by its header */
+  public void testStream() throws Exception {
+    File mapped = tempFile(".mapped");
+    CRFClassifier<CoreLabel> crf = train();
+    crf.serializeMappedClassifier(mapped.getPath());
+    CRFClassifier<CoreLabel> loaded;
+    try (InputStream in = new BufferedInputStream(new FileInputStream(mapped))) {
+      loaded = CRFClassifier.getClassifier(in);
+    }
+    assertTrue(loaded.featureIndex instanceof MappedStringIndex);
+    assertEquals(crf.getNumWeights(), loaded.getNumWeights());
+    assertEquals(crf.classifyToString(TEST), loaded.classifyToString(TEST));
+
+    File serialized = tempFile(".ser");
+    crf.serializeClassifier(serialized.getPath());
+    try (InputStream in = new FileInputStream(serialized)) {
+      loaded = CRFClassifier.getClassifier(in);
+    }
+    assertNotNull(loaded.weights);
+    assertEquals(crf.classifyToString(TEST), loaded.classifyToString(TEST));
+  }
+
+}
@@ -0,0 +1,118 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Checks that a CoreMapExpressionExtractor with a prefilter extracts the
+ * same expressions as one without, while skipping the sentences none of
+ * its rules can match.
+ */
+public class ExtractRulePrefilterTest extends TestCase {
+
+  private static final String RULES =
+      "ENV.defaults[\"ruleType\"] = \"tokens\"\n" +
+      "{ pattern: ( [{word:/[0-9]+/}] /years?|yrs?/ ), result: \"AGE\" }\n" +
+      "{ pattern: ( /the/ /next|last/ [{tag:NN}] ), result: \"RELATIVE\" }\n" +
+      "{ pattern: ( (/a/ []) & ([] /week/) ), result: \"WEEK\" }\n" +
+      "{ pattern: ( (?m){1,2} /New York|Boston/ ), result: \"CITY\" }\n" +
+      "{ ruleType: \"composite\", pattern: ( /the/ [{ner:AGE}] ), result: \"THE_AGE\" }\n" +
+      "{ ruleType: \"text\", pattern: /\\d\\d:\\d\\d/, result: \"CLOCK\" }\n";
+
+  private static final String[] SENTENCES = {
+    "he is the 42 years old",
+    "the next week is a week away",
+    "nothing to see here",
+    "the last Smith",
+    "the next Monday",
+    "we met in New York",
+    "not even new york",
+    "at 12:30 today",
+    "a week",
+    "",
+  };
+
+  private static CoreMap sentence(String text) {
+    List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+    int offset = 0;
+    for (String word : text.split(" ")) {
+      if (word.isEmpty()) continue;
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      token.setValue(word);
+      token.setOriginalText(word);
+      token.setTag(word.equals("Monday") ? "NN" : "XX");
+      token.setBeginPosition(offset);
+      token.setEndPosition(offset + word.length());
+      token.set(CoreAnnotations.TokenBeginAnnotation.class, tokens.size());
+      token.set(CoreAnnotations.TokenEndAnnotation.class, tokens.size() + 1);
+      offset += word.length() + 1;
+      tokens.add(token);
+    }
+    CoreMap sentence = new Annotation(text);
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    sentence.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, 0);
+    sentence.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, text.length());
+    sentence.set(CoreAnnotations.TokenBeginAnnotation.class, 0);
+    return sentence;
+  }
+
+  private static CoreMapExpressionExtractor<MatchedExpression> extractor(String rules, boolean prefilter) throws Exception {
+    Env env = TokenSequencePattern.getNewEnv();
+    env.setDefaultResultAnnotationKey(CoreAnnotations.NamedEntityTagAnnotation.class);
+    env.setDefaultNestedResultsAnnotationKey(CoreAnnotations.NumerizedTokensAnnotation.class);
+    if (prefilter) {
+      env.bind("prefilter", true);
+    }
+    return CoreMapExpressionExtractor.createExtractorFromString(env, rules);
+  }
+
+  private static List<String> extract(CoreMapExpressionExtractor<MatchedExpression> extractor) {
+    List<String> extracted = new ArrayList<String>();
+    for (String text : SENTENCES) {
+      for (MatchedExpression e : extractor.extractExpressions(sentence(text))) {
+        extracted.add(e.getText() + "=" + e.getValue().get());
+      }
+    }
+    return extracted;
+  }
+
+  public void testSameExpressions() throws Exception {
+    List<String> expected = extract(extractor(RULES, false));
+    CoreMapExpressionExtractor<MatchedExpression> prefiltered = extractor(RULES, true);
+    assertEquals(expected, extract(prefiltered));
+    assertTrue(expected.contains("the next Monday=RELATIVE"));
+    assertTrue(expected.contains("New York=CITY"));
+    assertTrue(expected.contains("12:30=CLOCK"));
+    assertTrue(expected.contains("the 42 years=THE_AGE"));
+    ExtractRulePrefilter prefilter = prefiltered.getPrefilter();
+    assertFalse(prefilter.passesAll());
+    assertEquals(SENTENCES.length, prefilter.getNumTested());
+    // nothing to see here, the last Smith, not even new york and the empty sentence
+    assertEquals(4, prefilter.getNumSkipped());
+  }
+
+  public void testBackReferencesPassAll() throws Exception {
+    CoreMapExpressionExtractor<MatchedExpression> prefiltered =
+        extractor(RULES + "{ pattern: ( (/a|the/) /week/ \\1 ), result: \"REF\" }\n", true);
+    assertTrue(prefiltered.getPrefilter().passesAll());
+    extract(prefiltered);
+    assertEquals(0, prefiltered.getPrefilter().getNumSkipped());
+  }
+
+  public void testLiteralStrings() {
+    assertEquals(new HashSet<String>(Arrays.asList("year", "years", "yr", "yrs")),
+        ExtractRulePrefilter.literalStrings("years?|yrs?"));
+    assertEquals(new HashSet<String>(Arrays.asList("a.m.", "am", "pm")),
+        ExtractRulePrefilter.literalStrings("(?:a\\.m\\.|[ap]m)"));
+    assertNull(ExtractRulePrefilter.literalStrings("[0-9]+"));
+    assertNull(ExtractRulePrefilter.literalStrings("a.b"));
+    assertEquals("straße", ExtractRulePrefilter.foldCase("STRAßE"));
+  }
+
+}
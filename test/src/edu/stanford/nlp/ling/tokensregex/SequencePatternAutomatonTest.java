@@ -0,0 +1,139 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Checks that TokenSequencePatterns find the same matches with an
+ * automaton as without.
+ */
+public class SequencePatternAutomatonTest extends TestCase {
+
+  private static final String[] WORDS = { "a", "b", "c", "the", "of", "Smith", "42" };
+
+  private static final String[] PATTERNS = {
+    "/a/ /b/",
+    "/a/ /b/? /c/",
+    "(/a/+) /b/",
+    "/a/*? /b/",
+    "/the/ []{1,3} /of/",
+    "/the/ ([]{2,8}) /of/ [{word:/[A-Z].*/}]",
+    "/a/{1,7}? /c/",
+    "(?$name /a|b/ /c/) | /of/ [{word:/[0-9]+/}]",
+    "^ /a/ /b/",
+    "/c/ $",
+    "[!{word:/a|b/}] /c/",
+    "/b/ (/a/ | /c/ /c/)* /the/",
+    "/a/?",
+    "(/a/ /b/) & ([] /b/)",
+    "/the/ ((/a/ []) & ([] /c|b/))+ /of/",
+    "(?m){1,3} /a b|b c c/ /of/",
+    "/of/ (?m){2,5} /.*a c.*/",
+  };
+
+  private static List<CoreLabel> sentence(Random random) {
+    List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+    int length = random.nextInt(25);
+    for (int i = 0; i < length; i++) {
+      CoreLabel token = new CoreLabel();
+      String word = WORDS[random.nextInt(WORDS.length)];
+      token.setWord(word);
+      token.setValue(word);
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  private static String matches(TokenSequencePattern pattern, List<CoreLabel> tokens, SequenceMatcher.FindType findType) {
+    StringBuilder sb = new StringBuilder();
+    TokenSequenceMatcher matcher = pattern.getMatcher(tokens);
+    matcher.setFindType(findType);
+    while (matcher.find()) {
+      for (int g = 0; g <= matcher.groupCount(); g++) {
+        sb.append(matcher.start(g)).append('-').append(matcher.end(g)).append(' ');
+      }
+      sb.append("; ");
+    }
+    return sb.toString();
+  }
+
+  private static void checkSameMatches(String[] patterns, SequenceMatcher.FindType findType) {
+    Random random = new Random(7);
+    List<List<CoreLabel>> sentences = new ArrayList<List<CoreLabel>>();
+    for (int i = 0; i < 200; i++) {
+      sentences.add(sentence(random));
+    }
+    for (String p : patterns) {
+      TokenSequencePattern interpreted = TokenSequencePattern.compile(p);
+      TokenSequencePattern compiled = TokenSequencePattern.compile(p);
+      assertTrue(p, compiled.setUseAutomaton(true));
+      for (List<CoreLabel> tokens : sentences) {
+        assertEquals(p + " on " + tokens, matches(interpreted, tokens, findType), matches(compiled, tokens, findType));
+      }
+    }
+  }
+
+  public void testSameMatches() {
+    checkSameMatches(PATTERNS, SequenceMatcher.FindType.FIND_NONOVERLAPPING);
+  }
+
+  public void testSameMatchesFindAll() {
+    // without disjunctions of groups, whose unmatched groups FIND_ALL doesn't handle
+    checkSameMatches(Arrays.copyOf(PATTERNS, 7), SequenceMatcher.FindType.FIND_ALL);
+  }
+
+  public void testMultiPatternMatcher() {
+    Random random = new Random(11);
+    List<TokenSequencePattern> interpreted = new ArrayList<TokenSequencePattern>();
+    List<TokenSequencePattern> compiled = new ArrayList<TokenSequencePattern>();
+    for (String p : PATTERNS) {
+      interpreted.add(TokenSequencePattern.compile(p));
+      TokenSequencePattern pattern = TokenSequencePattern.compile(p);
+      pattern.setUseAutomaton(true);
+      compiled.add(pattern);
+    }
+    MultiPatternMatcher<CoreMap> interpretedMatcher = TokenSequencePattern.getMultiPatternMatcher(interpreted);
+    MultiPatternMatcher<CoreMap> compiledMatcher = TokenSequencePattern.getMultiPatternMatcher(compiled);
+    for (int i = 0; i < 100; i++) {
+      List<CoreLabel> tokens = sentence(random);
+      // all the matches, as which overlapping match is kept depends on the order patterns are triggered in
+      List<String> expected = new ArrayList<String>();
+      for (SequenceMatchResult<CoreMap> m : interpretedMatcher.findAllMatches(tokens)) {
+        expected.add(m.pattern().pattern() + " " + m.start() + "-" + m.end());
+      }
+      List<String> actual = new ArrayList<String>();
+      for (SequenceMatchResult<CoreMap> m : compiledMatcher.findAllMatches(tokens)) {
+        actual.add(m.pattern().pattern() + " " + m.start() + "-" + m.end());
+      }
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertEquals(expected, actual);
+    }
+  }
+
+  public void testUnsupportedPatterns() {
+    // back references are matched without the automaton
+    assertFalse(TokenSequencePattern.compile("(/a/) /b/ \\1").setUseAutomaton(true));
+    TokenSequencePattern pattern = TokenSequencePattern.compile("/a/ /b/");
+    assertTrue(pattern.setUseAutomaton(true));
+    assertEquals(2, pattern.getAutomaton().numPredicates());
+    List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+    for (String word : new String[] { "a", "c", "a", "b" }) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      tokens.add(token);
+    }
+    SequencePatternAutomaton<CoreMap> automaton = pattern.getAutomaton();
+    byte[] memo = automaton.newMemo(tokens.size());
+    assertFalse(automaton.canMatchFrom(tokens, 0, tokens.size(), memo));
+    assertFalse(automaton.canMatchFrom(tokens, 1, tokens.size(), memo));
+    assertTrue(automaton.canMatchFrom(tokens, 2, tokens.size(), memo));
+    assertFalse(automaton.canMatchFrom(tokens, 2, 3, memo));
+    assertFalse(pattern.setUseAutomaton(false));
+    assertNull(pattern.getAutomaton());
+  }
+
+}
@@ -0,0 +1,142 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a CoreMapExpressionExtractor sharing the results of its
+ * annotation patterns extracts the same expressions as one which doesn't,
+ * and tests each shared pattern once per token.
+ */
+public class SharedNodePatternsTest extends TestCase {
+
+  private static final String RULES =
+      "ner = { type: \"CLASS\", value: \"edu.stanford.nlp.ling.CoreAnnotations$NamedEntityTagAnnotation\" }\n" +
+      "ENV.defaults[\"ruleType\"] = \"tokens\"\n" +
+      "{ pattern: ( [{word:/[0-9]+/}] /percent/ ), result: \"PERCENT\", action: ( Annotate($0, ner, \"PERCENT\") ) }\n" +
+      "{ pattern: ( /more|less/ /than/ [{word:/[0-9]+/}] ), result: \"COMPARISON\" }\n" +
+      "{ pattern: ( [{word::COUNTED}] [{word:/[0-9]+/}]+ ), result: \"COUNTED\" }\n" +
+      "{ pattern: ( [{word::COUNTED} & {tag:NN}] ), result: \"COUNTED_NN\" }\n" +
+      "{ pattern: ( [!{word:/[0-9]+/}] /than/ ), result: \"THAN\" }\n" +
+      // sees the ner set by the first rule's action in the first stage
+      "{ pattern: ( [{ner:PERCENT}]+ /of/ ), result: \"TAGGED\", stage: 2 }\n" +
+      "{ pattern: ( [{word:/[0-9]+/}] ), result: \"NUMBER\", stage: 2 }\n";
+
+  private static final String TEXT = "more than 42 percent of the 7 of 12 x than in 100 percent of";
+
+  /** Matches some words, counting how many times it is tried */
+  private static class CountingPattern extends NodePattern<String> {
+    int count;
+
+    @Override
+    public boolean match(String word) {
+      count++;
+      return "of".equals(word) || "x".equals(word);
+    }
+  }
+
+  private static CoreMap sentence() {
+    List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+    int offset = 0;
+    for (String word : TEXT.split(" ")) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      token.setValue(word);
+      token.setOriginalText(word);
+      token.setTag(word.equals("x") ? "NN" : "XX");
+      token.setBeginPosition(offset);
+      token.setEndPosition(offset + word.length());
+      offset += word.length() + 1;
+      tokens.add(token);
+    }
+    CoreMap sentence = new Annotation(TEXT);
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    sentence.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, 0);
+    sentence.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, TEXT.length());
+    return sentence;
+  }
+
+  private static List<String> extract(boolean share, CountingPattern counted) throws Exception {
+    Env env = TokenSequencePattern.getNewEnv();
+    env.bind("::COUNTED", counted);
+    if (share) {
+      env.bind("shareNodePatterns", true);
+    }
+    CoreMapExpressionExtractor<MatchedExpression> extractor = CoreMapExpressionExtractor.createExtractorFromString(env, RULES);
+    CoreMap sentence = sentence();
+    List<String> extracted = new ArrayList<String>();
+    for (MatchedExpression e : extractor.extractExpressions(sentence)) {
+      extracted.add(e.getText() + "=" + e.getValue().get());
+    }
+    for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+      extracted.add(token.word() + "/" + token.ner());
+    }
+    return extracted;
+  }
+
+  public void testSameExpressions() throws Exception {
+    CountingPattern unshared = new CountingPattern();
+    List<String> expected = extract(false, unshared);
+    CountingPattern shared = new CountingPattern();
+    assertEquals(expected, extract(true, shared));
+    assertTrue(expected.contains("of 12=COUNTED"));
+    assertTrue(expected.contains("x than=THAN"));
+    assertTrue(expected.contains("100 percent of=TAGGED"));
+    assertTrue(expected.contains("42/PERCENT"));
+    assertTrue(shared.count < unshared.count);
+  }
+
+  public void testOncePerToken() {
+    CountingPattern counted = new CountingPattern();
+    Env env = TokenSequencePattern.getNewEnv();
+    env.bind("::COUNTED", counted);
+    SharedNodePatterns sharedPatterns = new SharedNodePatterns();
+    List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>();
+    patterns.add(TokenSequencePattern.compile(env, "[{word::COUNTED}] /the/"));
+    patterns.add(TokenSequencePattern.compile(env, "/[0-9]+/ [{word::COUNTED} & {tag:XX}]"));
+    patterns.add(TokenSequencePattern.compile(env, "[!{word::COUNTED}]+"));
+    for (TokenSequencePattern pattern : patterns) {
+      sharedPatterns.add(pattern);
+    }
+    List<CoreLabel> tokens = sentence().get(CoreAnnotations.TokensAnnotation.class);
+    List<String> unshared = new ArrayList<String>();
+    for (TokenSequencePattern pattern : patterns) {
+      TokenSequenceMatcher m = pattern.getMatcher(tokens);
+      while (m.find()) {
+        unshared.add(m.group());
+      }
+    }
+    int unsharedCount = counted.count;
+    counted.count = 0;
+    assertTrue(sharedPatterns.begin());
+    assertFalse(sharedPatterns.begin());
+    List<String> shared = new ArrayList<String>();
+    for (TokenSequencePattern pattern : patterns) {
+      TokenSequenceMatcher m = pattern.getMatcher(tokens);
+      while (m.find()) {
+        shared.add(m.group());
+      }
+    }
+    sharedPatterns.end();
+    assertEquals(unshared, shared);
+    assertEquals(tokens.size(), counted.count);
+    assertTrue(unsharedCount > 2 * tokens.size());
+  }
+
+  public void testNumbering() {
+    SharedNodePatterns sharedPatterns = new SharedNodePatterns();
+    sharedPatterns.add(TokenSequencePattern.compile("[{word:/[0-9]+/}] /of/ [{tag:NN}]"));
+    assertEquals(3, sharedPatterns.size());
+    sharedPatterns.add(TokenSequencePattern.compile("[{word:/[0-9]+/} & {tag:NN}] ([{word:\"of\"}])*"));
+    assertEquals(3, sharedPatterns.size());
+    sharedPatterns.add(TokenSequencePattern.compile("[!{lemma:/[0-9]+/}]{2,7}?"));
+    assertEquals(4, sharedPatterns.size());
+  }
+
+}
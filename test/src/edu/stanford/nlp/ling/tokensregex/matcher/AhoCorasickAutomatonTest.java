@@ -0,0 +1,96 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Checks the matches of an AhoCorasickAutomaton against trying every key at every position.
+ */
+public class AhoCorasickAutomatonTest extends TestCase {
+
+  private static final String[] ALPHABET = { "a", "b", "c", "d" };
+
+  private static List<String> randomSequence(Random random, int maxLength) {
+    int length = 1 + random.nextInt(maxLength);
+    List<String> sequence = new ArrayList<String>(length);
+    for (int i = 0; i < length; i++) {
+      sequence.add(ALPHABET[random.nextInt(ALPHABET.length)]);
+    }
+    return sequence;
+  }
+
+  private static String toString(List<? extends Match<String,Integer>> matches) {
+    List<String> strings = new ArrayList<String>();
+    for (Match<String,Integer> m : matches) {
+      strings.add(m.getBegin() + "-" + m.getEnd() + "=" + m.getValue() + m.getMatched());
+    }
+    Collections.sort(strings);
+    return strings.toString();
+  }
+
+  private static List<Match<String,Integer>> bruteForce(Map<List<String>,Integer> keys, List<String> sequence) {
+    List<Match<String,Integer>> matches = new ArrayList<Match<String,Integer>>();
+    for (int begin = 0; begin < sequence.size(); begin++) {
+      for (int end = begin + 1; end <= sequence.size(); end++) {
+        Integer value = keys.get(sequence.subList(begin, end));
+        if (value != null) {
+          matches.add(new Match<String,Integer>(sequence.subList(begin, end), value, begin, end));
+        }
+      }
+    }
+    return matches;
+  }
+
+  public void testAllMatches() throws Exception {
+    Random random = new Random(42);
+    Map<List<String>,Integer> keys = new HashMap<List<String>,Integer>();
+    for (int i = 0; i < 60; i++) {
+      keys.put(randomSequence(random, 5), i);
+    }
+    AhoCorasickAutomaton<String,Integer> automaton = new AhoCorasickAutomaton<String,Integer>(keys);
+    assertEquals(keys.size(), automaton.size());
+    for (int i = 0; i < 200; i++) {
+      List<String> sequence = randomSequence(random, 30);
+      // an element which is in no key
+      sequence.set(random.nextInt(sequence.size()), "x");
+      assertEquals(toString(bruteForce(keys, sequence)), toString(automaton.findAllMatches(sequence)));
+    }
+  }
+
+  public void testMatchOrder() throws Exception {
+    TrieMap<String,Integer> trieMap = new TrieMap<String,Integer>();
+    trieMap.put(new String[]{"a","white","cat"}, 1);
+    trieMap.put(new String[]{"white","cat"}, 2);
+    trieMap.put(new String[]{"cat"}, 3);
+    trieMap.put(new String[]{"a"}, 4);
+    AhoCorasickAutomaton<String,Integer> automaton = new AhoCorasickAutomaton<String,Integer>(trieMap);
+    List<Match<String,Integer>> matches = automaton.findAllMatches(Arrays.asList("a", "white", "cat", "sat"));
+    assertEquals(4, matches.size());
+    assertEquals(4, (int) matches.get(0).getValue());
+    assertEquals(1, (int) matches.get(1).getValue());
+    assertEquals(2, (int) matches.get(2).getValue());
+    assertEquals(3, (int) matches.get(3).getValue());
+    assertEquals(2, matches.get(3).getBegin());
+    assertEquals(3, matches.get(3).getEnd());
+  }
+
+  public void testSerialization() throws Exception {
+    Map<List<String>,Integer> keys = new HashMap<List<String>,Integer>();
+    keys.put(Arrays.asList("b", "c"), 1);
+    keys.put(Arrays.asList("a", "b", "c", "d"), 2);
+    AhoCorasickAutomaton<String,Integer> automaton = new AhoCorasickAutomaton<String,Integer>(keys);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(automaton);
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    @SuppressWarnings("unchecked")
+    AhoCorasickAutomaton<String,Integer> copy = (AhoCorasickAutomaton<String,Integer>) in.readObject();
+    List<String> sequence = Arrays.asList("a", "b", "c", "d", "b", "c");
+    assertEquals(toString(automaton.findAllMatches(sequence)), toString(copy.findAllMatches(sequence)));
+    assertEquals(3, copy.findAllMatches(sequence).size());
+  }
+
+}
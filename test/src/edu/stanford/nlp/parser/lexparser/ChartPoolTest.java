@@ -0,0 +1,231 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.Sentence;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.parser.common.ParserQuery;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.ScoredObject;
+
+/**
+ * Checks that pooled charts give the same parses as charts of each
+ * query's own, that a query keeps its chart until it is released, also
+ * when parsing on several threads, and that a sentence over the memory
+ * budget fails cleanly.
+ */
+public class ChartPoolTest extends TestCase {
+
+  private static final String[] treeStrings = {
+    "(ROOT (S (NP (PRP She)) (VP (VBZ looks) (ADJP (RB very) (JJ beautiful))) (. .)))",
+    "(ROOT (SBARQ (WHNP (WDT What) (NN disease)) (SQ (VBZ causes) (NP (NN pain))) (. ?)))",
+    "(ROOT (S (NP (DT The) (NN director)) (VP (VBZ is) (ADJP (NP (CD 65) (NNS years)) (JJ old))) (. .)))",
+    "(ROOT (S (NP (PRP He)) (VP (VBZ says) (SBAR (IN that) (S (NP (PRP you)) (VP (VBP like) (S (VP (TO to) (VP (VB swim)))))))) (. .)))",
+    "(ROOT (S (SBAR (IN If) (S (NP (PRP you)) (VP (VBP know) (SBAR (WHNP (WP who)) (S (VP (VBD did) (NP (PRP it)))))))) (, ,) (NP (PRP you)) (VP (MD should) (VP (VB tell) (NP (DT the) (NN teacher)))) (. .)))"
+  };
+
+  private static LexicalizedParser parser;
+  private static List<List<HasWord>> sentences;
+
+  @Override
+  public void setUp() {
+    if (parser != null) {
+      return;
+    }
+    MemoryTreebank treebank = new MemoryTreebank();
+    sentences = new ArrayList<>();
+    for (String treeString : treeStrings) {
+      Tree tree = Tree.valueOf(treeString);
+      treebank.add(tree);
+      List<HasWord> sentence = new ArrayList<>();
+      for (Label word : tree.yield()) {
+        sentence.add(new Word(word.value()));
+      }
+      sentences.add(sentence);
+    }
+    parser = LexicalizedParser.trainFromTreebank(treebank, new Options());
+  }
+
+  @Override
+  public void tearDown() {
+    TestOptions testOptions = parser.getOp().testOptions;
+    testOptions.chartMemoryBudget = 0;
+    testOptions.maxLength = -0xDEADBEEF;
+    testOptions.testingThreads = 1;
+    testOptions.writeOutputFiles = false;
+    testOptions.quietEvaluation = false;
+  }
+
+  private List<String> parses(int budget) {
+    parser.getOp().testOptions.chartMemoryBudget = budget;
+    List<String> parses = new ArrayList<>();
+    // longest first, so that later sentences reuse the larger charts
+    for (int i = sentences.size() - 1; i >= 0; i--) {
+      ParserQuery pq = parser.parserQuery();
+      assertTrue(pq.parse(sentences.get(i)));
+      parses.add(pq.getBestParse().toString() + ' ' + pq.getPCFGScore());
+      pq.release();
+    }
+    return parses;
+  }
+
+  public void testSameParses() {
+    assertEquals(parses(0), parses(1000));
+  }
+
+  /** A query keeps its chart, and its results, until it is released */
+  public void testOwned() {
+    parser.getOp().testOptions.chartMemoryBudget = 1000;
+    ChartPool pool = ChartPool.get();
+    int lent = pool.lent();
+    ParserQuery first = parser.parserQuery();
+    ParserQuery second = parser.parserQuery();
+    assertTrue(first.parse(sentences.get(sentences.size() - 1)));
+    String firstParse = first.getBestParse().toString();
+    List<String> firstKBest = new ArrayList<>();
+    for (ScoredObject<Tree> tree : first.getKBestPCFGParses(3)) {
+      firstKBest.add(tree.toString());
+    }
+    assertTrue(second.parse(sentences.get(0)));
+    ExhaustivePCFGParser firstPCFG = (ExhaustivePCFGParser) first.getPCFGParser();
+    ExhaustivePCFGParser secondPCFG = (ExhaustivePCFGParser) second.getPCFGParser();
+    assertNotSame(firstPCFG.iScore, secondPCFG.iScore);
+    assertEquals(lent + 4, pool.lent());
+
+    // the second parse did not touch the results of the first
+    assertEquals(firstParse, first.getBestParse().toString());
+    List<String> kBest = new ArrayList<>();
+    for (ScoredObject<Tree> tree : first.getKBestPCFGParses(3)) {
+      kBest.add(tree.toString());
+    }
+    assertEquals(firstKBest, kBest);
+
+    // once released, the next query reuses the chart
+    float[][][] iScore = firstPCFG.iScore;
+    first.release();
+    assertNull(firstPCFG.iScore);
+    ParserQuery third = parser.parserQuery();
+    assertTrue(third.parse(sentences.get(1)));
+    assertSame(iScore, ((ExhaustivePCFGParser) third.getPCFGParser()).iScore);
+    second.release();
+    third.release();
+    assertEquals(lent, pool.lent());
+    assertTrue(pool.bytes() > 0);
+
+    parser.getOp().testOptions.chartMemoryBudget = 0;
+    ParserQuery unpooled = parser.parserQuery();
+    assertTrue(unpooled.parse(sentences.get(0)));
+    assertNotSame(iScore, ((ExhaustivePCFGParser) unpooled.getPCFGParser()).iScore);
+  }
+
+  /** The chart of a query which is never released comes back once the query is collected */
+  public void testCollected() throws InterruptedException {
+    parser.getOp().testOptions.chartMemoryBudget = 1000;
+    ChartPool pool = ChartPool.get();
+    int lent = pool.lent();
+    ParserQuery pq = parser.parserQuery();
+    assertTrue(pq.parse(sentences.get(0)));
+    assertEquals(lent + 2, pool.lent());
+    pq = null;
+    for (int i = 0; i < 50 && pool.lent() > lent; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(lent, pool.lent());
+  }
+
+  public void testOverBudget() {
+    List<HasWord> longSentence = new ArrayList<>();
+    while (longSentence.size() < 400) {
+      longSentence.addAll(sentences.get(4));
+    }
+    parser.getOp().testOptions.chartMemoryBudget = 16;
+    // even when asked for, a length over budget is not thrown
+    parser.getOp().testOptions.maxLength = 500;
+    ParserQuery pq = parser.parserQuery();
+    assertFalse(pq.parse(longSentence));
+    assertTrue(pq.parseNoMemory());
+    assertTrue(ChartPool.get().bytes() <= 16L << 20);
+    pq.release();
+
+    // and a sentence within budget still parses
+    pq = parser.parserQuery();
+    assertTrue(pq.parse(sentences.get(0)));
+    assertFalse(pq.parseNoMemory());
+    pq.release();
+  }
+
+  /** Many sentences, of mixed lengths */
+  private static List<List<HasWord>> manySentences() {
+    List<List<HasWord>> many = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      many.add(sentences.get((i * 7) % sentences.size()));
+    }
+    return many;
+  }
+
+  /**
+   * With several testing threads, the results of each query are read on
+   * the main thread while the worker threads go on parsing, so the pooled
+   * charts must not be shared between live queries.
+   */
+  public void testParseFilesThreads() throws IOException {
+    File dir = Files.createTempDirectory("chartpooltest").toFile();
+    File input = new File(dir, "sentences.txt");
+    try (PrintWriter pw = new PrintWriter(input, "utf-8")) {
+      for (List<HasWord> sentence : manySentences()) {
+        pw.println(Sentence.listToString(sentence));
+      }
+    }
+    TestOptions testOptions = parser.getOp().testOptions;
+    testOptions.writeOutputFiles = true;
+    testOptions.outputFilesDirectory = dir.getPath();
+
+    testOptions.outputFilesExtension = "expected";
+    new ParseFiles(parser.getOp(), parser.getTreePrint(), parser).parseFiles(new String[] { input.getPath() }, 0, true, null, null, "newline", null, null);
+    testOptions.outputFilesExtension = "actual";
+    testOptions.testingThreads = 4;
+    testOptions.chartMemoryBudget = 1000;
+    new ParseFiles(parser.getOp(), parser.getTreePrint(), parser).parseFiles(new String[] { input.getPath() }, 0, true, null, null, "newline", null, null);
+
+    String expected = IOUtils.slurpFile(new File(dir, "sentences.txt.expected"));
+    assertTrue(expected.contains("(ROOT"));
+    assertEquals(expected, IOUtils.slurpFile(new File(dir, "sentences.txt.actual")));
+  }
+
+  public void testEvaluateTreebankThreads() throws IOException {
+    MemoryTreebank treebank = new MemoryTreebank();
+    for (int i = 0; i < 60; i++) {
+      treebank.add(Tree.valueOf(treeStrings[(i * 7) % treeStrings.length]));
+    }
+    File dir = Files.createTempDirectory("chartpooltest").toFile();
+    TestOptions testOptions = parser.getOp().testOptions;
+    testOptions.quietEvaluation = true;
+    testOptions.writeOutputFiles = true;
+    testOptions.outputFilesPrefix = new File(dir, "parses").getPath();
+
+    testOptions.outputFilesExtension = "expected";
+    double expectedScore = new EvaluateTreebank(parser).testOnTreebank(treebank);
+    testOptions.outputFilesExtension = "actual";
+    testOptions.testingThreads = 4;
+    testOptions.chartMemoryBudget = 1000;
+    double score = new EvaluateTreebank(parser).testOnTreebank(treebank);
+
+    assertEquals(expectedScore, score, 0.0);
+    String expected = IOUtils.slurpFile(new File(dir, "parses.expected"));
+    assertTrue(expected.contains("(ROOT"));
+    assertEquals(expected, IOUtils.slurpFile(new File(dir, "parses.actual")));
+  }
+
+}
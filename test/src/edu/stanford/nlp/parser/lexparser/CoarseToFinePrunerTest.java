@@ -0,0 +1,122 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.parser.common.ParserQuery;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Checks coarse-to-fine parsing on a parser trained on a few trees:
+ * with a threshold large enough nothing the best parse needs is pruned,
+ * and smaller thresholds prune more of the chart.
+ */
+public class CoarseToFinePrunerTest extends TestCase {
+
+  private static final String[] treeStrings = {
+    "(ROOT (S (NP (PRP She)) (VP (VBZ looks) (ADJP (RB very) (JJ beautiful))) (. .)))",
+    "(ROOT (SBARQ (WHNP (WDT What) (NN disease)) (SQ (VBZ causes) (NP (NN pain))) (. ?)))",
+    "(ROOT (S (NP (DT The) (NN director)) (VP (VBZ is) (ADJP (NP (CD 65) (NNS years)) (JJ old))) (. .)))",
+    "(ROOT (SBARQ (WHPP (IN In) (WHNP (WDT which) (NN city))) (SQ (VBP do) (NP (PRP you)) (VP (VB live))) (. ?)))",
+    "(ROOT (S (VP (VB Be) (VP (VBG waiting) (PP (IN in) (NP (NN line))) (PP-TMP (IN at) (NP (CD 3) (NN p.m.))))) (. !)))",
+    "(ROOT (S (NP (PRP He)) (VP (VBZ says) (SBAR (IN that) (S (NP (PRP you)) (VP (VBP like) (S (VP (TO to) (VP (VB swim)))))))) (. .)))",
+    "(ROOT (S (SBAR (IN That) (S (NP (PRP she)) (VP (VBD lied)))) (VP (VBD was) (VP (VBN suspected) (PP (IN by) (NP (NN everyone))))) (. .)))",
+    "(ROOT (S (PP (ADVP (RB Apart)) (IN from) (NP (DT the) (NN roof))) (, ,) (NP (DT the) (NN house)) (VP (VBZ is) (PP (IN in) (NP (JJ good) (NN shape)))) (. .)))",
+    "(ROOT (S (SBAR (IN If) (S (NP (PRP you)) (VP (VBP know) (SBAR (WHNP (WP who)) (S (VP (VBD did) (NP (PRP it)))))))) (, ,) (NP (PRP you)) (VP (MD should) (VP (VB tell) (NP (DT the) (NN teacher)))) (. .)))"
+  };
+
+  private static LexicalizedParser parser;
+  private static List<List<HasWord>> sentences;
+
+  @Override
+  public void setUp() {
+    if (parser != null) {
+      return;
+    }
+    MemoryTreebank treebank = new MemoryTreebank();
+    sentences = new ArrayList<>();
+    for (String treeString : treeStrings) {
+      Tree tree = Tree.valueOf(treeString);
+      treebank.add(tree);
+      List<HasWord> sentence = new ArrayList<>();
+      for (Label word : tree.yield()) {
+        sentence.add(new Word(word.value()));
+      }
+      sentences.add(sentence);
+    }
+    Options op = new Options();
+    op.doDep = false;
+    parser = LexicalizedParser.trainFromTreebank(treebank, op);
+  }
+
+  public void testProjection() {
+    CoarseGrammarProjection projection = parser.coarseGrammarProjection();
+    assertTrue(projection.targetStateIndex().size() < parser.stateIndex.size());
+    for (int state = 0; state < parser.stateIndex.size(); state++) {
+      String fine = parser.stateIndex.get(state);
+      String coarse = projection.targetStateIndex().get(projection.project(state));
+      if (parser.tagIndex.contains(fine)) {
+        assertEquals(fine, coarse);
+      }
+      assertEquals(fine.startsWith("@"), coarse.startsWith("@"));
+    }
+    // the best score of the coarse rules is never below that of a fine rule
+    BinaryGrammar coarseBG = projection.targetBG();
+    for (BinaryRule rule : parser.bg) {
+      BinaryRule coarse = new BinaryRule(projection.project(rule.parent), projection.project(rule.leftChild), projection.project(rule.rightChild));
+      assertTrue(coarseBG.scoreRule(coarse) >= rule.score);
+    }
+  }
+
+  private List<String> parses(double threshold) {
+    parser.getOp().testOptions.coarseToFineThreshold = threshold;
+    try {
+      ParserQuery pq = parser.parserQuery();
+      List<String> parses = new ArrayList<>();
+      for (List<HasWord> sentence : sentences) {
+        assertTrue(pq.parse(sentence));
+        parses.add(pq.getBestParse() + " " + pq.getPCFGScore());
+      }
+      return parses;
+    } finally {
+      parser.getOp().testOptions.coarseToFineThreshold = 0.0;
+    }
+  }
+
+  public void testSameParses() {
+    assertEquals(parses(0.0), parses(1000.0));
+  }
+
+  public void testPrunes() {
+    parser.getOp().testOptions.coarseToFineThreshold = 1.0;
+    try {
+      ParserQuery pq = parser.parserQuery();
+      CoarseToFinePruner pruner = ((ExhaustivePCFGParser) pq.getPCFGParser()).getPruner();
+      assertNotNull(pruner);
+      double loose = 0.0;
+      double tight = 0.0;
+      for (List<HasWord> sentence : sentences) {
+        assertTrue(pq.parse(sentence));
+        tight += pruner.keptFraction();
+      }
+      parser.getOp().testOptions.coarseToFineThreshold = 20.0;
+      pq = parser.parserQuery();
+      pruner = ((ExhaustivePCFGParser) pq.getPCFGParser()).getPruner();
+      for (List<HasWord> sentence : sentences) {
+        assertTrue(pq.parse(sentence));
+        loose += pruner.keptFraction();
+      }
+      assertTrue(tight < loose);
+      assertTrue(loose < sentences.size());
+    } finally {
+      parser.getOp().testOptions.coarseToFineThreshold = 0.0;
+    }
+  }
+
+}
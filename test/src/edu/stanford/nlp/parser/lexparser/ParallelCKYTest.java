@@ -0,0 +1,98 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Checks that filling the chart diagonals in parallel gives exactly the
+ * inside and outside scores, and so the parses, of filling them one cell
+ * at a time.
+ */
+public class ParallelCKYTest extends TestCase {
+
+  private static final String[] treeStrings = {
+    "(ROOT (S (NP (PRP She)) (VP (VBZ looks) (ADJP (RB very) (JJ beautiful))) (. .)))",
+    "(ROOT (SBARQ (WHNP (WDT What) (NN disease)) (SQ (VBZ causes) (NP (NN pain))) (. ?)))",
+    "(ROOT (S (NP (DT The) (NN director)) (VP (VBZ is) (ADJP (NP (CD 65) (NNS years)) (JJ old))) (. .)))",
+    "(ROOT (S (NP (PRP He)) (VP (VBZ says) (SBAR (IN that) (S (NP (PRP you)) (VP (VBP like) (S (VP (TO to) (VP (VB swim)))))))) (. .)))",
+    "(ROOT (S (SBAR (IN If) (S (NP (PRP you)) (VP (VBP know) (SBAR (WHNP (WP who)) (S (VP (VBD did) (NP (PRP it)))))))) (, ,) (NP (PRP you)) (VP (MD should) (VP (VB tell) (NP (DT the) (NN teacher)))) (. .)))"
+  };
+
+  private static LexicalizedParser parser;
+  private static List<List<HasWord>> sentences;
+
+  @Override
+  public void setUp() {
+    if (parser != null) {
+      return;
+    }
+    MemoryTreebank treebank = new MemoryTreebank();
+    List<HasWord> words = new ArrayList<>();
+    for (String treeString : treeStrings) {
+      Tree tree = Tree.valueOf(treeString);
+      treebank.add(tree);
+      for (Label word : tree.yield()) {
+        words.add(new Word(word.value()));
+      }
+    }
+    sentences = new ArrayList<>();
+    for (int length : new int[] { 5, 17, 25, 37 }) {
+      sentences.add(words.subList(0, length));
+    }
+    parser = LexicalizedParser.trainFromTreebank(treebank, new Options());
+  }
+
+  @Override
+  public void tearDown() {
+    parser.getOp().testOptions.parallelCKYLength = 0;
+    parser.getOp().testOptions.coarseToFineThreshold = 0.0;
+  }
+
+  /** The parse, the inside scores and the outside scores of each sentence */
+  private List<String> charts(int parallelCKYLength) {
+    parser.getOp().testOptions.parallelCKYLength = parallelCKYLength;
+    List<String> charts = new ArrayList<>();
+    for (List<HasWord> sentence : sentences) {
+      LexicalizedParserQuery pq = (LexicalizedParserQuery) parser.parserQuery();
+      assertTrue(pq.parse(sentence));
+      ExhaustivePCFGParser pparser = (ExhaustivePCFGParser) pq.getPCFGParser();
+      charts.add(pq.getBestParse().toString());
+      charts.add(chart(pparser.iScore, pparser.length));
+      charts.add(chart(pparser.oScore, pparser.length));
+    }
+    return charts;
+  }
+
+  private static String chart(float[][][] scores, int length) {
+    StringBuilder chart = new StringBuilder();
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        for (float score : scores[start][end]) {
+          chart.append(Float.floatToRawIntBits(score)).append(' ');
+        }
+      }
+    }
+    return chart.toString();
+  }
+
+  public void testSameCharts() {
+    List<String> expected = charts(0);
+    assertEquals(expected, charts(10));
+    assertEquals(expected, charts(1));
+  }
+
+  public void testSameChartsPruned() {
+    parser.getOp().testOptions.coarseToFineThreshold = 5.0;
+    List<String> expected = charts(0);
+    assertEquals(expected, charts(10));
+  }
+
+}
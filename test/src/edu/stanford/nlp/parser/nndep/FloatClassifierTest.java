@@ -0,0 +1,94 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the single precision classifier gives the same scores as
+ * the original double precision one, with and without precomputed
+ * hidden activations, and whether or not the vectors are batched.
+ */
+public class FloatClassifierTest extends TestCase {
+
+  private static final int NUM_EMBEDDINGS = 50;
+  private static final int NUM_LABELS = 7;
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < cols; ++j) {
+        matrix[i][j] = random.nextDouble() * 0.2 - 0.1;
+      }
+    }
+    return matrix;
+  }
+
+  private static void checkScores(int hiddenSize) {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", Integer.toString(hiddenSize));
+    props.setProperty("embeddingSize", "10");
+    Config config = new Config(props);
+
+    Random random = new Random(1234);
+    double[][] E = randomMatrix(random, NUM_EMBEDDINGS, config.embeddingSize);
+    double[][] W1 = randomMatrix(random, config.hiddenSize, config.embeddingSize * Config.numTokens);
+    double[] b1 = randomMatrix(random, 1, config.hiddenSize)[0];
+    double[][] W2 = randomMatrix(random, NUM_LABELS, config.hiddenSize);
+
+    // precompute every other token at every position
+    List<Integer> preComputed = new ArrayList<>();
+    for (int tok = 0; tok < NUM_EMBEDDINGS; tok += 2) {
+      for (int pos = 0; pos < Config.numTokens; ++pos) {
+        preComputed.add(tok * Config.numTokens + pos);
+      }
+    }
+
+    Classifier classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+    FloatClassifier floatClassifier = new FloatClassifier(config, classifier, preComputed);
+    assertEquals(NUM_LABELS, floatClassifier.numLabels());
+
+    float[] hidden = new float[config.hiddenSize];
+    float[] scores = new float[NUM_LABELS];
+    int[][] features = new int[20][Config.numTokens];
+    for (int[] feature : features) {
+      for (int j = 0; j < feature.length; ++j) {
+        feature[j] = random.nextInt(NUM_EMBEDDINGS);
+      }
+      double[] expected = classifier.computeScores(feature);
+      floatClassifier.computeScores(feature, hidden, scores);
+      float[] allocated = floatClassifier.computeScores(feature);
+      for (int l = 0; l < NUM_LABELS; ++l) {
+        assertEquals(expected[l], scores[l], 1e-4 * Math.max(1.0, Math.abs(expected[l])));
+        assertEquals(scores[l], allocated[l]);
+      }
+    }
+
+    // scoring in a batch gives the same results as one at a time;
+    // the batch is shorter than the array, as when sentences are retired
+    int batchSize = features.length - 3;
+    float[] batchHidden = new float[batchSize * config.hiddenSize];
+    float[] batchScores = new float[batchSize * NUM_LABELS];
+    floatClassifier.computeScores(features, batchSize, batchHidden, batchScores);
+    for (int b = 0; b < batchSize; ++b) {
+      floatClassifier.computeScores(features[b], hidden, scores);
+      for (int l = 0; l < NUM_LABELS; ++l) {
+        assertEquals(scores[l], batchScores[b * NUM_LABELS + l], 1e-5f * Math.max(1.0f, Math.abs(scores[l])));
+      }
+    }
+  }
+
+  public void testScores() {
+    checkScores(20);
+  }
+
+  /** A hidden layer larger than one block */
+  public void testScoresSeveralBlocks() {
+    checkScores(FloatClassifier.BLOCK_SIZE * 2 + 5);
+  }
+
+}
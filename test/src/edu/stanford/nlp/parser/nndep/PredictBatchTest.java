@@ -0,0 +1,108 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Trains a tiny parser and checks that parsing sentences of mixed lengths
+ * in lockstep batches gives the same trees as parsing them one at a time,
+ * in double and in single precision.
+ */
+public class PredictBatchTest extends TestCase {
+
+  private static final String[][] SENTENCES = {
+    { "John/NNP/2/nsubj", "runs/VBZ/0/root" },
+    { "The/DT/2/det", "dog/NN/3/nsubj", "saw/VBD/0/root", "a/DT/5/det", "cat/NN/3/dobj", "./././punct" },
+    { "Stop/VB/0/root" },
+    { "She/PRP/2/nsubj", "gave/VBD/0/root", "him/PRP/2/iobj", "the/DT/5/det", "big/JJ/6/amod", "book/NN/2/dobj",
+      "in/IN/9/case", "the/DT/9/det", "park/NN/2/nmod", "./././punct" },
+    { "Cats/NNS/2/nsubj", "sleep/VBP/0/root", "./././punct" },
+    { "A/DT/3/det", "small/JJ/3/amod", "bird/NN/4/nsubj", "sang/VBD/0/root", "loudly/RB/4/advmod" },
+    { "The/DT/2/det", "man/NN/4/nsubj", "has/VBZ/4/aux", "left/VBN/0/root", "./././punct" },
+    { "Dogs/NNS/2/nsubj", "chase/VBP/0/root", "cats/NNS/2/dobj", "in/IN/6/case", "the/DT/6/det", "garden/NN/2/nmod",
+      "every/DT/8/det", "day/NN/2/nmod:tmod", "./././punct" },
+  };
+
+  private static String conll() {
+    StringBuilder sb = new StringBuilder();
+    for (String[] sentence : SENTENCES) {
+      for (int i = 0; i < sentence.length; ++i) {
+        String[] fields = sentence[i].split("/");
+        // "." is its own tag, and its head is the root of the sentence
+        int head = fields[2].equals(".") ? rootOf(sentence) : Integer.parseInt(fields[2]);
+        sb.append(i + 1).append('\t').append(fields[0]).append("\t_\t").append(fields[1]).append('\t').append(fields[1])
+            .append("\t_\t").append(head).append('\t').append(fields[3]).append("\t_\t_\n");
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static int rootOf(String[] sentence) {
+    for (int i = 0; i < sentence.length; ++i) {
+      if (sentence[i].endsWith("/0/root")) {
+        return i + 1;
+      }
+    }
+    throw new IllegalArgumentException("No root");
+  }
+
+  private static void checkBatches(boolean floatInference) throws IOException {
+    File trainFile = File.createTempFile("nndep", ".conll");
+    trainFile.deleteOnExit();
+    IOUtils.writeStringToFile(conll(), trainFile.getPath(), "utf-8");
+    // training needs some embeddings to scale
+    File embedFile = File.createTempFile("nndep", ".embed");
+    embedFile.deleteOnExit();
+    IOUtils.writeStringToFile("the 0.1 0.2 0.3 0.4 0.5 0.6 0.7 0.8 0.9 1.0\n" +
+        "dog -0.1 0.2 -0.3 0.4 -0.5 0.6 -0.7 0.8 -0.9 1.0\n", embedFile.getPath(), "utf-8");
+    File modelFile = File.createTempFile("nndep", ".txt.gz");
+    modelFile.deleteOnExit();
+
+    Properties trainProps = new Properties();
+    trainProps.setProperty("maxIter", "30");
+    trainProps.setProperty("hiddenSize", "20");
+    trainProps.setProperty("embeddingSize", "10");
+    trainProps.setProperty("batchSize", "20");
+    trainProps.setProperty("numPreComputed", "50");
+    new DependencyParser(trainProps).train(trainFile.getPath(), null, modelFile.getPath(), embedFile.getPath());
+
+    // the classifier of a loaded model is sized by the config, not by the model file
+    Properties testProps = new Properties();
+    testProps.putAll(trainProps);
+    testProps.setProperty("testBatchSize", "3");
+    testProps.setProperty("floatInference", Boolean.toString(floatInference));
+    DependencyParser parser = DependencyParser.loadFromModelFile(modelFile.getPath(), testProps);
+    assertEquals(floatInference, parser.floatClassifier != null);
+
+    List<CoreMap> sentences = new ArrayList<>();
+    Util.loadConllFile(trainFile.getPath(), sentences, new ArrayList<>());
+    // more sentences than fit in a batch, of lengths 1 to 10
+    List<CoreMap> repeated = new ArrayList<>(sentences);
+    repeated.addAll(sentences);
+    List<GrammaticalStructure> batch = parser.predictBatch(repeated);
+    assertEquals(repeated.size(), batch.size());
+    for (int i = 0; i < repeated.size(); ++i) {
+      GrammaticalStructure expected = parser.predict(repeated.get(i));
+      assertEquals(expected.typedDependencies().toString(), batch.get(i).typedDependencies().toString());
+    }
+  }
+
+  public void testBatches() throws IOException {
+    checkBatches(false);
+  }
+
+  public void testFloatBatches() throws IOException {
+    checkBatches(true);
+  }
+
+}
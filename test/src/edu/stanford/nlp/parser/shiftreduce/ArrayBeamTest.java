@@ -0,0 +1,122 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.ScoredComparator;
+import edu.stanford.nlp.util.ScoredObject;
+
+/**
+ * Checks that an ArrayBeam keeps and orders its entries as a
+ * PriorityQueue does, and that parsing with it gives the same parses as
+ * parsing with PriorityQueues.
+ */
+public class ArrayBeamTest extends TestCase {
+
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (S (NP (NP (DT Some) (@NP (`` ``) (@NP (NN circuit) (@NP (NNS breakers) ('' ''))))) (VP (VBN installed) (PP (IN after) (NP (DT the) (@NP (NNP October) (@NP (CD 1987) (NN crash))))))) (@S (VP (@VP (@VP (VBD failed) (NP (PRP$ their) (@NP (JJ first) (NN test)))) (PRN (, ,) (@PRN (S (NP (NNS traders)) (VP (VBP say))) (, ,)))) (S (ADJP (JJ unable) (S (VP (TO to) (VP (VB cool) (NP (NP (DT the) (@NP (NN selling) (NN panic))) (PP (IN in) (NP (DT both) (@NP (@NP (NNS stocks) (CC and)) (NNS futures))))))))))) (. .))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+  };
+
+  private static List<String> heapOrder(PriorityQueue<ScoredObject<Integer>> queue) {
+    List<String> entries = new ArrayList<>();
+    for (ScoredObject<Integer> entry : queue) {
+      entries.add(entry.object() + "=" + entry.score());
+    }
+    return entries;
+  }
+
+  private static List<String> heapOrder(ArrayBeam beam) {
+    List<String> entries = new ArrayList<>();
+    for (int i = 0; i < beam.size(); ++i) {
+      entries.add(beam.id(i) + "=" + beam.score(i));
+    }
+    return entries;
+  }
+
+  /** Few distinct scores, so that there are plenty of ties */
+  public void testSameAsPriorityQueue() {
+    Random random = new Random(1234);
+    for (int bound = 1; bound < 10; ++bound) {
+      PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<>(bound + 1, ScoredComparator.ASCENDING_COMPARATOR);
+      ArrayBeam beam = new ArrayBeam(1);
+      for (int i = 0; i < 500; ++i) {
+        double score = random.nextInt(5);
+        queue.add(new ScoredObject<>(i, score));
+        beam.add(i, score);
+        if (queue.size() > bound) {
+          assertEquals(queue.poll().object().intValue(), beam.poll());
+        }
+        assertEquals(heapOrder(queue), heapOrder(beam));
+        assertEquals(queue.peek().score(), beam.lowestScore());
+      }
+      beam.clear();
+      assertEquals(0, beam.size());
+    }
+  }
+
+  private static Tree convertTree(String treeText) {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeText);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+    return tree;
+  }
+
+  public void testSameParses() {
+    Index<Transition> transitionIndex = new HashIndex<>();
+    List<State> states = new ArrayList<>();
+    for (String treeText : treeStrings) {
+      Tree tree = convertTree(treeText);
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+      for (Transition transition : CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"))) {
+        states.add(state);
+        transitionIndex.add(transition);
+        state = transition.apply(state);
+      }
+    }
+
+    ShiftReduceOptions op = new ShiftReduceOptions();
+    PerceptronModel model = new PerceptronModel(op, transitionIndex, new HashSet<>(), Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+    // weights in quarters, so that transitions and states often tie
+    Random random = new Random(17);
+    for (State state : states) {
+      for (String feature : model.featureFactory.featurize(state)) {
+        Weight weight = model.featureWeights.computeIfAbsent(feature, f -> new Weight());
+        weight.updateWeight(random.nextInt(transitionIndex.size()), random.nextInt(5) * 0.25f - 0.5f);
+      }
+    }
+    model.compile();
+    ShiftReduceParser parser = new ShiftReduceParser(op, model);
+
+    for (int beamSize : new int[] { 1, 4, 8 }) {
+      op.testOptions().beamSize = beamSize;
+      for (String treeText : treeStrings) {
+        Tree tree = convertTree(treeText);
+        op.priorityQueueBeam = true;
+        ShiftReduceParserQuery expected = new ShiftReduceParserQuery(parser);
+        boolean expectedSuccess = expected.parse(tree);
+        op.priorityQueueBeam = false;
+        ShiftReduceParserQuery query = new ShiftReduceParserQuery(parser);
+        assertEquals(expectedSuccess, query.parse(tree));
+        if (!expectedSuccess) {
+          continue;
+        }
+        assertEquals(expected.getBestTransitionSequence(), query.getBestTransitionSequence());
+        assertEquals(expected.getPCFGScore(), query.getPCFGScore());
+        assertEquals(expected.getBestParse(), query.getBestParse());
+      }
+    }
+  }
+
+}
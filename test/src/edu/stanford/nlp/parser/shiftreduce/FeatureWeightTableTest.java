@@ -0,0 +1,131 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.*;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.ScoredObject;
+
+/**
+ * Checks that hashing the features of a state gives the hashes of the
+ * feature strings, and that a compiled PerceptronModel scores
+ * transitions the same as the feature strings do.
+ */
+public class FeatureWeightTableTest extends TestCase {
+
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (S (NP (NP (DT Some) (@NP (`` ``) (@NP (NN circuit) (@NP (NNS breakers) ('' ''))))) (VP (VBN installed) (PP (IN after) (NP (DT the) (@NP (NNP October) (@NP (CD 1987) (NN crash))))))) (@S (VP (@VP (@VP (VBD failed) (NP (PRP$ their) (@NP (JJ first) (NN test)))) (PRN (, ,) (@PRN (S (NP (NNS traders)) (VP (VBP say))) (, ,)))) (S (ADJP (JJ unable) (S (VP (TO to) (VP (VB cool) (NP (NP (DT the) (@NP (NN selling) (NN panic))) (PP (IN in) (NP (DT both) (@NP (@NP (NNS stocks) (CC and)) (NNS futures))))))))))) (. .))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+  };
+
+  private static Tree convertTree(String treeText) {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeText);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+    return tree;
+  }
+
+  /** The states the transitions of the trees go through. */
+  private List<State> states(Index<Transition> transitionIndex) {
+    List<State> states = new ArrayList<>();
+    for (String treeText : treeStrings) {
+      Tree tree = convertTree(treeText);
+      List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+      for (Transition transition : transitions) {
+        states.add(state);
+        transitionIndex.add(transition);
+        state = transition.apply(state);
+      }
+    }
+    return states;
+  }
+
+  public void testHashes() {
+    FeatureFactory factory = new BasicFeatureFactory();
+    for (State state : states(new HashIndex<>())) {
+      List<String> features = factory.featurize(state);
+      FeatureHashes hashes = new FeatureHashes();
+      factory.featurize(state, hashes);
+      assertEquals(features.size(), hashes.size());
+      for (int i = 0; i < features.size(); ++i) {
+        assertEquals(features.get(i), FeatureHashes.hash(features.get(i)), hashes.get(i));
+      }
+    }
+    assertTrue(FeatureHashes.hash("S0C-NP") != FeatureHashes.hash("S0C-VP"));
+  }
+
+  private static List<String> transitions(Collection<ScoredObject<Integer>> scored) {
+    List<String> transitions = new ArrayList<>();
+    for (ScoredObject<Integer> transition : scored) {
+      transitions.add(transition.object() + "=" + transition.score());
+    }
+    Collections.sort(transitions);
+    return transitions;
+  }
+
+  public void testSameScores() throws IOException, ClassNotFoundException {
+    Index<Transition> transitionIndex = new HashIndex<>();
+    List<State> states = states(transitionIndex);
+    ShiftReduceOptions op = new ShiftReduceOptions();
+    PerceptronModel model = new PerceptronModel(op, transitionIndex, new HashSet<>(), Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+    Random random = new Random(5);
+    for (State state : states) {
+      for (String feature : model.featureFactory.featurize(state)) {
+        if (random.nextInt(3) == 0) {
+          continue;
+        }
+        Weight weight = model.featureWeights.computeIfAbsent(feature, f -> new Weight());
+        weight.updateWeight(random.nextInt(transitionIndex.size()), random.nextFloat() - 0.5f);
+      }
+    }
+    // a feature whose weights are all zero is left out of the table
+    model.featureWeights.put("UNUSED", new Weight());
+
+    List<List<String>> expected = new ArrayList<>();
+    for (State state : states) {
+      expected.add(transitions(model.findHighestScoringTransitions(state, false, 5, null)));
+    }
+
+    // features with the same hash can't be compiled, so the strings are still used
+    assertFalse(model.compile(feature -> 1L));
+    assertFalse(model.isCompiled());
+    for (int i = 0; i < states.size(); ++i) {
+      assertEquals(expected.get(i), transitions(model.findHighestScoringTransitions(states.get(i), false, 5, null)));
+    }
+
+    assertTrue(model.compile());
+    assertTrue(model.isCompiled());
+    for (int i = 0; i < states.size(); ++i) {
+      assertEquals(expected.get(i), transitions(model.findHighestScoringTransitions(states.get(i), false, 5, null)));
+    }
+
+    // a model read back is compiled, and still has its feature strings
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bout);
+    out.writeObject(model);
+    out.close();
+    PerceptronModel read = (PerceptronModel) new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+    assertEquals(model.featureWeights.keySet(), read.featureWeights.keySet());
+    assertTrue(read.isCompiled());
+    for (int i = 0; i < states.size(); ++i) {
+      assertEquals(expected.get(i), transitions(read.findHighestScoringTransitions(states.get(i), false, 5, null)));
+    }
+  }
+
+}
@@ -6,6 +6,8 @@ import java.util.Set;
 import junit.framework.TestCase;
 import junit.framework.Assert;
 
+import edu.stanford.nlp.util.ModelRegistry;
+
 /**
  * Makes sure that the pool creates new Annotators when the signature properties change
  */
@@ -68,4 +70,25 @@ public class AnnotatorPoolTest extends TestCase {
     System.out.println("Third annotator: " + a3);
     Assert.assertTrue(a1 != a3);
   }
+
+  /** Annotators dropped from the pool give up their references to shared models */
+  public void testReleasesModels() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("sample.prop", "v1");
+    AnnotatorPool pool = new AnnotatorPool();
+    pool.register("sample", new SampleAnnotatorFactory(props));
+    Annotator a1 = pool.get("sample");
+    ModelRegistry.acquire(a1, "model", "AnnotatorPoolTest", Object::new);
+
+    props.setProperty("sample.prop", "v2");
+    pool.register("sample", new SampleAnnotatorFactory(props));
+    Assert.assertEquals(0, ModelRegistry.references("model", "AnnotatorPoolTest"));
+
+    Annotator a2 = pool.get("sample");
+    ModelRegistry.acquire(a2, "model", "AnnotatorPoolTest", Object::new);
+    Assert.assertEquals(1, ModelRegistry.references("model", "AnnotatorPoolTest"));
+    pool.clear();
+    Assert.assertEquals(0, ModelRegistry.references("model", "AnnotatorPoolTest"));
+    ModelRegistry.unload("model", "AnnotatorPoolTest");
+  }
 }
@@ -0,0 +1,91 @@
+package edu.stanford.nlp.pipeline;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the histograms of {@link PipelineMetrics}, and what a pipeline
+ * records in them.
+ */
+public class PipelineMetricsTest extends TestCase {
+
+  public void testHistogram() {
+    PipelineMetrics.Histogram histogram = new PipelineMetrics.Histogram(new long[] { 10, 20, 50 });
+    assertEquals(0.0, histogram.quantile(0.5));
+    for (int i = 1; i <= 100; ++i) {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.count());
+    assertEquals(5050, histogram.sum());
+    assertEquals(1, histogram.min());
+    assertEquals(100, histogram.max());
+    long[] counts = histogram.counts();
+    assertEquals(10, counts[0]);
+    assertEquals(10, counts[1]);
+    assertEquals(30, counts[2]);
+    assertEquals(50, counts[3]);
+    // within the precision of the buckets
+    assertEquals(50.0, histogram.quantile(0.5), 1e-9);
+    assertEquals(15.0, histogram.quantile(0.15), 1e-9);
+    assertEquals(99.0, histogram.quantile(0.99), 1e-9);
+    assertEquals(100.0, histogram.quantile(1.0), 1e-9);
+  }
+
+  public void testPipeline() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    PipelineMetrics metrics = new PipelineMetrics("test");
+    pipeline.setMetrics(metrics);
+
+    pipeline.annotate(new Annotation("This is a test. So is this one here."));
+    pipeline.annotate(new Annotation("A third sentence."));
+
+    List<PipelineMetrics.AnnotatorMetrics> annotators = metrics.annotators();
+    assertEquals(2, annotators.size());
+    assertEquals("TokenizerAnnotator", annotators.get(0).getName());
+    assertEquals("WordsToSentencesAnnotator", annotators.get(1).getName());
+    for (PipelineMetrics.AnnotatorMetrics annotator : annotators) {
+      assertEquals(2, annotator.getDocuments());
+      assertEquals(15, annotator.getTokens());
+      assertEquals(3, annotator.getSentences());
+    }
+    assertEquals(2, metrics.documents().getDocuments());
+    assertEquals(3, metrics.sentenceLengths().count());
+    assertEquals(6, metrics.sentenceLengths().max());
+
+    List<PipelineMetrics.DocumentSample> slowest = metrics.slowestDocuments();
+    assertEquals(2, slowest.size());
+    assertTrue(slowest.get(0).nanos >= slowest.get(1).nanos);
+
+    String prometheus = metrics.toPrometheus();
+    assertTrue(prometheus.contains("corenlp_annotator_latency_seconds_count{pipeline=\"test\",annotator=\"TokenizerAnnotator\"} 2\n"));
+    assertTrue(prometheus.contains("corenlp_annotator_latency_seconds_bucket{pipeline=\"test\",annotator=\"pipeline\",le=\"+Inf\"} 2\n"));
+    assertTrue(prometheus.contains("corenlp_annotator_tokens_total{pipeline=\"test\",annotator=\"WordsToSentencesAnnotator\"} 15\n"));
+    assertTrue(prometheus.contains("corenlp_sentence_tokens_count{pipeline=\"test\"} 3\n"));
+    assertTrue(metrics.toString().contains("Slowest documents"));
+  }
+
+  /** A second PipelineMetrics of the same name neither replaces nor removes the first one's MXBeans */
+  public void testSameName() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName("edu.stanford.nlp:type=AnnotatorMetrics,pipeline=\"duplicate\",annotator=\"pipeline\"");
+    PipelineMetrics first = new PipelineMetrics("duplicate");
+    PipelineMetrics second = new PipelineMetrics("duplicate");
+    first.registerMBeans();
+    try {
+      second.registerMBeans();
+      second.unregisterMBeans();
+      assertTrue(server.isRegistered(objectName));
+    } finally {
+      first.unregisterMBeans();
+    }
+    assertFalse(server.isRegistered(objectName));
+  }
+
+}
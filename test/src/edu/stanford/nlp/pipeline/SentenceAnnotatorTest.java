@@ -0,0 +1,157 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that sentence annotators scheduled on the shared sentence pool
+ * process every sentence exactly once, and that the annotators after them
+ * only run once all of the sentences are done.
+ */
+public class SentenceAnnotatorTest extends TestCase {
+
+  /** Marks each sentence with the number of times it has been seen */
+  static class CountingAnnotator extends SentenceAnnotator {
+    final AtomicInteger calls = new AtomicInteger();
+    /** The pools the sentences were annotated in */
+    final Set<ForkJoinPool> pools = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    @Override
+    protected int nThreads() {
+      return 1;
+    }
+
+    @Override
+    protected long maxTime() {
+      return 0;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      calls.incrementAndGet();
+      ForkJoinPool pool = ForkJoinTask.getPool();
+      if (pool != null) {
+        pools.add(pool);
+      }
+      Integer seen = sentence.get(CoreAnnotations.SentenceIndexAnnotation.class);
+      sentence.set(CoreAnnotations.SentenceIndexAnnotation.class, seen == null ? 1 : seen + 1);
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+      fail("No sentence should fail without a time limit");
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  /** Verifies that the sentence annotator has finished with every sentence */
+  static class BarrierAnnotator implements Annotator {
+    int checked = 0;
+
+    @Override
+    public void annotate(Annotation annotation) {
+      for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+        assertEquals(Integer.valueOf(1), sentence.get(CoreAnnotations.SentenceIndexAnnotation.class));
+        ++checked;
+      }
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static Annotation buildDocument(int numSentences) {
+    Annotation annotation = new Annotation("");
+    List<CoreMap> sentences = new ArrayList<>();
+    for (int i = 0; i < numSentences; ++i) {
+      sentences.add(new ArrayCoreMap());
+    }
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return annotation;
+  }
+
+  public void testSentencePool() {
+    CountingAnnotator counting = new CountingAnnotator();
+    BarrierAnnotator barrier = new BarrierAnnotator();
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(counting);
+    pipeline.addAnnotator(barrier);
+    pipeline.setSentenceThreads(4);
+
+    pipeline.annotate(buildDocument(1000));
+    assertEquals(1000, counting.calls.get());
+    assertEquals(1000, barrier.checked);
+
+    pipeline.annotate(buildDocument(0));
+    assertEquals(1000, counting.calls.get());
+  }
+
+  public void testNoSentencePool() {
+    CountingAnnotator counting = new CountingAnnotator();
+    BarrierAnnotator barrier = new BarrierAnnotator();
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(counting);
+    pipeline.addAnnotator(barrier);
+    pipeline.setSentenceThreads(0);
+
+    pipeline.annotate(buildDocument(10));
+    assertEquals(10, counting.calls.get());
+    assertEquals(10, barrier.checked);
+  }
+
+  public void testReplaceSentencePool() {
+    CountingAnnotator counting = new CountingAnnotator();
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(counting);
+    pipeline.setSentenceThreads(4);
+    pipeline.annotate(buildDocument(100));
+    assertEquals(1, counting.pools.size());
+    ForkJoinPool first = counting.pools.iterator().next();
+    assertFalse(first.isShutdown());
+
+    pipeline.setSentenceThreads(2);
+    assertTrue(first.isShutdown());
+    counting.pools.clear();
+    pipeline.annotate(buildDocument(100));
+    assertEquals(200, counting.calls.get());
+    assertEquals(1, counting.pools.size());
+    ForkJoinPool second = counting.pools.iterator().next();
+    assertNotSame(first, second);
+
+    pipeline.closeSentencePool();
+    assertTrue(second.isShutdown());
+    counting.pools.clear();
+    pipeline.annotate(buildDocument(100));
+    assertEquals(300, counting.calls.get());
+    assertTrue(counting.pools.isEmpty());
+  }
+
+}
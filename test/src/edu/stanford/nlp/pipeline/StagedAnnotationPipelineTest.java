@@ -0,0 +1,144 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+/**
+ * Runs documents through a small staged pipeline and checks that each
+ * one comes out once, with every stage applied in order.
+ */
+public class StagedAnnotationPipelineTest extends TestCase {
+
+  /** Appends its name to the text of the document */
+  static class AppendingAnnotator implements Annotator {
+    final String name;
+
+    AppendingAnnotator(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+      if (text.startsWith("bad") && name.equals("b")) {
+        throw new IllegalArgumentException(text);
+      }
+      annotation.set(CoreAnnotations.TextAnnotation.class, text + name);
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static StagedAnnotationPipeline buildPipeline() {
+    List<Annotator> annotators = Arrays.asList(new AppendingAnnotator("a"), new AppendingAnnotator("b"), new AppendingAnnotator("c"));
+    return new StagedAnnotationPipeline(annotators, new int[] { 1, 3, 2 }, 2);
+  }
+
+  public void testAllStagesRun() {
+    StagedAnnotationPipeline pipeline = buildPipeline();
+    for (int run = 1; run <= 2; ++run) {
+      List<Annotation> inputs = new ArrayList<>();
+      for (int i = 0; i < 200; ++i) {
+        inputs.add(new Annotation(i + ":"));
+      }
+      List<Annotation> outputs = Collections.synchronizedList(new ArrayList<>());
+      pipeline.annotate(inputs.iterator(), outputs::add);
+
+      assertEquals(200, outputs.size());
+      for (Annotation input : inputs) {
+        assertTrue(outputs.contains(input));
+        assertTrue(input.get(CoreAnnotations.TextAnnotation.class).endsWith(":abc"));
+      }
+      for (StagedAnnotationPipeline.Stage stage : pipeline.stages()) {
+        assertEquals(200 * run, stage.processed());
+        assertEquals(0, stage.queueDepth());
+        assertTrue(stage.maxQueueDepth() <= 2);
+      }
+    }
+  }
+
+  public void testExceptionsSkipLaterStages() {
+    StagedAnnotationPipeline pipeline = buildPipeline();
+    Annotation good = new Annotation("good:");
+    Annotation bad = new Annotation("bad:");
+    List<Annotation> outputs = Collections.synchronizedList(new ArrayList<>());
+    pipeline.annotate(Arrays.asList(good, bad).iterator(), outputs::add);
+
+    assertEquals(2, outputs.size());
+    assertEquals("good:abc", good.get(CoreAnnotations.TextAnnotation.class));
+    assertNull(good.get(CoreAnnotations.ExceptionAnnotation.class));
+    assertEquals("bad:a", bad.get(CoreAnnotations.TextAnnotation.class));
+    assertTrue(bad.get(CoreAnnotations.ExceptionAnnotation.class) instanceof IllegalArgumentException);
+  }
+
+  public void testCallbackFailure() {
+    StagedAnnotationPipeline pipeline = buildPipeline();
+    List<Annotation> inputs = new ArrayList<>();
+    for (int i = 0; i < 50; ++i) {
+      inputs.add(new Annotation(i + ":"));
+    }
+    AtomicInteger calls = new AtomicInteger();
+    try {
+      pipeline.annotate(inputs.iterator(), annotation -> {
+        calls.incrementAndGet();
+        throw new IllegalStateException("callback");
+      });
+      fail("Expected the callback's exception");
+    } catch (IllegalStateException e) {
+      assertEquals("callback", e.getMessage());
+    }
+    assertEquals(50, calls.get());
+    // the pipeline is left ready for more documents
+    List<Annotation> outputs = Collections.synchronizedList(new ArrayList<>());
+    pipeline.annotate(Collections.singletonList(new Annotation("x:")).iterator(), outputs::add);
+    assertEquals(1, outputs.size());
+  }
+
+  public void testInputFailure() {
+    StagedAnnotationPipeline pipeline = buildPipeline();
+    List<Annotation> outputs = Collections.synchronizedList(new ArrayList<>());
+    Iterator<Annotation> inputs = new Iterator<Annotation>() {
+      int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Annotation next() {
+        if (i == 20) {
+          throw new IllegalStateException("input");
+        }
+        return new Annotation(i++ + ":");
+      }
+    };
+    int threads = Thread.activeCount();
+    try {
+      pipeline.annotate(inputs, outputs::add);
+      fail("Expected the iterator's exception");
+    } catch (IllegalStateException e) {
+      assertEquals("input", e.getMessage());
+    }
+    assertEquals(20, outputs.size());
+    assertTrue(Thread.activeCount() <= threads);
+  }
+
+}
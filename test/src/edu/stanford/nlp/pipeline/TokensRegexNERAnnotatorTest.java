@@ -0,0 +1,131 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checks that entries which are sequences of words, found by the literal
+ * matcher, label the same tokens as the same entries written as TokensRegex
+ * patterns.
+ */
+public class TokensRegexNERAnnotatorTest extends TestCase {
+
+  private static final String REGEX_ANNOTATOR_NAME = "tokensregexner";
+
+  private static final String[][] PATTERNS = {
+    { "New York", "CITY" },
+    { "New York City", "CITY", "", "2" },
+    { "York", "PERSON" },
+    { "Acme Corp", "ORGANIZATION" },
+    { "Corp", "MISC", "", "1" },
+    { "the the", "FOO" },
+    { "[0-9]+", "NUMBER" },
+    { "( /York/ /[A-Z]+/ )", "BAR" },
+    { "runners", "RUNNER", "", "0", "0" },
+  };
+
+  private static final String TEXT =
+      "the the the New York City marathon and New York , Acme Corp , ACME CORP and 42 runners from York NY";
+
+  private static TokensRegexNERAnnotator annotator(boolean asTokensRegex, boolean ignoreCase, String cache) throws Exception {
+    File tempFile = File.createTempFile("tokensregexnertest.patterns", "txt");
+    tempFile.deleteOnExit();
+    PrintWriter pw = IOUtils.getPrintWriter(tempFile.getAbsolutePath());
+    for (String[] p : PATTERNS) {
+      String[] fields = p.clone();
+      if (asTokensRegex && !fields[0].startsWith("(") && !fields[0].contains("[")) {
+        fields[0] = "( /" + StringUtils.join(fields[0].split(" "), "/ /") + "/ )";
+      }
+      pw.println(StringUtils.join(fields, "\t"));
+    }
+    pw.close();
+    Properties props = new Properties();
+    props.setProperty(REGEX_ANNOTATOR_NAME + ".mapping", tempFile.getAbsolutePath());
+    props.setProperty(REGEX_ANNOTATOR_NAME + ".ignorecase", String.valueOf(ignoreCase));
+    if (cache != null) {
+      props.setProperty(REGEX_ANNOTATOR_NAME + ".literalCache", cache);
+    }
+    return new TokensRegexNERAnnotator(REGEX_ANNOTATOR_NAME, props);
+  }
+
+  private static List<String> annotate(TokensRegexNERAnnotator annotator) {
+    List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+    for (String word : TEXT.split(" ")) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      token.setValue(word);
+      tokens.add(token);
+    }
+    Annotation annotation = new Annotation(TEXT);
+    annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    annotator.annotate(annotation);
+    List<String> tags = new ArrayList<String>();
+    for (CoreLabel token : tokens) {
+      tags.add(token.ner());
+    }
+    return tags;
+  }
+
+  public void testSameAsTokensRegex() throws Exception {
+    List<String> expected = annotate(annotator(true, false, null));
+    List<String> actual = annotate(annotator(false, false, null));
+    assertEquals(expected, actual);
+    assertEquals("FOO", actual.get(0));
+    assertEquals("CITY", actual.get(5));
+    // the higher priority of Corp beats the longer Acme Corp
+    assertEquals(null, actual.get(11));
+    assertEquals("MISC", actual.get(12));
+    assertEquals(null, actual.get(15));
+  }
+
+  public void testSameAsTokensRegexIgnoreCase() throws Exception {
+    List<String> expected = annotate(annotator(true, true, null));
+    List<String> actual = annotate(annotator(false, true, null));
+    assertEquals(expected, actual);
+    assertEquals("MISC", actual.get(15));
+  }
+
+  public void testLiteralCache() throws Exception {
+    File cache = File.createTempFile("tokensregexnertest", ".ser");
+    cache.delete();
+    cache.deleteOnExit();
+    List<String> expected = annotate(annotator(false, true, null));
+    assertEquals(expected, annotate(annotator(false, true, cache.getPath())));
+    assertTrue(cache.exists());
+    assertEquals(expected, annotate(annotator(false, true, cache.getPath())));
+    // compiled with different case folding, so not used
+    assertEquals(annotate(annotator(false, false, null)), annotate(annotator(false, false, cache.getPath())));
+  }
+
+  /** Entries whose words have the same hash codes are still told apart */
+  public void testLiteralDigest() {
+    // "Aa" and "BB" have the same String.hashCode
+    Map<List<String>, int[]> literals1 = new LinkedHashMap<List<String>, int[]>();
+    literals1.put(Arrays.asList("New", "Aa"), new int[] { 0 });
+    Map<List<String>, int[]> literals2 = new LinkedHashMap<List<String>, int[]>();
+    literals2.put(Arrays.asList("New", "BB"), new int[] { 0 });
+    assertEquals(literals1.keySet().hashCode(), literals2.keySet().hashCode());
+    assertFalse(Arrays.equals(TokensRegexNERAnnotator.literalDigest(literals1), TokensRegexNERAnnotator.literalDigest(literals2)));
+
+    Map<List<String>, int[]> literals3 = new LinkedHashMap<List<String>, int[]>();
+    literals3.put(Arrays.asList("New", "Aa"), new int[] { 0 });
+    assertTrue(Arrays.equals(TokensRegexNERAnnotator.literalDigest(literals1), TokensRegexNERAnnotator.literalDigest(literals3)));
+    // word boundaries are part of the digest
+    Map<List<String>, int[]> literals4 = new LinkedHashMap<List<String>, int[]>();
+    literals4.put(Arrays.asList("NewAa"), new int[] { 0 });
+    assertFalse(Arrays.equals(TokensRegexNERAnnotator.literalDigest(literals1), TokensRegexNERAnnotator.literalDigest(literals4)));
+  }
+
+}
@@ -0,0 +1,102 @@
+package edu.stanford.nlp.semgraph;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.trees.*;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * Checks that a CompactSemanticGraph reads the same as the SemanticGraph
+ * it was made from.
+ */
+public class CompactSemanticGraphTest extends TestCase {
+
+  private static SemanticGraph fromTree(String s, SemanticGraphFactory.Mode mode) throws IOException {
+    Tree tree = new PennTreeReader(new StringReader(s), new LabeledScoredTreeFactory()).readTree();
+    return SemanticGraphFactory.makeFromTree(tree, mode, GrammaticalStructure.Extras.MAXIMAL, true);
+  }
+
+  private static List<SemanticGraph> graphs() throws IOException {
+    String tree = "(ROOT (S (NP (DT The) (NN chimney) (NNS sweeps)) (VP (VBP do) (RB not) (VP (VB like) (S (VP (VBG working) (PP (IN on) (NP (DT an) (JJ empty) (NN stomach))))))) (. .)))";
+    String tree2 = "(ROOT (S (NP (NNP Bill)) (VP (VBD saw) (NP (NP (DT the) (NN dog)) (CC and) (NP (DT the) (NN cat))) (SBAR (WHNP (WDT that)) (S (VP (VBD ran) (PP (IN to) (NP (PRP him))))))) (. .)))";
+    List<SemanticGraph> graphs = new ArrayList<>();
+    graphs.add(SemanticGraph.valueOf("[ate subj>Bill dobj>[muffins compound>blueberry]]"));
+    graphs.add(fromTree(tree, SemanticGraphFactory.Mode.BASIC));
+    graphs.add(fromTree(tree2, SemanticGraphFactory.Mode.CCPROCESSED));
+    graphs.add(new SemanticGraph());
+    return graphs;
+  }
+
+  private static <T extends Comparable<? super T>> List<T> sorted(Collection<T> items) {
+    List<T> list = new ArrayList<>(items);
+    Collections.sort(list);
+    return list;
+  }
+
+  private static void checkSame(SemanticGraph sg, CompactSemanticGraph compact) {
+    assertEquals(sg.size(), compact.size());
+    assertEquals(sg.edgeCount(), compact.edgeCount());
+    assertEquals(sg.vertexListSorted(), compact.vertexListSorted());
+    assertEquals(sg.edgeListSorted(), compact.edgeListSorted());
+    assertEquals(sorted(sg.getRoots()), compact.getRoots());
+    for (IndexedWord vertex : sg.vertexSet()) {
+      assertTrue(compact.containsVertex(vertex));
+      assertEquals(vertex, compact.vertex(compact.vertexNumber(vertex)));
+      assertEquals(sg.getChildList(vertex), compact.getChildList(vertex));
+      assertEquals(sg.getParentList(vertex), compact.getParentList(vertex));
+      assertEquals(sg.getChildren(vertex), compact.getChildren(vertex));
+      assertEquals(sg.getParents(vertex), compact.getParents(vertex));
+      assertEquals(sg.outDegree(vertex), compact.outDegree(vertex));
+      assertEquals(sg.inDegree(vertex), compact.inDegree(vertex));
+      assertEquals(sorted(sg.outgoingEdgeList(vertex)), sorted(compact.outgoingEdgeList(vertex)));
+      assertEquals(sorted(sg.incomingEdgeList(vertex)), sorted(compact.incomingEdgeList(vertex)));
+      assertEquals(sg.descendants(vertex), compact.descendants(vertex));
+      assertEquals(sg.getPathToRoot(vertex), compact.getPathToRoot(vertex));
+      assertEquals(sg.getParent(vertex), compact.getParent(vertex));
+      assertEquals(sg.hasChildren(vertex), compact.hasChildren(vertex));
+      for (IndexedWord child : sg.getChildren(vertex)) {
+        assertEquals(sg.reln(vertex, child), compact.reln(vertex, child));
+        assertEquals(sg.getEdge(vertex, child).getRelation(), compact.getEdge(vertex, child).getRelation());
+      }
+      assertNull(compact.getEdge(vertex, vertex));
+      assertEquals(vertex, compact.getNodeByIndex(vertex.index()));
+    }
+  }
+
+  public void testSameGraph() throws IOException {
+    for (SemanticGraph sg : graphs()) {
+      CompactSemanticGraph compact = new CompactSemanticGraph(sg);
+      checkSame(sg, compact);
+      SemanticGraph back = compact.toSemanticGraph();
+      assertEquals(sg.toString(), back.toString());
+      checkSame(back, compact);
+    }
+  }
+
+  public void testEdgeArrays() {
+    SemanticGraph sg = SemanticGraph.valueOf("[ate subj>Bill dobj>[muffins compound>blueberry]]");
+    sg.addComment("# sent_id = 1");
+    CompactSemanticGraph compact = new CompactSemanticGraph(sg);
+    int ate = compact.vertexNumber(sg.getFirstRoot());
+    assertEquals(2, compact.outDegree(ate));
+    int muffins = -1;
+    for (int e = compact.firstOutEdge(ate); e < compact.endOutEdge(ate); e++) {
+      assertEquals(ate, compact.edgeSource(e));
+      if (compact.edgeRelation(e).toString().equals("dobj")) {
+        muffins = compact.edgeTarget(e);
+      }
+    }
+    assertEquals("muffins", compact.vertex(muffins).word());
+    assertEquals(1, compact.inDegree(muffins));
+    assertEquals(ate, compact.edgeSource(compact.inEdge(muffins, 0)));
+    assertEquals(Double.NEGATIVE_INFINITY, compact.edgeWeight(0));
+    assertFalse(compact.isExtra(0));
+    assertEquals(Collections.singletonList("# sent_id = 1"), compact.getComments());
+    assertEquals(Collections.singletonList("# sent_id = 1"), compact.toSemanticGraph().getComments());
+    assertEquals(-1, compact.vertexNumber(new IndexedWord()));
+  }
+
+}
@@ -0,0 +1,102 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Checks that a SemgrexBatchMatcher finds the same matches as matching
+ * each of its patterns on its own.
+ */
+public class SemgrexBatchMatcherTest extends TestCase {
+
+  private static final String[] GRAPHS = {
+    "[ate/VBD subj>Bill/NNP dobj>[muffins/NNS compound>blueberry/NN]]",
+    "[loved/VBD nsubj>Hughes/NNP dobj>[wife/NN poss>his/PRP$ appos>Gracia/NNP] conj_and>[obsessed/JJ cop>was/VBD advmod>absolutely/RB]]",
+    "[married/VBN nsubjpass>Hughes/NNP auxpass>was/VBD prep_to>Gracia/NNP]",
+    "[Ate/VBD subj>[Bill/NNP compound>Big/NNP] dobj>[muffins/NNS amod>blue/JJ]]",
+  };
+
+  private static final String[] PATTERNS = {
+    "{tag:/VB.*/}=verb >/nsubj.*/ {}=subj",
+    "{tag:/VB.*/}=verb >dobj ({tag:NNS} >compound {}=mod)",
+    "{word:ate}",
+    "{word:ate;tag:VBD} >subj {tag:NNP}=subj",
+    "{}=gov ![>det {}] & > {word:/^(?!his).*$/}=dep",
+    "{tag:NNP}=name < {tag:/VB.*/}",
+    "!{tag:/VB.*/}",
+    "{$}",
+    "{word:Gracia}=g : {word:Hughes}=h",
+    "{tag:/VB.*/}=verb >> {word:/Gracia|blueberry/}=x",
+    "{tag:/NN.*/} ?> {tag:/JJ|NNP/}=mod",
+    "{tag:NNP} [>compound {} | >poss {}]",
+    "{word:/(?i)BILL/}",
+    "{missing:value}",
+  };
+
+  private static List<String> expected(List<SemgrexPattern> patterns, SemanticGraph sg, boolean ignoreCase) {
+    List<String> matches = new ArrayList<>();
+    for (SemgrexPattern pattern : patterns) {
+      SemgrexMatcher matcher = pattern.matcher(sg, ignoreCase);
+      while (matcher.find()) {
+        matches.add(match(pattern, matcher));
+      }
+    }
+    return matches;
+  }
+
+  private static String match(SemgrexPattern pattern, SemgrexMatcher matcher) {
+    StringBuilder sb = new StringBuilder(pattern.toString()).append(' ').append(matcher.getMatch());
+    for (String name : new TreeSet<>(matcher.getNodeNames())) {
+      sb.append(' ').append(name).append('=').append(matcher.getNode(name));
+    }
+    return sb.toString();
+  }
+
+  private static List<SemgrexPattern> compile(String[] patterns) {
+    List<SemgrexPattern> compiled = new ArrayList<>();
+    for (String pattern : patterns) {
+      compiled.add(SemgrexPattern.compile(pattern));
+    }
+    return compiled;
+  }
+
+  public void testSameMatches() {
+    List<SemgrexPattern> patterns = compile(PATTERNS);
+    List<List<String>> expected = new ArrayList<>();
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      for (String graph : GRAPHS) {
+        expected.add(expected(patterns, SemanticGraph.valueOf(graph), ignoreCase));
+      }
+    }
+    SemgrexBatchMatcher batch = new SemgrexBatchMatcher(patterns);
+    int i = 0;
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      for (String graph : GRAPHS) {
+        List<String> actual = new ArrayList<>();
+        batch.findAll(SemanticGraph.valueOf(graph), ignoreCase, (pattern, matcher) -> actual.add(match(pattern, matcher)));
+        assertEquals(graph, expected.get(i++), actual);
+      }
+    }
+    // the patterns still match on their own, outside the batch
+    SemanticGraph sg = SemanticGraph.valueOf(GRAPHS[0]);
+    assertEquals(expected.get(0), expected(patterns, sg, false));
+  }
+
+  public void testSharedPredicates() {
+    List<SemgrexPattern> patterns = compile(new String[] {
+      "{tag:/VB.*/}=verb >subj {}",
+      "{tag:/VB.*/} >dobj {}=obj",
+      "{} >dobj {tag:NNS}",
+      "{tag:JJ}",
+    });
+    SemgrexBatchMatcher batch = new SemgrexBatchMatcher(patterns);
+    // {tag:/VB.*/}, {}, {tag:NNS} and {tag:JJ}
+    assertEquals(4, batch.numPredicates());
+    SemanticGraph sg = SemanticGraph.valueOf(GRAPHS[0]);
+    assertEquals(patterns.subList(0, 3), batch.findMatchingPatterns(sg));
+    assertEquals(patterns, batch.findMatchingPatterns(SemanticGraph.valueOf(GRAPHS[3])));
+  }
+
+}
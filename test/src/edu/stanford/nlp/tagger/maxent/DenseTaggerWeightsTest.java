@@ -0,0 +1,90 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.Sentence;
+import edu.stanford.nlp.ling.TaggedWord;
+
+/**
+ * Checks that tagging with the dense weights gives the same tags as
+ * tagging with the feature lookups, with tag extractors on both sides of
+ * the current word.
+ */
+public class DenseTaggerWeightsTest extends TestCase {
+
+  private static final String TRAIN =
+      "the/DT dog/NN saw/VBD a/DT big/JJ cat/NN ./.\n" +
+      "a/DT man/NN bought/VBD the/DT old/JJ company/NN in/IN the/DT city/NN ./.\n" +
+      "shares/NNS fell/VBD sharply/RB today/NN ./.\n" +
+      "the/DT price/NN rose/VBD ./.\n" +
+      "every/DT report/NN said/VBD the/DT market/NN fell/VBD ./.\n" +
+      "this/DT year/NN the/DT new/JJ company/NN sold/VBD shares/NNS ./.\n" +
+      "the/DT cat/NN liked/VBD the/DT red/JJ market/NN for/IN a/DT year/NN ./.\n" +
+      "prices/NNS rose/VBD quickly/RB in/IN the/DT city/NN ./.\n";
+
+  private static final String[] TEST = {
+    "the dog bought a red company .",
+    "every man liked the small market in a city .",
+    "shares of the Globe rose sharply on Tuesday .",
+    "a cat sold prices quickly today .",
+  };
+
+  private static String model;
+
+  @Override
+  public void setUp() throws Exception {
+    synchronized (DenseTaggerWeightsTest.class) {
+      if (model != null) {
+        return;
+      }
+      File trainFile = File.createTempFile("tagger", ".txt");
+      trainFile.deleteOnExit();
+      IOUtils.writeStringToFile(TRAIN, trainFile.getPath(), "utf-8");
+      File modelFile = File.createTempFile("tagger", ".tagger");
+      modelFile.deleteOnExit();
+      new File(modelFile.getPath() + ".props").deleteOnExit();
+      MaxentTagger.main(new String[] {
+          "-model", modelFile.getPath(), "-trainFile", trainFile.getPath(),
+          "-arch", "bidirectional,threeTags(-2,-1,1),naacl2003unknowns,suffix(3)",
+          "-iterations", "30" });
+      model = modelFile.getPath();
+    }
+  }
+
+  private static MaxentTagger tagger(boolean denseScoring, String approximate) {
+    Properties props = new Properties();
+    props.setProperty("denseScoring", Boolean.toString(denseScoring));
+    props.setProperty("approximate", approximate);
+    return new MaxentTagger(model, props, false);
+  }
+
+  private static void checkSameTags(String approximate) throws IOException {
+    MaxentTagger expected = tagger(false, approximate);
+    MaxentTagger actual = tagger(true, approximate);
+    assertNull(expected.denseWeights());
+    assertNotNull(actual.denseWeights());
+    for (String text : TEST) {
+      List<TaggedWord> expectedTags = expected.tagSentence(Sentence.toWordList(text.split(" ")));
+      List<TaggedWord> actualTags = actual.tagSentence(Sentence.toWordList(text.split(" ")));
+      assertEquals(expectedTags.size(), actualTags.size());
+      for (int i = 0; i < expectedTags.size(); i++) {
+        assertEquals(expectedTags.get(i).tag(), actualTags.get(i).tag());
+      }
+    }
+  }
+
+  public void testSameTags() throws IOException {
+    checkSameTags("false");
+  }
+
+  public void testSameTagsApproximate() throws IOException {
+    checkSameTags("true");
+  }
+
+}
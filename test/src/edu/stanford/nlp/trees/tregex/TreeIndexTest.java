@@ -0,0 +1,177 @@
+package edu.stanford.nlp.trees.tregex;
+
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Checks that matching trees through a TreeIndex finds the same matches
+ * as matching every tree, while trying fewer trees.
+ */
+public class TreeIndexTest extends TestCase {
+
+  private static final String[] CATEGORIES = { "S", "NP", "NP-SBJ", "VP", "PP", "DT", "NN", "NNS", "VBD", "IN", "JJ" };
+  private static final String[] WORDS = { "the", "cat", "cats", "sat", "on", "mat", "big", "of", "dog", "ran" };
+
+  private static final String[] PATTERNS = {
+    "NP < DT",
+    "NP << cat",
+    "@NP < (NN < dog)",
+    "/^NN/ < /^ca/",
+    "VP < (PP < IN) < VBD",
+    "PP !< IN",
+    "S < NP ?< VP",
+    "NP <1 JJ <2 NN",
+    "NP=a $+ VP=b : (NN < mat)",
+    "NP <<, the | VP <<- ran",
+    "__ < (NN < cat) < (NNS < cats)",
+    "/^(NP|VP)$/ <: __",
+    "NN|NNS < /(.+)/#1%w .. (__ < /(.+)/#1%w)",
+    "NP=x < (NN=y < ~x)",
+    "!VP < NN",
+    "__ << big << sat",
+    "JJ",
+    "frog",
+  };
+
+  private static Tree randomTree(TreeFactory tf, Random random, int depth) {
+    if (depth == 0 || random.nextInt(4) == 0) {
+      String tag = CATEGORIES[5 + random.nextInt(CATEGORIES.length - 5)];
+      return tf.newTreeNode(tag, Collections.singletonList(tf.newLeaf(WORDS[random.nextInt(WORDS.length)])));
+    }
+    List<Tree> children = new ArrayList<Tree>();
+    int numChildren = 1 + random.nextInt(3);
+    for (int i = 0; i < numChildren; i++) {
+      children.add(randomTree(tf, random, depth - 1));
+    }
+    return tf.newTreeNode(CATEGORIES[random.nextInt(5)], children);
+  }
+
+  private static List<Tree> randomTrees(Random random, int n) {
+    TreeFactory tf = new LabeledScoredTreeFactory();
+    List<Tree> trees = new ArrayList<Tree>();
+    for (int i = 0; i < n; i++) {
+      trees.add(randomTree(tf, random, 5));
+    }
+    return trees;
+  }
+
+  private static void addMatches(List<String> matches, int id, TregexMatcher matcher) {
+    while (matcher.find()) {
+      matches.add(id + " " + matcher.getMatch().toString());
+    }
+  }
+
+  private static File indexDir() throws IOException {
+    File dir = File.createTempFile("treeindex", ".dir");
+    assertTrue(dir.delete());
+    return dir;
+  }
+
+  private static void delete(File dir) {
+    for (File file : dir.listFiles()) {
+      assertTrue(file.delete());
+    }
+    assertTrue(dir.delete());
+  }
+
+  public void testSameMatches() throws IOException {
+    Random random = new Random(3);
+    List<Tree> trees = randomTrees(random, 300);
+    File dir = indexDir();
+    try {
+      TreeIndex index = new TreeIndex(dir);
+      index.addAll(trees.subList(0, 200));
+      index.addAll(trees.subList(200, 300));
+      index.close();
+      // the trees added in both batches are there when it is opened again
+      index = new TreeIndex(dir);
+      assertEquals(trees.size(), index.size());
+      assertEquals(trees.get(250).toString(), index.getTree(250).toString());
+      for (String p : PATTERNS) {
+        TregexPattern pattern = TregexPattern.compile(p);
+        List<String> expected = new ArrayList<String>();
+        for (int id = 0; id < trees.size(); id++) {
+          addMatches(expected, id, pattern.matcher(trees.get(id)));
+        }
+        List<String> actual = new ArrayList<String>();
+        int[] candidates = index.candidateTrees(pattern);
+        for (int id : candidates) {
+          addMatches(actual, id, pattern.matcher(index, id));
+        }
+        assertEquals(p, expected, actual);
+      }
+      index.close();
+    } finally {
+      delete(dir);
+    }
+  }
+
+  public void testPruning() throws IOException {
+    TreeFactory tf = new LabeledScoredTreeFactory();
+    File dir = indexDir();
+    try (TreeIndex index = new TreeIndex(dir)) {
+      index.addAll(Arrays.asList(TregexTest.treesFromString(
+          "(S (NP (DT the) (NN cat)) (VP (VBD sat)))",
+          "(S (NP (NN dog)) (VP (VBD sat) (PP (IN on) (NP (DT the) (NN mat)))))",
+          "(S (NP (DT the) (NN dog)) (VP (VBD ran)))")));
+      assertTrue(Arrays.equals(new int[] { 0 }, index.candidateTrees(TregexPattern.compile("NP < (NN < cat)"))));
+      assertTrue(Arrays.equals(new int[] { 1, 2 }, index.candidateTrees(TregexPattern.compile("NP << dog"))));
+      // the NP under the PP has a DT, but no dog
+      assertTrue(Arrays.equals(new int[] { 2 }, index.candidateTrees(TregexPattern.compile("NP < DT << dog"))));
+      assertEquals(0, index.candidateTrees(TregexPattern.compile("VP < (VBD < cat)")).length);
+      assertEquals(3, index.candidateTrees(TregexPattern.compile("__ !< DT")).length);
+      TregexMatcher matcher = TregexPattern.compile("NP < DT").matcher(index, 1);
+      assertTrue(matcher.find());
+      assertEquals("(NP (DT the) (NN mat))", matcher.getMatch().toString());
+      assertFalse(matcher.find());
+      index.addAll(Collections.singletonList(tf.newTreeNode("NP", Collections.singletonList(tf.newLeaf("cat")))));
+      assertEquals(4, index.size());
+      assertTrue(Arrays.equals(new int[] { 0, 3 }, index.candidateTrees(TregexPattern.compile("NP << cat"))));
+    } finally {
+      delete(dir);
+    }
+  }
+
+  /** Values of any length are kept, and tests passing many values find the same trees */
+  public void testManyValues() throws IOException {
+    TreeFactory tf = new LabeledScoredTreeFactory();
+    StringBuilder longWord = new StringBuilder();
+    for (int i = 0; i < 30000; i++) {
+      longWord.append("\u00e9");
+    }
+    List<Tree> trees = new ArrayList<Tree>();
+    for (int i = 0; i < 100; i++) {
+      String word = (i == 50) ? longWord.toString() : "w" + i;
+      trees.add(tf.newTreeNode("S", Arrays.asList(
+          tf.newTreeNode((i % 3 == 0) ? "NP" : "VP", Collections.singletonList(tf.newLeaf(word))),
+          tf.newTreeNode("X", Collections.singletonList(tf.newLeaf("x"))))));
+    }
+    File dir = indexDir();
+    try (TreeIndex index = new TreeIndex(dir)) {
+      index.addAll(trees);
+      assertEquals(longWord.toString(), index.getTree(50).getChild(0).getChild(0).value());
+      assertTrue(Arrays.equals(new int[] { 50 }, index.candidateTrees(TregexPattern.compile("S << " + longWord))));
+      for (String p : new String[] { "NP < /^w[0-9]*5$/", "__ < /^w/", "VP < /^w[0-9]$/" }) {
+        TregexPattern pattern = TregexPattern.compile(p);
+        List<String> expected = new ArrayList<String>();
+        for (int id = 0; id < trees.size(); id++) {
+          addMatches(expected, id, pattern.matcher(trees.get(id)));
+        }
+        List<String> actual = new ArrayList<String>();
+        for (int id : index.candidateTrees(pattern)) {
+          addMatches(actual, id, pattern.matcher(index, id));
+        }
+        assertEquals(p, expected, actual);
+      }
+    } finally {
+      delete(dir);
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes a small index in the mapped format and checks that reading it
+ * back gives the same entries in the same order.
+ */
+public class MappedStringIndexTest extends TestCase {
+
+  private HashIndex<String> original;
+  private MappedStringIndex mapped;
+
+  @Override
+  protected void setUp() throws IOException {
+    original = new HashIndex<String>();
+    original.addAll(Arrays.asList("The", "Beast", "", "Schöne", "WORD-the|C", "東京", "Th"));
+    for (int i = 0; i < 1000; ++i) {
+      original.add("feature-" + i);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(12345);  // the index does not have to start at the beginning of the buffer
+    long length = MappedStringIndex.write(original, out);
+    out.close();
+    assertEquals(bytes.size() - 4, length);
+
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    buffer.position(4);
+    mapped = new MappedStringIndex(buffer.slice());
+  }
+
+  public void testEntries() {
+    assertEquals(original.size(), mapped.size());
+    for (int i = 0; i < original.size(); ++i) {
+      String s = original.get(i);
+      assertEquals(s, mapped.get(i));
+      assertEquals(i, mapped.indexOf(s));
+      assertEquals(i, mapped.indexOf(new String(s)));
+      assertTrue(mapped.contains(s));
+    }
+    assertEquals(original.objectsList(), mapped.objectsList());
+  }
+
+  public void testMissing() {
+    assertEquals(-1, mapped.indexOf("Beauty"));
+    assertEquals(-1, mapped.indexOf("Schön"));
+    assertEquals(-1, mapped.indexOf("T"));
+    assertEquals(-1, mapped.indexOf(null));
+    assertFalse(mapped.contains("feature-1000"));
+    assertFalse(mapped.contains(5));
+  }
+
+  public void testParts() {
+    for (int i = 0; i < original.size(); ++i) {
+      String s = original.get(i);
+      for (int split = 0; split <= s.length(); ++split) {
+        assertEquals(i, mapped.indexOf(s.substring(0, split), s.substring(split), s.hashCode()));
+      }
+    }
+    assertEquals(-1, mapped.indexOf("Sch", "ön", "Schön".hashCode()));
+    assertEquals(-1, mapped.indexOf("T", "he", "The".hashCode() + 1));
+    assertEquals(-1, mapped.indexOf("Th", "ee", "Thee".hashCode()));
+  }
+
+  public void testLocked() {
+    assertTrue(mapped.isLocked());
+    assertEquals(0, mapped.addToIndex("The"));
+    try {
+      mapped.addToIndex("Beauty");
+      fail("Should not be able to add to a MappedStringIndex");
+    } catch (UnsupportedOperationException e) {
+      // yay
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(mapped);
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    Index<String> copy = (Index<String>) in.readObject();
+    assertTrue(copy instanceof HashIndex);
+    assertEquals(original.objectsList(), copy.objectsList());
+  }
+
+  public void testSaveToFilename() throws IOException {
+    File expected = File.createTempFile("index", ".txt");
+    expected.deleteOnExit();
+    original.saveToFilename(expected.getPath());
+    File actual = File.createTempFile("index", ".txt");
+    actual.deleteOnExit();
+    mapped.saveToFilename(actual.getPath());
+    assertEquals(IOUtils.slurpFile(expected), IOUtils.slurpFile(actual));
+  }
+
+}
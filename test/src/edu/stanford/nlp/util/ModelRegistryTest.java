@@ -0,0 +1,149 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that models in the registry are shared between owners, loaded
+ * only once, and removed only when asked.
+ */
+public class ModelRegistryTest extends TestCase {
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private Object load(String name) {
+    loads.incrementAndGet();
+    return new StringBuilder(name);
+  }
+
+  @Override
+  protected void setUp() {
+    ModelRegistry.clear();
+  }
+
+  @Override
+  protected void tearDown() {
+    ModelRegistry.clear();
+  }
+
+  public void testShared() {
+    Object owner1 = new Object();
+    Object owner2 = new Object();
+    Object a = ModelRegistry.acquire(owner1, "a", "", () -> load("a"));
+    Object b = ModelRegistry.acquire(owner2, "a", "", () -> load("a"));
+    assertSame(a, b);
+    assertEquals(1, loads.get());
+    assertEquals(2, ModelRegistry.references("a", ""));
+
+    Object c = ModelRegistry.acquire(owner1, "a", "caseless", () -> load("a"));
+    assertNotSame(a, c);
+    assertEquals(2, loads.get());
+    assertEquals(2, ModelRegistry.size());
+  }
+
+  public void testEvictIdle() {
+    Object owner1 = new Object();
+    Object owner2 = new Object();
+    ModelRegistry.acquire(owner1, "a", "", () -> load("a"));
+    ModelRegistry.acquire(owner2, "a", "", () -> load("a"));
+    ModelRegistry.acquire(owner2, "b", "", () -> load("b"));
+
+    assertTrue(ModelRegistry.release(owner1, "a", ""));
+    assertFalse(ModelRegistry.release(owner1, "a", ""));
+    assertEquals(1, ModelRegistry.references("a", ""));
+    assertEquals(0, ModelRegistry.evictIdle());
+
+    assertTrue(ModelRegistry.release(owner2, "a", ""));
+    assertEquals(1, ModelRegistry.evictIdle());
+    assertFalse(ModelRegistry.isLoaded("a", ""));
+    assertTrue(ModelRegistry.isLoaded("b", ""));
+
+    ModelRegistry.acquire(owner1, "a", "", () -> load("a"));
+    assertEquals(3, loads.get());
+  }
+
+  public void testIdleModelsAreKept() {
+    Object owner = new Object();
+    Object a = ModelRegistry.acquire(owner, "a", "", () -> load("a"));
+    ModelRegistry.release(owner, "a", "");
+    assertTrue(ModelRegistry.isLoaded("a", ""));
+    assertSame(a, ModelRegistry.acquire(owner, "a", "", () -> load("a")));
+    assertEquals(1, loads.get());
+  }
+
+  public void testReleaseAll() {
+    Object owner1 = new Object();
+    Object owner2 = new Object();
+    ModelRegistry.acquire(owner1, "a", "", () -> load("a"));
+    ModelRegistry.acquire(owner1, "b", "", () -> load("b"));
+    ModelRegistry.acquire(owner2, "b", "", () -> load("b"));
+
+    assertEquals(2, ModelRegistry.releaseAll(owner1));
+    assertEquals(0, ModelRegistry.releaseAll(owner1));
+    assertEquals(0, ModelRegistry.references("a", ""));
+    assertEquals(1, ModelRegistry.references("b", ""));
+    assertEquals(1, ModelRegistry.evictIdle());
+    assertTrue(ModelRegistry.isLoaded("b", ""));
+  }
+
+  public void testUnload() {
+    Object owner = new Object();
+    Object a = ModelRegistry.acquire(owner, "a", "", () -> load("a"));
+    assertTrue(ModelRegistry.unload("a", ""));
+    assertFalse(ModelRegistry.unload("a", ""));
+    assertEquals(0, ModelRegistry.references("a", ""));
+    Object b = ModelRegistry.acquire(owner, "a", "", () -> load("a"));
+    assertNotSame(a, b);
+    assertEquals(2, loads.get());
+  }
+
+  public void testFailedLoad() {
+    Object owner = new Object();
+    try {
+      ModelRegistry.acquire(owner, "a", "", () -> {
+        throw new IllegalStateException("no such model");
+      });
+      fail("Expected the loader's exception");
+    } catch (IllegalStateException e) {
+      // yay
+    }
+    assertFalse(ModelRegistry.isLoaded("a", ""));
+    ModelRegistry.acquire(owner, "a", "", () -> load("a"));
+    assertEquals(1, ModelRegistry.references("a", ""));
+  }
+
+  public void testConcurrentLoadsOnce() throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Object> results = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        Object model = ModelRegistry.acquire(Thread.currentThread(), "a", "", () -> load("a"));
+        synchronized (results) {
+          results.add(model);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(8, results.size());
+    for (Object model : results) {
+      assertSame(results.get(0), model);
+    }
+  }
+
+}